@@ -0,0 +1,119 @@
+package com._0xceba;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size record of the most recent substitutions and extractions.
+ * Writers claim a sequence number with a single atomic increment and store their event in the slot
+ * that number maps to, overwriting the oldest event; no locks are taken and memory stays constant
+ * however many requests are sent. Readers copy the slots and drop events that were overwritten
+ * while they read.
+ * Values are recorded as a hash and length, and only as a short prefix when prefixes are enabled,
+ * so secrets do not accumulate in memory or exports.
+ */
+public class AuditLog {
+    public static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    public static final int PREFIX_LENGTH = 8;
+
+    private final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong nextSequence = new AtomicLong();
+    private volatile boolean recordPrefixes;
+
+    /**
+     * The kind of an audit event.
+     */
+    public enum Kind {
+        SUBSTITUTION,
+        EXTRACTION
+    }
+
+    /**
+     * A recorded substitution or extraction.
+     *
+     * @param sequence      The position of the event in the log.
+     * @param timeMillis    When the event happened.
+     * @param kind          Whether a value was substituted into a message or extracted from one.
+     * @param messageId     The Burp message id of the request or response, or -1 for WebSocket messages.
+     * @param tool          The tool that sent the request or received the response.
+     * @param variable      The variable or generator name.
+     * @param value         The value summary: hash and length, and a prefix if enabled.
+     * @param source        Where the value came from, such as "global", "pool", "context:name" or "extractor:Regex".
+     */
+    public record Event(long sequence, long timeMillis, Kind kind, int messageId, String tool, String variable, String value, String source) {
+        /**
+         * Checks whether any field of the event contains a filter string, ignoring case.
+         *
+         * @param filter The lower-case filter string.
+         * @return True if the event matches, false otherwise.
+         */
+        public boolean matches(String filter) {
+            return filter.isEmpty()
+                    || String.valueOf(messageId).equals(filter)
+                    || kind.name().toLowerCase().contains(filter)
+                    || tool.toLowerCase().contains(filter)
+                    || variable.toLowerCase().contains(filter)
+                    || value.toLowerCase().contains(filter)
+                    || source.toLowerCase().contains(filter);
+        }
+    }
+
+    public boolean recordPrefixes() {
+        return recordPrefixes;
+    }
+
+    public void setRecordPrefixes(boolean recordPrefixes) {
+        this.recordPrefixes = recordPrefixes;
+    }
+
+    /**
+     * Records an event, overwriting the oldest one once the log is full.
+     *
+     * @param kind      Whether the value was substituted or extracted.
+     * @param messageId The Burp message id, or -1 if there is none.
+     * @param tool      The tool name.
+     * @param variable  The variable or generator name.
+     * @param value     The substituted or extracted value; only a summary is kept.
+     * @param source    Where the value came from.
+     */
+    public void record(Kind kind, int messageId, String tool, String variable, String value, String source) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) (sequence & MASK), new Event(sequence, System.currentTimeMillis(), kind, messageId, tool, variable, summarize(value), source));
+    }
+
+    /**
+     * Copies the events currently in the log.
+     *
+     * @return The events, oldest first.
+     */
+    public List<Event> events() {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - CAPACITY);
+        List<Event> events = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Event event = slots.get((int) (sequence & MASK));
+            // Skip slots not written yet and slots already overwritten by newer events
+            if (event != null && event.sequence() == sequence)
+                events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * Removes all events.
+     */
+    public void clear() {
+        for (int i = 0; i < CAPACITY; i++)
+            slots.set(i, null);
+    }
+
+    private String summarize(String value) {
+        String summary = "#" + Integer.toHexString(value.hashCode()) + " (" + value.length() + " chars)";
+        if (!recordPrefixes)
+            return summary;
+        return (value.length() > PREFIX_LENGTH ? value.substring(0, PREFIX_LENGTH) + "…" : value) + " " + summary;
+    }
+}
@@ -8,58 +8,73 @@ import burp.api.montoya.ui.contextmenu.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.*;
 
 /**
  * Context menu provider to add menu items for inserting variables at
- * the user's caret.
+ * the user's caret, and for using a request as a variable's token refresh request.
  */
 public class BurpVariablesContextMenuProvider implements ContextMenuItemsProvider {
     private final Logging burpLogging;
-    private final HashMap<String, VariableData> variablesMap;
+    private final VariableStore variableStore;
+    private final TokenRefresher tokenRefresher;
+    private final Frame burpFrame;
 
     /**
      * Constructs a new context menu provider.
      *
-     * @param burpLogging   The logging interface from the Montoya API.
-     * @param variablesMap  HashMap storing variable names and VariableData.
+     * @param burpLogging       The logging interface from the Montoya API.
+     * @param variableStore     Store holding variable names and VariableData.
+     * @param tokenRefresher    The token refresher that receives refresh requests.
+     * @param burpFrame         The Burp main frame, used as the parent of dialogs.
      */
-    public BurpVariablesContextMenuProvider(Logging burpLogging, HashMap<String, VariableData> variablesMap) {
+    public BurpVariablesContextMenuProvider(Logging burpLogging, VariableStore variableStore, TokenRefresher tokenRefresher, Frame burpFrame) {
         this.burpLogging = burpLogging;
-        this.variablesMap = variablesMap;
+        this.variableStore = variableStore;
+        this.tokenRefresher = tokenRefresher;
+        this.burpFrame = burpFrame;
     }
 
     /**
      * Generates and returns a list of context menu items for each variable if
      * the context menu is executed against a message editor request. The menu
-     * items insert the selected variable key.
+     * items insert the selected variable key. For any single request, a submenu
+     * offers to use the request as a variable's token refresh request.
      *
      * @param contextMenuEvent  The event that triggered the context menu.
      * @return  A list of the context menu items to be added to the menu.
      */
     @Override
     public List<Component> provideMenuItems(ContextMenuEvent contextMenuEvent) {
+        // Return null if no variables are defined to avoid an empty context menu
+        if (variableStore.isEmpty()) {
+            return null;
+        }
+
+        // Find the single request the menu was opened on, from a message editor or a selection of one item
+        HttpRequest selectedRequest = null;
+        if (contextMenuEvent.messageEditorRequestResponse().isPresent())
+            selectedRequest = contextMenuEvent.messageEditorRequestResponse().get().requestResponse().request();
+        else if (contextMenuEvent.selectedRequestResponses().size() == 1)
+            selectedRequest = contextMenuEvent.selectedRequestResponses().get(0).request();
+
         // Check if the event originated from MESSAGE_EDITOR_REQUEST
         if(contextMenuEvent.messageEditorRequestResponse().isPresent()
                 && contextMenuEvent.isFrom(InvocationType.MESSAGE_EDITOR_REQUEST)) {
 
-            // Return null if no variables are defined to avoid an empty context menu
-            if (variablesMap.isEmpty()) {
-                return null;
-            }
-
             // List of context menu items to be returned
             List<Component> contextMenuProviderList = new ArrayList<>();
 
-            // Sort variablesMap keys alphabetically
-            List<String> sortedVariablesMapKeys = new ArrayList<>(variablesMap.keySet());
+            // Sort the variable names of the current snapshot alphabetically
+            List<String> sortedVariablesMapKeys = new ArrayList<>(variableStore.snapshot().variables().keySet());
             Collections.sort(sortedVariablesMapKeys);
 
-            // Iterate through sorted variablesMap keys
+            // Iterate through sorted variable names
             for(String variableKey : sortedVariablesMapKeys) {
-                // Create a new JMenuItem with the label containing the variablesMap key
+                // Create a new JMenuItem with the label containing the variable name
                 JMenuItem contextMenuItem = new JMenuItem("Insert ((" + variableKey + "))");
 
                 // Add an action listener to handle user interaction
@@ -100,10 +115,140 @@ public class BurpVariablesContextMenuProvider implements ContextMenuItemsProvide
                 // Add the context menu item to the provider list
                 contextMenuProviderList.add(contextMenuItem);
             }
-            // Return the context menu provider list
+            // Add the token refresh submenu and return the context menu provider list
+            contextMenuProviderList.add(refreshRequestMenu(selectedRequest));
             return contextMenuProviderList;
+        } else if (selectedRequest != null) {
+            return List.of(refreshRequestMenu(selectedRequest));
         } else {
             return null;
         }
     }
+
+    /**
+     * Builds the submenu that uses a request as the token refresh request of a variable.
+     *
+     * @param request The request the menu was opened on.
+     * @return The submenu with one item per variable.
+     */
+    private JMenu refreshRequestMenu(HttpRequest request) {
+        JMenu refreshMenu = new JMenu("Use as token refresh request");
+        List<String> sortedVariablesMapKeys = new ArrayList<>(variableStore.snapshot().variables().keySet());
+        Collections.sort(sortedVariablesMapKeys);
+        for (String variableKey : sortedVariablesMapKeys) {
+            JMenuItem refreshMenuItem = new JMenuItem("((" + variableKey + "))");
+            refreshMenuItem.addActionListener(e -> configureRefreshRecipe(variableKey, request));
+            refreshMenu.add(refreshMenuItem);
+        }
+        return refreshMenu;
+    }
+
+    /**
+     * Asks for the extractor, lifetime and failure signature of a token refresh recipe and hands it to the token refresher.
+     * The variable's own extractor, if it has one, is offered as the default.
+     *
+     * @param variableKey   The variable to refresh.
+     * @param request       The login or refresh request.
+     */
+    private void configureRefreshRecipe(String variableKey, HttpRequest request) {
+        VariableData data = variableStore.get(variableKey);
+        RefreshRecipe existing = tokenRefresher.recipes().get(variableKey);
+        JComboBox<ExtractorType> extractorTypeComboBox = new JComboBox<>(ExtractorType.values());
+        JTextField expressionField = new JTextField(30);
+        if (existing != null) {
+            extractorTypeComboBox.setSelectedItem(existing.extractorType());
+            expressionField.setText(existing.expression());
+        } else if (data != null && data.regex() != null && !data.regex().isEmpty()) {
+            extractorTypeComboBox.setSelectedItem(data.extractorType());
+            expressionField.setText(data.regex());
+        }
+        JTextField ttlField = new JTextField(existing != null ? Long.toString(existing.ttlSeconds()) : "0", 8);
+        JTextField leadField = new JTextField(Long.toString(existing != null ? existing.leadSeconds() : RefreshRecipe.DEFAULT_LEAD_SECONDS), 8);
+        JTextField failureStatusField = new JTextField(existing != null && existing.failureStatus() > 0 ? Integer.toString(existing.failureStatus()) : "", 8);
+        JTextField failurePatternField = new JTextField(existing != null ? existing.failurePattern() : "", 30);
+        JTextField waitField = new JTextField(Long.toString(existing != null ? existing.waitMillis() : RefreshRecipe.DEFAULT_WAIT_MILLIS), 8);
+
+        // Lay out the labels and fields in two columns
+        JPanel recipePanel = new JPanel(new GridLayout(0, 2, 5, 5));
+        recipePanel.add(new JLabel("Extractor type:"));
+        recipePanel.add(extractorTypeComboBox);
+        recipePanel.add(new JLabel("Extractor expression:"));
+        recipePanel.add(expressionField);
+        recipePanel.add(new JLabel("Lifetime in seconds (0 = JWT exp, -1 = on failure only):"));
+        recipePanel.add(ttlField);
+        recipePanel.add(new JLabel("Refresh seconds before expiry:"));
+        recipePanel.add(leadField);
+        recipePanel.add(new JLabel("Failure status code (optional):"));
+        recipePanel.add(failureStatusField);
+        recipePanel.add(new JLabel("Failure body regex (optional):"));
+        recipePanel.add(failurePatternField);
+        recipePanel.add(new JLabel("Wait for refresh on failure (ms):"));
+        recipePanel.add(waitField);
+
+        int response = JOptionPane.showConfirmDialog(burpFrame, recipePanel,
+                "Token refresh request for ((" + variableKey + "))", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (response != JOptionPane.OK_OPTION)
+            return;
+
+        // Validate the extractor and the numeric fields before scheduling
+        ExtractorType extractorType = (ExtractorType) extractorTypeComboBox.getSelectedItem();
+        String expression = expressionField.getText();
+        boolean validExpression = extractorType == ExtractorType.REGEX
+                ? isValidRegexWithCaptureGroup(expression)
+                : StructuredExtractor.isValid(extractorType, expression);
+        if (!validExpression) {
+            burpLogging.raiseErrorEvent("Unable to set the refresh request because the extractor expression is invalid.");
+            return;
+        }
+        long ttlSeconds;
+        long leadSeconds;
+        int failureStatus;
+        long waitMillis;
+        try {
+            ttlSeconds = Long.parseLong(ttlField.getText().trim());
+            leadSeconds = Long.parseLong(leadField.getText().trim());
+            failureStatus = failureStatusField.getText().isBlank() ? 0 : Integer.parseInt(failureStatusField.getText().trim());
+            waitMillis = Long.parseLong(waitField.getText().trim());
+        } catch (NumberFormatException e) {
+            burpLogging.raiseErrorEvent("Unable to set the refresh request because a numeric field is not a number.");
+            return;
+        }
+        if (leadSeconds < 0 || (ttlSeconds > 0 && leadSeconds >= ttlSeconds)) {
+            burpLogging.raiseErrorEvent("Unable to set the refresh request because the lead time must be shorter than the lifetime.");
+            return;
+        }
+        if (failureStatus < 0 || waitMillis < 0) {
+            burpLogging.raiseErrorEvent("Unable to set the refresh request because the failure status and wait time cannot be negative.");
+            return;
+        }
+        String failurePattern = failurePatternField.getText();
+        try {
+            Pattern.compile(failurePattern);
+        } catch (PatternSyntaxException e) {
+            burpLogging.raiseErrorEvent("Unable to set the refresh request because the failure body regex is invalid.");
+            return;
+        }
+        RefreshRecipe recipe = new RefreshRecipe(request, extractorType, expression, Math.max(-1, ttlSeconds), leadSeconds, failureStatus, failurePattern, waitMillis);
+        if (recipe.isReactiveOnly() && !recipe.hasFailureSignature()) {
+            burpLogging.raiseErrorEvent("Unable to set the refresh request because refreshing on failure only requires a failure status or body regex.");
+            return;
+        }
+
+        tokenRefresher.setRecipe(variableKey, recipe);
+        burpLogging.logToOutput("Set the token refresh request of variable '" + variableKey + "' to " + request.method() + " " + request.url() + ".");
+    }
+
+    /**
+     * Checks if a regex pattern is valid and contains at least one capture group.
+     *
+     * @param regex The regex pattern to validate.
+     * @return True if the regex is valid and has at least one capture group, false otherwise.
+     */
+    private static boolean isValidRegexWithCaptureGroup(String regex) {
+        try {
+            return Pattern.compile(regex).matcher("").groupCount() > 0;
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
+    }
 }
\ No newline at end of file
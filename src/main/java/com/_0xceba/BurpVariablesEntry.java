@@ -3,10 +3,13 @@ package com._0xceba;
 import burp.api.montoya.BurpExtension;
 import burp.api.montoya.logging.Logging;
 import burp.api.montoya.MontoyaApi;
-import burp.api.montoya.persistence.PersistedList;
 import burp.api.montoya.persistence.PersistedObject;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This class serves as the entry point for the Burp Variables extension.
@@ -36,22 +39,8 @@ public class BurpVariablesEntry implements BurpExtension {
             toolsEnabledMap.put(key, burpPersistence.getBoolean(key));
         }
 
-        // Initialize a HashMap for storing runtime variable data (key, [value, regex])
-        HashMap<String, VariableData> variablesMap = new HashMap<>();
-
-        // Populate variablesMap with data from the persistence object
-        for (String key : burpPersistence.stringListKeys()) {
-            // Retrieve each key's persisted string list of [value, regex]
-            PersistedList<String> variableDataList = burpPersistence.getStringList(key);
-            if (variableDataList != null && !variableDataList.isEmpty()) {
-                String value = variableDataList.get(0);
-                // Check if the list has at least 2 elements, get regex value from
-                // index 1 or use empty string as fallback
-                String regex = variableDataList.size() > 1 ? variableDataList.get(1) : "";
-                // Store the runtime variable data
-                variablesMap.put(key, new VariableData(value, regex));
-            }
-        }
+        // Load the runtime variable data (key, [value, regex, extractor type]) and value pools of the active environment
+        HashMap<String, VariableData> variablesMap = VariablePersistence.load(burpPersistence);
 
         // Migrate the legacy persistence format (stringKey) to the new format (stringKeyList)
         // TODO: Remove this functionality after 2026-02
@@ -64,15 +53,120 @@ public class BurpVariablesEntry implements BurpExtension {
             }
         }
 
+        // Projects saved before host-scoped keys existed can hold names of the form name@pattern,
+        // which are renamed so that they keep behaving as plain variables
+        boolean legacyKeyFormat = burpPersistence.getInteger(VariablePersistence.KEY_FORMAT) == null;
+        if (legacyKeyFormat)
+            warnRenamedVariables(burpLogging, null, VariablePersistence.migrateScopedLookingNames(variablesMap));
+
+        // Publish the loaded variables as the first snapshot of the variable store
+        VariableStore variableStore = new VariableStore(variablesMap);
+
+        // Restore the saved environments, each stored as a child object in the same layout as the active variables
+        PersistedObject persistedEnvironments = burpPersistence.getChildObject("environments");
+        if (persistedEnvironments != null) {
+            HashMap<String, Map<String, VariableData>> environments = new HashMap<>();
+            for (String environmentName : persistedEnvironments.childObjectKeys()) {
+                HashMap<String, VariableData> environment = VariablePersistence.load(persistedEnvironments.getChildObject(environmentName));
+                if (legacyKeyFormat)
+                    warnRenamedVariables(burpLogging, environmentName, VariablePersistence.migrateScopedLookingNames(environment));
+                environments.put(environmentName, environment);
+            }
+            variableStore.restoreEnvironments(persistedEnvironments.getString("active"), environments);
+        }
+
+        // Initialize the lock-free metrics shared by the HTTP handler and the options dialog
+        BurpVariablesMetrics metrics = new BurpVariablesMetrics();
+
+        // Initialize the per-variable usage statistics and restore them from the persistence object
+        VariableStatistics statistics = new VariableStatistics();
+        statistics.load(burpPersistence.getChildObject("usageStatistics"));
+
+        // Initialize the guard that bounds auto-update regex matches and restore its time budget
+        ExtractorGuard extractorGuard = new ExtractorGuard(burpLogging);
+        Integer extractorTimeBudget = burpPersistence.getInteger("extractorTimeBudgetMillis");
+        if (extractorTimeBudget != null)
+            extractorGuard.setTimeBudgetMillis(extractorTimeBudget);
+        Integer extractorMaxMatchLength = burpPersistence.getInteger("extractorMaxMatchLength");
+        if (extractorMaxMatchLength != null)
+            extractorGuard.setMaxMatchLength(extractorMaxMatchLength);
+
+        // Initialize the generators behind dynamic references and restore the persisted counters
+        VariableGenerators generators = new VariableGenerators();
+        generators.counters().load(burpPersistence.getChildObject("generatorCounters"));
+
+        // Initialize the timer wheel that tracks variable lifetimes and restore the hold time for expired variables
+        VariableExpiry variableExpiry = new VariableExpiry(burpLogging, variableStore);
+        Integer expiryHoldMillis = burpPersistence.getInteger("expiryHoldMillis");
+        if (expiryHoldMillis != null)
+            variableExpiry.setHoldMillis(expiryHoldMillis);
+
+        // Initialize the per-tool substitution scopes and restore them from the persistence object
+        SubstitutionScopes substitutionScopes = new SubstitutionScopes();
+        substitutionScopes.load(burpPersistence.getChildObject("substitutionScopes"));
+
+        // Initialize the multi-variable extraction rules and restore them from the persistence object
+        ExtractionRules extractionRules = new ExtractionRules();
+        extractionRules.load(burpPersistence.getChildObject("extractionRules"));
+
+        // Initialize the ring buffer of recent substitutions and extractions
+        AuditLog auditLog = new AuditLog();
+        auditLog.setRecordPrefixes(toolsEnabledMap.getOrDefault("auditValuePrefixes", false));
+
+        // Initialize the scheduler that refreshes expiring tokens
+        TokenRefresher tokenRefresher = new TokenRefresher(montoyaApi.http(), burpLogging, variableStore, extractorGuard);
+
+        // Initialize the memory-mapped file that shares variables with other Burp instances
+        SharedVariableFile sharedVariableFile = new SharedVariableFile(burpLogging, variableStore);
+
+        // Initialize the watcher that applies changes of an external variable file
+        WatchedVariableFile watchedVariableFile = new WatchedVariableFile(burpLogging, variableStore);
+
         // Register a tab labeled "Variables" in the Burp user interface
-        BurpVariablesTab variablesTab = new BurpVariablesTab(montoyaApi, burpLogging, variablesMap, toolsEnabledMap);
+        BurpVariablesTab variablesTab = new BurpVariablesTab(montoyaApi, burpLogging, variableStore, toolsEnabledMap, metrics, statistics, extractorGuard, tokenRefresher, variableExpiry, sharedVariableFile, watchedVariableFile, substitutionScopes, auditLog, extractionRules);
         montoyaApi.userInterface().registerSuiteTab("Variables", variablesTab);
+        tokenRefresher.setUpdateListener(variablesTab::updateVariableInTable);
+        variableExpiry.setExpiryListener(variablesTab::variableExpired);
+        sharedVariableFile.setRemoteUpdateListener(variablesTab::variablesReplaced);
+        watchedVariableFile.setChangeListener(variablesTab::variablesChanged);
 
         // Register an HTTP handler to intercept and modify requests
-        montoyaApi.http().registerHttpHandler(new BurpVariablesHTTPHandler(burpLogging, variablesMap, toolsEnabledMap, variablesTab));
+        BurpVariablesHTTPHandler httpHandler = new BurpVariablesHTTPHandler(burpLogging, variableStore, toolsEnabledMap, variablesTab, metrics, statistics, extractorGuard, generators, tokenRefresher, variableExpiry, substitutionScopes, auditLog, extractionRules);
+        montoyaApi.http().registerHttpHandler(httpHandler);
+
+        // Register a WebSocket handler that shares the HTTP handler's substitution and extraction engines
+        montoyaApi.websockets().registerWebSocketCreatedHandler(new BurpVariablesWebSocketHandler(variableStore, toolsEnabledMap, httpHandler));
+
+        // Register an Intruder payload generator that streams combinations of variable values
+        montoyaApi.intruder().registerPayloadGeneratorProvider(new VariablePayloadGeneratorProvider(burpLogging, variableStore));
 
         // Register a context menu provider to add items to the context menu
-        montoyaApi.userInterface().registerContextMenuItemsProvider(new BurpVariablesContextMenuProvider(burpLogging, variablesMap));
+        montoyaApi.userInterface().registerContextMenuItemsProvider(new BurpVariablesContextMenuProvider(burpLogging, variableStore, tokenRefresher, montoyaApi.userInterface().swingUtils().suiteFrame()));
+
+        // Restore the token refresh recipes once the handler is registered, since due refreshes are sent right away
+        tokenRefresher.load(burpPersistence.getChildObject("refreshRecipes"));
+
+        // Reconnect the shared store file used in the previous session
+        PersistedObject persistedSharedStore = burpPersistence.getChildObject("sharedStore");
+        String sharedStorePath = persistedSharedStore != null ? persistedSharedStore.getString("path") : null;
+        if (sharedStorePath != null && !sharedStorePath.isEmpty()) {
+            try {
+                sharedVariableFile.connect(Path.of(sharedStorePath));
+            } catch (IOException | InvalidPathException e) {
+                burpLogging.logToError("Unable to reconnect the shared store " + sharedStorePath + ": " + e.getMessage());
+            }
+        }
+
+        // Resume watching the external variable file used in the previous session
+        PersistedObject persistedWatchedFile = burpPersistence.getChildObject("watchedFile");
+        String watchedFilePath = persistedWatchedFile != null ? persistedWatchedFile.getString("path") : null;
+        if (watchedFilePath != null && !watchedFilePath.isEmpty()) {
+            try {
+                watchedVariableFile.start(Path.of(watchedFilePath));
+            } catch (IOException | InvalidPathException e) {
+                burpLogging.logToError("Unable to watch " + watchedFilePath + ": " + e.getMessage());
+            }
+        }
 
         // Log initialization output
         String version = getClass().getPackage().getImplementationVersion();
@@ -86,19 +180,57 @@ public class BurpVariablesEntry implements BurpExtension {
             for (HashMap.Entry<String, Boolean> entry : toolsEnabledMap.entrySet())
                 burpPersistence.setBoolean(entry.getKey(), entry.getValue());
 
-            // Clear the persisted string lists
-            for (String key : burpPersistence.stringListKeys()) {
-                burpPersistence.deleteStringList(key);
-            }
+            // Save the auto-update regex time budget and match length, and the hold time for expired variables
+            burpPersistence.setInteger("extractorTimeBudgetMillis", extractorGuard.timeBudgetMillis());
+            burpPersistence.setInteger("extractorMaxMatchLength", extractorGuard.maxMatchLength());
+            burpPersistence.setInteger("expiryHoldMillis", variableExpiry.holdMillis());
 
-            // Save the variable data to Burp persistent storage
-            for (HashMap.Entry<String, VariableData> entry : variablesMap.entrySet()) {
-                PersistedList<String> list = PersistedList.persistedStringList();
-                list.add(entry.getValue().value());
-                list.add(entry.getValue().regex());
-                // Save the list using the variable name as the key
-                burpPersistence.setStringList(entry.getKey(), list);
+            // Record that the saved variable names use the host-scoped key format
+            burpPersistence.setInteger(VariablePersistence.KEY_FORMAT, VariablePersistence.CURRENT_KEY_FORMAT);
+
+            // Stop sharing variables and remember the shared store file for the next session
+            PersistedObject savedSharedStore = PersistedObject.persistedObject();
+            Path sharedStore = sharedVariableFile.path();
+            savedSharedStore.setString("path", sharedStore != null ? sharedStore.toString() : "");
+            burpPersistence.setChildObject("sharedStore", savedSharedStore);
+            sharedVariableFile.disconnect();
+
+            // Stop watching the external variable file and remember it for the next session
+            PersistedObject savedWatchedFile = PersistedObject.persistedObject();
+            Path watchedFile = watchedVariableFile.path();
+            savedWatchedFile.setString("path", watchedFile != null ? watchedFile.toString() : "");
+            burpPersistence.setChildObject("watchedFile", savedWatchedFile);
+            watchedVariableFile.stop();
+
+            // Save the variables of the active environment and the saved environments
+            Map<String, VariableData> savedVariables = variableStore.snapshot().variables();
+            VariablePersistence.save(burpPersistence, savedVariables);
+            PersistedObject savedEnvironments = PersistedObject.persistedObject();
+            savedEnvironments.setString("active", variableStore.activeEnvironment());
+            for (Map.Entry<String, Map<String, VariableData>> entry : variableStore.inactiveEnvironments().entrySet()) {
+                PersistedObject savedEnvironment = PersistedObject.persistedObject();
+                VariablePersistence.save(savedEnvironment, entry.getValue());
+                savedEnvironments.setChildObject(entry.getKey(), savedEnvironment);
             }
+            burpPersistence.setChildObject("environments", savedEnvironments);
+
+            // Stop the token refresh scheduler, the expiry timer wheel and the parallel regex scanner, and save the refresh recipes
+            tokenRefresher.shutdown();
+            variableExpiry.stop();
+            ParallelScanner.shutdown();
+            burpPersistence.setChildObject("refreshRecipes", tokenRefresher.save());
+
+            // Save the per-tool substitution scopes
+            burpPersistence.setChildObject("substitutionScopes", substitutionScopes.save());
+
+            // Save the extraction rules
+            burpPersistence.setChildObject("extractionRules", extractionRules.save());
+
+            // Save the generator counters
+            burpPersistence.setChildObject("generatorCounters", generators.counters().save());
+
+            // Save the usage statistics of the remaining variables
+            burpPersistence.setChildObject("usageStatistics", statistics.save(savedVariables.keySet()));
 
             // Delete the legacy String persistence format
             // TODO: Remove this functionality after 2026-02
@@ -106,7 +238,27 @@ public class BurpVariablesEntry implements BurpExtension {
                 burpPersistence.deleteString(key);
             }
 
+            // Release UI resources held by the tab
+            variablesTab.extensionUnloaded();
+
             burpLogging.logToOutput("Burp Variables unloaded successfully.");
         });
     }
+
+    /**
+     * Warns about variables renamed because their names would now be read as host-scoped keys.
+     *
+     * @param burpLogging       The logging interface.
+     * @param environmentName   The saved environment holding the variables, or null for the active variables.
+     * @param renamed           The new names keyed by the old names.
+     */
+    private static void warnRenamedVariables(Logging burpLogging, String environmentName, Map<String, String> renamed) {
+        if (renamed.isEmpty()) return;
+        for (Map.Entry<String, String> entry : renamed.entrySet()) {
+            burpLogging.logToError("Renamed variable '" + entry.getKey() + "' to '" + entry.getValue() + "'"
+                    + (environmentName != null ? " in environment '" + environmentName + "'" : "")
+                    + " because names of the form name@host now define host-scoped values. Update requests that reference ((" + entry.getKey() + ")).");
+        }
+        burpLogging.raiseErrorEvent(renamed.size() + " variable(s) were renamed because their names look like host-scoped keys. See the extension's error output.");
+    }
 }
\ No newline at end of file
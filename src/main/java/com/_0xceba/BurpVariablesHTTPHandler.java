@@ -1,5 +1,7 @@
 package com._0xceba;
 
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.core.ToolType;
 import burp.api.montoya.http.handler.HttpHandler;
 import burp.api.montoya.http.handler.HttpRequestToBeSent;
 import burp.api.montoya.http.handler.HttpResponseReceived;
@@ -9,155 +11,570 @@ import burp.api.montoya.http.HttpService;
 import burp.api.montoya.http.message.requests.HttpRequest;
 import burp.api.montoya.logging.Logging;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 /**
  * HTTP handler to intercept and modify HTTP requests within Burp.
  */
 public class BurpVariablesHTTPHandler implements HttpHandler{
     private final HashMap<String, Boolean> toolsEnabledMap;
-    private final HashMap<String, VariableData> variablesMap;
+    private final VariableStore variableStore;
+    private final InFlightRequests inFlightRequests = new InFlightRequests();
+    private final UpdateSequencer updateSequencer;
     private final Logging burpLogging;
     private final BurpVariablesTab variablesTab;
+    private final BurpVariablesMetrics metrics;
+    private final VariableStatistics statistics;
+    private final ExtractorGuard extractorGuard;
+    private final VariableGenerators generators;
+    private final TokenRefresher tokenRefresher;
+    private final VariableExpiry variableExpiry;
+    private final SubstitutionScopes substitutionScopes;
+    private final AuditLog auditLog;
+    private final ExtractionRules extractionRules;
+    private final EncodedValueCache encodedValues = new EncodedValueCache();
     private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\(\\(.+?\\)\\)");
 
     /**
      * Constructs a new instance of BurpVariablesHTTPHandler.
      *
      * @param burpLogging     The logging interface from the Montoya API.
-     * @param variablesMap    HashMap containing variable names and their corresponding VariableData.
+     * @param variableStore   Store containing variable names and their corresponding VariableData.
      * @param toolsEnabledMap HashMap indicating which tools are enabled or disabled.
      * @param variablesTab    The UI tab for updating table display when variables change.
+     * @param metrics         The metrics recorder for handler latencies and outcomes.
+     * @param statistics      The per-variable usage statistics.
+     * @param extractorGuard  The guard that runs auto-update regexes within a time budget.
+     * @param generators      The generators that back dynamic references such as ((uuid)).
+     * @param tokenRefresher  The token refresher whose failure signatures are checked on responses.
+     * @param variableExpiry  The expiry tracker that holds requests using expired variables.
+     * @param substitutionScopes The parts of the request each tool scans for variable references.
+     * @param auditLog        The record of recent substitutions and extractions.
+     * @param extractionRules The rules that update several variables from one regex match.
      */
-    public BurpVariablesHTTPHandler(Logging burpLogging, HashMap<String, VariableData> variablesMap, HashMap<String, Boolean> toolsEnabledMap, BurpVariablesTab variablesTab) {
+    public BurpVariablesHTTPHandler(Logging burpLogging, VariableStore variableStore, HashMap<String, Boolean> toolsEnabledMap, BurpVariablesTab variablesTab, BurpVariablesMetrics metrics, VariableStatistics statistics, ExtractorGuard extractorGuard, VariableGenerators generators, TokenRefresher tokenRefresher, VariableExpiry variableExpiry, SubstitutionScopes substitutionScopes, AuditLog auditLog, ExtractionRules extractionRules) {
         this.burpLogging = burpLogging;
-        this.variablesMap = variablesMap;
+        this.variableStore = variableStore;
+        this.updateSequencer = variableStore.sequencer();
         this.toolsEnabledMap = toolsEnabledMap;
         this.variablesTab = variablesTab;
+        this.metrics = metrics;
+        this.statistics = statistics;
+        this.extractorGuard = extractorGuard;
+        this.generators = generators;
+        this.tokenRefresher = tokenRefresher;
+        this.variableExpiry = variableExpiry;
+        this.substitutionScopes = substitutionScopes;
+        this.auditLog = auditLog;
+        this.extractionRules = extractionRules;
     }
 
     /**
      * Handles HTTP requests before they are sent from Burp.
+     * Requests carrying the context header are bound to that variable context; the header is
+     * removed and the binding is remembered so the response can update the same context.
+     * Token refresh requests are marked the same way so that their responses are not auto-updated.
+     * When the tool has a substitution scope, only the selected regions of the request are scanned.
+     * With auto-update enabled, each request is stamped with its send order as it leaves the handler,
+     * so responses that arrive out of order cannot overwrite values extracted from newer responses.
      *
      * @param requestToBeSent   HTTP request before it is sent from Burp Suite.
      * @return  Modified HTTP request if variables are replaced, otherwise the original request.
      */
     @Override
     public RequestToBeSentAction handleHttpRequestToBeSent(HttpRequestToBeSent requestToBeSent) {
-        // Convert the request to a string
-        String requestAsString = requestToBeSent.toString();
+        RequestToBeSentAction action = substituteRequest(requestToBeSent);
 
-        // Check if the tool type is enabled and the request contains variables
-        if(
-            toolsEnabledMap.get(requestToBeSent.toolSource().toolType().toolName())
-                && containsVariable(requestAsString)
-        ){
-            // Continue without modification if the request is from the Proxy tool and not in scope
-            if((requestToBeSent.toolSource().toolType().toolName().equals("Proxy"))
-                    && !requestToBeSent.isInScope()){
-                return RequestToBeSentAction.continueWith(requestToBeSent);
-            }
+        // Stamp the request after any waits for fresh tokens, as close to the actual send as possible
+        if (toolsEnabledMap.getOrDefault("variableAutoUpdate", false))
+            inFlightRequests.stamp(requestToBeSent.messageId(), updateSequencer.nextSequence());
+        return action;
+    }
+
+    /**
+     * Replaces the variable references in a request and records the state its response needs.
+     *
+     * @param requestToBeSent   HTTP request before it is sent from Burp Suite.
+     * @return  Modified HTTP request if variables are replaced, otherwise the original request.
+     */
+    private RequestToBeSentAction substituteRequest(HttpRequestToBeSent requestToBeSent) {
+        long startNanos = System.nanoTime();
+        ToolType toolType = requestToBeSent.toolSource().toolType();
+
+        // Bind the request to a variable context if it carries the context header, and strip the header
+        // The marker headers are stripped even for disabled tools, so they never reach the target
+        HttpRequest request = requestToBeSent;
+        VariableContext context = null;
+        String contextName = requestToBeSent.headerValue(VariableContext.HEADER_NAME);
+        if (contextName != null) {
+            request = request.withRemovedHeader(VariableContext.HEADER_NAME);
+            if (!contextName.isBlank()) context = variableStore.context(contextName.trim());
+        }
+
+        // Strip the marker header of token refresh requests; their responses are extracted by the refresher itself
+        boolean refresh = requestToBeSent.headerValue(TokenRefresher.HEADER_NAME) != null;
+        if (refresh) request = request.withRemovedHeader(TokenRefresher.HEADER_NAME);
+        if (context != null || refresh)
+            inFlightRequests.put(new InFlightRequests.InFlightRequest(requestToBeSent.messageId(), context, refresh));
+
+        // Continue without substitution if the tool type is disabled
+        if (!toolsEnabledMap.getOrDefault(toolType.toolName(), false)) {
+            metrics.recordRequest(toolType, BurpVariablesMetrics.RequestOutcome.SKIPPED, System.nanoTime() - startNanos);
+            return RequestToBeSentAction.continueWith(request);
+        }
+
+        // Select the parts of the request the tool scans; other parts are never decoded or scanned
+        SubstitutionScope scope = substitutionScopes.scopeFor(toolType);
+
+        // Compressed and base64-wrapped bodies are substituted by a separate decoding stage, so the
+        // regular pass must not scan their encoded bytes
+        EncodedBody.Encoding bodyEncoding = null;
+        if (scope.body() && toolsEnabledMap.getOrDefault("encodedBodySubstitution", false))
+            bodyEncoding = EncodedBody.detect(request, toolsEnabledMap.getOrDefault("base64BodySubstitution", false));
+        if (bodyEncoding != null)
+            scope = new SubstitutionScope(scope.requestLine(), scope.headers(), false, 0);
+        RequestRegions regions = scope.isFull() ? null : RequestRegions.select(request, scope);
+
+        // Convert the request, or its selected regions, to a string
+        String requestAsString = regions == null ? request.toString() : regions.joinedText();
 
-            // Replace the variables in a string copy of the request
-            requestAsString = replaceVariables(requestAsString);
+        // Continue without substitution if the request does not contain variables
+        // References inside an encoded body are only visible once it is decoded
+        if (bodyEncoding == null && !containsVariable(requestAsString)) {
+            metrics.recordRequest(toolType, BurpVariablesMetrics.RequestOutcome.PASSED_THROUGH, System.nanoTime() - startNanos);
+            return RequestToBeSentAction.continueWith(request);
+        }
+
+        // Continue without substitution if the request is from the Proxy tool and not in scope
+        if (toolType == ToolType.PROXY && !requestToBeSent.isInScope()) {
+            metrics.recordRequest(toolType, BurpVariablesMetrics.RequestOutcome.SKIPPED, System.nanoTime() - startNanos);
+            return RequestToBeSentAction.continueWith(request);
+        }
+
+        // Wait briefly for refreshes triggered by a failure signature, so the request is sent with the new token
+        // The refresh request itself never waits, since the refresh it belongs to could not finish otherwise
+        if (!refresh && tokenRefresher.hasBarriers())
+            tokenRefresher.awaitBarriers(referencedNames(requestAsString));
 
-            // Create an HttpService instance for the modified request
-            HttpService requestService = requestToBeSent.httpService();
+        // When holding is enabled, wait briefly for fresh values of expired variables the request references
+        if (!refresh && toolsEnabledMap.getOrDefault("holdExpiredRequests", false) && variableExpiry.hasExpiringVariables())
+            variableExpiry.awaitFreshValues(requestAsString, requestToBeSent.httpService());
+
+        // Begin the flight recorder event; it is only populated if a recording is capturing it
+        SubstitutionEvent substitutionEvent = new SubstitutionEvent();
+        substitutionEvent.begin();
+
+        // Replace the variables in a string copy of the request
+        // Resolve against the view for the target service, which applies any host-scoped values
+        HttpService service = requestToBeSent.httpService();
+        String host = service != null ? service.host() : null;
+        VariableView view = variableStore.snapshot().view(service);
+        HttpService requestService = requestToBeSent.httpService();
+        HttpRequest modifiedRequest;
+        SubstitutionTotals totals = new SubstitutionTotals();
+        if (regions == null) {
+            Substitution substitution = replaceVariables(requestAsString, requestToBeSent.messageId(), toolType, host, view, context);
+            totals.add(substitution);
 
             // Create a new HTTP request with the modified string
-            HttpRequest modifiedRequest = HttpRequest.httpRequest(requestService, requestAsString);
+            modifiedRequest = HttpRequest.httpRequest(requestService, substitution.request());
 
             // Update Content-Length header for requests with a body
             if (modifiedRequest.body().length() > 0)
                 modifiedRequest = modifiedRequest.withBody((modifiedRequest.bodyToString()));
+        } else {
+            // Substitute each selected region separately and splice the results into the original bytes
+            List<String> substitutedTexts = new ArrayList<>(regions.texts().size());
+            for (String text : regions.texts()) {
+                Substitution substitution = replaceVariables(text, requestToBeSent.messageId(), toolType, host, view, context);
+                substitutedTexts.add(substitution.request());
+                totals.add(substitution);
+            }
+            if (totals.replacements == 0) {
+                modifiedRequest = request;
+            } else {
+                RequestRegions.Rebuilt rebuilt = regions.rebuild(substitutedTexts);
+                modifiedRequest = HttpRequest.httpRequest(requestService, rebuilt.request());
+
+                // Update Content-Length header without touching the body
+                if (modifiedRequest.hasHeader("Content-Length"))
+                    modifiedRequest = modifiedRequest.withUpdatedHeader("Content-Length", String.valueOf(rebuilt.bodyLength()));
+            }
+        }
+
+        // Decode the body, substitute it chunk by chunk and re-encode it; withBody also updates Content-Length
+        if (bodyEncoding != null) {
+            VariableContext bodyContext = context;
+            try {
+                ByteArray substitutedBody = EncodedBody.substitute(request.body(), bodyEncoding, text -> {
+                    Substitution substitution = replaceVariables(text, requestToBeSent.messageId(), toolType, host, view, bodyContext);
+                    totals.add(substitution);
+                    return substitution.request();
+                });
+                if (substitutedBody != null)
+                    modifiedRequest = modifiedRequest.withBody(substitutedBody);
+            } catch (IOException e) {
+                // Send the body as it is if it cannot be decoded
+                burpLogging.logToError("Unable to decode the " + bodyEncoding + " request body: " + e.getMessage());
+            }
+
+            // Continue with the original request if the decoded body held no variables either, so its bytes are sent untouched
+            if (totals.replacements == 0) {
+                metrics.recordRequest(toolType, BurpVariablesMetrics.RequestOutcome.PASSED_THROUGH, System.nanoTime() - startNanos);
+                return RequestToBeSentAction.continueWith(request);
+            }
+        }
+
+        // Remember the substituted variables that have a failure signature so the response can be checked
+        if (!refresh && !totals.guardedVariables.isEmpty())
+            inFlightRequests.put(new InFlightRequests.InFlightRequest(requestToBeSent.messageId(), context, false,
+                    totals.guardedVariables, System.currentTimeMillis(), 0));
 
-            // Continue with the modified request
-            return RequestToBeSentAction.continueWith(modifiedRequest);
+        substitutionEvent.end();
+        if (substitutionEvent.shouldCommit()) {
+            substitutionEvent.tool = toolType.toolName();
+            substitutionEvent.bytesIn = requestToBeSent.toByteArray().length();
+            substitutionEvent.bytesOut = modifiedRequest.toByteArray().length();
+            substitutionEvent.variablesReplaced = totals.replacements;
+            substitutionEvent.commit();
         }
-        // Continue with the original request
-        return RequestToBeSentAction.continueWith(requestToBeSent);
+
+        // Continue with the modified request
+        metrics.recordRequest(toolType, BurpVariablesMetrics.RequestOutcome.SUBSTITUTED, System.nanoTime() - startNanos);
+        return RequestToBeSentAction.continueWith(modifiedRequest);
     }
 
     /**
      * Handles HTTP responses after they are received by Burp.
-     * When auto-update variables is enabled, searches responses for regex matches
-     * and updates variable values with the first capture group.
+     * When auto-update variables is enabled, runs each variable's extractor against the response
+     * and updates the variable value with the result. Regex extractors use the first capture group
+     * and run within the extractor guard's time budget; JSONPath and XPath extractors stream the body.
      *
      * @param responseReceived  HTTP response before it is received by Burp.
      * @return  The unmodified HTTP response.
      */
     @Override
     public ResponseReceivedAction handleHttpResponseReceived(HttpResponseReceived responseReceived) {
-        // Check if auto-update variables feature is enabled in settings
+        long startNanos = System.nanoTime();
+
+        // Look up the context the request was bound to; auto-updates are written there instead of the global variables
+        InFlightRequests.InFlightRequest inFlightRequest = inFlightRequests.take(responseReceived.messageId());
+        VariableContext context = inFlightRequest != null ? inFlightRequest.context() : null;
+
+        // Check the response against the failure signatures of the token variables the request used
+        if (inFlightRequest != null) {
+            for (String variableName : inFlightRequest.guardedVariables())
+                tokenRefresher.reportResponse(variableName, responseReceived, inFlightRequest.sentMillis());
+        }
+
+        // Check if auto-update variables feature is enabled in settings; token refresh responses never auto-update
         Boolean variableAutoUpdateEnabled = toolsEnabledMap.get("variableAutoUpdate");
-        if (variableAutoUpdateEnabled != null && variableAutoUpdateEnabled) {
-            // Convert response to string for regex matching (includes headers and body)
-            String responseAsString = responseReceived.toString();
+        boolean refresh = inFlightRequest != null && inFlightRequest.refresh();
+        if (variableAutoUpdateEnabled != null && variableAutoUpdateEnabled && !refresh) {
+            // Order the updates by the send order of the request; unstamped requests are ordered by arrival instead
+            long sendSequence = inFlightRequest != null ? inFlightRequest.sendSequence() : 0;
+            VariableView view = variableStore.snapshot().view(responseReceived.initiatingRequest().httpService());
+            autoUpdate(view, context, responseReceived.messageId(), sendSequence, responseReceived.toolSource().toolType(), () -> messageText(responseReceived), responseReceived::body);
+        }
+        metrics.recordResponse(responseReceived.toolSource().toolType(), System.nanoTime() - startNanos);
+
+        // Always return the response unmodified; this handler only extracts data
+        return ResponseReceivedAction.continueWith(responseReceived);
+    }
 
-            // Iterate through all variables to check for regex matches
-            for (HashMap.Entry<String, VariableData> entry : variablesMap.entrySet()) {
-                String regex = entry.getValue().regex();
+    /**
+     * Replaces the variable references in a message that is not an HTTP request, such as a
+     * WebSocket message, using the same engine and statistics as requests.
+     *
+     * @param message   The message text.
+     * @param toolType  The tool that sent the message.
+     * @param service   The service the message is sent to, used for host-scoped values and sticky pools.
+     * @return The message with references replaced, or the same instance if nothing was replaced.
+     */
+    String substituteMessage(String message, ToolType toolType, HttpService service) {
+        String host = service != null ? service.host() : null;
+        return replaceVariables(message, -1, toolType, host, variableStore.snapshot().view(service), null).request();
+    }
 
-                // Skip variables without a regex pattern defined
-                if (regex == null || regex.isEmpty()) {
+    /**
+     * Runs each variable's extractor against a response or message and updates the variable value
+     * with the result. Regex extractors use the first capture group and run within the extractor
+     * guard's time budget; JSONPath and XPath extractors stream the body.
+     * Each value is written only if no message with a newer sequence has already updated the
+     * variable; stale values are discarded and counted in the metrics.
+     * Extraction rules then run once each and update all the variables bound to their named groups
+     * in a single store version.
+     *
+     * @param view          The view of the global variables for the message's service.
+     * @param context       The context auto-updates are written to, or null to update the global variables.
+     * @param messageId     The Burp message id of the response, or -1 for WebSocket messages.
+     * @param sequence      The send order of the request the response belongs to, or 0 to order the
+     *                      updates by the time they are applied.
+     * @param toolType      The tool that received the message, recorded by the flight recorder.
+     * @param text          Supplies the message as text for regex extractors.
+     * @param bodySupplier  Supplies the body bytes for JSONPath and XPath extractors.
+     */
+    void autoUpdate(VariableView view, VariableContext context, int messageId, long sequence, ToolType toolType, Supplier<CharSequence> text, Supplier<ByteArray> bodySupplier) {
+        // Message text for regex matching; only built if a regex extractor needs it
+        CharSequence responseAsString = null;
+        long updateSequence = sequence > 0 ? sequence : updateSequencer.nextSequence();
+
+        // Iterate through the variables as seen by the message's service to check for extractor matches
+        for (Map.Entry<String, VariableData> entry : view.variables().entrySet()) {
+            VariableData data = entry.getValue();
+            String regex = data.regex();
+
+            // Skip variables without an extractor defined, and pooled variables whose single value is not substituted
+            if (regex == null || regex.isEmpty() || data.pool() != null) {
+                continue;
+            }
+
+            // Skip host-scoped entries; they are updated through their base name when their host matches
+            if (HostIndex.isScopedKey(entry.getKey())) {
+                continue;
+            }
+
+            String variableName = entry.getKey();
+            String capturedValue;
+            long regionScanned;
+            ExtractionEvent extractionEvent = new ExtractionEvent();
+            if (data.extractorType() == ExtractorType.REGEX) {
+                // Skip invalid regex patterns, patterns without capture groups and disabled extractors
+                Pattern pattern = extractorGuard.compile(regex);
+                if (pattern == null || extractorGuard.isDisabled(variableName, regex)) {
                     continue;
                 }
+                if (responseAsString == null) {
+                    responseAsString = text.get();
+                }
 
-                // Skip invalid regex patterns or patterns without capture groups
-                if (!isValidRegexWithCaptureGroup(regex)) {
+                // Execute the regex against the response within the time budget, timing it for the flight recorder
+                extractionEvent.begin();
+                capturedValue = extractorGuard.extract(variableName, pattern, responseAsString);
+                extractionEvent.end();
+                regionScanned = responseAsString.length();
+            } else {
+                // Skip invalid JSONPath or XPath expressions
+                StructuredExtractor extractor = extractorGuard.compileStructured(data.extractorType(), regex);
+                if (extractor == null) {
                     continue;
                 }
 
-                try {
-                    // Compile and execute the regex against the response
-                    Pattern pattern = Pattern.compile(regex);
-                    Matcher matcher = pattern.matcher(responseAsString);
-
-                    // Check if a match was found with at least one capture group
-                    if (matcher.find() && matcher.groupCount() > 0) {
-                        // Extract the first capture group value
-                        String capturedValue = matcher.group(1);
-                        if (capturedValue != null) {
-                            // Update the variable's value in the map while preserving the regex
-                            String variableName = entry.getKey();
-                            variablesMap.put(variableName, new VariableData(capturedValue, regex));
-                            // Notify the UI tab to refresh the table display
-                            variablesTab.updateVariableInTable(variableName, capturedValue);
-                            burpLogging.logToOutput("Auto-updated variable '" + variableName + "' to: " + capturedValue);
-                        }
-                    }
-                } catch (PatternSyntaxException e) {
-                    // Log error for invalid regex (should not occur due to prior validation)
-                    burpLogging.logToError("Invalid regex for variable '" + entry.getKey() + "': " + e.getMessage());
+                // Stream the raw body bytes through the structured extractor, timing it for the flight recorder
+                ByteArray body = bodySupplier.get();
+                extractionEvent.begin();
+                capturedValue = extractor.extract(body);
+                extractionEvent.end();
+                regionScanned = body.length();
+            }
+            if (extractionEvent.shouldCommit()) {
+                extractionEvent.variable = variableName;
+                extractionEvent.tool = toolType.toolName();
+                extractionEvent.regionScanned = regionScanned;
+                extractionEvent.matched = capturedValue != null;
+                extractionEvent.commit();
+            }
+
+            // Check if the extractor produced a value
+            if (capturedValue != null && context != null) {
+                // Update the variable's value in the request's context only, unless a newer response already did
+                String sequenceKey = UpdateSequencer.contextKey(context, variableName);
+                if (!updateSequencer.claim(sequenceKey, updateSequence)
+                        || !context.put(variableName, data.withValue(capturedValue), view, () -> updateSequencer.isLatest(sequenceKey, updateSequence))) {
+                    rejectStaleUpdate(variableName + "' in context '" + context.name(), messageId);
+                    metrics.recordExtraction(true);
+                    continue;
                 }
+                auditLog.record(AuditLog.Kind.EXTRACTION, messageId, toolType.toolName(), variableName, capturedValue,
+                        "extractor:" + data.extractorType() + " -> context:" + context.name());
+                StoreUpdateEvent.emit(variableName, "auto-update:" + context.name(), capturedValue);
+                statistics.recordAutoUpdate(variableName);
+                burpLogging.logToOutput("Auto-updated variable '" + variableName + "' in context '" + context.name() + "' to: " + capturedValue);
+            } else if (capturedValue != null) {
+                // Update the value in the store while preserving the extractor, writing host-scoped values to their own entry
+                // The value is only published while no newer response has claimed the variable
+                String storeKey = view.storeKey(variableName);
+                if (!updateSequencer.claim(storeKey, updateSequence)
+                        || !variableStore.putClaimed(storeKey, capturedValue, () -> updateSequencer.isLatest(storeKey, updateSequence))) {
+                    rejectStaleUpdate(storeKey, messageId);
+                    metrics.recordExtraction(true);
+                    continue;
+                }
+                auditLog.record(AuditLog.Kind.EXTRACTION, messageId, toolType.toolName(), storeKey, capturedValue,
+                        "extractor:" + data.extractorType());
+                StoreUpdateEvent.emit(storeKey, "auto-update", capturedValue);
+                statistics.recordAutoUpdate(storeKey);
+                // Notify the UI tab to refresh the table display
+                variablesTab.updateVariableInTable(storeKey, capturedValue);
+                burpLogging.logToOutput("Auto-updated variable '" + storeKey + "' to: " + capturedValue);
+            } else if (data.extractorType() == ExtractorType.REGEX && extractorGuard.isDisabled(variableName, regex)) {
+                // The extractor was disabled by this overrun; show the warning in the table
+                variablesTab.refreshExtractorWarnings();
             }
+            metrics.recordExtraction(capturedValue != null);
+        }
+
+        // Run the extraction rules; each scans the message once for all of its bound variables
+        for (Map.Entry<String, ExtractionRule> ruleEntry : extractionRules.rules().entrySet()) {
+            String ruleName = ruleEntry.getKey();
+            ExtractionRule rule = ruleEntry.getValue();
+
+            // Skip invalid regex patterns and disabled rules
+            Pattern pattern = extractorGuard.compile(rule.regex());
+            if (pattern == null || extractorGuard.isRuleDisabled(ruleName, rule.regex())) {
+                continue;
+            }
+            if (responseAsString == null) {
+                responseAsString = text.get();
+            }
+
+            // Execute the regex against the message within the time budget, timing it for the flight recorder
+            ExtractionEvent extractionEvent = new ExtractionEvent();
+            extractionEvent.begin();
+            Map<String, String> groupValues = extractorGuard.extractGroups(ruleName, pattern, responseAsString, rule.bindings().keySet());
+            extractionEvent.end();
+            boolean matched = groupValues != null && !groupValues.isEmpty();
+            if (extractionEvent.shouldCommit()) {
+                extractionEvent.variable = "rule:" + ruleName;
+                extractionEvent.tool = toolType.toolName();
+                extractionEvent.regionScanned = responseAsString.length();
+                extractionEvent.matched = matched;
+                extractionEvent.commit();
+            }
+            if (matched) {
+                applyExtractionRule(ruleName, rule, groupValues, view, context, messageId, updateSequence, toolType);
+            } else if (extractorGuard.isRuleDisabled(ruleName, rule.regex())) {
+                burpLogging.raiseErrorEvent("Extraction rule '" + ruleName + "' was disabled because it repeatedly exceeded the time budget.");
+            }
+            metrics.recordExtraction(matched);
         }
-        // Always return the response unmodified; this handler only extracts data
-        return ResponseReceivedAction.continueWith(responseReceived);
     }
 
     /**
-     * Checks if a regex pattern is valid and contains at least one capture group.
+     * Writes the values of one extraction rule match to the bound variables in a single store or
+     * context version. Bound variables that do not exist, are pooled or host-scoped, or have an
+     * extractor of their own are skipped. Each variable is claimed for the message's sequence
+     * first, so values a newer message already wrote are left alone. The new values are applied to
+     * the variables as they are inside the update, so concurrent edits to their regex, pool or
+     * lifetime are kept, and variables deleted in the meantime are not brought back.
      *
-     * @param regex The regex pattern to validate.
-     * @return True if the regex is valid and has at least one capture group, false otherwise.
+     * @param ruleName      The rule name.
+     * @param rule          The rule.
+     * @param groupValues   The values of the matched named groups, keyed by group name.
+     * @param view          The view of the global variables for the message's service.
+     * @param context       The context auto-updates are written to, or null to update the global variables.
+     * @param messageId     The Burp message id of the response, or -1 for WebSocket messages.
+     * @param sequence      The sequence the updates are ordered by.
+     * @param toolType      The tool that received the message.
      */
-    private boolean isValidRegexWithCaptureGroup(String regex) {
-        try {
-            // Attempt to compile the regex; throws PatternSyntaxException if invalid
-            Pattern pattern = Pattern.compile(regex);
-            // Check if the pattern has at least one capture group using an empty string matcher
-            // groupCount() returns the number of capturing groups, excluding group 0 (the entire match)
-            return pattern.matcher("").groupCount() > 0;
-        } catch (PatternSyntaxException e) {
-            // Invalid regex syntax
-            return false;
+    private void applyExtractionRule(String ruleName, ExtractionRule rule, Map<String, String> groupValues, VariableView view,
+                                     VariableContext context, int messageId, long sequence, ToolType toolType) {
+        // Claim the bound variables, keyed by the key they are written under
+        Map<String, String> claimed = new LinkedHashMap<>();
+        Map<String, String> sequenceKeys = new HashMap<>();
+        // A context without its own value of a variable starts from the global one
+        Map<String, VariableData> contextDefaults = new HashMap<>();
+        for (Map.Entry<String, String> binding : rule.bindings().entrySet()) {
+            String value = groupValues.get(binding.getKey());
+            String variableName = binding.getValue();
+            VariableData data = view.variables().get(variableName);
+            if (value == null || data == null || data.pool() != null || HostIndex.isScopedKey(variableName)
+                    || (data.regex() != null && !data.regex().isEmpty())) {
+                continue;
+            }
+            String key = context != null ? variableName : view.storeKey(variableName);
+            String sequenceKey = context != null ? UpdateSequencer.contextKey(context, variableName) : key;
+            if (!updateSequencer.claim(sequenceKey, sequence)) {
+                rejectStaleUpdate(context != null ? key + "' in context '" + context.name() : key, messageId);
+                continue;
+            }
+            claimed.put(key, value);
+            sequenceKeys.put(key, sequenceKey);
+            if (context != null)
+                contextDefaults.put(key, data);
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        // Publish every claimed value that is still the newest in one version
+        List<String> written = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        Consumer<Map<String, VariableData>> mutation = variables -> {
+            written.clear();
+            stale.clear();
+            claimed.forEach((key, value) -> {
+                if (!updateSequencer.isLatest(sequenceKeys.get(key), sequence)) {
+                    stale.add(key);
+                    return;
+                }
+                VariableData current = variables.get(key);
+                if (current == null)
+                    current = contextDefaults.get(key);
+                if (current != null) {
+                    variables.put(key, current.withValue(value));
+                    written.add(key);
+                }
+            });
+        };
+        if (context != null)
+            context.update(mutation, view);
+        else
+            variableStore.updateClaimed(mutation);
+
+        String source = "rule:" + ruleName + (context != null ? " -> context:" + context.name() : "");
+        for (String key : stale)
+            rejectStaleUpdate(context != null ? key + "' in context '" + context.name() : key, messageId);
+        for (String key : written) {
+            String variableDescription = context != null ? key + "' in context '" + context.name() : key;
+            String value = claimed.get(key);
+            auditLog.record(AuditLog.Kind.EXTRACTION, messageId, toolType.toolName(), key, value, source);
+            StoreUpdateEvent.emit(key, context != null ? "auto-update:" + context.name() : "auto-update", value);
+            statistics.recordAutoUpdate(key);
+            // Only global values are shown in the table
+            if (context == null)
+                variablesTab.updateVariableInTable(key, value);
+            burpLogging.logToOutput("Auto-updated variable '" + variableDescription + "' to: " + value + " (rule '" + ruleName + "')");
         }
     }
 
+    /**
+     * Returns the text of a response for regex extractors. Responses of at least
+     * {@link ParallelScanner#PARALLEL_THRESHOLD} bytes are read through a view over their bytes
+     * instead of being copied into a string, and are searched in parallel chunks.
+     *
+     * @param responseReceived The response.
+     * @return The response text.
+     */
+    private static CharSequence messageText(HttpResponseReceived responseReceived) {
+        ByteArray bytes = responseReceived.toByteArray();
+        return bytes.length() >= ParallelScanner.PARALLEL_THRESHOLD ? new ByteArrayCharSequence(bytes) : responseReceived.toString();
+    }
+
+    /**
+     * Records an auto-update that was discarded because a newer response already updated the variable.
+     *
+     * @param variableDescription   The variable, as shown in the log.
+     * @param messageId             The Burp message id of the stale response, or -1 for WebSocket messages.
+     */
+    private void rejectStaleUpdate(String variableDescription, int messageId) {
+        metrics.recordStaleUpdate();
+        burpLogging.logToOutput("Ignored a stale auto-update of variable '" + variableDescription + "'"
+                + (messageId >= 0 ? " from response " + messageId : "") + "; a newer response already updated it.");
+    }
+
     /**
      * Checks if the HTTP request contains variable indicator characters.
      *
@@ -174,21 +591,192 @@ public class BurpVariablesHTTPHandler implements HttpHandler{
 
     /**
      * Replaces each instance of variables found in the HTTP request.
-     * Variables are referenced in the format ((key)).
+     * Variables are referenced in the format ((key)). The request is scanned once and each
+     * reference is resolved with at most two map lookups, the context and then the service's view.
+     * References that do not name a variable are passed to the registered generators, and
+     * references that no generator accepts are left untouched. A reference may end with a chain of
+     * encoding modifiers, as in ((name|urlencode|b64)); encoded static values are cached until the variable changes.
+     * Variables whose TTL has run out are treated as unresolved and their references are left untouched.
      *
      * @param passedRequestAsString HTTP request converted to a string.
-     * @return  Modified HTTP request with variables replaced.
+     * @param messageId             The Burp message id of the request, recorded in the audit log, or -1 if there is none.
+     * @param toolType              The tool that sent the request, recorded in the usage statistics.
+     * @param host                  The target host, used to pick values from sticky pools; may be null.
+     * @param view                  The view of the global variables for the target service.
+     * @param context               The context the request is bound to, or null.
+     * @return  Modified HTTP request with variables replaced, the number of references replaced and
+     *          the substituted variables that have a token refresh failure signature.
      */
-    private String replaceVariables(String passedRequestAsString){
-        // Iterate through the variables map
-        for (HashMap.Entry<String, VariableData> entry : variablesMap.entrySet()) {
-            // Don't replace if the key is empty
-            if(!entry.getKey().isEmpty()) {
-                // Replace the variable references in the HTTP request
-                // Pattern.quote is used to escape special characters in the key string
-                passedRequestAsString = passedRequestAsString.replaceAll(Pattern.quote("((" + entry.getKey() + "))"), entry.getValue().value());
+    private Substitution replaceVariables(String passedRequestAsString, int messageId, ToolType toolType, String host, VariableView view, VariableContext context){
+        StringBuilder sb = new StringBuilder(passedRequestAsString.length());
+        int replacements = 0;
+        int copiedUpTo = 0;
+        // Substituted variables whose responses are checked for a token refresh failure signature
+        List<String> guardedVariables = List.of();
+        long nowMillis = System.currentTimeMillis();
+        // Variable resolver handed to generators, created on the first generator reference
+        Function<String, String> variables = null;
+        // Flattened values for this request, looked up on the first static reference
+        ResolvedVariables resolved = null;
+        int start = passedRequestAsString.indexOf("((");
+        while (start >= 0) {
+            int end = passedRequestAsString.indexOf("))", start + 2);
+            if (end < 0) break;
+
+            // Look up the name between the delimiters
+            String reference = passedRequestAsString.substring(start + 2, end);
+            String variableName = reference;
+            EncodingModifier[] modifiers = null;
+            VariableData data = lookup(reference, view, context);
+            int pipe = data == null ? reference.indexOf('|') : -1;
+            if (pipe > 0) {
+                // Split off the encoding modifiers; an unknown modifier leaves the whole reference as the name
+                modifiers = EncodingModifier.parseChain(reference.substring(pipe + 1));
+                if (modifiers != null) {
+                    variableName = reference.substring(0, pipe);
+                    data = lookup(variableName, view, context);
+                }
+            }
+            String replacement;
+            String source = null;
+            boolean expired = data != null && data.isExpired(nowMillis);
+            if (!expired && data != null && data.pool() == null && variableExpiry.hasExpiringVariables()) {
+                // A value flattened from an expired variable still holds the expired value, so it is expired as well
+                if (resolved == null) resolved = context != null ? context.resolved(view) : view.resolved();
+                expired = dependsOnExpired(resolved.dependenciesOf(variableName), view, context, nowMillis);
+            }
+            if (expired) {
+                // Expired values are not substituted, and the name is not offered to the generators either
+                replacement = null;
+            } else if (data != null) {
+                statistics.recordSubstitution(view.storeKey(variableName), toolType);
+                if (tokenRefresher.hasFailureSignature(variableName) && !guardedVariables.contains(variableName)) {
+                    if (guardedVariables.isEmpty()) guardedVariables = new ArrayList<>(1);
+                    guardedVariables.add(variableName);
+                }
+                // Record where the value came from: the request's context, a host-scoped entry or the global variables
+                if (context != null && context.get(variableName) != null) source = "context:" + context.name();
+                else if (!view.storeKey(variableName).equals(variableName)) source = "host:" + view.storeKey(variableName);
+                else source = "global";
+                if (data.pool() != null) {
+                    source += " pool";
+                    replacement = data.pool().select(host);
+                    if (modifiers != null) replacement = EncodingModifier.applyAll(modifiers, replacement);
+                } else {
+                    // Static values come pre-flattened from the snapshot, so nested references need no expansion here
+                    if (resolved == null) resolved = context != null ? context.resolved(view) : view.resolved();
+                    replacement = resolved.value(variableName, data);
+                    if (modifiers != null) replacement = encodedValues.encode(reference, replacement, modifiers);
+                }
+            } else {
+                // Not a defined variable; generate a value if the reference names a generator
+                if (variables == null) variables = name -> {
+                    VariableData referenced = lookup(name, view, context);
+                    if (referenced == null) return null;
+                    if (referenced.pool() != null) return referenced.pool().select(host);
+                    return (context != null ? context.resolved(view) : view.resolved()).value(name, referenced);
+                };
+                replacement = generators.generate(variableName, variables);
+                source = "generator";
+                if (replacement != null && modifiers != null)
+                    replacement = EncodingModifier.applyAll(modifiers, replacement);
+            }
+            if (replacement != null) {
+                auditLog.record(AuditLog.Kind.SUBSTITUTION, messageId, toolType.toolName(), variableName, replacement, source);
+                sb.append(passedRequestAsString, copiedUpTo, start).append(replacement);
+                copiedUpTo = end + 2;
+                replacements++;
+                start = passedRequestAsString.indexOf("((", copiedUpTo);
+            } else {
+                // Not a known variable or generator; retry from the next character to handle runs such as "((("
+                start = passedRequestAsString.indexOf("((", start + 1);
+            }
+        }
+        if (replacements == 0)
+            return new Substitution(passedRequestAsString, 0, guardedVariables);
+        sb.append(passedRequestAsString, copiedUpTo, passedRequestAsString.length());
+        return new Substitution(sb.toString(), replacements, guardedVariables);
+    }
+
+    /**
+     * Collects the variable names referenced by a text, splitting off encoding modifiers the same way
+     * as {@link #replaceVariables}. A reference whose text is also a valid name with modifiers, such as
+     * ((a|b64)), yields both the whole text and the name before the modifiers, since it depends on the
+     * variables which of the two it refers to.
+     *
+     * @param text The text before substitution.
+     * @return The referenced names.
+     */
+    static Set<String> referencedNames(String text) {
+        Set<String> names = new HashSet<>();
+        int start = text.indexOf("((");
+        while (start >= 0) {
+            int end = text.indexOf("))", start + 2);
+            if (end < 0) break;
+            String reference = text.substring(start + 2, end);
+            names.add(reference);
+            int pipe = reference.indexOf('|');
+            if (pipe > 0 && EncodingModifier.parseChain(reference.substring(pipe + 1)) != null)
+                names.add(reference.substring(0, pipe));
+            // Continue inside the reference, as a failed lookup does, so that ((((name)) yields name as well
+            start = text.indexOf("((", start + 1);
+        }
+        return names;
+    }
+
+    /**
+     * Checks whether any of the variables a flattened value was built from has expired.
+     *
+     * @param dependencies  The names of the variables the value depends on.
+     * @param view          The view of the global variables for the target service.
+     * @param context       The context the request is bound to, or null.
+     * @param nowMillis     The current time in epoch millis.
+     * @return True if a dependency has expired, false otherwise.
+     */
+    private static boolean dependsOnExpired(Set<String> dependencies, VariableView view, VariableContext context, long nowMillis) {
+        for (String dependency : dependencies) {
+            VariableData data = lookup(dependency, view, context);
+            if (data != null && data.isExpired(nowMillis)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Looks up a variable in the request's context first and then in the service's view.
+     *
+     * @param variableName  The variable name.
+     * @param view          The view of the global variables for the target service.
+     * @param context       The context the request is bound to, or null.
+     * @return The VariableData, or null if the variable is not defined.
+     */
+    private static VariableData lookup(String variableName, VariableView view, VariableContext context) {
+        VariableData data = context != null ? context.get(variableName) : null;
+        return data != null ? data : view.variables().get(variableName);
+    }
+
+    /**
+     * Result of a substitution pass over a request.
+     *
+     * @param request       The request with variable references replaced.
+     * @param replacements      The number of references that were replaced.
+     * @param guardedVariables  The substituted variables that have a token refresh failure signature.
+     */
+    private record Substitution(String request, int replacements, List<String> guardedVariables) {
+    }
+
+    /**
+     * Totals of the substitution passes over the parts of one request.
+     */
+    private static final class SubstitutionTotals {
+        int replacements;
+        List<String> guardedVariables = List.of();
+
+        void add(Substitution substitution) {
+            replacements += substitution.replacements();
+            for (String variableName : substitution.guardedVariables()) {
+                if (guardedVariables.isEmpty()) guardedVariables = new ArrayList<>(1);
+                if (!guardedVariables.contains(variableName)) guardedVariables.add(variableName);
             }
         }
-        return passedRequestAsString;
     }
-}
\ No newline at end of file
+}
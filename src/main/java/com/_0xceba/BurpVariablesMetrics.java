@@ -0,0 +1,297 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ToolType;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free runtime metrics for the HTTP handler.
+ * Counters are backed by LongAdder so concurrent HTTP threads never contend on a single
+ * memory location, and latencies are recorded into power-of-two bucketed histograms per tool.
+ */
+public class BurpVariablesMetrics {
+    private final LongAdder requestsSkipped = new LongAdder();
+    private final LongAdder requestsPassedThrough = new LongAdder();
+    private final LongAdder requestsSubstituted = new LongAdder();
+    private final LongAdder extractionHits = new LongAdder();
+    private final LongAdder extractionMisses = new LongAdder();
+    private final LongAdder staleUpdatesRejected = new LongAdder();
+    private final Map<ToolType, LatencyHistogram> requestLatencies = new EnumMap<>(ToolType.class);
+    private final Map<ToolType, LatencyHistogram> responseLatencies = new EnumMap<>(ToolType.class);
+    private volatile long resetTimeMillis = System.currentTimeMillis();
+
+    /**
+     * Outcome of a request passing through the HTTP handler.
+     */
+    public enum RequestOutcome {
+        /** The tool is disabled or the request is out of scope. */
+        SKIPPED,
+        /** The tool is enabled but the request contains no variable references. */
+        PASSED_THROUGH,
+        /** Variable references were replaced in the request. */
+        SUBSTITUTED
+    }
+
+    /**
+     * Constructs a metrics instance with an empty histogram for every Burp tool.
+     * The histogram maps are fully populated here and never structurally modified afterwards,
+     * so they can be read from HTTP threads without synchronization.
+     */
+    public BurpVariablesMetrics() {
+        for (ToolType toolType : ToolType.values()) {
+            requestLatencies.put(toolType, new LatencyHistogram());
+            responseLatencies.put(toolType, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the outcome and handler latency of a request.
+     *
+     * @param toolType      The tool that issued the request.
+     * @param outcome       What the handler did with the request.
+     * @param elapsedNanos  Time spent in the request handler, in nanoseconds.
+     */
+    public void recordRequest(ToolType toolType, RequestOutcome outcome, long elapsedNanos) {
+        switch (outcome) {
+            case SKIPPED -> requestsSkipped.increment();
+            case PASSED_THROUGH -> requestsPassedThrough.increment();
+            case SUBSTITUTED -> requestsSubstituted.increment();
+        }
+        requestLatencies.get(toolType).record(elapsedNanos);
+    }
+
+    /**
+     * Records the handler latency of a response.
+     *
+     * @param toolType      The tool that issued the initiating request.
+     * @param elapsedNanos  Time spent in the response handler, in nanoseconds.
+     */
+    public void recordResponse(ToolType toolType, long elapsedNanos) {
+        responseLatencies.get(toolType).record(elapsedNanos);
+    }
+
+    /**
+     * Records the result of running a single extractor against a response.
+     *
+     * @param hit True if the extractor produced a value, false otherwise.
+     */
+    public void recordExtraction(boolean hit) {
+        if (hit) {
+            extractionHits.increment();
+        } else {
+            extractionMisses.increment();
+        }
+    }
+
+    /**
+     * Records an auto-update that was discarded because a response to a newer request already
+     * updated the variable.
+     */
+    public void recordStaleUpdate() {
+        staleUpdatesRejected.increment();
+    }
+
+    /**
+     * Resets all counters and histograms.
+     * Concurrent recordings may land on either side of the reset.
+     */
+    public void reset() {
+        requestsSkipped.reset();
+        requestsPassedThrough.reset();
+        requestsSubstituted.reset();
+        extractionHits.reset();
+        extractionMisses.reset();
+        staleUpdatesRejected.reset();
+        for (LatencyHistogram histogram : requestLatencies.values()) histogram.reset();
+        for (LatencyHistogram histogram : responseLatencies.values()) histogram.reset();
+        resetTimeMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Builds a human-readable summary of the current metrics for display in the UI.
+     *
+     * @return A multi-line summary string.
+     */
+    public String toSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Since ").append(Instant.ofEpochMilli(resetTimeMillis)).append('\n');
+        sb.append("Requests substituted: ").append(requestsSubstituted.sum())
+                .append(", passed through: ").append(requestsPassedThrough.sum())
+                .append(", skipped: ").append(requestsSkipped.sum()).append('\n');
+        sb.append("Extraction hits: ").append(extractionHits.sum())
+                .append(", misses: ").append(extractionMisses.sum())
+                .append(", stale updates rejected: ").append(staleUpdatesRejected.sum()).append('\n');
+        appendSummary(sb, "Request", requestLatencies);
+        appendSummary(sb, "Response", responseLatencies);
+        return sb.toString();
+    }
+
+    /**
+     * Serializes a snapshot of the current metrics to a JSON document.
+     *
+     * @return The JSON snapshot.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"since\": \"").append(Instant.ofEpochMilli(resetTimeMillis)).append("\",\n");
+        sb.append("  \"snapshot\": \"").append(Instant.now()).append("\",\n");
+        sb.append("  \"requests\": {\"substituted\": ").append(requestsSubstituted.sum())
+                .append(", \"passedThrough\": ").append(requestsPassedThrough.sum())
+                .append(", \"skipped\": ").append(requestsSkipped.sum()).append("},\n");
+        sb.append("  \"extractions\": {\"hits\": ").append(extractionHits.sum())
+                .append(", \"misses\": ").append(extractionMisses.sum())
+                .append(", \"staleUpdatesRejected\": ").append(staleUpdatesRejected.sum()).append("},\n");
+        sb.append("  \"requestLatency\": ");
+        appendJson(sb, requestLatencies);
+        sb.append(",\n  \"responseLatency\": ");
+        appendJson(sb, responseLatencies);
+        sb.append("\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Appends one summary line per tool that has recorded at least one sample.
+     *
+     * @param sb          The builder to append to.
+     * @param label       The label prefix for each line.
+     * @param histograms  The histograms to summarize.
+     */
+    private static void appendSummary(StringBuilder sb, String label, Map<ToolType, LatencyHistogram> histograms) {
+        for (Map.Entry<ToolType, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.count();
+            if (count == 0) continue;
+            sb.append(label).append(' ').append(entry.getKey().toolName())
+                    .append(": n=").append(count)
+                    .append(" mean=").append(histogram.totalNanos() / count / 1000).append("us")
+                    .append(" p50<").append(histogram.percentileUpperBound(0.50) / 1000).append("us")
+                    .append(" p99<").append(histogram.percentileUpperBound(0.99) / 1000).append("us")
+                    .append(" max=").append(histogram.maxNanos() / 1000).append("us")
+                    .append('\n');
+        }
+    }
+
+    /**
+     * Appends a JSON object keyed by tool name containing each non-empty histogram.
+     *
+     * @param sb          The builder to append to.
+     * @param histograms  The histograms to serialize.
+     */
+    private static void appendJson(StringBuilder sb, Map<ToolType, LatencyHistogram> histograms) {
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<ToolType, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.count();
+            if (count == 0) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("\n    \"").append(entry.getKey().toolName()).append("\": {")
+                    .append("\"count\": ").append(count)
+                    .append(", \"totalNanos\": ").append(histogram.totalNanos())
+                    .append(", \"maxNanos\": ").append(histogram.maxNanos())
+                    .append(", \"buckets\": {");
+            // Only non-empty buckets are written, keyed by their exclusive upper bound in nanoseconds
+            boolean firstBucket = true;
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+                long bucketCount = histogram.bucketCount(i);
+                if (bucketCount == 0) continue;
+                if (!firstBucket) sb.append(", ");
+                firstBucket = false;
+                sb.append("\"").append(LatencyHistogram.bucketUpperBound(i)).append("\": ").append(bucketCount);
+            }
+            sb.append("}}");
+        }
+        sb.append(first ? "}" : "\n  }");
+    }
+
+    /**
+     * Histogram of latencies with one bucket per power of two nanoseconds.
+     * Bucket i counts samples in the range [2^(i-1), 2^i); bucket 0 counts zero-length samples.
+     */
+    static final class LatencyHistogram {
+        static final int BUCKET_COUNT = 64;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        /**
+         * Records a single latency sample.
+         *
+         * @param nanos The sample in nanoseconds.
+         */
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /**
+         * Resets all buckets and aggregates to zero.
+         */
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) buckets.set(i, 0);
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        long maxNanos() {
+            return maxNanos.get();
+        }
+
+        long bucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * Returns the exclusive upper bound of a bucket in nanoseconds.
+         *
+         * @param bucket The bucket index.
+         * @return The upper bound, saturated at Long.MAX_VALUE for the last bucket.
+         */
+        static long bucketUpperBound(int bucket) {
+            return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        /**
+         * Estimates a percentile as the upper bound of the bucket containing it.
+         *
+         * @param percentile The percentile in the range (0, 1].
+         * @return The bucket upper bound in nanoseconds, or 0 when empty.
+         */
+        long percentileUpperBound(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+            long threshold = (long) Math.ceil(total * percentile);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                cumulative += snapshot[i];
+                if (cumulative >= threshold) return bucketUpperBound(i);
+            }
+            return bucketUpperBound(BUCKET_COUNT - 1);
+        }
+    }
+}
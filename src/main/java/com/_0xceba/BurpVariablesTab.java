@@ -21,7 +21,19 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Vector;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -39,19 +51,60 @@ public class BurpVariablesTab extends JPanel {
     private final Frame burpFrame;
     private final DefaultTableModel variablesTableModel;
     private final HashMap<String, Boolean> toolsEnabledMap;
-    private final HashMap<String, VariableData> variablesMap;
+    private final VariableStore variableStore;
     private final JTable variablesTable;
     private final Logging burpLogging;
     private final MontoyaApi montoyaApi;
+    private final BurpVariablesMetrics metrics;
+    private final VariableStatistics statistics;
+    private final ExtractorGuard extractorGuard;
+    private final TokenRefresher tokenRefresher;
+    private final VariableExpiry variableExpiry;
+    private final SharedVariableFile sharedVariableFile;
+    private final WatchedVariableFile watchedVariableFile;
+    private final SubstitutionScopes substitutionScopes;
+    private final AuditLog auditLog;
+    private final ExtractionRules extractionRules;
+    private final Timer usageStatisticsRefreshTimer;
+    // Snapshot version the table was last repainted for, so reference warnings follow store changes
+    private long lastRepaintedVersion = -1;
     private JDialog optionsDialog;
+    private JDialog auditLogDialog;
     private JLabel variableRegexLabel;
     private JPanel labelsPanel;
     private JPanel textFieldsPanel;
     private JTextField variableRegexField;
+    private JLabel variableExtractorTypeLabel;
+    private JComboBox<ExtractorType> variableExtractorTypeComboBox;
+    private JComboBox<String> environmentComboBox;
+    // Set while the environment combo box is repopulated so that its listener ignores the changes
+    private boolean updatingEnvironmentComboBox;
     private static final String COLUMN_NAME_VARIABLE_NAME = "Variable name";
     private static final String COLUMN_NAME_VARIABLE_UPDATE_REGEX = "Variable update regex";
     private static final String COLUMN_NAME_VARIABLE_VALUE = "Variable value";
+    private static final String COLUMN_NAME_EXTRACTOR_TYPE = "Extractor type";
+    private static final String COLUMN_NAME_SUBSTITUTIONS = "Substitutions";
+    private static final String COLUMN_NAME_LAST_USED = "Last used";
+    private static final String COLUMN_NAME_LAST_TOOL = "Last tool";
+    private static final String COLUMN_NAME_AUTO_UPDATES = "Auto-updates";
+    private static final String COLUMN_NAME_POOL_SIZE = "Pool size";
+    private static final String COLUMN_NAME_POOL_USAGE = "Pool usage";
+    private static final String COLUMN_NAME_EXPIRES_IN = "Expires in";
+    // Model index of the first usage statistics column; columns up to the pool columns are usage statistics
+    private static final int FIRST_USAGE_STATISTICS_COLUMN = 4;
+    // Model index of the first value pool column; the pool columns are the last columns and always visible
+    private static final int FIRST_POOL_COLUMN = 8;
+    private static final int POOL_COLUMN_COUNT = 2;
+    // Model index of the remaining lifetime column, which follows the pool columns and is always visible
+    private static final int EXPIRES_IN_COLUMN = FIRST_POOL_COLUMN + POOL_COLUMN_COUNT;
+    private static final int TRAILING_COLUMN_COUNT = POOL_COLUMN_COUNT + 1;
     private TableColumn variableAutoUpdateTableColumn;
+    private TableColumn variableExtractorTypeTableColumn;
+    private final List<TableColumn> usageStatisticsTableColumns = new ArrayList<>();
+
+    // Constant array holding the prune option labels and their corresponding ages in milliseconds
+    private static final String[] PRUNE_AGE_LABELS = {"1 hour", "1 day", "7 days", "30 days"};
+    private static final long[] PRUNE_AGE_MILLIS = {3_600_000L, 86_400_000L, 7 * 86_400_000L, 30 * 86_400_000L};
 
     // Constant 2D array holding enum class ToolType values and corresponding label values
     private static final String[][] MAP_TOOL_NAME_AND_TOOL_LABEL = {
@@ -77,18 +130,51 @@ public class BurpVariablesTab extends JPanel {
         }
     }
 
+    /**
+     * Checks if an extractor expression is valid for its extractor type.
+     *
+     * @param extractorType The kind of extractor expression.
+     * @param expression    The extractor expression to validate.
+     * @return True if the expression is valid, false otherwise.
+     */
+    private static boolean isValidExtractor(ExtractorType extractorType, String expression) {
+        if (extractorType == null || extractorType == ExtractorType.REGEX)
+            return isValidRegexWithCaptureGroup(expression);
+        return StructuredExtractor.isValid(extractorType, expression);
+    }
+
     /**
      * Constructs a BurpVariablesTab with the specified parameters.
      *
      * @param montoyaApi        The Montoya API interface.
      * @param burpLogging       The logging interface from the Montoya API.
-     * @param variablesMap      HashMap storing variable names and VariableData.
+     * @param variableStore     Store holding variable names and VariableData.
      * @param toolsEnabledMap   HashMap storing tool names and their enabled status.
+     * @param metrics           The metrics recorder displayed in the options dialog.
+     * @param statistics        The per-variable usage statistics displayed in the optional columns.
+     * @param extractorGuard    The guard whose time budget is configured in the options dialog.
+     * @param tokenRefresher    The token refresher whose recipes are listed in the options dialog.
+     * @param variableExpiry    The expiry tracker whose hold time is configured in the options dialog.
+     * @param sharedVariableFile The shared store file connected from the options dialog.
+     * @param watchedVariableFile The external variable file watched from the options dialog.
+     * @param substitutionScopes The per-tool substitution scopes configured in the options dialog.
+     * @param auditLog          The record of recent substitutions and extractions shown in the audit log viewer.
+     * @param extractionRules   The multi-variable extraction rules configured in the options dialog.
      */
-    public BurpVariablesTab(MontoyaApi montoyaApi, Logging burpLogging, HashMap<String, VariableData> variablesMap, HashMap<String, Boolean> toolsEnabledMap) {
+    public BurpVariablesTab(MontoyaApi montoyaApi, Logging burpLogging, VariableStore variableStore, HashMap<String, Boolean> toolsEnabledMap, BurpVariablesMetrics metrics, VariableStatistics statistics, ExtractorGuard extractorGuard, TokenRefresher tokenRefresher, VariableExpiry variableExpiry, SharedVariableFile sharedVariableFile, WatchedVariableFile watchedVariableFile, SubstitutionScopes substitutionScopes, AuditLog auditLog, ExtractionRules extractionRules) {
         this.burpLogging = burpLogging;
+        this.metrics = metrics;
+        this.statistics = statistics;
+        this.extractorGuard = extractorGuard;
+        this.tokenRefresher = tokenRefresher;
+        this.variableExpiry = variableExpiry;
+        this.sharedVariableFile = sharedVariableFile;
+        this.watchedVariableFile = watchedVariableFile;
+        this.substitutionScopes = substitutionScopes;
+        this.auditLog = auditLog;
+        this.extractionRules = extractionRules;
         this.montoyaApi = montoyaApi;
-        this.variablesMap = variablesMap;
+        this.variableStore = variableStore;
         this.burpFrame = montoyaApi.userInterface().swingUtils().suiteFrame();
         this.toolsEnabledMap = toolsEnabledMap;
 
@@ -98,30 +184,73 @@ public class BurpVariablesTab extends JPanel {
         // Set an empty border to serve as padding around the JPanel
         this.setBorder(new EmptyBorder(20, 40, 20, 40));
 
-        String[] columnNames = {COLUMN_NAME_VARIABLE_NAME, COLUMN_NAME_VARIABLE_VALUE, COLUMN_NAME_VARIABLE_UPDATE_REGEX};
+        String[] columnNames = {COLUMN_NAME_VARIABLE_NAME, COLUMN_NAME_VARIABLE_VALUE, COLUMN_NAME_VARIABLE_UPDATE_REGEX,
+                COLUMN_NAME_EXTRACTOR_TYPE, COLUMN_NAME_SUBSTITUTIONS, COLUMN_NAME_LAST_USED, COLUMN_NAME_LAST_TOOL, COLUMN_NAME_AUTO_UPDATES,
+                COLUMN_NAME_POOL_SIZE, COLUMN_NAME_POOL_USAGE, COLUMN_NAME_EXPIRES_IN};
+
+        // Create the table model with column names; usage statistics columns are read-only and sort numerically
+        DefaultTableModel tableModel = new DefaultTableModel(null, columnNames) {
+            @Override
+            public Class<?> getColumnClass(int columnIndex) {
+                String columnName = getColumnName(columnIndex);
+                if (COLUMN_NAME_SUBSTITUTIONS.equals(columnName)
+                        || COLUMN_NAME_LAST_USED.equals(columnName)
+                        || COLUMN_NAME_AUTO_UPDATES.equals(columnName))
+                    return Long.class;
+                if (COLUMN_NAME_POOL_SIZE.equals(columnName))
+                    return Integer.class;
+                if (COLUMN_NAME_EXTRACTOR_TYPE.equals(columnName))
+                    return ExtractorType.class;
+                return String.class;
+            }
 
-        // Create the table model with column names
-        DefaultTableModel tableModel = new DefaultTableModel(null, columnNames);
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return column < FIRST_USAGE_STATISTICS_COLUMN;
+            }
+        };
         this.variablesTableModel = tableModel;
 
         // Instantiate and configure the JTable
         JTable table = setupTable(tableModel);
         this.variablesTable = table;
 
-        // If auto-update is not enabled, hide the regex column from view (keep a reference to re-add it later)
+        // If auto-update is not enabled, hide the regex and extractor type columns from view (keep references to re-add them later)
         boolean variableAutoUpdateEnabled = toolsEnabledMap.getOrDefault("variableAutoUpdate", false);
         if (!variableAutoUpdateEnabled) {
             TableColumnModel cm = table.getColumnModel();
-            // store the third column and remove it from view
-            if (cm.getColumnCount() > 2) {
+            // store the third and fourth columns and remove them from view
+            if (cm.getColumnCount() > 3) {
                 TableColumn col = cm.getColumn(2);
                 this.variableAutoUpdateTableColumn = col;
+                TableColumn typeCol = cm.getColumn(3);
+                this.variableExtractorTypeTableColumn = typeCol;
                 cm.removeColumn(col);
+                cm.removeColumn(typeCol);
             }
         } else {
             this.variableAutoUpdateTableColumn = null;
+            this.variableExtractorTypeTableColumn = null;
         }
 
+        // If usage statistics columns are not enabled, hide them from view (keep references to re-add them later)
+        if (!toolsEnabledMap.getOrDefault("usageStatisticsColumns", false)) {
+            setUsageStatisticsColumnsVisible(false);
+        }
+
+        // Periodically copy the usage statistics, pool usage counts and remaining lifetimes into the table
+        this.usageStatisticsRefreshTimer = new Timer(1000, e -> {
+            refreshUsageStatistics();
+            refreshPoolColumns();
+            refreshExpiresInColumn();
+            long version = variableStore.snapshot().version();
+            if (version != lastRepaintedVersion) {
+                lastRepaintedVersion = version;
+                variablesTable.repaint();
+            }
+        });
+        this.usageStatisticsRefreshTimer.start();
+
         // Add table to a JScrollPane for scrolling
         JScrollPane scrollPane = new JScrollPane(table);
         this.add(scrollPane);
@@ -130,10 +259,12 @@ public class BurpVariablesTab extends JPanel {
         JPanel footerPanel = setupFooterPanel();
         this.add(footerPanel);
 
-        // If auto-update is not enabled, remove regex components from footer panels
+        // If auto-update is not enabled, remove regex and extractor type components from footer panels
         if (!variableAutoUpdateEnabled) {
             labelsPanel.remove(variableRegexLabel);
+            labelsPanel.remove(variableExtractorTypeLabel);
             textFieldsPanel.remove(variableRegexField);
+            textFieldsPanel.remove(variableExtractorTypeComboBox);
             labelsPanel.setLayout(new GridLayout(1, 2, 10, 0));
             textFieldsPanel.setLayout(new GridLayout(1, 2, 10, 0));
         }
@@ -161,7 +292,7 @@ public class BurpVariablesTab extends JPanel {
         // Allow sorting by column headers
         variablesTable.setAutoCreateRowSorter(true);
 
-        // Commit pending cell edits before sorting to ensure variablesMap stays in sync
+        // Commit pending cell edits before sorting to ensure the variable store stays in sync
         variablesTable.getTableHeader().addMouseListener(new java.awt.event.MouseAdapter() {
             @Override
             public void mousePressed(java.awt.event.MouseEvent e) {
@@ -187,7 +318,7 @@ public class BurpVariablesTab extends JPanel {
             private String oldKey;
 
             /**
-             * Stops cell editing and commits changes to the variablesMap HashMap.
+             * Stops cell editing and commits changes to the variable store.
              * This method is called when the user finishes editing a cell in the JTable.
              * It ensures that the changes are persisted and handles duplicate key prevention.
              *
@@ -198,7 +329,7 @@ public class BurpVariablesTab extends JPanel {
                 // When stopped == true the cell editing is finished
                 boolean stopped = super.stopCellEditing();
 
-                // Logic block to save the new cell contents to the variables map
+                // Logic block to save the new cell contents to the variable store
                 if (stopped) {
                     // Convert view row index to model row index for sorted table support
                     int modelRow = BurpVariablesTab.this.variablesTable.convertRowIndexToModel(editingRow);
@@ -208,13 +339,14 @@ public class BurpVariablesTab extends JPanel {
                     String newValue = BurpVariablesTab.this.variablesTableModel.getValueAt(modelRow, 1).toString();
                     Object regexCell = BurpVariablesTab.this.variablesTableModel.getValueAt(modelRow, 2);
                     String newRegex = regexCell != null ? regexCell.toString() : "";
+                    ExtractorType newExtractorType = (ExtractorType) BurpVariablesTab.this.variablesTableModel.getValueAt(modelRow, 3);
 
                     // Start key validation if user is modifying a key
                      if(editingColumn == 0
                             // Check if the new key is empty
                             && (newKey.isEmpty()
                             // Check if the new key already exists in a different row
-                            || (variablesMap.containsKey(newKey)
+                            || (variableStore.containsKey(newKey)
                                 // Disregard cases when user is modifying the same key row
                                 && !newKey.equals(oldKey)))){
                          burpLogging.raiseInfoEvent("Unable to save modified variable because the variable name is empty or already exists.");
@@ -224,11 +356,29 @@ public class BurpVariablesTab extends JPanel {
                          return false;
                     }
 
-                    // Remove the outdated entry from the variables map
-                    variablesMap.remove(oldKey);
-
-                    // Add the new VariableData to the variables map
-                    variablesMap.put(newKey, new VariableData(newValue, newRegex));
+                    // Replace the outdated entry with the new VariableData in a single store update, keeping its value pool and TTL
+                    // An edited value starts a new lifetime; other edits keep the current expiry
+                    VariableData oldData = variableStore.get(oldKey);
+                    VariableData newData;
+                    if (oldData == null)
+                        newData = new VariableData(newValue, newRegex, newExtractorType);
+                    else if (!oldData.value().equals(newValue))
+                        newData = new VariableData(oldData.value(), newRegex, newExtractorType, oldData.pool(), oldData.ttlMillis(), oldData.expiresAtMillis()).withValue(newValue);
+                    else
+                        newData = new VariableData(newValue, newRegex, newExtractorType, oldData.pool(), oldData.ttlMillis(), oldData.expiresAtMillis());
+                    variableStore.update(variables -> {
+                        variables.remove(oldKey);
+                        variables.put(newKey, newData);
+                    });
+                    // Strikes counted for the old name or regex no longer apply
+                    if (oldData != null && (!newKey.equals(oldKey) || !oldData.regex().equals(newRegex)))
+                        extractorGuard.forgetVariable(oldKey);
+                    if (!newKey.equals(oldKey)) {
+                        StoreUpdateEvent.emit(oldKey, "edit", null);
+                        statistics.rename(oldKey, newKey);
+                        tokenRefresher.rename(oldKey, newKey);
+                    }
+                    StoreUpdateEvent.emit(newKey, "edit", newValue);
                 }
                 return stopped;
             }
@@ -262,6 +412,35 @@ public class BurpVariablesTab extends JPanel {
         variablesTable.getColumnModel().getColumn(1).setCellEditor(customEditor);
         variablesTable.getColumnModel().getColumn(2).setCellEditor(customEditor);
 
+        // Create a combo box TableCellEditor to save the extractor type when it is changed
+        TableCellEditor extractorTypeEditor = new DefaultCellEditor(new JComboBox<>(ExtractorType.values())) {
+            private int editingRow;
+
+            @Override
+            public boolean stopCellEditing() {
+                boolean stopped = super.stopCellEditing();
+                if (stopped) {
+                    // Update the extractor type of the variable while preserving its value and expression
+                    int modelRow = BurpVariablesTab.this.variablesTable.convertRowIndexToModel(editingRow);
+                    String key = BurpVariablesTab.this.variablesTableModel.getValueAt(modelRow, 0).toString();
+                    ExtractorType newExtractorType = (ExtractorType) BurpVariablesTab.this.variablesTableModel.getValueAt(modelRow, 3);
+                    VariableData data = variableStore.get(key);
+                    if (data != null) {
+                        variableStore.put(key, new VariableData(data.value(), data.regex(), newExtractorType, data.pool(), data.ttlMillis(), data.expiresAtMillis()));
+                        StoreUpdateEvent.emit(key, "edit", data.value());
+                    }
+                }
+                return stopped;
+            }
+
+            @Override
+            public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
+                editingRow = row;
+                return super.getTableCellEditorComponent(table, value, isSelected, row, column);
+            }
+        };
+        variablesTable.getColumnModel().getColumn(3).setCellEditor(extractorTypeEditor);
+
         // Add a custom renderer for the regex column to highlight invalid regex patterns
         variablesTable.getColumnModel().getColumn(2).setCellRenderer(new DefaultTableCellRenderer() {
             @Override
@@ -273,11 +452,55 @@ public class BurpVariablesTab extends JPanel {
                         table, value, isSelected, hasFocus, row, column);
 
                 String regex = value != null ? value.toString() : "";
+                int modelRow = table.convertRowIndexToModel(row);
+                String variableKey = String.valueOf(table.getModel().getValueAt(modelRow, 0));
+                ExtractorType extractorType = (ExtractorType) table.getModel().getValueAt(modelRow, 3);
+                setToolTipText(null);
+
+                // Highlight non-empty values that are not a valid regex with a capture group, JSONPath or XPath
+                if (!regex.isEmpty() && !isValidExtractor(extractorType, regex)) {
+                    c.setForeground(Color.RED);
+                } else if (!regex.isEmpty() && extractorGuard.isDisabled(variableKey, regex)) {
+                    // Warn about extractors disabled after repeatedly exceeding the time budget
+                    setText("\u26A0 " + regex);
+                    setToolTipText("Disabled after exceeding the time budget " + ExtractorGuard.MAX_STRIKES
+                            + " times. Edit the regex to re-enable it.");
+                    c.setForeground(Color.RED);
+                } else {
+                    c.setForeground(isSelected
+                            ? table.getSelectionForeground()
+                            : table.getForeground());
+                }
+
+                return c;
+            }
+        });
+
+        // Add a custom renderer for the value column to flag nested reference problems and show flattened values
+        variablesTable.getColumnModel().getColumn(1).setCellRenderer(new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(
+                    JTable table, Object value, boolean isSelected,
+                    boolean hasFocus, int row, int column) {
+
+                Component c = super.getTableCellRendererComponent(
+                        table, value, isSelected, hasFocus, row, column);
 
-                // Highlight non-empty regex values that don't have a capture group
-                if (!regex.isEmpty() && !isValidRegexWithCaptureGroup(regex)) {
+                int modelRow = table.convertRowIndexToModel(row);
+                String variableKey = String.valueOf(table.getModel().getValueAt(modelRow, 0));
+                ResolvedVariables resolved = variableStore.snapshot().resolved();
+                String problem = resolved.problems().get(variableKey);
+                String flattened = resolved.values().get(variableKey);
+                setToolTipText(null);
+
+                if (problem != null) {
+                    // Warn about reference cycles and dangling references
+                    setText("\u26A0 " + value);
+                    setToolTipText(problem);
                     c.setForeground(Color.RED);
                 } else {
+                    if (flattened != null)
+                        setToolTipText("Resolves to: " + flattened);
                     c.setForeground(isSelected
                             ? table.getSelectionForeground()
                             : table.getForeground());
@@ -287,6 +510,16 @@ public class BurpVariablesTab extends JPanel {
             }
         });
 
+        // Add a custom renderer for the last used column to format epoch milliseconds as a date
+        SimpleDateFormat lastUsedFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        variablesTable.getColumnModel().getColumn(5).setCellRenderer(new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                long lastUsedMillis = value instanceof Long ? (Long) value : 0L;
+                setText(lastUsedMillis == 0 ? "Never" : lastUsedFormat.format(new Date(lastUsedMillis)));
+            }
+        });
+
         return variablesTable;
     }
 
@@ -332,11 +565,13 @@ public class BurpVariablesTab extends JPanel {
         gbc.weightx = 1.0;
 
         // Create a nested panel with GridLayout to ensure equal-width labels
-        labelsPanel = new JPanel(new GridLayout(1, 3, 10, 0));
+        labelsPanel = new JPanel(new GridLayout(1, 4, 10, 0));
         labelsPanel.add(new JLabel(COLUMN_NAME_VARIABLE_NAME, SwingConstants.CENTER));
         labelsPanel.add(new JLabel(COLUMN_NAME_VARIABLE_VALUE, SwingConstants.CENTER));
         variableRegexLabel = new JLabel(COLUMN_NAME_VARIABLE_UPDATE_REGEX, SwingConstants.CENTER);
         labelsPanel.add(variableRegexLabel);
+        variableExtractorTypeLabel = new JLabel(COLUMN_NAME_EXTRACTOR_TYPE, SwingConstants.CENTER);
+        labelsPanel.add(variableExtractorTypeLabel);
 
         // Add labels panel spanning all 3 columns in row 0
         gbc.gridx = 0;
@@ -345,7 +580,7 @@ public class BurpVariablesTab extends JPanel {
         addVariablesPanel.add(labelsPanel, gbc);
 
         // Create a nested panel with GridLayout to ensure equal-width text fields
-        textFieldsPanel = new JPanel(new GridLayout(1, 3, 10, 0));
+        textFieldsPanel = new JPanel(new GridLayout(1, 4, 10, 0));
         // Create variable name text field
         JTextField variableNameField = new JTextField();
         textFieldsPanel.add(variableNameField);
@@ -355,6 +590,9 @@ public class BurpVariablesTab extends JPanel {
         // Create variable regex text field
         variableRegexField = new JTextField();
         textFieldsPanel.add(variableRegexField);
+        // Create variable extractor type combo box
+        variableExtractorTypeComboBox = new JComboBox<>(ExtractorType.values());
+        textFieldsPanel.add(variableExtractorTypeComboBox);
 
         // Add text fields panel spanning all 3 columns in row 1
         gbc.gridx = 0;
@@ -377,7 +615,8 @@ public class BurpVariablesTab extends JPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 // Call addVariable and clear all text fields if the variable is added successfully
-                if(addVariable(variableNameField.getText(), variableValueField.getText(), variableRegexField.getText())) {
+                if(addVariable(variableNameField.getText(), variableValueField.getText(), variableRegexField.getText(),
+                        (ExtractorType) variableExtractorTypeComboBox.getSelectedItem(), null, 0)) {
                     variableNameField.setText("");
                     variableValueField.setText("");
                     variableRegexField.setText("");
@@ -408,6 +647,41 @@ public class BurpVariablesTab extends JPanel {
         });
         buttonsPanel.add(deleteRowButton);
 
+        // Environment selector and listener; selecting an environment switches to it
+        buttonsPanel.add(new JLabel("Environment:"));
+        environmentComboBox = new JComboBox<>();
+        refreshEnvironmentComboBox();
+        environmentComboBox.addActionListener(e ->
+        {
+            if (!updatingEnvironmentComboBox)
+                switchEnvironment((String) environmentComboBox.getSelectedItem());
+        });
+        buttonsPanel.add(environmentComboBox);
+
+        // Value pool button and listener
+        JButton editPoolButton = new JButton("Edit value pool");
+        editPoolButton.addActionListener(e ->
+        {
+            editValuePool();
+        });
+        buttonsPanel.add(editPoolButton);
+
+        // TTL button and listener
+        JButton editTtlButton = new JButton("Set TTL");
+        editTtlButton.addActionListener(e ->
+        {
+            editTtl();
+        });
+        buttonsPanel.add(editTtlButton);
+
+        // Audit log button and listener
+        JButton auditLogButton = new JButton("Audit log");
+        auditLogButton.addActionListener(e ->
+        {
+            displayAuditLog();
+        });
+        buttonsPanel.add(auditLogButton);
+
         // Options button and listener
         JButton optionsButton = new JButton("⚙ Options");
         optionsButton.addActionListener(e ->
@@ -420,22 +694,27 @@ public class BurpVariablesTab extends JPanel {
     }
 
     /**
-     * Adds a new variable to the table and the variables map if valid.
+     * Adds a new variable to the table and the variable store if valid.
      * Validates that the variable key is not empty and does not already exist in the map.
      *
      * @param variableKey          Variable name key.
      * @param variableValue        Variable value.
-     * @param variableRegexValue   Variable auto-update regex pattern.
+     * @param variableRegexValue   Variable auto-update extractor expression.
+     * @param extractorType        The kind of extractor expression.
+     * @param pool                 Optional pool of values substituted in place of the value (can be null).
+     * @param ttlMillis            How long the value stays valid, or 0 if it never expires.
      * @return  True if the variable is added successfully, false otherwise.
      */
-    private boolean addVariable(String variableKey, String variableValue, String variableRegexValue)
+    private boolean addVariable(String variableKey, String variableValue, String variableRegexValue, ExtractorType extractorType, ValuePool pool, long ttlMillis)
     {
-        // Check if the variable key is not empty and does not already exist in the variables map
-        if(!variableKey.isEmpty() && !variablesMap.containsKey(variableKey)) {
-            // Add a new row to the variables table with the variable's key, value, and regex
-            variablesTableModel.addRow(new Object[]{variableKey, variableValue, variableRegexValue});
-            // Update the variables map with the new VariableData
-            variablesMap.put(variableKey, new VariableData(variableValue, variableRegexValue));
+        // Check if the variable key is not empty and does not already exist in the variable store
+        if(!variableKey.isEmpty() && !variableStore.containsKey(variableKey)) {
+            // Add a new row to the variables table with the variable's key, value, regex, and usage statistics
+            VariableData data = new VariableData(variableValue, variableRegexValue, extractorType, pool).withTtl(ttlMillis);
+            variablesTableModel.addRow(buildRow(variableKey, data));
+            // Update the variable store with the new VariableData
+            variableStore.put(variableKey, data);
+            StoreUpdateEvent.emit(variableKey, "add", variableValue);
             return true;
         }
         burpLogging.raiseInfoEvent("Unable to add variable because the variable name is empty or already exists.");
@@ -543,6 +822,112 @@ public class BurpVariablesTab extends JPanel {
         optionsPanel.add(new JSeparator());
         optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
+        // Substitution scope option h1 label
+        JLabel substitutionScopeTitle = new JLabel("Substitution scope");
+        substitutionScopeTitle.setFont(substitutionScopeTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(substitutionScopeTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Substitution scope option body labels
+        optionsPanel.add(new JLabel("Select which parts of a tool's requests are scanned for variable references."));
+        optionsPanel.add(new JLabel("Parts that are not scanned are passed through untouched, so large uploads"));
+        optionsPanel.add(new JLabel("cost no more than small ones. A body byte limit of 0 scans the whole body."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Substitution scope tool selector, region checkboxes and body byte limit
+        JPanel substitutionScopePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        substitutionScopePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        String[] scopeToolLabels = new String[MAP_TOOL_NAME_AND_TOOL_LABEL.length];
+        for (int i = 0; i < scopeToolLabels.length; i++)
+            scopeToolLabels[i] = MAP_TOOL_NAME_AND_TOOL_LABEL[i][0];
+        JComboBox<String> scopeToolComboBox = new JComboBox<>(scopeToolLabels);
+        JCheckBox scopeRequestLineCheckBox = new JCheckBox("Request line");
+        JCheckBox scopeHeadersCheckBox = new JCheckBox("Headers");
+        JCheckBox scopeBodyCheckBox = new JCheckBox("Body");
+        JSpinner scopeBodyLimitSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 1024));
+        substitutionScopePanel.add(scopeToolComboBox);
+        substitutionScopePanel.add(scopeRequestLineCheckBox);
+        substitutionScopePanel.add(scopeHeadersCheckBox);
+        substitutionScopePanel.add(scopeBodyCheckBox);
+        substitutionScopePanel.add(new JLabel(" Body byte limit: "));
+        substitutionScopePanel.add(scopeBodyLimitSpinner);
+
+        // Show the selected tool's scope, and store the scope whenever a control changes
+        boolean[] loadingScope = {false};
+        Runnable showScope = () -> {
+            loadingScope[0] = true;
+            SubstitutionScope scope = substitutionScopes.scopeFor((String) scopeToolComboBox.getSelectedItem());
+            scopeRequestLineCheckBox.setSelected(scope.requestLine());
+            scopeHeadersCheckBox.setSelected(scope.headers());
+            scopeBodyCheckBox.setSelected(scope.body());
+            scopeBodyLimitSpinner.setValue(scope.bodyLimit());
+            loadingScope[0] = false;
+        };
+        Runnable storeScope = () -> {
+            if (loadingScope[0]) return;
+            substitutionScopes.setScope((String) scopeToolComboBox.getSelectedItem(), new SubstitutionScope(
+                    scopeRequestLineCheckBox.isSelected(), scopeHeadersCheckBox.isSelected(),
+                    scopeBodyCheckBox.isSelected(), (Integer) scopeBodyLimitSpinner.getValue()));
+        };
+        scopeToolComboBox.addActionListener(e -> showScope.run());
+        scopeRequestLineCheckBox.addItemListener(e -> storeScope.run());
+        scopeHeadersCheckBox.addItemListener(e -> storeScope.run());
+        scopeBodyCheckBox.addItemListener(e -> storeScope.run());
+        scopeBodyLimitSpinner.addChangeListener(e -> storeScope.run());
+        showScope.run();
+        optionsPanel.add(substitutionScopePanel);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Encoded bodies option h1 label
+        JLabel encodedBodiesTitle = new JLabel("Encoded bodies");
+        encodedBodiesTitle.setFont(encodedBodiesTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(encodedBodiesTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Encoded bodies option body labels
+        optionsPanel.add(new JLabel("Replace variable references inside request bodies sent with a gzip or deflate"));
+        optionsPanel.add(new JLabel("Content-Encoding. The body is decoded, substituted and re-encoded as a stream,"));
+        optionsPanel.add(new JLabel("and Content-Length is updated. Bodies made up only of base64 characters can be"));
+        optionsPanel.add(new JLabel("treated as base64-wrapped content the same way."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        JCheckBox toggleEncodedBodySubstitution = new JCheckBox("Substitute inside compressed request bodies");
+        optionsPanel.add(toggleEncodedBodySubstitution);
+        JCheckBox toggleBase64BodySubstitution = new JCheckBox("Also decode request bodies that are entirely base64");
+        optionsPanel.add(toggleBase64BodySubstitution);
+
+        if(toolsEnabledMap.getOrDefault("encodedBodySubstitution", false))
+            toggleEncodedBodySubstitution.setSelected(true);
+        if(toolsEnabledMap.getOrDefault("base64BodySubstitution", false))
+            toggleBase64BodySubstitution.setSelected(true);
+        toggleBase64BodySubstitution.setEnabled(toggleEncodedBodySubstitution.isSelected());
+
+        toggleEncodedBodySubstitution.addItemListener(e -> {
+            boolean enabled = e.getStateChange() == ItemEvent.SELECTED;
+            toolsEnabledMap.put("encodedBodySubstitution", enabled);
+            toggleBase64BodySubstitution.setEnabled(enabled);
+        });
+        toggleBase64BodySubstitution.addItemListener(e -> {
+            toolsEnabledMap.put("base64BodySubstitution", e.getStateChange() == ItemEvent.SELECTED);
+        });
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
         // Export option h1 label
         JLabel exportTitle = new JLabel("Export variables");
         exportTitle.setFont(exportTitle.getFont().deriveFont(Font.BOLD));
@@ -579,9 +964,10 @@ public class BurpVariablesTab extends JPanel {
         optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
         // Import option body labels
-        optionsPanel.add(new JLabel("Import variable key:value:regex tuples from a CSV file. The CSV"));
-        optionsPanel.add(new JLabel("file should be formatted without a header row. The imported"));
-        optionsPanel.add(new JLabel("tuples will be appended to the variables table."));
+        optionsPanel.add(new JLabel("Import variable key:value:regex:type tuples from a CSV file. The CSV"));
+        optionsPanel.add(new JLabel("file should be formatted without a header row. The regex and type"));
+        optionsPanel.add(new JLabel("fields are optional. The imported tuples will be appended to the"));
+        optionsPanel.add(new JLabel("variables table."));
 
         // Add vertical spacing
         optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
@@ -612,9 +998,10 @@ public class BurpVariablesTab extends JPanel {
         // Auto-update option body labels
         optionsPanel.add(new JLabel("Automatically update variable values from HTTP responses."));
         optionsPanel.add(new JLabel("When a response matches the regex, the first capture group"));
-        optionsPanel.add(new JLabel("becomes the new variable value. Cells in this column will be"));
-        optionsPanel.add(new JLabel("highlighted in red if they do not contain a valid regex with a"));
-        optionsPanel.add(new JLabel("capture group."));
+        optionsPanel.add(new JLabel("becomes the new variable value. JSONPath ($.data.token) and"));
+        optionsPanel.add(new JLabel("XPath (/response/token) extractors read the value from JSON or"));
+        optionsPanel.add(new JLabel("XML response bodies. Cells in this column will be highlighted in"));
+        optionsPanel.add(new JLabel("red if they do not contain a valid extractor of the selected type."));
 
         // Add vertical spacing
         optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
@@ -631,6 +1018,74 @@ public class BurpVariablesTab extends JPanel {
             setVariableAutoUpdateColumnVisible(enabled);
         });
 
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Time budget option body labels
+        optionsPanel.add(new JLabel("Abort a regex match that runs longer than the time budget. A regex"));
+        optionsPanel.add(new JLabel("that exceeds the budget " + ExtractorGuard.MAX_STRIKES + " times is disabled until it is edited."));
+        optionsPanel.add(new JLabel("Responses of " + (ParallelScanner.PARALLEL_THRESHOLD >> 20) + " MB or more are searched in parallel chunks that overlap by"));
+        optionsPanel.add(new JLabel("the maximum match length; longer matches spanning two chunks may be missed."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Time budget spinner
+        JPanel timeBudgetPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        timeBudgetPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        timeBudgetPanel.add(new JLabel("Time budget per match (ms): "));
+        JSpinner timeBudgetSpinner = new JSpinner(new SpinnerNumberModel(extractorGuard.timeBudgetMillis(), 1, 60_000, 10));
+        timeBudgetSpinner.addChangeListener(e -> extractorGuard.setTimeBudgetMillis((Integer) timeBudgetSpinner.getValue()));
+        timeBudgetPanel.add(timeBudgetSpinner);
+        timeBudgetPanel.add(new JLabel(" Maximum match length (chars): "));
+        JSpinner maxMatchLengthSpinner = new JSpinner(new SpinnerNumberModel(extractorGuard.maxMatchLength(), 1, 16 << 20, 1024));
+        maxMatchLengthSpinner.addChangeListener(e -> extractorGuard.setMaxMatchLength((Integer) maxMatchLengthSpinner.getValue()));
+        timeBudgetPanel.add(maxMatchLengthSpinner);
+        optionsPanel.add(timeBudgetPanel);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Variable expiry option h1 label
+        JLabel expiryTitle = new JLabel("Variable expiry");
+        expiryTitle.setFont(expiryTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(expiryTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Variable expiry option body labels
+        optionsPanel.add(new JLabel("Variables with a TTL (\"Set TTL\" below the table) are not substituted once their"));
+        optionsPanel.add(new JLabel("value has expired. Requests either go out with the reference unresolved, or are"));
+        optionsPanel.add(new JLabel("held until the variable is updated, for at most the hold time."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        JCheckBox toggleHoldExpiredRequests = new JCheckBox("Hold requests that use an expired variable");
+        optionsPanel.add(toggleHoldExpiredRequests);
+
+        if(toolsEnabledMap.getOrDefault("holdExpiredRequests", false))
+            toggleHoldExpiredRequests.setSelected(true);
+
+        toggleHoldExpiredRequests.addItemListener(e -> {
+            toolsEnabledMap.put("holdExpiredRequests", e.getStateChange() == ItemEvent.SELECTED);
+        });
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Hold time spinner
+        JPanel holdTimePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        holdTimePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        holdTimePanel.add(new JLabel("Hold time (ms): "));
+        JSpinner holdTimeSpinner = new JSpinner(new SpinnerNumberModel(variableExpiry.holdMillis(), 0, 60_000, 100));
+        holdTimeSpinner.addChangeListener(e -> variableExpiry.setHoldMillis((Integer) holdTimeSpinner.getValue()));
+        holdTimePanel.add(holdTimeSpinner);
+        optionsPanel.add(holdTimePanel);
+
         // Option separator
         optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
         optionsPanel.add(new JSeparator());
@@ -658,124 +1113,1268 @@ public class BurpVariablesTab extends JPanel {
         });
         optionsPanel.add(clearButton);
 
-        // Disable focusable on panel components to prevent checkboxes from consuming ESC key events
-        setAllComponentsNotFocusable(optionsPanel);
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
-        // Set the size of optionsDialog based on its contents
-        optionsDialog.pack();
+        // Environments option h1 label
+        JLabel environmentsTitle = new JLabel("Environments");
+        environmentsTitle.setFont(environmentsTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(environmentsTitle);
 
-        // Center the optionsDialog dialog window
-        optionsDialog.setLocationRelativeTo(null);
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
-        // Display the optionsDialog dialog window
-        optionsDialog.setVisible(true);
-    }
+        // Environments option body labels
+        optionsPanel.add(new JLabel("Keep several sets of variables, such as dev, staging and prod, and switch"));
+        optionsPanel.add(new JLabel("between them with the environment selector below the variables table."));
 
-    /**
-     * Disables focusable property on all components of the given container.
-     * Note: This method does not recursively disable nested container components.
-     *
-     * @param container The container whose components should have their focusable property disabled.
-     */
-    private static void setAllComponentsNotFocusable(Container container) {
-        Component[] components = container.getComponents();
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
-        for (Component component : components) {
-            component.setFocusable(false);
-        }
-    }
+        // New environment name field and buttons
+        JPanel createEnvironmentPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        createEnvironmentPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JTextField environmentNameField = new JTextField(15);
+        createEnvironmentPanel.add(environmentNameField);
+        JButton copyEnvironmentButton = new JButton("Create copy of current");
+        copyEnvironmentButton.addActionListener(e ->
+        {
+            createEnvironment(environmentNameField.getText().trim(), true);
+        });
+        createEnvironmentPanel.add(copyEnvironmentButton);
+        JButton emptyEnvironmentButton = new JButton("Create empty");
+        emptyEnvironmentButton.addActionListener(e ->
+        {
+            createEnvironment(environmentNameField.getText().trim(), false);
+        });
+        createEnvironmentPanel.add(emptyEnvironmentButton);
+        setAllComponentsNotFocusable(createEnvironmentPanel);
+        // The name field must stay focusable to accept input
+        environmentNameField.setFocusable(true);
+        optionsPanel.add(createEnvironmentPanel);
 
-    /**
-     * Deletes the selected row from the table model and from the variables map.
-     */
-    private void deleteRow()
-    {
-        int selectedRow = variablesTable.getSelectedRow();
-        if (selectedRow != -1) {
-            // Get row index via convertRowIndexToModel to delete from a sorted table
-            int modelRow = variablesTable.convertRowIndexToModel(selectedRow);
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
-            // Remove row from the variables map
-            variablesMap.remove(variablesTableModel.getValueAt(modelRow, 0).toString());
+        // Remove environment button and listener
+        JButton removeEnvironmentButton = new JButton("Remove selected environment");
+        removeEnvironmentButton.addActionListener(e ->
+        {
+            removeEnvironment();
+        });
+        optionsPanel.add(removeEnvironmentButton);
 
-            // Remove row from table
-            variablesTableModel.removeRow(modelRow);
-        }
-    }
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
-    /**
-     * Populates the table with data from the variables map.
-     */
-    private void populateTable()
-    {
-        // Iterate through the variables map
-        for (HashMap.Entry<String, VariableData> entry : variablesMap.entrySet()) {
-            // Add a row for each variable from the variables map
-            VariableData data = entry.getValue();
-            variablesTableModel.addRow(new Object[]{entry.getKey(), data.value(), data.regex()});
-        }
-    }
+        // Shared store option h1 label
+        JLabel sharedStoreTitle = new JLabel("Shared store");
+        sharedStoreTitle.setFont(sharedStoreTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(sharedStoreTitle);
 
-    /**
-     * Shows or hides the auto-update regex column in the JTable without changing the TableModel.
-     *
-     * @param visible true to show the column, false to hide it
-     */
-    private void setVariableAutoUpdateColumnVisible(boolean visible) {
-        if (variablesTable == null) return;
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
-        TableColumnModel cm = variablesTable.getColumnModel();
-        if (visible) {
-            // If the column is already visible, nothing to do
-            boolean found = false;
-            for (int i = 0; i < cm.getColumnCount(); i++) {
-                if (COLUMN_NAME_VARIABLE_UPDATE_REGEX.equals(cm.getColumn(i).getHeaderValue())) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found && this.variableAutoUpdateTableColumn != null) {
-                cm.addColumn(this.variableAutoUpdateTableColumn);
-                // move to the third position (index 2)
-                int last = cm.getColumnCount() - 1;
-                if (last != 2) cm.moveColumn(last, 2);
-                this.variableAutoUpdateTableColumn = null;
+        // Shared store option body labels
+        optionsPanel.add(new JLabel("Share the variables of the active environment with other Burp instances on"));
+        optionsPanel.add(new JLabel("this machine through a memory-mapped file. Changes made in any instance"));
+        optionsPanel.add(new JLabel("appear in the others within milliseconds. When connecting, the file's"));
+        optionsPanel.add(new JLabel("values replace local variables of the same name."));
 
-                // Add regex components to panels and update layout to 3 columns
-                labelsPanel.add(variableRegexLabel);
-                textFieldsPanel.add(variableRegexField);
-                labelsPanel.setLayout(new GridLayout(1, 3, 10, 0));
-                textFieldsPanel.setLayout(new GridLayout(1, 3, 10, 0));
-                labelsPanel.revalidate();
-                textFieldsPanel.revalidate();
-            }
-        } else {
-            // find and remove the column if present, storing it for later
-            for (int i = 0; i < cm.getColumnCount(); i++) {
-                TableColumn col = cm.getColumn(i);
-                if (COLUMN_NAME_VARIABLE_UPDATE_REGEX.equals(col.getHeaderValue())) {
-                    this.variableAutoUpdateTableColumn = col;
-                    cm.removeColumn(col);
-                    break;
-                }
-            }
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
 
-            // Remove regex components from panels and update layout to 2 columns
-            labelsPanel.remove(variableRegexLabel);
-            textFieldsPanel.remove(variableRegexField);
-            variableRegexField.setText("");
-            labelsPanel.setLayout(new GridLayout(1, 2, 10, 0));
-            textFieldsPanel.setLayout(new GridLayout(1, 2, 10, 0));
-            labelsPanel.revalidate();
-            textFieldsPanel.revalidate();
-        }
-    }
+        // Shared store path field, buttons and status
+        JPanel sharedStorePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        sharedStorePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JTextField sharedStorePathField = new JTextField(sharedVariableFile.path() != null ? sharedVariableFile.path().toString() : "", 30);
+        sharedStorePanel.add(sharedStorePathField);
+        JLabel sharedStoreStatus = new JLabel();
+        JButton connectSharedStoreButton = new JButton("Connect");
+        connectSharedStoreButton.addActionListener(e ->
+        {
+            connectSharedStore(sharedStorePathField.getText().trim());
+            sharedStoreStatus.setText(sharedStoreStatus());
+        });
+        sharedStorePanel.add(connectSharedStoreButton);
+        JButton disconnectSharedStoreButton = new JButton("Disconnect");
+        disconnectSharedStoreButton.addActionListener(e ->
+        {
+            sharedVariableFile.disconnect();
+            sharedStoreStatus.setText(sharedStoreStatus());
+        });
+        sharedStorePanel.add(disconnectSharedStoreButton);
+        setAllComponentsNotFocusable(sharedStorePanel);
+        // The path field must stay focusable to accept input
+        sharedStorePathField.setFocusable(true);
+        optionsPanel.add(sharedStorePanel);
 
-    /**
-     * Derives the Tool Type enum value from the checkbox label.
-     *
-     * @param toolTitle The label of the tool checkbox.
-     * @return  The corresponding Tool Type enum value, or null if not found.
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        sharedStoreStatus.setText(sharedStoreStatus());
+        optionsPanel.add(sharedStoreStatus);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Watched file option h1 label
+        JLabel watchedFileTitle = new JLabel("Watched file");
+        watchedFileTitle.setFont(watchedFileTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(watchedFileTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Watched file option body labels
+        optionsPanel.add(new JLabel("Keep variables in sync with a file written by other tools, such as CI jobs or"));
+        optionsPanel.add(new JLabel("login scripts. A .json file holds one object of name:value members; any other"));
+        optionsPanel.add(new JLabel("file is read as CSV in the import layout. Whenever the file changes, variables"));
+        optionsPanel.add(new JLabel("it adds, changes or removes are applied; other variables are left alone."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Watched file path field, buttons and status
+        JPanel watchedFilePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        watchedFilePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JTextField watchedFilePathField = new JTextField(watchedVariableFile.path() != null ? watchedVariableFile.path().toString() : "", 30);
+        watchedFilePanel.add(watchedFilePathField);
+        JLabel watchedFileStatus = new JLabel();
+        JButton watchFileButton = new JButton("Watch");
+        watchFileButton.addActionListener(e ->
+        {
+            watchFile(watchedFilePathField.getText().trim());
+            watchedFileStatus.setText(watchedFileStatus());
+        });
+        watchedFilePanel.add(watchFileButton);
+        JButton stopWatchingFileButton = new JButton("Stop watching");
+        stopWatchingFileButton.addActionListener(e ->
+        {
+            watchedVariableFile.stop();
+            watchedFileStatus.setText(watchedFileStatus());
+        });
+        watchedFilePanel.add(stopWatchingFileButton);
+        setAllComponentsNotFocusable(watchedFilePanel);
+        // The path field must stay focusable to accept input
+        watchedFilePathField.setFocusable(true);
+        optionsPanel.add(watchedFilePanel);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        watchedFileStatus.setText(watchedFileStatus());
+        optionsPanel.add(watchedFileStatus);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Usage statistics option h1 label
+        JLabel usageStatisticsTitle = new JLabel("Usage statistics");
+        usageStatisticsTitle.setFont(usageStatisticsTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(usageStatisticsTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Usage statistics option body labels
+        optionsPanel.add(new JLabel("Show how often each variable is substituted, when and by which"));
+        optionsPanel.add(new JLabel("tool it was last used, and how often it was auto-updated."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        JCheckBox toggleUsageStatisticsColumns = new JCheckBox("Show usage statistics columns");
+        optionsPanel.add(toggleUsageStatisticsColumns);
+
+        if(toolsEnabledMap.getOrDefault("usageStatisticsColumns", false))
+            toggleUsageStatisticsColumns.setSelected(true);
+
+        toggleUsageStatisticsColumns.addItemListener(e -> {
+            boolean enabled = e.getStateChange() == ItemEvent.SELECTED;
+            toolsEnabledMap.put("usageStatisticsColumns", enabled);
+            setUsageStatisticsColumnsVisible(enabled);
+        });
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Prune option body label
+        optionsPanel.add(new JLabel("Remove variables that have not been used since the selected age."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Prune age selector and button
+        JPanel prunePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        prunePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JComboBox<String> pruneAgeComboBox = new JComboBox<>(PRUNE_AGE_LABELS);
+        prunePanel.add(pruneAgeComboBox);
+        JButton pruneButton = new JButton("Prune unused variables");
+        pruneButton.addActionListener(e ->
+        {
+            pruneUnusedVariables(PRUNE_AGE_LABELS[pruneAgeComboBox.getSelectedIndex()],
+                    PRUNE_AGE_MILLIS[pruneAgeComboBox.getSelectedIndex()]);
+        });
+        prunePanel.add(pruneButton);
+        setAllComponentsNotFocusable(prunePanel);
+        optionsPanel.add(prunePanel);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Variable contexts option h1 label
+        JLabel contextsTitle = new JLabel("Variable contexts");
+        contextsTitle.setFont(contextsTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(contextsTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Variable contexts option body labels
+        optionsPanel.add(new JLabel("Add a \"" + VariableContext.HEADER_NAME + ": <name>\" header to a request to resolve"));
+        optionsPanel.add(new JLabel("and auto-update variables in that context instead of the global table."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Read-only text area listing the contexts
+        JTextArea contextsTextArea = new JTextArea(contextsSummary(), 4, 50);
+        contextsTextArea.setEditable(false);
+        contextsTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, contextsTextArea.getFont().getSize()));
+        JScrollPane contextsScrollPane = new JScrollPane(contextsTextArea);
+        contextsScrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
+        optionsPanel.add(contextsScrollPane);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Variable contexts buttons panel and listeners
+        JPanel contextsButtonsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        contextsButtonsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JButton refreshContextsButton = new JButton("Refresh");
+        refreshContextsButton.addActionListener(e ->
+        {
+            contextsTextArea.setText(contextsSummary());
+        });
+        contextsButtonsPanel.add(refreshContextsButton);
+        JButton clearContextsButton = new JButton("Clear contexts");
+        clearContextsButton.addActionListener(e ->
+        {
+            variableStore.clearContexts();
+            contextsTextArea.setText(contextsSummary());
+        });
+        contextsButtonsPanel.add(clearContextsButton);
+        setAllComponentsNotFocusable(contextsButtonsPanel);
+        optionsPanel.add(contextsButtonsPanel);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Extraction rules option h1 label
+        JLabel extractionRulesTitle = new JLabel("Extraction rules");
+        extractionRulesTitle.setFont(extractionRulesTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(extractionRulesTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Extraction rules option body labels
+        optionsPanel.add(new JLabel("Update several variables from one auto-update match. Each named group of the rule's"));
+        optionsPanel.add(new JLabel("regex, such as (?<access>[^\"]+), is bound to a variable, and all bound variables change"));
+        optionsPanel.add(new JLabel("together in one update. Bound variables should not have an update regex of their own."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Read-only text area listing the extraction rules
+        JTextArea extractionRulesTextArea = new JTextArea(extractionRulesSummary(), 4, 50);
+        extractionRulesTextArea.setEditable(false);
+        extractionRulesTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, extractionRulesTextArea.getFont().getSize()));
+        JScrollPane extractionRulesScrollPane = new JScrollPane(extractionRulesTextArea);
+        extractionRulesScrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
+        optionsPanel.add(extractionRulesScrollPane);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Extraction rules buttons panel and listeners
+        JPanel extractionRulesButtonsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        extractionRulesButtonsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JButton addExtractionRuleButton = new JButton("Add rule");
+        addExtractionRuleButton.addActionListener(e ->
+        {
+            if (configureExtractionRule())
+                extractionRulesTextArea.setText(extractionRulesSummary());
+        });
+        extractionRulesButtonsPanel.add(addExtractionRuleButton);
+        JButton removeExtractionRuleButton = new JButton("Remove rule");
+        removeExtractionRuleButton.addActionListener(e ->
+        {
+            List<String> ruleNames = new ArrayList<>(extractionRules.rules().keySet());
+            if (ruleNames.isEmpty()) {
+                burpLogging.raiseInfoEvent("No extraction rules have been set.");
+                return;
+            }
+            String ruleName = (String) JOptionPane.showInputDialog(
+                    burpFrame,
+                    "Select the extraction rule to remove.",
+                    "Remove rule",
+                    JOptionPane.WARNING_MESSAGE,
+                    null,
+                    ruleNames.toArray(),
+                    ruleNames.get(0));
+            if (ruleName != null) {
+                extractionRules.removeRule(ruleName);
+                extractorGuard.forgetRule(ruleName);
+                extractionRulesTextArea.setText(extractionRulesSummary());
+            }
+        });
+        extractionRulesButtonsPanel.add(removeExtractionRuleButton);
+        setAllComponentsNotFocusable(extractionRulesButtonsPanel);
+        optionsPanel.add(extractionRulesButtonsPanel);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Token refresh option h1 label
+        JLabel tokenRefreshTitle = new JLabel("Token refresh");
+        tokenRefreshTitle.setFont(tokenRefreshTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(tokenRefreshTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Token refresh option body labels
+        optionsPanel.add(new JLabel("Right-click a login request and select \"Use as token refresh request\" to refresh"));
+        optionsPanel.add(new JLabel("a variable shortly before its JWT expiry or configured lifetime, or when a response"));
+        optionsPanel.add(new JLabel("matches its failure signature; requests using it then wait briefly for the new value."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Read-only text area listing the refresh recipes
+        JTextArea tokenRefreshTextArea = new JTextArea(tokenRefreshSummary(), 4, 50);
+        tokenRefreshTextArea.setEditable(false);
+        tokenRefreshTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, tokenRefreshTextArea.getFont().getSize()));
+        JScrollPane tokenRefreshScrollPane = new JScrollPane(tokenRefreshTextArea);
+        tokenRefreshScrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
+        optionsPanel.add(tokenRefreshScrollPane);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Token refresh buttons panel and listeners
+        JPanel tokenRefreshButtonsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        tokenRefreshButtonsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JButton refreshTokenRefreshButton = new JButton("Refresh");
+        refreshTokenRefreshButton.addActionListener(e ->
+        {
+            tokenRefreshTextArea.setText(tokenRefreshSummary());
+        });
+        tokenRefreshButtonsPanel.add(refreshTokenRefreshButton);
+        JButton refreshTokenNowButton = new JButton("Refresh token now");
+        refreshTokenNowButton.addActionListener(e ->
+        {
+            String variableName = selectRefreshRecipe("Select the variable to refresh now.", "Refresh token now", JOptionPane.QUESTION_MESSAGE);
+            if (variableName != null) {
+                tokenRefresher.refreshNow(variableName);
+                tokenRefreshTextArea.setText(tokenRefreshSummary());
+            }
+        });
+        tokenRefreshButtonsPanel.add(refreshTokenNowButton);
+        JButton removeRecipeButton = new JButton("Remove refresh request");
+        removeRecipeButton.addActionListener(e ->
+        {
+            String variableName = selectRefreshRecipe("Select the variable whose refresh request should be removed.", "Remove refresh request", JOptionPane.WARNING_MESSAGE);
+            if (variableName != null) {
+                tokenRefresher.removeRecipe(variableName);
+                tokenRefreshTextArea.setText(tokenRefreshSummary());
+            }
+        });
+        tokenRefreshButtonsPanel.add(removeRecipeButton);
+        setAllComponentsNotFocusable(tokenRefreshButtonsPanel);
+        optionsPanel.add(tokenRefreshButtonsPanel);
+
+        // Option separator
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+        optionsPanel.add(new JSeparator());
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Metrics option h1 label
+        JLabel metricsTitle = new JLabel("Metrics");
+        metricsTitle.setFont(metricsTitle.getFont().deriveFont(Font.BOLD));
+        optionsPanel.add(metricsTitle);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Metrics option body labels
+        optionsPanel.add(new JLabel("Time spent by the extension per tool and request outcome counts."));
+        optionsPanel.add(new JLabel("Latency percentiles are upper bounds of power-of-two buckets."));
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Read-only text area holding the metrics summary
+        JTextArea metricsTextArea = new JTextArea(metrics.toSummary(), 6, 50);
+        metricsTextArea.setEditable(false);
+        metricsTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, metricsTextArea.getFont().getSize()));
+        JScrollPane metricsScrollPane = new JScrollPane(metricsTextArea);
+        metricsScrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
+        optionsPanel.add(metricsScrollPane);
+
+        // Add vertical spacing
+        optionsPanel.add(Box.createRigidArea(VERTICAL_SPACING));
+
+        // Metrics buttons panel and listeners
+        JPanel metricsButtonsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        metricsButtonsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JButton refreshMetricsButton = new JButton("Refresh");
+        refreshMetricsButton.addActionListener(e ->
+        {
+            metricsTextArea.setText(metrics.toSummary());
+        });
+        metricsButtonsPanel.add(refreshMetricsButton);
+        JButton resetMetricsButton = new JButton("Reset metrics");
+        resetMetricsButton.addActionListener(e ->
+        {
+            metrics.reset();
+            metricsTextArea.setText(metrics.toSummary());
+        });
+        metricsButtonsPanel.add(resetMetricsButton);
+        JButton exportMetricsButton = new JButton("Export metrics");
+        exportMetricsButton.addActionListener(e ->
+        {
+            exportMetrics();
+        });
+        metricsButtonsPanel.add(exportMetricsButton);
+        setAllComponentsNotFocusable(metricsButtonsPanel);
+        optionsPanel.add(metricsButtonsPanel);
+
+        // Disable focusable on panel components to prevent checkboxes from consuming ESC key events
+        setAllComponentsNotFocusable(optionsPanel);
+
+        // Set the size of optionsDialog based on its contents
+        optionsDialog.pack();
+
+        // Center the optionsDialog dialog window
+        optionsDialog.setLocationRelativeTo(null);
+
+        // Display the optionsDialog dialog window
+        optionsDialog.setVisible(true);
+    }
+
+    /**
+     * Displays the most recent substitutions and extractions recorded in the audit log.
+     * The events are copied from the log when the dialog opens and on refresh, and can be
+     * filtered by any field and exported to a CSV file.
+     * If the audit log dialog is already open, brings it to the front.
+     */
+    private void displayAuditLog()
+    {
+        // If the audit log dialog already exists and is visible, bring it to the front
+        if (auditLogDialog != null && auditLogDialog.isVisible()) {
+            auditLogDialog.toFront();
+            auditLogDialog.requestFocus();
+            return;
+        }
+
+        // Read-only table model holding the events of the latest copy of the log
+        String[] columnNames = {"Time", "Request", "Kind", "Tool", "Variable", "Value", "Source"};
+        DefaultTableModel auditTableModel = new DefaultTableModel(null, columnNames) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable auditTable = new JTable(auditTableModel);
+        auditTable.setAutoCreateRowSorter(true);
+        List<AuditLog.Event> shownEvents = new ArrayList<>();
+
+        // Filter field and buttons
+        JPanel auditButtonsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        auditButtonsPanel.add(new JLabel("Filter: "));
+        JTextField filterField = new JTextField(20);
+        auditButtonsPanel.add(filterField);
+        Runnable reloadEvents = () -> {
+            String filter = filterField.getText().trim().toLowerCase();
+            SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+            shownEvents.clear();
+            auditTableModel.setRowCount(0);
+            // Newest events first
+            List<AuditLog.Event> events = auditLog.events();
+            for (int i = events.size() - 1; i >= 0; i--) {
+                AuditLog.Event event = events.get(i);
+                if (!event.matches(filter))
+                    continue;
+                shownEvents.add(event);
+                auditTableModel.addRow(new Object[]{timeFormat.format(new Date(event.timeMillis())),
+                        event.messageId() >= 0 ? String.valueOf(event.messageId()) : "",
+                        event.kind(), event.tool(), event.variable(), event.value(), event.source()});
+            }
+        };
+        filterField.addActionListener(e -> reloadEvents.run());
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> reloadEvents.run());
+        auditButtonsPanel.add(refreshButton);
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(e ->
+        {
+            auditLog.clear();
+            reloadEvents.run();
+        });
+        auditButtonsPanel.add(clearButton);
+        JButton exportButton = new JButton("Export shown events");
+        exportButton.addActionListener(e ->
+        {
+            exportAuditLog(new ArrayList<>(shownEvents));
+        });
+        auditButtonsPanel.add(exportButton);
+        JCheckBox recordPrefixesCheckBox = new JCheckBox("Record value prefixes");
+        recordPrefixesCheckBox.setSelected(auditLog.recordPrefixes());
+        recordPrefixesCheckBox.addItemListener(e -> {
+            boolean enabled = e.getStateChange() == ItemEvent.SELECTED;
+            toolsEnabledMap.put("auditValuePrefixes", enabled);
+            auditLog.setRecordPrefixes(enabled);
+        });
+        auditButtonsPanel.add(recordPrefixesCheckBox);
+
+        // Audit log panel with the buttons above the events table
+        JPanel auditLogPanel = new JPanel(new BorderLayout(0, 10));
+        auditLogPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        auditLogPanel.add(new JLabel("The last " + AuditLog.CAPACITY + " substitutions and extractions. Values are shown as a hash and length,"
+                + " and with their first " + AuditLog.PREFIX_LENGTH + " characters when prefixes are recorded."), BorderLayout.NORTH);
+        JPanel auditTablePanel = new JPanel(new BorderLayout(0, 10));
+        auditTablePanel.add(auditButtonsPanel, BorderLayout.NORTH);
+        auditTablePanel.add(new JScrollPane(auditTable), BorderLayout.CENTER);
+        auditLogPanel.add(auditTablePanel, BorderLayout.CENTER);
+        reloadEvents.run();
+
+        // Create auditLogDialog attached to Burp Frame
+        auditLogDialog = new JDialog(burpFrame, "Burp Variables audit log", false);
+        auditLogDialog.setContentPane(auditLogPanel);
+        auditLogDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+
+        // Clear the auditLogDialog reference when the dialog is closed
+        auditLogDialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                BurpVariablesTab.this.auditLogDialog = null;
+            }
+        });
+
+        auditLogDialog.setSize(1000, 600);
+        auditLogDialog.setLocationRelativeTo(null);
+        auditLogDialog.setVisible(true);
+    }
+
+    /**
+     * Exports audit log events to a CSV file with a header row.
+     * This method opens a file chooser dialog to let the user select a location to save the CSV file.
+     *
+     * @param events The events to export.
+     */
+    private void exportAuditLog(List<AuditLog.Event> events) {
+        // Create a file chooser
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export audit log to a CSV file");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+
+        // Open a save dialog window and wait for the user to select a file or cancel
+        if (fileChooser.showSaveDialog(burpFrame) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        File fileToExport = fileChooser.getSelectedFile();
+
+        // Check if user is overwriting an existing file
+        if (fileToExport.exists()) {
+            int response = JOptionPane.showConfirmDialog(
+                    burpFrame,
+                    "The file already exists. Do you want to replace it?",
+                    "Confirm overwrite", JOptionPane.YES_NO_OPTION,
+                    JOptionPane.WARNING_MESSAGE);
+            if (response != JOptionPane.YES_OPTION)
+                return;
+        }
+
+        // Write the events in a try-with-resource statement, oldest first
+        try (CSVWriter writer = new CSVWriter(new FileWriter(fileToExport))) {
+            writer.writeNext(new String[]{"time", "request", "kind", "tool", "variable", "value", "source"});
+            for (int i = events.size() - 1; i >= 0; i--) {
+                AuditLog.Event event = events.get(i);
+                writer.writeNext(new String[]{String.valueOf(event.timeMillis()), String.valueOf(event.messageId()),
+                        event.kind().name(), event.tool(), event.variable(), event.value(), event.source()});
+            }
+        } catch (IOException e) {
+            burpLogging.raiseErrorEvent(e.toString());
+        }
+    }
+
+    /**
+     * Repopulates the environment selector from the store and selects the active environment.
+     */
+    private void refreshEnvironmentComboBox() {
+        updatingEnvironmentComboBox = true;
+        environmentComboBox.removeAllItems();
+        for (String environmentName : variableStore.environments())
+            environmentComboBox.addItem(environmentName);
+        environmentComboBox.setSelectedItem(variableStore.activeEnvironment());
+        updatingEnvironmentComboBox = false;
+    }
+
+    /**
+     * Switches to another environment and reloads the table from the new snapshot.
+     *
+     * @param environmentName The environment to activate.
+     */
+    private void switchEnvironment(String environmentName) {
+        if (environmentName == null || environmentName.equals(variableStore.activeEnvironment()))
+            return;
+
+        // Commit pending cell edits so they are saved to the environment being left
+        if (variablesTable.isEditing())
+            variablesTable.getCellEditor().stopCellEditing();
+
+        if (variableStore.switchEnvironment(environmentName) != null) {
+            reloadTable();
+            tokenRefresher.rescheduleAll();
+            burpLogging.logToOutput("Switched to environment '" + environmentName + "'.");
+        }
+        refreshEnvironmentComboBox();
+    }
+
+    /**
+     * Creates a new inactive environment.
+     *
+     * @param environmentName   The environment name.
+     * @param copyActive        True to copy the active variables, false to start empty.
+     */
+    private void createEnvironment(String environmentName, boolean copyActive) {
+        if (!variableStore.createEnvironment(environmentName, copyActive)) {
+            burpLogging.raiseInfoEvent("Unable to create environment because the name is empty or already exists.");
+            return;
+        }
+        refreshEnvironmentComboBox();
+    }
+
+    /**
+     * Removes the environment selected in the environment selector after confirmation.
+     * The active environment cannot be removed; switch to another environment first.
+     */
+    private void removeEnvironment() {
+        List<String> inactive = new ArrayList<>(variableStore.inactiveEnvironments().keySet());
+        if (inactive.isEmpty()) {
+            burpLogging.raiseInfoEvent("There are no inactive environments to remove.");
+            return;
+        }
+        inactive.sort(null);
+        String environmentName = (String) JOptionPane.showInputDialog(
+                burpFrame,
+                "Select the environment to remove. This operation is destructive and non-reversible.",
+                "Remove environment",
+                JOptionPane.WARNING_MESSAGE,
+                null,
+                inactive.toArray(),
+                inactive.get(0));
+        if (environmentName != null && variableStore.removeEnvironment(environmentName))
+            refreshEnvironmentComboBox();
+    }
+
+    /**
+     * Connects the shared store file and reloads the table with the merged variables.
+     *
+     * @param path The path entered in the options dialog.
+     */
+    private void connectSharedStore(String path) {
+        if (path.isEmpty()) {
+            burpLogging.raiseInfoEvent("Unable to connect the shared store because the path is empty.");
+            return;
+        }
+        try {
+            sharedVariableFile.connect(Path.of(path));
+        } catch (IOException | InvalidPathException e) {
+            burpLogging.raiseErrorEvent("Unable to connect the shared store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return A description of the shared store connection for the options dialog.
+     */
+    private String sharedStoreStatus() {
+        Path path = sharedVariableFile.path();
+        return path != null ? "Connected to " + path + "." : "Not connected.";
+    }
+
+    /**
+     * Starts watching an external variable file.
+     *
+     * @param path The path entered in the options dialog.
+     */
+    private void watchFile(String path) {
+        if (path.isEmpty()) {
+            burpLogging.raiseInfoEvent("Unable to watch the file because the path is empty.");
+            return;
+        }
+        try {
+            watchedVariableFile.start(Path.of(path));
+        } catch (IOException | InvalidPathException e) {
+            burpLogging.raiseErrorEvent("Unable to watch the file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return A description of the watched file for the options dialog.
+     */
+    private String watchedFileStatus() {
+        Path path = watchedVariableFile.path();
+        return path != null ? "Watching " + path + "." : "Not watching a file.";
+    }
+
+    /**
+     * Replaces all table rows with the variables of the current snapshot and fires a single
+     * table change event, instead of removing and adding rows one at a time.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void reloadTable() {
+        Vector dataVector = variablesTableModel.getDataVector();
+        dataVector.clear();
+        for (Map.Entry<String, VariableData> entry : variableStore.snapshot().variables().entrySet())
+            dataVector.add(new Vector<>(Arrays.asList(buildRow(entry.getKey(), entry.getValue()))));
+        variablesTableModel.fireTableDataChanged();
+    }
+
+    /**
+     * Builds a listing of the variable contexts and the values each one holds.
+     *
+     * @return One line per context, sorted by name.
+     */
+    private String contextsSummary() {
+        List<String> contextNames = new ArrayList<>(variableStore.contexts().keySet());
+        if (contextNames.isEmpty())
+            return "No contexts have been used yet.";
+        contextNames.sort(null);
+        StringBuilder sb = new StringBuilder();
+        for (String contextName : contextNames) {
+            VariableContext context = variableStore.contexts().get(contextName);
+            if (context == null) continue;
+            Map<String, VariableData> values = context.values();
+            List<String> variableNames = new ArrayList<>(values.keySet());
+            variableNames.sort(null);
+            sb.append(contextName).append(": ").append(values.size()).append(" value(s)");
+            if (!variableNames.isEmpty())
+                sb.append(" - ").append(String.join(", ", variableNames));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds a listing of the token refresh recipes and when each variable is refreshed next.
+     *
+     * @return One line per recipe, sorted by variable name.
+     */
+    private String tokenRefreshSummary() {
+        Map<String, RefreshRecipe> recipes = tokenRefresher.recipes();
+        if (recipes.isEmpty())
+            return "No refresh requests have been set.";
+        SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, RefreshRecipe> entry : recipes.entrySet()) {
+            RefreshRecipe recipe = entry.getValue();
+            long nextRefreshMillis = tokenRefresher.nextRefreshMillis(entry.getKey());
+            sb.append(entry.getKey()).append(": ")
+                    .append(recipe.request().method()).append(' ').append(recipe.request().url())
+                    .append(" - ").append(recipe.isReactiveOnly() ? "on failure only" : recipe.usesJwtExpiry() ? "JWT expiry" : "TTL " + recipe.ttlSeconds() + " s");
+            if (recipe.failureStatus() > 0)
+                sb.append(", fails on status ").append(recipe.failureStatus());
+            if (!recipe.failurePattern().isEmpty())
+                sb.append(", fails on body /").append(recipe.failurePattern()).append('/');
+            sb.append(", next refresh ").append(nextRefreshMillis > 0 ? timeFormat.format(new Date(nextRefreshMillis)) : "not scheduled")
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds a listing of the extraction rules and the variables each one updates.
+     *
+     * @return One line per rule, sorted by rule name.
+     */
+    private String extractionRulesSummary() {
+        Map<String, ExtractionRule> rules = extractionRules.rules();
+        if (rules.isEmpty())
+            return "No extraction rules have been set.";
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, ExtractionRule> entry : rules.entrySet()) {
+            ExtractionRule rule = entry.getValue();
+            sb.append(entry.getKey()).append(": /").append(rule.regex()).append("/ -> ").append(rule.bindingsText());
+            if (extractorGuard.isRuleDisabled(entry.getKey(), rule.regex()))
+                sb.append(" (disabled after exceeding the time budget)");
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Asks for the name, regex and bindings of an extraction rule and adds it, replacing any rule
+     * of the same name. Every bound group must be a named group of the regex.
+     *
+     * @return True if a rule was added, false if the dialog was cancelled or the input was invalid.
+     */
+    private boolean configureExtractionRule() {
+        JTextField ruleNameField = new JTextField(20);
+        JTextField regexField = new JTextField(30);
+        JTextField bindingsField = new JTextField(30);
+
+        // Lay out the labels and fields in two columns
+        JPanel rulePanel = new JPanel(new GridLayout(0, 2, 5, 5));
+        rulePanel.add(new JLabel("Rule name:"));
+        rulePanel.add(ruleNameField);
+        rulePanel.add(new JLabel("Regex with named groups:"));
+        rulePanel.add(regexField);
+        rulePanel.add(new JLabel("Bindings (group=variable, ...):"));
+        rulePanel.add(bindingsField);
+
+        int response = JOptionPane.showConfirmDialog(burpFrame, rulePanel,
+                "Add extraction rule", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (response != JOptionPane.OK_OPTION)
+            return false;
+
+        // Validate the name, the regex and the bindings before adding the rule
+        String ruleName = ruleNameField.getText().trim();
+        String regex = regexField.getText();
+        if (ruleName.isEmpty()) {
+            burpLogging.raiseErrorEvent("Unable to add the extraction rule because the rule name is empty.");
+            return false;
+        }
+        if (extractorGuard.compile(regex) == null) {
+            burpLogging.raiseErrorEvent("Unable to add the extraction rule because the regex is invalid or has no capture group.");
+            return false;
+        }
+        List<String> namedGroups = ExtractionRule.namedGroups(regex);
+        Map<String, String> bindings = ExtractionRule.parseBindings(bindingsField.getText());
+        if (bindings != null && bindings.isEmpty()) {
+            // Without explicit bindings, each named group updates the variable of the same name
+            for (String group : namedGroups)
+                bindings.put(group, group);
+        }
+        if (bindings == null || bindings.isEmpty()) {
+            burpLogging.raiseErrorEvent("Unable to add the extraction rule because the regex has no named groups to bind.");
+            return false;
+        }
+        for (String group : bindings.keySet()) {
+            if (!namedGroups.contains(group)) {
+                burpLogging.raiseErrorEvent("Unable to add the extraction rule because the regex has no group named '" + group + "'.");
+                return false;
+            }
+        }
+        extractionRules.setRule(ruleName, new ExtractionRule(regex, bindings));
+        extractorGuard.forgetRule(ruleName);
+        burpLogging.logToOutput("Set extraction rule '" + ruleName + "' updating " + String.join(", ", bindings.values()) + ".");
+        return true;
+    }
+
+    /**
+     * Asks the user to pick a variable that has a token refresh recipe.
+     *
+     * @param message       The prompt shown in the dialog.
+     * @param title         The dialog title.
+     * @param messageType   The JOptionPane message type.
+     * @return The selected variable name, or null if there are no recipes or the dialog was cancelled.
+     */
+    private String selectRefreshRecipe(String message, String title, int messageType) {
+        List<String> variableNames = new ArrayList<>(tokenRefresher.recipes().keySet());
+        if (variableNames.isEmpty()) {
+            burpLogging.raiseInfoEvent("No refresh requests have been set.");
+            return null;
+        }
+        return (String) JOptionPane.showInputDialog(
+                burpFrame,
+                message,
+                title,
+                messageType,
+                null,
+                variableNames.toArray(),
+                variableNames.get(0));
+    }
+
+    /**
+     * Disables focusable property on all components of the given container.
+     * Note: This method does not recursively disable nested container components.
+     *
+     * @param container The container whose components should have their focusable property disabled.
+     */
+    private static void setAllComponentsNotFocusable(Container container) {
+        Component[] components = container.getComponents();
+
+        for (Component component : components) {
+            component.setFocusable(false);
+        }
+    }
+
+    /**
+     * Deletes the selected row from the table model and from the variable store.
+     */
+    private void deleteRow()
+    {
+        int selectedRow = variablesTable.getSelectedRow();
+        if (selectedRow != -1) {
+            // Get row index via convertRowIndexToModel to delete from a sorted table
+            int modelRow = variablesTable.convertRowIndexToModel(selectedRow);
+
+            // Remove the variable from the variable store
+            String variableKey = variablesTableModel.getValueAt(modelRow, 0).toString();
+            variableStore.remove(variableKey);
+            statistics.remove(variableKey);
+            extractorGuard.forgetVariable(variableKey);
+            tokenRefresher.removeRecipe(variableKey);
+            StoreUpdateEvent.emit(variableKey, "delete", null);
+
+            // Remove row from table
+            variablesTableModel.removeRow(modelRow);
+        }
+    }
+
+    /**
+     * Populates the table with data from the variable store.
+     */
+    private void populateTable()
+    {
+        // Iterate through the current snapshot of the variable store
+        for (Map.Entry<String, VariableData> entry : variableStore.snapshot().variables().entrySet()) {
+            // Add a row for each variable in the snapshot
+            variablesTableModel.addRow(buildRow(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Builds a table row for a variable, including its current usage statistics.
+     *
+     * @param variableKey   Variable name key.
+     * @param data          The variable's data.
+     * @return  The row values in model column order.
+     */
+    private Object[] buildRow(String variableKey, VariableData data) {
+        VariableStatistics.Counters counters = statistics.get(variableKey);
+        ValuePool pool = data.pool();
+        return new Object[]{variableKey, data.value(), data.regex(), data.extractorType(),
+                counters.substitutions(), counters.lastUsedMillis(), counters.lastTool(), counters.autoUpdates(),
+                pool != null ? pool.size() : 0, pool != null ? pool.strategy() + ": " + pool.usageSummary() : "",
+                expiresIn(data, System.currentTimeMillis())};
+    }
+
+    /**
+     * Formats the remaining lifetime of a variable's value for the table.
+     *
+     * @param data      The variable's data.
+     * @param nowMillis The current epoch millis.
+     * @return An empty string if the variable has no TTL, "expired", or the remaining seconds.
+     */
+    private static String expiresIn(VariableData data, long nowMillis) {
+        if (data.ttlMillis() <= 0)
+            return "";
+        if (data.isExpired(nowMillis))
+            return "expired";
+        return ((data.expiresAtMillis() - nowMillis + 999) / 1000) + " s";
+    }
+
+    /**
+     * Copies the remaining lifetimes into the table model.
+     * Only cells whose values changed are updated.
+     */
+    private void refreshExpiresInColumn() {
+        Map<String, VariableData> variables = variableStore.snapshot().variables();
+        long nowMillis = System.currentTimeMillis();
+        for (int row = 0; row < variablesTableModel.getRowCount(); row++) {
+            VariableData data = variables.get(variablesTableModel.getValueAt(row, 0).toString());
+            String value = data != null ? expiresIn(data, nowMillis) : "";
+            if (!value.equals(variablesTableModel.getValueAt(row, EXPIRES_IN_COLUMN)))
+                variablesTableModel.setValueAt(value, row, EXPIRES_IN_COLUMN);
+        }
+    }
+
+    /**
+     * Opens a dialog to set the TTL of the selected variable.
+     * The current value's lifetime restarts when the TTL is set; a TTL of 0 removes the expiry.
+     */
+    private void editTtl() {
+        int selectedRow = variablesTable.getSelectedRow();
+        if (selectedRow == -1) {
+            burpLogging.raiseInfoEvent("Select a variable to set its TTL.");
+            return;
+        }
+        String variableKey = variablesTableModel.getValueAt(variablesTable.convertRowIndexToModel(selectedRow), 0).toString();
+        VariableData data = variableStore.get(variableKey);
+        if (data == null) return;
+
+        String input = (String) JOptionPane.showInputDialog(
+                burpFrame,
+                "TTL in seconds for each new value of ((" + variableKey + ")). Enter 0 for a value that never expires.",
+                "Variable TTL",
+                JOptionPane.PLAIN_MESSAGE,
+                null,
+                null,
+                Long.toString(data.ttlMillis() / 1000));
+        if (input == null) return;
+        long ttlSeconds;
+        try {
+            ttlSeconds = Long.parseLong(input.trim());
+        } catch (NumberFormatException e) {
+            burpLogging.raiseErrorEvent("Unable to set the TTL because it is not a number.");
+            return;
+        }
+        if (ttlSeconds < 0) {
+            burpLogging.raiseErrorEvent("Unable to set the TTL because it is negative.");
+            return;
+        }
+        variableStore.update(variables -> {
+            VariableData current = variables.get(variableKey);
+            if (current != null) variables.put(variableKey, current.withTtl(ttlSeconds * 1000));
+        });
+        refreshExpiresInColumn();
+    }
+
+    /**
+     * Copies the current pool sizes and per-entry usage counts into the table model.
+     * Only cells whose values changed are updated.
+     */
+    private void refreshPoolColumns() {
+        Map<String, VariableData> variables = variableStore.snapshot().variables();
+        for (int row = 0; row < variablesTableModel.getRowCount(); row++) {
+            VariableData data = variables.get(variablesTableModel.getValueAt(row, 0).toString());
+            ValuePool pool = data != null ? data.pool() : null;
+            Object[] values = {pool != null ? pool.size() : 0, pool != null ? pool.strategy() + ": " + pool.usageSummary() : ""};
+            for (int i = 0; i < values.length; i++) {
+                int column = FIRST_POOL_COLUMN + i;
+                if (!values[i].equals(variablesTableModel.getValueAt(row, column)))
+                    variablesTableModel.setValueAt(values[i], row, column);
+            }
+        }
+    }
+
+    /**
+     * Opens a dialog to edit the value pool of the selected variable.
+     * Each non-empty line of the text area becomes one pool entry; removing all lines removes the pool.
+     */
+    private void editValuePool() {
+        int selectedRow = variablesTable.getSelectedRow();
+        if (selectedRow == -1) {
+            burpLogging.raiseInfoEvent("Select a variable to edit its value pool.");
+            return;
+        }
+        String variableKey = variablesTableModel.getValueAt(variablesTable.convertRowIndexToModel(selectedRow), 0).toString();
+        VariableData data = variableStore.get(variableKey);
+        if (data == null) return;
+
+        // Text area holding one pool value per line and the strategy selector
+        JTextArea valuesTextArea = new JTextArea(data.pool() != null ? String.join("\n", data.pool().values()) : "", 10, 40);
+        JComboBox<PoolStrategy> strategyComboBox = new JComboBox<>(PoolStrategy.values());
+        strategyComboBox.setSelectedItem(data.pool() != null ? data.pool().strategy() : PoolStrategy.ROUND_ROBIN);
+        JPanel poolPanel = new JPanel(new BorderLayout(0, 5));
+        poolPanel.add(new JLabel("One value per line. Leave empty to substitute the variable value again."), BorderLayout.NORTH);
+        poolPanel.add(new JScrollPane(valuesTextArea), BorderLayout.CENTER);
+        poolPanel.add(strategyComboBox, BorderLayout.SOUTH);
+
+        int response = JOptionPane.showConfirmDialog(burpFrame, poolPanel,
+                "Value pool for ((" + variableKey + "))", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (response != JOptionPane.OK_OPTION) return;
+
+        // Collect the non-empty lines as pool values
+        List<String> values = new ArrayList<>();
+        for (String line : valuesTextArea.getText().split("\\R")) {
+            if (!line.isEmpty()) values.add(line);
+        }
+        ValuePool pool = values.isEmpty() ? null : new ValuePool(values, (PoolStrategy) strategyComboBox.getSelectedItem());
+        variableStore.update(variables -> {
+            VariableData current = variables.get(variableKey);
+            if (current != null) variables.put(variableKey, current.withPool(pool));
+        });
+        StoreUpdateEvent.emit(variableKey, "pool", data.value());
+        refreshPoolColumns();
+    }
+
+    /**
+     * Copies the current usage statistics into the table model.
+     * Only cells whose values changed are updated, and nothing is done while the columns are hidden.
+     */
+    private void refreshUsageStatistics() {
+        if (!usageStatisticsTableColumns.isEmpty()) return;
+
+        for (int row = 0; row < variablesTableModel.getRowCount(); row++) {
+            VariableStatistics.Counters counters = statistics.get(variablesTableModel.getValueAt(row, 0).toString());
+            Object[] values = {counters.substitutions(), counters.lastUsedMillis(), counters.lastTool(), counters.autoUpdates()};
+            for (int i = 0; i < values.length; i++) {
+                int column = FIRST_USAGE_STATISTICS_COLUMN + i;
+                if (!values[i].equals(variablesTableModel.getValueAt(row, column)))
+                    variablesTableModel.setValueAt(values[i], row, column);
+            }
+        }
+    }
+
+    /**
+     * Shows or hides the usage statistics columns in the JTable without changing the TableModel.
+     *
+     * @param visible true to show the columns, false to hide them
+     */
+    private void setUsageStatisticsColumnsVisible(boolean visible) {
+        TableColumnModel cm = variablesTable.getColumnModel();
+        if (visible) {
+            // Re-add the stored columns at the end of the table, ahead of the pool and lifetime columns
+            for (TableColumn col : usageStatisticsTableColumns) {
+                cm.addColumn(col);
+                cm.moveColumn(cm.getColumnCount() - 1, cm.getColumnCount() - 1 - TRAILING_COLUMN_COUNT);
+            }
+            usageStatisticsTableColumns.clear();
+            refreshUsageStatistics();
+        } else {
+            // Find and remove the columns if present, storing them for later
+            for (int i = cm.getColumnCount() - 1; i >= 0; i--) {
+                TableColumn col = cm.getColumn(i);
+                if (col.getModelIndex() >= FIRST_USAGE_STATISTICS_COLUMN && col.getModelIndex() < FIRST_POOL_COLUMN) {
+                    usageStatisticsTableColumns.add(0, col);
+                    cm.removeColumn(col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all variables that have not been substituted since the given age.
+     * Variables that were never used are judged by when their statistics were created.
+     *
+     * @param ageLabel  The label of the selected age for the confirmation dialog.
+     * @param ageMillis The age in milliseconds.
+     */
+    private void pruneUnusedVariables(String ageLabel, long ageMillis) {
+        long cutoffMillis = System.currentTimeMillis() - ageMillis;
+
+        // Collect the model rows of unused variables
+        List<Integer> unusedRows = new ArrayList<>();
+        for (int row = 0; row < variablesTableModel.getRowCount(); row++) {
+            String variableKey = variablesTableModel.getValueAt(row, 0).toString();
+            if (statistics.get(variableKey).lastActivityMillis() < cutoffMillis)
+                unusedRows.add(row);
+        }
+
+        if (unusedRows.isEmpty()) {
+            JOptionPane.showMessageDialog(burpFrame,
+                    "No variables are unused since " + ageLabel + ".",
+                    "Prune unused variables",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        // Confirm that the user wants to remove the unused variables
+        int response = JOptionPane.showConfirmDialog(
+                burpFrame,
+                "Remove " + unusedRows.size() + " variable(s) that have not been used in the last " + ageLabel + "? " +
+                        "This operation is destructive and non-reversible.",
+                "Confirm prune unused variables",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+
+        if (response == JOptionPane.YES_OPTION) {
+            // Remove rows from the highest index down so the remaining indexes stay valid
+            for (int i = unusedRows.size() - 1; i >= 0; i--) {
+                int row = unusedRows.get(i);
+                String variableKey = variablesTableModel.getValueAt(row, 0).toString();
+                variableStore.remove(variableKey);
+                statistics.remove(variableKey);
+                extractorGuard.forgetVariable(variableKey);
+                tokenRefresher.removeRecipe(variableKey);
+                StoreUpdateEvent.emit(variableKey, "prune", null);
+                variablesTableModel.removeRow(row);
+            }
+        }
+    }
+
+    /**
+     * Shows or hides the auto-update regex column in the JTable without changing the TableModel.
+     *
+     * @param visible true to show the column, false to hide it
+     */
+    private void setVariableAutoUpdateColumnVisible(boolean visible) {
+        if (variablesTable == null) return;
+
+        TableColumnModel cm = variablesTable.getColumnModel();
+        if (visible) {
+            // If the column is already visible, nothing to do
+            boolean found = false;
+            for (int i = 0; i < cm.getColumnCount(); i++) {
+                if (COLUMN_NAME_VARIABLE_UPDATE_REGEX.equals(cm.getColumn(i).getHeaderValue())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found && this.variableAutoUpdateTableColumn != null) {
+                cm.addColumn(this.variableAutoUpdateTableColumn);
+                // move to the third position (index 2)
+                int last = cm.getColumnCount() - 1;
+                if (last != 2) cm.moveColumn(last, 2);
+                this.variableAutoUpdateTableColumn = null;
+                cm.addColumn(this.variableExtractorTypeTableColumn);
+                // move to the fourth position (index 3)
+                last = cm.getColumnCount() - 1;
+                if (last != 3) cm.moveColumn(last, 3);
+                this.variableExtractorTypeTableColumn = null;
+
+                // Add regex and extractor type components to panels and update layout to 4 columns
+                labelsPanel.add(variableRegexLabel);
+                labelsPanel.add(variableExtractorTypeLabel);
+                textFieldsPanel.add(variableRegexField);
+                textFieldsPanel.add(variableExtractorTypeComboBox);
+                labelsPanel.setLayout(new GridLayout(1, 4, 10, 0));
+                textFieldsPanel.setLayout(new GridLayout(1, 4, 10, 0));
+                labelsPanel.revalidate();
+                textFieldsPanel.revalidate();
+            }
+        } else {
+            // find and remove the columns if present, storing them for later
+            for (int i = cm.getColumnCount() - 1; i >= 0; i--) {
+                TableColumn col = cm.getColumn(i);
+                if (COLUMN_NAME_VARIABLE_UPDATE_REGEX.equals(col.getHeaderValue())) {
+                    this.variableAutoUpdateTableColumn = col;
+                    cm.removeColumn(col);
+                } else if (COLUMN_NAME_EXTRACTOR_TYPE.equals(col.getHeaderValue())) {
+                    this.variableExtractorTypeTableColumn = col;
+                    cm.removeColumn(col);
+                }
+            }
+
+            // Remove regex and extractor type components from panels and update layout to 2 columns
+            labelsPanel.remove(variableRegexLabel);
+            labelsPanel.remove(variableExtractorTypeLabel);
+            textFieldsPanel.remove(variableRegexField);
+            textFieldsPanel.remove(variableExtractorTypeComboBox);
+            variableRegexField.setText("");
+            variableExtractorTypeComboBox.setSelectedItem(ExtractorType.REGEX);
+            labelsPanel.setLayout(new GridLayout(1, 2, 10, 0));
+            textFieldsPanel.setLayout(new GridLayout(1, 2, 10, 0));
+            labelsPanel.revalidate();
+            textFieldsPanel.revalidate();
+        }
+    }
+
+    /**
+     * Derives the Tool Type enum value from the checkbox label.
+     *
+     * @param toolTitle The label of the tool checkbox.
+     * @return  The corresponding Tool Type enum value, or null if not found.
      */
     private String lookupToolTypeEnum(String toolTitle){
         // Loops through first element of each inner array
@@ -800,7 +2399,7 @@ public class BurpVariablesTab extends JPanel {
     }
 
     /**
-     * Imports variables from a CSV file into the variables map and table model.
+     * Imports variables from a CSV file into the variable store and table model.
      * This method opens a file chooser dialog to let the user select a CSV file for import.
      * It reads the CSV file and adds the variables to the map and table if they do not already exist.
      */
@@ -824,9 +2423,22 @@ public class BurpVariablesTab extends JPanel {
                 String[] line;
                 // Iterate through the CSV file
                 while ((line = reader.readNext()) != null) {
-                    // Validate and create a new variable with fields: key, value, regex (optional)
+                    // Validate and create a new variable with fields: key, value, regex (optional), extractor type (optional),
+                    // pool strategy and newline-separated pool values (optional), TTL in seconds (optional)
                     String regex = line.length > 2 ? line[2] : "";
-                    addVariable(line[0], line[1], regex);
+                    ExtractorType extractorType = ExtractorType.fromName(line.length > 3 ? line[3] : null);
+                    ValuePool pool = null;
+                    if (line.length > 5 && !line[5].isEmpty())
+                        pool = new ValuePool(List.of(line[5].split("\\R")), PoolStrategy.fromName(line[4]));
+                    long ttlMillis = 0;
+                    if (line.length > 6 && !line[6].isBlank()) {
+                        try {
+                            ttlMillis = Long.parseLong(line[6].trim()) * 1000;
+                        } catch (NumberFormatException e) {
+                            burpLogging.raiseErrorEvent("Ignoring the invalid TTL of imported variable '" + line[0] + "'.");
+                        }
+                    }
+                    addVariable(line[0], line[1], regex, extractorType, pool, ttlMillis);
                 }
             } catch (IOException | CsvValidationException e) {
                 burpLogging.raiseErrorEvent(e.toString());
@@ -835,7 +2447,7 @@ public class BurpVariablesTab extends JPanel {
     }
 
     /**
-     * Exports the variables stored in the variables map to a CSV file.
+     * Exports the variables stored in the variable store to a CSV file.
      * This method opens a file chooser dialog to let the user select a location to save the CSV file.
      * If the selected file already exists, the user is prompted to confirm overwriting the file.
      */
@@ -875,7 +2487,7 @@ public class BurpVariablesTab extends JPanel {
     }
 
     /**
-     * Writes the variables stored in the variables map to a specified file in CSV format.
+     * Writes the variables stored in the variable store to a specified file in CSV format.
      * This method uses a try-with-resources statement to ensure the CSVWriter is closed automatically.
      *
      * @param fileToExport  The file to which the variables will be exported.
@@ -883,10 +2495,13 @@ public class BurpVariablesTab extends JPanel {
     private void writeFile(File fileToExport){
         // Initialize a CSVWriter object in a try-with-resource statement
         try (CSVWriter writer = new CSVWriter(new FileWriter(fileToExport))) {
-            // Iterate through the variables map and write the fields to the CSVWriter
-            for (HashMap.Entry<String, VariableData> entry : variablesMap.entrySet()) {
+            // Iterate through a snapshot of the variable store and write the fields to the CSVWriter
+            for (Map.Entry<String, VariableData> entry : variableStore.snapshot().variables().entrySet()) {
                 VariableData data = entry.getValue();
-                writer.writeNext(new String[]{entry.getKey(), data.value(), data.regex()});
+                ValuePool pool = data.pool();
+                writer.writeNext(new String[]{entry.getKey(), data.value(), data.regex(), data.extractorType().name(),
+                        pool != null ? pool.strategy().name() : "", pool != null ? String.join("\n", pool.values()) : "",
+                        data.ttlMillis() > 0 ? Long.toString(data.ttlMillis() / 1000) : ""});
             }
         } catch (IOException e) {
             burpLogging.raiseErrorEvent(e.toString());
@@ -894,7 +2509,42 @@ public class BurpVariablesTab extends JPanel {
     }
 
     /**
-     * Clears all variables stored in the variables map and updates the table model.
+     * Exports a JSON snapshot of the metrics to a file chosen by the user.
+     * If the selected file already exists, the user is prompted to confirm overwriting the file.
+     */
+    private void exportMetrics(){
+        // Create a file chooser
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export metrics to a JSON file");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("JSON files", "json"));
+
+        // Open a save dialog window and wait for the user to select a file or cancel
+        if (fileChooser.showSaveDialog(burpFrame) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        File fileToExport = fileChooser.getSelectedFile();
+
+        // Check if user is overwriting an existing file
+        if (fileToExport.exists()) {
+            int response = JOptionPane.showConfirmDialog(
+                    burpFrame,
+                    "The file already exists. Do you want to replace it?",
+                    "Confirm overwrite", JOptionPane.YES_NO_OPTION,
+                    JOptionPane.WARNING_MESSAGE);
+            if (response != JOptionPane.YES_OPTION)
+                return;
+        }
+
+        // Take the snapshot and write it in a try-with-resource statement
+        try (FileWriter writer = new FileWriter(fileToExport)) {
+            writer.write(metrics.toJson());
+        } catch (IOException e) {
+            burpLogging.raiseErrorEvent(e.toString());
+        }
+    }
+
+    /**
+     * Clears all variables stored in the variable store and updates the table model.
      */
     private void clearVariables(){
         // Confirm that the user wants to clear the variables table
@@ -908,14 +2558,99 @@ public class BurpVariablesTab extends JPanel {
 
         // User has confirmed that they want to clear the table
         if (response == JOptionPane.YES_OPTION) {
-            // Clear all entries in the variables map
-            variablesMap.clear();
+            // Clear all entries in the variable store
+            for (String variableKey : variableStore.snapshot().variables().keySet()) {
+                StoreUpdateEvent.emit(variableKey, "clear", null);
+                extractorGuard.forgetVariable(variableKey);
+            }
+            variableStore.clear();
+            statistics.clear();
 
             // Remove all rows from the table model
             variablesTableModel.setRowCount(0);
         }
     }
 
+    /**
+     * Repaints the table so that newly disabled extractors show their warning.
+     * Thread-safe: uses SwingUtilities.invokeLater for EDT safety.
+     */
+    public void refreshExtractorWarnings() {
+        SwingUtilities.invokeLater(variablesTable::repaint);
+    }
+
+    /**
+     * Releases UI resources that would otherwise outlive the extension.
+     * Called by the extension's unloading handler.
+     */
+    public void extensionUnloaded() {
+        usageStatisticsRefreshTimer.stop();
+    }
+
+    /**
+     * Shows that a variable's value has expired without waiting for the next periodic refresh.
+     * Thread-safe: uses SwingUtilities.invokeLater for EDT safety.
+     *
+     * @param variableName The name of the expired variable.
+     */
+    public void variableExpired(String variableName) {
+        SwingUtilities.invokeLater(this::refreshExpiresInColumn);
+    }
+
+    /**
+     * Reloads the table after variables were replaced from outside the tab, such as by another
+     * instance through the shared store. A cell being edited is cancelled, since its variable
+     * may no longer exist.
+     * Thread-safe: uses SwingUtilities.invokeLater for EDT safety.
+     */
+    public void variablesReplaced() {
+        SwingUtilities.invokeLater(() -> {
+            if (variablesTable.isEditing())
+                variablesTable.getCellEditor().cancelCellEditing();
+            reloadTable();
+        });
+    }
+
+    /**
+     * Updates only the rows of the given variables from the current snapshot, adding rows for new
+     * variables and removing rows of deleted ones, without rebuilding the table.
+     * Thread-safe: uses SwingUtilities.invokeLater for EDT safety.
+     *
+     * @param variableNames The names of the variables that were added, changed or removed.
+     */
+    public void variablesChanged(Set<String> variableNames) {
+        SwingUtilities.invokeLater(() -> {
+            Map<String, VariableData> variables = variableStore.snapshot().variables();
+            Set<String> remaining = new HashSet<>(variableNames);
+
+            // Update or remove existing rows, iterating backwards so removals keep the indexes valid
+            for (int row = variablesTableModel.getRowCount() - 1; row >= 0; row--) {
+                Object variableName = variablesTableModel.getValueAt(row, 0);
+                if (!remaining.remove(variableName))
+                    continue;
+                VariableData data = variables.get(variableName);
+                if (data == null) {
+                    if (variablesTable.isEditing() && variablesTable.convertRowIndexToModel(variablesTable.getEditingRow()) == row)
+                        variablesTable.getCellEditor().cancelCellEditing();
+                    variablesTableModel.removeRow(row);
+                    continue;
+                }
+                Object[] values = buildRow((String) variableName, data);
+                for (int column = 1; column < values.length; column++) {
+                    if (!Objects.equals(values[column], variablesTableModel.getValueAt(row, column)))
+                        variablesTableModel.setValueAt(values[column], row, column);
+                }
+            }
+
+            // Add rows for new variables
+            for (String variableName : remaining) {
+                VariableData data = variables.get(variableName);
+                if (data != null)
+                    variablesTableModel.addRow(buildRow(variableName, data));
+            }
+        });
+    }
+
     /**
      * Updates the value of an existing variable in the table model.
      * This method should be called when a variable's value is updated externally
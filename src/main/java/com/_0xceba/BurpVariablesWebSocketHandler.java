@@ -0,0 +1,117 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.core.ToolType;
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.websocket.BinaryMessage;
+import burp.api.montoya.websocket.BinaryMessageAction;
+import burp.api.montoya.websocket.Direction;
+import burp.api.montoya.websocket.MessageHandler;
+import burp.api.montoya.websocket.TextMessage;
+import burp.api.montoya.websocket.TextMessageAction;
+import burp.api.montoya.websocket.WebSocketCreated;
+import burp.api.montoya.websocket.WebSocketCreatedHandler;
+
+import java.util.HashMap;
+
+/**
+ * Substitutes variables in outgoing WebSocket messages and auto-updates variables from incoming ones.
+ * Each socket created by an enabled tool gets a message handler that uses the HTTP handler's
+ * substitution and extraction engines against the socket's service. Since socket traffic is far
+ * more frequent than HTTP, outgoing messages are first scanned for "((" and only decoded and
+ * substituted when the delimiter is present.
+ */
+public class BurpVariablesWebSocketHandler implements WebSocketCreatedHandler {
+    private final HashMap<String, Boolean> toolsEnabledMap;
+    private final VariableStore variableStore;
+    private final BurpVariablesHTTPHandler httpHandler;
+
+    /**
+     * Constructs a new instance of BurpVariablesWebSocketHandler.
+     *
+     * @param variableStore     Store containing variable names and their corresponding VariableData.
+     * @param toolsEnabledMap   HashMap indicating which tools are enabled or disabled.
+     * @param httpHandler       The HTTP handler whose substitution and extraction engines are shared.
+     */
+    public BurpVariablesWebSocketHandler(VariableStore variableStore, HashMap<String, Boolean> toolsEnabledMap, BurpVariablesHTTPHandler httpHandler) {
+        this.variableStore = variableStore;
+        this.toolsEnabledMap = toolsEnabledMap;
+        this.httpHandler = httpHandler;
+    }
+
+    /**
+     * Registers a message handler on sockets opened by enabled tools. Proxy sockets are only
+     * handled when their upgrade request is in scope.
+     *
+     * @param webSocketCreated The created socket and its upgrade request.
+     */
+    @Override
+    public void handleWebSocketCreated(WebSocketCreated webSocketCreated) {
+        ToolType toolType = webSocketCreated.toolSource().toolType();
+        if (!toolsEnabledMap.getOrDefault(toolType.toolName(), false))
+            return;
+        if (toolType == ToolType.PROXY && !webSocketCreated.upgradeRequest().isInScope())
+            return;
+        HttpService service = webSocketCreated.upgradeRequest().httpService();
+        webSocketCreated.webSocket().registerMessageHandler(new SocketMessageHandler(toolType, service));
+    }
+
+    /**
+     * Handles the messages of a single socket.
+     */
+    private final class SocketMessageHandler implements MessageHandler {
+        private final ToolType toolType;
+        private final HttpService service;
+
+        SocketMessageHandler(ToolType toolType, HttpService service) {
+            this.toolType = toolType;
+            this.service = service;
+        }
+
+        @Override
+        public TextMessageAction handleTextMessage(TextMessage textMessage) {
+            String payload = textMessage.payload();
+            if (textMessage.direction() == Direction.SERVER_TO_CLIENT) {
+                autoUpdate(payload, null);
+                return TextMessageAction.continueWith(textMessage);
+            }
+
+            // Fast path: messages without the delimiter are passed through untouched
+            if (payload.indexOf("((") < 0)
+                return TextMessageAction.continueWith(textMessage);
+            String substituted = httpHandler.substituteMessage(payload, toolType, service);
+            return substituted == payload ? TextMessageAction.continueWith(textMessage) : TextMessageAction.continueWith(substituted);
+        }
+
+        @Override
+        public BinaryMessageAction handleBinaryMessage(BinaryMessage binaryMessage) {
+            ByteArray payload = binaryMessage.payload();
+            if (binaryMessage.direction() == Direction.SERVER_TO_CLIENT) {
+                autoUpdate(null, payload);
+                return BinaryMessageAction.continueWith(binaryMessage);
+            }
+
+            // Fast path: scan the raw bytes for the delimiter before decoding anything
+            if (payload.indexOf("((") < 0)
+                return BinaryMessageAction.continueWith(binaryMessage);
+            String message = payload.toString();
+            String substituted = httpHandler.substituteMessage(message, toolType, service);
+            return substituted == message ? BinaryMessageAction.continueWith(binaryMessage) : BinaryMessageAction.continueWith(ByteArray.byteArray(substituted));
+        }
+
+        /**
+         * Runs the auto-update extractors against an incoming message when auto-update is enabled.
+         * The text and bytes are only converted if an extractor needs them.
+         *
+         * @param text  The message text, or null for binary messages.
+         * @param bytes The message bytes, or null for text messages.
+         */
+        private void autoUpdate(String text, ByteArray bytes) {
+            if (!toolsEnabledMap.getOrDefault("variableAutoUpdate", false))
+                return;
+            httpHandler.autoUpdate(variableStore.snapshot().view(service), null, -1, 0, toolType,
+                    () -> text != null ? text : new ByteArrayCharSequence(bytes),
+                    () -> bytes != null ? bytes : ByteArray.byteArray(text));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+
+/**
+ * Read-only character view over the bytes of a message, one ISO-8859-1 character per byte.
+ * Unlike converting the message to a String, nothing is copied: characters are read from the
+ * message's own bytes on demand, and only the matched text is copied when a group is extracted.
+ */
+final class ByteArrayCharSequence implements CharSequence {
+    private final ByteArray bytes;
+    private final int offset;
+    private final int length;
+
+    /**
+     * Creates a view over all bytes of a message.
+     *
+     * @param bytes The message bytes.
+     */
+    ByteArrayCharSequence(ByteArray bytes) {
+        this(bytes, 0, bytes.length());
+    }
+
+    private ByteArrayCharSequence(ByteArray bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.getByte(offset + index) & 0xFF);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Copies a range of the view, which the regex engine uses to return a group.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = charAt(start + i);
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
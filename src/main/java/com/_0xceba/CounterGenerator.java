@@ -0,0 +1,57 @@
+package com._0xceba;
+
+import burp.api.montoya.persistence.PersistedObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Generator for ((counter:name)) references, returning 1, 2, 3, ... per counter name.
+ * Each counter is its own AtomicLong, so threads incrementing different counters never contend
+ * and every reference to the same counter receives a unique value.
+ */
+public class CounterGenerator implements VariableGenerator {
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public String generate(String argument, Function<String, String> variables) {
+        if (argument == null || argument.isEmpty()) return null;
+        AtomicLong counter = counters.get(argument);
+        if (counter == null) counter = counters.computeIfAbsent(argument, k -> new AtomicLong());
+        return Long.toString(counter.incrementAndGet());
+    }
+
+    /**
+     * Restores persisted counters. Each long is keyed by counter name and holds the last value returned.
+     *
+     * @param persistedCounters The child persistence object, or null if none was saved.
+     */
+    public void load(PersistedObject persistedCounters) {
+        if (persistedCounters == null) return;
+        for (String key : persistedCounters.longKeys()) {
+            Long value = persistedCounters.getLong(key);
+            if (value != null) counters.put(key, new AtomicLong(value));
+        }
+    }
+
+    /**
+     * Saves the counters to a new persistence object.
+     *
+     * @return The persistence object to store as a child object.
+     */
+    public PersistedObject save() {
+        PersistedObject persistedCounters = PersistedObject.persistedObject();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet())
+            persistedCounters.setLong(entry.getKey(), entry.getValue().get());
+        return persistedCounters;
+    }
+
+    /**
+     * Resets all counters so that each starts again at 1.
+     */
+    public void reset() {
+        counters.clear();
+    }
+}
@@ -0,0 +1,258 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Substitution inside request bodies that are compressed according to Content-Encoding or wrapped in base64.
+ * The body is decoded, substituted and re-encoded as a stream in fixed-size chunks, so the decoded
+ * body is never held in memory as a whole; only text that could be the start of a reference split
+ * across two chunks is carried over. Decoded bytes map one-to-one to ISO-8859-1 characters, so bytes
+ * outside the substituted references are passed through unchanged.
+ */
+final class EncodedBody {
+    private static final int CHUNK_CHARS = 8192;
+    // Longest unclosed reference held back while waiting for its closing delimiter
+    private static final int MAX_REFERENCE_CHARS = 4096;
+    // Leading bytes checked one at a time before the whole body is copied and checked
+    private static final int BASE64_PROBE_BYTES = 64;
+
+    private EncodedBody() {
+    }
+
+    /**
+     * A body encoding the stage can decode and re-encode.
+     */
+    enum Encoding {
+        GZIP,
+        DEFLATE,
+        BASE64,
+        BASE64_URL
+    }
+
+    /**
+     * Determines how a request body is encoded.
+     *
+     * @param request       The request.
+     * @param base64Bodies  Whether bodies that consist only of base64 characters are treated as base64-wrapped.
+     * @return The body encoding, or null if the body is empty or not encoded in a supported way.
+     */
+    static Encoding detect(HttpRequest request, boolean base64Bodies) {
+        String contentEncoding = request.headerValue("Content-Encoding");
+        if (contentEncoding != null) {
+            return switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+                case "gzip", "x-gzip" -> Encoding.GZIP;
+                case "deflate" -> Encoding.DEFLATE;
+                default -> null;
+            };
+        }
+        if (!base64Bodies)
+            return null;
+        ByteArray body = request.body();
+        return body.length() >= 4 ? base64Alphabet(body) : null;
+    }
+
+    /**
+     * Checks whether a body consists only of base64 characters with optional trailing padding.
+     * Most bodies contain a character outside the alphabet near their start, so a short prefix is
+     * checked byte by byte first, and only bodies that pass are copied in one call and checked whole.
+     *
+     * @return The base64 variant, or null if the body contains other characters or mixes both variants.
+     */
+    private static Encoding base64Alphabet(ByteArray body) {
+        int length = body.length();
+        int probe = Math.min(length, BASE64_PROBE_BYTES);
+        for (int i = 0; i < probe; i++) {
+            byte b = body.getByte(i);
+            if (base64Kind(b) < 0 && !(b == '=' && i >= length - 2)) return null;
+        }
+        return base64Alphabet(body.getBytes());
+    }
+
+    /**
+     * Checks whether bytes consist only of base64 characters with optional trailing padding.
+     *
+     * @return The base64 variant, or null if the bytes contain other characters or mix both variants.
+     */
+    static Encoding base64Alphabet(byte[] bytes) {
+        boolean standard = false;
+        boolean urlSafe = false;
+        int length = bytes.length;
+        int padding = 0;
+        while (padding < 2 && padding < length && bytes[length - 1 - padding] == '=') padding++;
+        for (int i = 0; i < length - padding; i++) {
+            int kind = base64Kind(bytes[i]);
+            if (kind < 0) return null;
+            if (kind == 1) standard = true;
+            else if (kind == 2) urlSafe = true;
+        }
+        if (standard && urlSafe) return null;
+        return urlSafe ? Encoding.BASE64_URL : Encoding.BASE64;
+    }
+
+    /**
+     * @return 0 for characters shared by both base64 variants, 1 for '+' and '/', 2 for '-' and '_', or -1 otherwise.
+     */
+    private static int base64Kind(byte b) {
+        if ((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')) return 0;
+        if (b == '+' || b == '/') return 1;
+        if (b == '-' || b == '_') return 2;
+        return -1;
+    }
+
+    /**
+     * Decodes a body, substitutes variable references in the decoded text and re-encodes it.
+     * Deflate bodies are tried as zlib streams first and as raw deflate streams second, and are
+     * re-encoded in the same format.
+     *
+     * @param body          The encoded body.
+     * @param encoding      The body encoding.
+     * @param substitution  Replaces the references in a piece of decoded text, returning the same
+     *                      instance if nothing was replaced.
+     * @return The re-encoded body, or null if nothing was replaced.
+     * @throws IOException If the body cannot be decoded.
+     */
+    static ByteArray substitute(ByteArray body, Encoding encoding, UnaryOperator<String> substitution) throws IOException {
+        byte[] substituted = substitute(body.getBytes(), encoding, substitution);
+        return substituted != null ? ByteArray.byteArray(substituted) : null;
+    }
+
+    /**
+     * Decodes body bytes, substitutes variable references in the decoded text and re-encodes them.
+     *
+     * @param bytes         The encoded body bytes.
+     * @param encoding      The body encoding.
+     * @param substitution  Replaces the references in a piece of decoded text, returning the same
+     *                      instance if nothing was replaced.
+     * @return The re-encoded bytes, or null if nothing was replaced.
+     * @throws IOException If the body cannot be decoded.
+     */
+    static byte[] substitute(byte[] bytes, Encoding encoding, UnaryOperator<String> substitution) throws IOException {
+        if (encoding == Encoding.DEFLATE) {
+            try {
+                return transcode(bytes, encoding, false, substitution);
+            } catch (ZipException e) {
+                return transcode(bytes, encoding, true, substitution);
+            }
+        }
+        return transcode(bytes, encoding, false, substitution);
+    }
+
+    private static byte[] transcode(byte[] bytes, Encoding encoding, boolean rawDeflate, UnaryOperator<String> substitution) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length + 64);
+        // Standard base64 keeps its padding unless the length proves it was stripped, since a padded
+        // body whose decoded length is a multiple of 3 has no trailing '='; URL-safe base64 is
+        // usually unpadded, so it is only padded if the original visibly was
+        boolean endsWithPadding = bytes.length > 0 && bytes[bytes.length - 1] == '=';
+        boolean padded = encoding == Encoding.BASE64 ? bytes.length % 4 == 0 || endsWithPadding : endsWithPadding;
+        boolean changed;
+        try (Reader reader = new InputStreamReader(decoder(encoding, rawDeflate, new ByteArrayInputStream(bytes)), StandardCharsets.ISO_8859_1);
+             Writer writer = new OutputStreamWriter(encoder(encoding, rawDeflate, padded, buffer), StandardCharsets.ISO_8859_1)) {
+            changed = transfer(reader, writer, substitution);
+        } catch (IllegalArgumentException e) {
+            // Thrown by the base64 decoder for malformed input
+            throw new IOException(e.getMessage(), e);
+        }
+        return changed ? buffer.toByteArray() : null;
+    }
+
+    private static InputStream decoder(Encoding encoding, boolean rawDeflate, InputStream in) throws IOException {
+        return switch (encoding) {
+            case GZIP -> new GZIPInputStream(in);
+            case DEFLATE -> new InflaterInputStream(in, new Inflater(rawDeflate));
+            case BASE64 -> Base64.getDecoder().wrap(in);
+            case BASE64_URL -> Base64.getUrlDecoder().wrap(in);
+        };
+    }
+
+    private static OutputStream encoder(Encoding encoding, boolean rawDeflate, boolean padded, OutputStream out) throws IOException {
+        return switch (encoding) {
+            case GZIP -> new GZIPOutputStream(out);
+            case DEFLATE -> new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, rawDeflate));
+            case BASE64 -> (padded ? Base64.getEncoder() : Base64.getEncoder().withoutPadding()).wrap(out);
+            case BASE64_URL -> (padded ? Base64.getUrlEncoder() : Base64.getUrlEncoder().withoutPadding()).wrap(out);
+        };
+    }
+
+    /**
+     * Copies decoded text from the reader to the writer chunk by chunk, substituting each chunk.
+     * Text from the first unclosed "((" onwards is held back until its closing delimiter arrives,
+     * so references that span a chunk boundary are substituted like any other.
+     *
+     * @return True if any chunk was changed by the substitution, false otherwise.
+     */
+    static boolean transfer(Reader reader, Writer writer, UnaryOperator<String> substitution) throws IOException {
+        char[] chunk = new char[CHUNK_CHARS];
+        StringBuilder pending = new StringBuilder();
+        boolean changed = false;
+        int read;
+        while ((read = reader.read(chunk)) >= 0) {
+            pending.append(chunk, 0, read);
+            int cut = safeCut(pending);
+            if (cut > 0) {
+                changed |= write(pending.substring(0, cut), writer, substitution);
+                pending.delete(0, cut);
+            }
+        }
+        if (!pending.isEmpty())
+            changed |= write(pending.toString(), writer, substitution);
+        return changed;
+    }
+
+    private static boolean write(String text, Writer writer, UnaryOperator<String> substitution) throws IOException {
+        String substituted = substitution.apply(text);
+        writer.write(substituted);
+        return substituted != text;
+    }
+
+    /**
+     * Finds the end of the text that can be substituted without splitting a reference that may
+     * continue in the next chunk.
+     *
+     * @param text The decoded text not yet written.
+     * @return The number of leading characters that can be substituted now.
+     */
+    private static int safeCut(StringBuilder text) {
+        int length = text.length();
+        int lastClose = text.lastIndexOf("))");
+        int open = text.indexOf("((", lastClose < 0 ? 0 : lastClose + 2);
+        int cut;
+        if (open >= 0)
+            cut = open;
+        else
+            // A trailing "(" may become the start of a reference
+            cut = length > 0 && text.charAt(length - 1) == '(' ? length - 1 : length;
+
+        // Text this long after "((" is not a variable reference, so stop holding it back, except
+        // from a later "((" that may still start a reference continuing in the next chunk
+        if (length - cut > MAX_REFERENCE_CHARS) {
+            int lastOpen = text.lastIndexOf("((");
+            if (lastOpen > cut && length - lastOpen <= MAX_REFERENCE_CHARS)
+                cut = lastOpen;
+            else
+                cut = text.charAt(length - 1) == '(' ? length - 1 : length;
+        }
+        return cut;
+    }
+}
@@ -0,0 +1,37 @@
+package com._0xceba;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the encoded forms of variable values used with modifiers, such as ((token|urlencode)).
+ * Entries are keyed by the reference text and remember the plain value they were computed from.
+ * The plain value of a static variable is the same String instance for as long as the variable
+ * and its nested references are unchanged, so the check is usually a reference comparison and a
+ * hot variable is encoded once per version rather than once per request.
+ */
+public class EncodedValueCache {
+    // Upper bound on cached references; the cache is emptied when it is exceeded
+    private static final int MAX_ENTRIES = 4096;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private record Entry(String plain, String encoded) {
+    }
+
+    /**
+     * Returns the encoded value of a variable, computing and caching it if the variable changed.
+     *
+     * @param reference The reference text between the delimiters, used as the cache key.
+     * @param plain     The variable's current value before encoding.
+     * @param modifiers The modifiers in application order.
+     * @return The encoded value.
+     */
+    public String encode(String reference, String plain, EncodingModifier[] modifiers) {
+        Entry entry = entries.get(reference);
+        if (entry != null && entry.plain().equals(plain)) return entry.encoded();
+
+        String encoded = EncodingModifier.applyAll(modifiers, plain);
+        if (entries.size() >= MAX_ENTRIES) entries.clear();
+        entries.put(reference, new Entry(plain, encoded));
+        return encoded;
+    }
+}
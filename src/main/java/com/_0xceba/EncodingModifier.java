@@ -0,0 +1,156 @@
+package com._0xceba;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodings that can be applied to a substituted value with the ((name|modifier|modifier)) syntax.
+ * Modifiers are applied from left to right.
+ */
+public enum EncodingModifier {
+    // Percent-encodes everything except the RFC 3986 unreserved characters
+    URLENCODE("urlencode"),
+    B64("b64"),
+    B64URL("b64url"),
+    // Escapes the value for use inside a JSON string, without adding quotes
+    JSON("json"),
+    HTML("html");
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    // Parsed valid modifier chains keyed by their text; invalid chains are not cached, since request text can contain any number of them
+    private static final ConcurrentHashMap<String, EncodingModifier[]> CHAIN_CACHE = new ConcurrentHashMap<>();
+    // Upper bound on cached chains; the cache is emptied when it is exceeded
+    private static final int MAX_CACHED_CHAINS = 4096;
+    private final String label;
+
+    EncodingModifier(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Parses a chain of modifiers separated by '|'. Valid chains are cached.
+     *
+     * @param chain The modifiers, for example "json|b64".
+     * @return The modifiers in application order, or null if any modifier is unknown.
+     */
+    public static EncodingModifier[] parseChain(String chain) {
+        EncodingModifier[] modifiers = CHAIN_CACHE.get(chain);
+        if (modifiers != null) return modifiers;
+        modifiers = parse(chain);
+        if (modifiers != null) {
+            if (CHAIN_CACHE.size() >= MAX_CACHED_CHAINS) CHAIN_CACHE.clear();
+            CHAIN_CACHE.put(chain, modifiers);
+        }
+        return modifiers;
+    }
+
+    private static EncodingModifier[] parse(String chain) {
+        String[] names = chain.split("\\|", -1);
+        EncodingModifier[] modifiers = new EncodingModifier[names.length];
+        for (int i = 0; i < names.length; i++) {
+            modifiers[i] = fromLabel(names[i].trim());
+            if (modifiers[i] == null) return null;
+        }
+        return modifiers;
+    }
+
+    private static EncodingModifier fromLabel(String label) {
+        for (EncodingModifier modifier : values()) {
+            if (modifier.label.equals(label)) return modifier;
+        }
+        return null;
+    }
+
+    /**
+     * Applies a chain of modifiers to a value.
+     *
+     * @param modifiers The modifiers in application order.
+     * @param value     The value to encode.
+     * @return The encoded value.
+     */
+    public static String applyAll(EncodingModifier[] modifiers, String value) {
+        for (EncodingModifier modifier : modifiers) value = modifier.apply(value);
+        return value;
+    }
+
+    /**
+     * Applies this modifier to a value.
+     *
+     * @param value The value to encode.
+     * @return The encoded value.
+     */
+    public String apply(String value) {
+        return switch (this) {
+            case URLENCODE -> urlEncode(value);
+            case B64 -> Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+            case B64URL -> Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+            case JSON -> jsonEscape(value);
+            case HTML -> htmlEscape(value);
+        };
+    }
+
+    private static String urlEncode(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(bytes.length * 3);
+        for (byte b : bytes) {
+            if ((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')
+                    || b == '-' || b == '.' || b == '_' || b == '~') {
+                sb.append((char) b);
+            } else {
+                sb.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String jsonEscape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\b' -> sb.append("\\b");
+                case '\f' -> sb.append("\\f");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String htmlEscape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&#39;");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the name used in references.
+     *
+     * @return The modifier label.
+     */
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,31 @@
+package com._0xceba;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event emitted when an auto-update extractor runs against a response.
+ * The event duration covers the match attempt only.
+ */
+@Name("com._0xceba.Extraction")
+@Label("Variable Extraction")
+@Category("Burp Variables")
+@Description("Auto-update extractor run against an HTTP response")
+@StackTrace(false)
+public class ExtractionEvent extends jdk.jfr.Event {
+    @Label("Variable")
+    String variable;
+
+    @Label("Tool")
+    String tool;
+
+    @Label("Region Scanned")
+    @Description("Number of response characters the extractor ran against")
+    long regionScanned;
+
+    @Label("Matched")
+    boolean matched;
+}
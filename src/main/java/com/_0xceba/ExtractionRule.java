@@ -0,0 +1,75 @@
+package com._0xceba;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An auto-update regex that updates several variables from one match.
+ * Each named capture group of the regex is bound to a variable, so a single scan of a login
+ * response can extract, for example, the access token, refresh token and lifetime together.
+ *
+ * @param regex     The regex with named capture groups such as {@code (?<access>[^"]+)}.
+ * @param bindings  The variable each named group updates, keyed by group name, in binding order.
+ */
+public record ExtractionRule(String regex, Map<String, String> bindings) {
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    /**
+     * Makes the bindings unmodifiable while keeping their order.
+     */
+    public ExtractionRule {
+        bindings = Collections.unmodifiableMap(new LinkedHashMap<>(bindings));
+    }
+
+    /**
+     * Parses bindings written as comma-separated {@code group=variable} pairs. A group name on its
+     * own binds the group to the variable of the same name.
+     *
+     * @param text The bindings text.
+     * @return The bindings keyed by group name, or null if a pair is malformed.
+     */
+    public static Map<String, String> parseBindings(String text) {
+        Map<String, String> bindings = new LinkedHashMap<>();
+        for (String pair : text.split(",")) {
+            if (pair.isBlank()) continue;
+            int equals = pair.indexOf('=');
+            String group = (equals < 0 ? pair : pair.substring(0, equals)).trim();
+            String variableName = (equals < 0 ? group : pair.substring(equals + 1)).trim();
+            if (group.isEmpty() || variableName.isEmpty()) return null;
+            bindings.put(group, variableName);
+        }
+        return bindings;
+    }
+
+    /**
+     * @return The bindings as comma-separated {@code group=variable} pairs.
+     */
+    public String bindingsText() {
+        List<String> pairs = new ArrayList<>(bindings.size());
+        bindings.forEach((group, variableName) -> pairs.add(group + "=" + variableName));
+        return String.join(", ", pairs);
+    }
+
+    /**
+     * Lists the named capture groups declared in a regex.
+     *
+     * @param regex The regex.
+     * @return The group names, in declaration order.
+     */
+    public static List<String> namedGroups(String regex) {
+        List<String> groups = new ArrayList<>();
+        Matcher matcher = NAMED_GROUP.matcher(regex);
+        while (matcher.find()) {
+            // Skip "\(?<" sequences, which are literal parentheses rather than groups
+            int backslashes = 0;
+            for (int i = matcher.start() - 1; i >= 0 && regex.charAt(i) == '\\'; i--) backslashes++;
+            if (backslashes % 2 == 0) groups.add(matcher.group(1));
+        }
+        return groups;
+    }
+}
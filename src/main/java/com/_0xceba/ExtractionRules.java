@@ -0,0 +1,79 @@
+package com._0xceba;
+
+import burp.api.montoya.persistence.PersistedObject;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The named extraction rules that update several variables from one regex match.
+ * Rules are published as an immutable map, so response threads read them with a single volatile
+ * read while the options dialog replaces them.
+ */
+public class ExtractionRules {
+    private volatile Map<String, ExtractionRule> rules = Map.of();
+
+    /**
+     * @return The rules keyed by rule name, sorted by name.
+     */
+    public Map<String, ExtractionRule> rules() {
+        return rules;
+    }
+
+    /**
+     * Adds a rule or replaces the rule of the same name.
+     *
+     * @param ruleName  The rule name.
+     * @param rule      The rule.
+     */
+    public synchronized void setRule(String ruleName, ExtractionRule rule) {
+        TreeMap<String, ExtractionRule> next = new TreeMap<>(rules);
+        next.put(ruleName, rule);
+        rules = Collections.unmodifiableMap(next);
+    }
+
+    /**
+     * Removes a rule.
+     *
+     * @param ruleName The rule name.
+     */
+    public synchronized void removeRule(String ruleName) {
+        TreeMap<String, ExtractionRule> next = new TreeMap<>(rules);
+        next.remove(ruleName);
+        rules = Collections.unmodifiableMap(next);
+    }
+
+    /**
+     * Restores the rules from a persisted object holding one child object per rule name with the
+     * regex and the bindings text.
+     *
+     * @param persistedRules The persisted object, or null if none was saved.
+     */
+    public void load(PersistedObject persistedRules) {
+        if (persistedRules == null)
+            return;
+        for (String ruleName : persistedRules.childObjectKeys()) {
+            PersistedObject persistedRule = persistedRules.getChildObject(ruleName);
+            String regex = persistedRule != null ? persistedRule.getString("regex") : null;
+            Map<String, String> bindings = persistedRule != null && persistedRule.getString("bindings") != null
+                    ? ExtractionRule.parseBindings(persistedRule.getString("bindings")) : null;
+            if (regex != null && bindings != null)
+                setRule(ruleName, new ExtractionRule(regex, bindings));
+        }
+    }
+
+    /**
+     * @return A persisted object holding one child object per rule.
+     */
+    public PersistedObject save() {
+        PersistedObject persistedRules = PersistedObject.persistedObject();
+        rules.forEach((ruleName, rule) -> {
+            PersistedObject persistedRule = PersistedObject.persistedObject();
+            persistedRule.setString("regex", rule.regex());
+            persistedRule.setString("bindings", rule.bindingsText());
+            persistedRules.setChildObject(ruleName, persistedRule);
+        });
+        return persistedRules;
+    }
+}
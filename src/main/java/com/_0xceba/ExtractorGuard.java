@@ -0,0 +1,357 @@
+package com._0xceba;
+
+import burp.api.montoya.logging.Logging;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Runs user-entered auto-update regexes against responses with a time budget.
+ * Matching is performed against a deadline-aware CharSequence, so catastrophic backtracking
+ * aborts the match instead of pinning a Burp HTTP thread. Extractors that repeatedly exceed
+ * the budget are disabled until their regex is edited.
+ * Structured extractors run in linear time and are only compiled and cached here.
+ * Very large inputs are searched in overlapping chunks in parallel by {@link ParallelScanner},
+ * with all chunks sharing one deadline that grows with the input, so a slow but healthy regex on a
+ * huge body does not collect strikes meant for catastrophic backtracking.
+ * Compiled patterns and extractors are kept in bounded least-recently-used caches, so regexes that
+ * were edited, deleted or seen only once are eventually dropped. Budget overruns are forgotten when
+ * their variable or rule is edited or removed.
+ */
+public class ExtractorGuard {
+    public static final int DEFAULT_TIME_BUDGET_MILLIS = 100;
+    // Number of budget overruns after which an extractor is disabled
+    public static final int MAX_STRIKES = 3;
+    // Overlap between the chunks of a parallel search, which bounds the length of a match spanning two chunks
+    public static final int DEFAULT_MAX_MATCH_LENGTH = 64 * 1024;
+    // Number of compiled patterns and extractors kept in each cache
+    static final int MAX_CACHED_EXTRACTORS = 1024;
+
+    private final Logging burpLogging;
+    // Compiled patterns keyed by regex; null-free, invalid regexes map to INVALID_PATTERN
+    private final Map<String, Pattern> patternCache = boundedCache(MAX_CACHED_EXTRACTORS);
+    // Compiled structured extractors keyed by type and expression; invalid expressions map to INVALID_EXTRACTOR
+    private final Map<String, StructuredExtractor> structuredExtractorCache = boundedCache(MAX_CACHED_EXTRACTORS);
+    // Budget overruns keyed by variable name and regex so that editing the regex starts over
+    private final ConcurrentHashMap<String, AtomicInteger> strikesMap = new ConcurrentHashMap<>();
+    private volatile int timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+    private volatile int maxMatchLength = DEFAULT_MAX_MATCH_LENGTH;
+    private static final Pattern INVALID_PATTERN = Pattern.compile("");
+    private static final StructuredExtractor INVALID_EXTRACTOR = body -> null;
+
+    /**
+     * Constructs a new extractor guard.
+     *
+     * @param burpLogging The logging interface from the Montoya API.
+     */
+    public ExtractorGuard(Logging burpLogging) {
+        this.burpLogging = burpLogging;
+    }
+
+    /**
+     * Creates a synchronized map that evicts its least recently used entry once it holds more than
+     * the given number of entries.
+     *
+     * @param maxEntries The maximum number of entries.
+     * @return The map.
+     */
+    private static <V> Map<String, V> boundedCache(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public int timeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public void setTimeBudgetMillis(int timeBudgetMillis) {
+        this.timeBudgetMillis = Math.max(1, timeBudgetMillis);
+    }
+
+    public int maxMatchLength() {
+        return maxMatchLength;
+    }
+
+    public void setMaxMatchLength(int maxMatchLength) {
+        this.maxMatchLength = Math.max(1, maxMatchLength);
+    }
+
+    /**
+     * Returns the compiled pattern for a regex if it is valid and has at least one capture group.
+     * Compiled patterns are cached, so each distinct regex is compiled only once.
+     *
+     * @param regex The regex pattern.
+     * @return The compiled pattern, or null if the regex is invalid or has no capture group.
+     */
+    public Pattern compile(String regex) {
+        Pattern pattern = patternCache.computeIfAbsent(regex, r -> {
+            try {
+                Pattern compiled = Pattern.compile(r);
+                return compiled.matcher("").groupCount() > 0 ? compiled : INVALID_PATTERN;
+            } catch (PatternSyntaxException e) {
+                return INVALID_PATTERN;
+            }
+        });
+        return pattern == INVALID_PATTERN ? null : pattern;
+    }
+
+    /**
+     * Returns the compiled structured extractor for an expression if it is valid.
+     * Compiled extractors are cached, so each distinct expression is compiled only once.
+     *
+     * @param type          The extractor type; must not be REGEX.
+     * @param expression    The extractor expression.
+     * @return The compiled extractor, or null if the expression is invalid.
+     */
+    public StructuredExtractor compileStructured(ExtractorType type, String expression) {
+        StructuredExtractor extractor = structuredExtractorCache.computeIfAbsent(type.name() + '\u0000' + expression, k -> {
+            try {
+                return StructuredExtractor.compile(type, expression);
+            } catch (IllegalArgumentException e) {
+                return INVALID_EXTRACTOR;
+            }
+        });
+        return extractor == INVALID_EXTRACTOR ? null : extractor;
+    }
+
+    /**
+     * Checks whether a variable's extractor has been disabled after repeated budget overruns.
+     *
+     * @param variableName  The variable name.
+     * @param regex         The variable's regex.
+     * @return True if the extractor is disabled, false otherwise.
+     */
+    public boolean isDisabled(String variableName, String regex) {
+        AtomicInteger strikes = strikesMap.get(strikesKey(variableName, regex));
+        return strikes != null && strikes.get() >= MAX_STRIKES;
+    }
+
+    /**
+     * Runs a regex against the input within the time budget and returns the first capture group.
+     *
+     * @param variableName  The variable name, used to track budget overruns.
+     * @param pattern       The compiled pattern.
+     * @param input         The text to search.
+     * @return The first capture group of the first match, or null if there is no match or the budget was exceeded.
+     */
+    public String extract(String variableName, Pattern pattern, CharSequence input) {
+        long deadlineNanos = deadlineNanos(input);
+        try {
+            if (input.length() >= ParallelScanner.PARALLEL_THRESHOLD)
+                return ParallelScanner.find(pattern, input, maxMatchLength, (text, cancelled) -> new DeadlineCharSequence(text, deadlineNanos, cancelled), matcher -> matcher.group(1));
+            Matcher matcher = pattern.matcher(new DeadlineCharSequence(input, deadlineNanos));
+            return matcher.find() ? matcher.group(1) : null;
+        } catch (BudgetExceededException e) {
+            recordOverrun("variable '" + variableName + "'", strikesKey(variableName, pattern.pattern()));
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether an extraction rule has been disabled after repeated budget overruns.
+     *
+     * @param ruleName  The rule name.
+     * @param regex     The rule's regex.
+     * @return True if the rule is disabled, false otherwise.
+     */
+    public boolean isRuleDisabled(String ruleName, String regex) {
+        AtomicInteger strikes = strikesMap.get(ruleStrikesKey(ruleName, regex));
+        return strikes != null && strikes.get() >= MAX_STRIKES;
+    }
+
+    /**
+     * Runs an extraction rule's regex against the input within the time budget and returns its named groups.
+     *
+     * @param ruleName  The rule name, used to track budget overruns.
+     * @param pattern   The compiled pattern.
+     * @param input     The text to search.
+     * @param groups    The names of the groups to return.
+     * @return The value of each group that took part in the first match, keyed by group name, or null
+     *         if there is no match or the budget was exceeded.
+     */
+    public Map<String, String> extractGroups(String ruleName, Pattern pattern, CharSequence input, Collection<String> groups) {
+        long deadlineNanos = deadlineNanos(input);
+        try {
+            if (input.length() >= ParallelScanner.PARALLEL_THRESHOLD)
+                return ParallelScanner.find(pattern, input, maxMatchLength, (text, cancelled) -> new DeadlineCharSequence(text, deadlineNanos, cancelled), matcher -> groupValues(matcher, groups));
+            Matcher matcher = pattern.matcher(new DeadlineCharSequence(input, deadlineNanos));
+            return matcher.find() ? groupValues(matcher, groups) : null;
+        } catch (BudgetExceededException e) {
+            recordOverrun("extraction rule '" + ruleName + "'", ruleStrikesKey(ruleName, pattern.pattern()));
+            return null;
+        }
+    }
+
+    /**
+     * Computes the deadline of an extractor search. Inputs searched in parallel get one budget per
+     * {@link ParallelScanner#PARALLEL_THRESHOLD} characters, since their chunks share the deadline
+     * and the pool, and a single budget would make large bodies look like runaway regexes.
+     *
+     * @param input The text to search.
+     * @return The deadline in System.nanoTime() units.
+     */
+    private long deadlineNanos(CharSequence input) {
+        long budgets = input.length() >= ParallelScanner.PARALLEL_THRESHOLD
+                ? ((long) input.length() + ParallelScanner.PARALLEL_THRESHOLD - 1) / ParallelScanner.PARALLEL_THRESHOLD
+                : 1;
+        return System.nanoTime() + budgets * timeBudgetMillis * 1_000_000L;
+    }
+
+    /**
+     * Reads named groups from a matcher positioned at a match.
+     *
+     * @param matcher   The matcher.
+     * @param groups    The names of the groups to read.
+     * @return The value of each group that took part in the match, keyed by group name.
+     */
+    private static Map<String, String> groupValues(Matcher matcher, Collection<String> groups) {
+        Map<String, String> values = new HashMap<>();
+        for (String group : groups) {
+            try {
+                String value = matcher.group(group);
+                if (value != null)
+                    values.put(group, value);
+            } catch (IllegalArgumentException e) {
+                // The regex has no group of this name; the binding is skipped
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Counts a budget overrun and disables the extractor once it reaches the strike limit.
+     *
+     * @param extractorDescription  The extractor as shown in the log, such as "variable 'token'".
+     * @param key                   The strikes key of the extractor.
+     */
+    private void recordOverrun(String extractorDescription, String key) {
+        int strikes = strikesMap.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+        if (strikes == MAX_STRIKES) {
+            burpLogging.logToError("Disabled auto-update regex for " + extractorDescription + " after "
+                    + MAX_STRIKES + " matches exceeded the " + timeBudgetMillis + " ms time budget.");
+        } else if (strikes < MAX_STRIKES) {
+            burpLogging.logToError("Auto-update regex for " + extractorDescription
+                    + " exceeded the " + timeBudgetMillis + " ms time budget (" + strikes + "/" + MAX_STRIKES + ").");
+        }
+    }
+
+    /**
+     * Searches the input for a regex within the time budget. Overruns count as no match and do not
+     * add strikes, since the pattern is not an auto-update extractor.
+     *
+     * @param variableName  The variable the pattern belongs to, used in the log message on overrun.
+     * @param pattern       The compiled pattern.
+     * @param input         The text to search.
+     * @return True if the pattern was found within the budget, false otherwise.
+     */
+    public boolean find(String variableName, Pattern pattern, CharSequence input) {
+        try {
+            return pattern.matcher(new DeadlineCharSequence(input, System.nanoTime() + timeBudgetMillis * 1_000_000L)).find();
+        } catch (BudgetExceededException e) {
+            burpLogging.logToError("Pattern for variable '" + variableName + "' exceeded the " + timeBudgetMillis + " ms time budget.");
+            return false;
+        }
+    }
+
+    /**
+     * Forgets the budget overruns of a variable's extractors, for example after the variable was
+     * edited or deleted, so its strikes do not outlive the regexes they were counted for.
+     *
+     * @param variableName The variable name.
+     */
+    public void forgetVariable(String variableName) {
+        String prefix = strikesKey(variableName, "");
+        strikesMap.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Forgets the budget overruns of an extraction rule, for example after the rule was replaced or removed.
+     *
+     * @param ruleName The rule name.
+     */
+    public void forgetRule(String ruleName) {
+        String prefix = ruleStrikesKey(ruleName, "");
+        strikesMap.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static String strikesKey(String variableName, String regex) {
+        return variableName + '\u0000' + regex;
+    }
+
+    private static String ruleStrikesKey(String ruleName, String regex) {
+        // Rule names share the strikes map with variable names, so they get their own prefix
+        return "\u0001" + strikesKey(ruleName, regex);
+    }
+
+    /**
+     * Thrown from within a match when the deadline has passed.
+     * Stack traces are not filled in because the exception is only used for control flow.
+     */
+    private static final class BudgetExceededException extends RuntimeException {
+        BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * CharSequence wrapper that aborts the regex engine once a deadline has passed.
+     * The clock is only read every CHECK_INTERVAL character reads to keep the overhead low.
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+        private static final int CHECK_INTERVAL = 4096;
+        private final CharSequence delegate;
+        private final long deadlineNanos;
+        // Set for chunks of a parallel search; true once the chunk's result can no longer win
+        private final BooleanSupplier cancelled;
+        private int readsUntilCheck = CHECK_INTERVAL;
+
+        DeadlineCharSequence(CharSequence delegate, long deadlineNanos) {
+            this(delegate, deadlineNanos, null);
+        }
+
+        DeadlineCharSequence(CharSequence delegate, long deadlineNanos, BooleanSupplier cancelled) {
+            this.delegate = delegate;
+            this.deadlineNanos = deadlineNanos;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--readsUntilCheck == 0) {
+                readsUntilCheck = CHECK_INTERVAL;
+                if (cancelled != null && cancelled.getAsBoolean()) throw new ParallelScanner.CancelledException();
+                if (System.nanoTime() - deadlineNanos > 0) throw new BudgetExceededException();
+            }
+            return delegate.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return delegate.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            // Used for group extraction after a match; not subject to the deadline
+            return delegate.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
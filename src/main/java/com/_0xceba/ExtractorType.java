@@ -0,0 +1,42 @@
+package com._0xceba;
+
+/**
+ * Kinds of auto-update extractors that can be attached to a variable.
+ */
+public enum ExtractorType {
+    REGEX("Regex"),
+    JSON_PATH("JSONPath"),
+    XPATH("XPath");
+
+    private final String label;
+
+    ExtractorType(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Looks up an extractor type by its persisted name.
+     *
+     * @param name The enum constant name, or null.
+     * @return The matching extractor type, or REGEX if the name is null or unknown.
+     */
+    public static ExtractorType fromName(String name) {
+        if (name != null) {
+            for (ExtractorType type : values()) {
+                if (type.name().equals(name) || type.label.equals(name))
+                    return type;
+            }
+        }
+        return REGEX;
+    }
+
+    /**
+     * Returns the label shown in the UI.
+     *
+     * @return The display label.
+     */
+    @Override
+    public String toString() {
+        return label;
+    }
+}
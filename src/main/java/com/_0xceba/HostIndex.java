@@ -0,0 +1,135 @@
+package com._0xceba;
+
+import burp.api.montoya.http.HttpService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-snapshot index of host-scoped variables.
+ * A variable named {@code name@pattern}, for example {@code token@api.prod.example.com}, overrides
+ * {@code name} for requests to services matching the pattern. The index resolves each distinct
+ * service once per snapshot and caches the resulting view, so requests to a known service cost a
+ * single map lookup and no pattern matching. Variables of older projects whose names already had
+ * this form are renamed on load, see {@link VariablePersistence#migrateScopedLookingNames(Map)}.
+ */
+public final class HostIndex {
+    // Upper bound on cached services per snapshot; the cache is emptied when it is exceeded
+    private static final int MAX_CACHED_SERVICES = 1024;
+    private final VariableView globalView;
+    private final List<ScopedEntry> scopedEntries;
+    private final ConcurrentHashMap<ServiceKey, VariableView> views = new ConcurrentHashMap<>();
+
+    private record ScopedEntry(String baseName, String key, HostPattern pattern) {
+    }
+
+    private record ServiceKey(String host, int port, boolean secure) {
+    }
+
+    /**
+     * Builds the index for the variables of one snapshot.
+     *
+     * @param variables The snapshot's variables.
+     * @param resolved  The snapshot's flattened values.
+     */
+    public HostIndex(Map<String, VariableData> variables, ResolvedVariables resolved) {
+        this.globalView = new VariableView(variables, resolved, Map.of());
+        List<ScopedEntry> entries = new ArrayList<>();
+        for (String key : variables.keySet()) {
+            ScopedEntry entry = parseKey(key);
+            if (entry != null) entries.add(entry);
+        }
+        this.scopedEntries = entries;
+    }
+
+    /**
+     * Builds the index for a snapshot whose keys name the same host-scoped variables as the
+     * previous snapshot, reusing the parsed entries instead of parsing every key again. The
+     * cached views are not reused, since they hold the previous values.
+     *
+     * @param previous  The index of the previous snapshot.
+     * @param variables The snapshot's variables.
+     * @param resolved  The snapshot's flattened values.
+     */
+    HostIndex(HostIndex previous, Map<String, VariableData> variables, ResolvedVariables resolved) {
+        this.globalView = new VariableView(variables, resolved, Map.of());
+        this.scopedEntries = previous.scopedEntries;
+    }
+
+    /**
+     * Checks whether a store key names a host-scoped value.
+     *
+     * @param key The store key.
+     * @return True if the key has the form name@pattern with a valid pattern.
+     */
+    public static boolean isScopedKey(String key) {
+        return parseKey(key) != null;
+    }
+
+    /**
+     * Returns the variable name a host-scoped value overrides.
+     *
+     * @param key The store key.
+     * @return The base name, or the key itself if it is not host-scoped.
+     */
+    public static String baseName(String key) {
+        ScopedEntry entry = parseKey(key);
+        return entry != null ? entry.baseName() : key;
+    }
+
+    private static ScopedEntry parseKey(String key) {
+        int at = key.lastIndexOf('@');
+        if (at <= 0 || at == key.length() - 1) return null;
+        HostPattern pattern = HostPattern.parse(key.substring(at + 1));
+        return pattern != null ? new ScopedEntry(key.substring(0, at), key, pattern) : null;
+    }
+
+    /**
+     * Returns the view for requests to a service.
+     *
+     * @param service The request's service; may be null.
+     * @return The global view if no host-scoped value applies, otherwise a cached view with the scoped values applied.
+     */
+    public VariableView view(HttpService service) {
+        if (scopedEntries.isEmpty() || service == null || service.host() == null) return globalView;
+        ServiceKey serviceKey = new ServiceKey(service.host().toLowerCase(Locale.ROOT), service.port(), service.secure());
+        VariableView view = views.get(serviceKey);
+        if (view != null) return view;
+        if (views.size() >= MAX_CACHED_SERVICES) views.clear();
+        return views.computeIfAbsent(serviceKey, this::buildView);
+    }
+
+    /**
+     * @return The view of the global variables without host-scoped overrides.
+     */
+    public VariableView globalView() {
+        return globalView;
+    }
+
+    private VariableView buildView(ServiceKey serviceKey) {
+        // Pick the most specific matching entry for each base name
+        Map<String, ScopedEntry> best = new HashMap<>();
+        for (ScopedEntry entry : scopedEntries) {
+            if (!entry.pattern().matches(serviceKey.host(), serviceKey.port(), serviceKey.secure())) continue;
+            ScopedEntry current = best.get(entry.baseName());
+            if (current == null || entry.pattern().specificity() > current.pattern().specificity())
+                best.put(entry.baseName(), entry);
+        }
+        if (best.isEmpty()) return globalView;
+
+        // Overlay the scoped values on the global variables and flatten nested references for this service
+        HashMap<String, VariableData> variables = new HashMap<>(globalView.variables());
+        HashMap<String, String> scopedKeys = new HashMap<>();
+        for (ScopedEntry entry : best.values()) {
+            variables.put(entry.baseName(), globalView.variables().get(entry.key()));
+            scopedKeys.put(entry.baseName(), entry.key());
+        }
+        Map<String, VariableData> unmodifiableVariables = Collections.unmodifiableMap(variables);
+        return new VariableView(unmodifiableVariables, VariableGraph.resolve(unmodifiableVariables), Collections.unmodifiableMap(scopedKeys));
+    }
+}
@@ -0,0 +1,75 @@
+package com._0xceba;
+
+import java.util.Locale;
+
+/**
+ * Pattern binding a host-scoped variable to the services it applies to.
+ * Supported forms are {@code host}, {@code *.domain} (any subdomain), either one followed by
+ * {@code :port}, and any of those prefixed with {@code http://} or {@code https://}.
+ *
+ * @param scheme    "http", "https", or null for either.
+ * @param host      The lowercase host, or the lowercase domain suffix including the leading dot for wildcards.
+ * @param wildcard  True if the host matches subdomains of the suffix.
+ * @param port      The port, or -1 for any port.
+ */
+public record HostPattern(String scheme, String host, boolean wildcard, int port) {
+    /**
+     * Parses a host pattern.
+     *
+     * @param pattern The pattern text.
+     * @return The parsed pattern, or null if the text is not a valid pattern.
+     */
+    public static HostPattern parse(String pattern) {
+        String rest = pattern.trim().toLowerCase(Locale.ROOT);
+        String scheme = null;
+        int schemeEnd = rest.indexOf("://");
+        if (schemeEnd >= 0) {
+            scheme = rest.substring(0, schemeEnd);
+            if (!scheme.equals("http") && !scheme.equals("https")) return null;
+            rest = rest.substring(schemeEnd + 3);
+        }
+        if (rest.endsWith("/")) rest = rest.substring(0, rest.length() - 1);
+
+        int port = -1;
+        int colon = rest.lastIndexOf(':');
+        if (colon >= 0) {
+            try {
+                port = Integer.parseInt(rest.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (port < 1 || port > 65535) return null;
+            rest = rest.substring(0, colon);
+        }
+
+        boolean wildcard = rest.startsWith("*.");
+        String host = wildcard ? rest.substring(1) : rest;
+        if (host.isEmpty() || host.equals(".") || host.indexOf('*') >= 0 || host.indexOf('/') >= 0
+                || host.chars().anyMatch(Character::isWhitespace)) return null;
+        return new HostPattern(scheme, host, wildcard, port);
+    }
+
+    /**
+     * Checks whether a service matches this pattern.
+     *
+     * @param serviceHost   The lowercase host of the service.
+     * @param servicePort   The port of the service.
+     * @param secure        True if the service uses HTTPS.
+     * @return True if the service matches.
+     */
+    public boolean matches(String serviceHost, int servicePort, boolean secure) {
+        if (scheme != null && scheme.equals("https") != secure) return false;
+        if (port != -1 && port != servicePort) return false;
+        return wildcard ? serviceHost.endsWith(host) : serviceHost.equals(host);
+    }
+
+    /**
+     * Ranks patterns so that the most specific match wins: an exact host beats a wildcard,
+     * a longer wildcard beats a shorter one, and a port or scheme breaks ties.
+     *
+     * @return The specificity score; higher is more specific.
+     */
+    public int specificity() {
+        return (wildcard ? 0 : 1 << 20) + (host.length() << 2) + (port != -1 ? 2 : 0) + (scheme != null ? 1 : 0);
+    }
+}
@@ -0,0 +1,80 @@
+package com._0xceba;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size, lock-free table that carries per-request state from the request handler to the
+ * response handler, keyed by Burp's message id.
+ * Entries live in slot {@code messageId % SLOTS}; if more than SLOTS requests are in flight at once,
+ * older entries are overwritten and their responses fall back to the global defaults. Memory use
+ * is constant no matter how many requests never receive a response.
+ */
+public class InFlightRequests {
+    private static final int SLOTS = 8192;
+    private final AtomicReferenceArray<InFlightRequest> slots = new AtomicReferenceArray<>(SLOTS);
+
+    /**
+     * State recorded for a request while it is in flight.
+     *
+     * @param messageId The Burp message id shared by the request and its response.
+     * @param context   The variable context the request was bound to, or null for the global variables.
+     * @param refresh   True if the request was sent by the token refresher, whose responses skip auto-updates.
+     * @param guardedVariables  The substituted variables whose responses are checked for a failure signature.
+     * @param sentMillis        The epoch millis at which the request was sent.
+     * @param sendSequence      The send order of the request, which orders auto-updates from its response, or 0 if not stamped.
+     */
+    public record InFlightRequest(int messageId, VariableContext context, boolean refresh, List<String> guardedVariables, long sentMillis, long sendSequence) {
+        public InFlightRequest(int messageId, VariableContext context, boolean refresh) {
+            this(messageId, context, refresh, List.of(), System.currentTimeMillis(), 0);
+        }
+
+        public InFlightRequest withSendSequence(long newSendSequence) {
+            return new InFlightRequest(messageId, context, refresh, guardedVariables, sentMillis, newSendSequence);
+        }
+    }
+
+    /**
+     * Records the state of a request that is about to be sent.
+     *
+     * @param inFlightRequest The request state.
+     */
+    public void put(InFlightRequest inFlightRequest) {
+        slots.set(slot(inFlightRequest.messageId()), inFlightRequest);
+    }
+
+    /**
+     * Stamps a request that is about to be sent with its send order, recording it if no other
+     * state was recorded for the request.
+     *
+     * @param messageId     The Burp message id of the request.
+     * @param sendSequence  The send order of the request.
+     */
+    public void stamp(int messageId, long sendSequence) {
+        int slot = slot(messageId);
+        while (true) {
+            InFlightRequest recorded = slots.get(slot);
+            InFlightRequest stamped = recorded != null && recorded.messageId() == messageId
+                    ? recorded.withSendSequence(sendSequence)
+                    : new InFlightRequest(messageId, null, false, List.of(), System.currentTimeMillis(), sendSequence);
+            if (slots.compareAndSet(slot, recorded, stamped)) return;
+        }
+    }
+
+    /**
+     * Removes and returns the state recorded for a message id.
+     *
+     * @param messageId The Burp message id of the response.
+     * @return The recorded state, or null if none was recorded or it was overwritten.
+     */
+    public InFlightRequest take(int messageId) {
+        int slot = slot(messageId);
+        InFlightRequest inFlightRequest = slots.get(slot);
+        if (inFlightRequest == null || inFlightRequest.messageId() != messageId) return null;
+        return slots.compareAndSet(slot, inFlightRequest, null) ? inFlightRequest : null;
+    }
+
+    private static int slot(int messageId) {
+        return Math.floorMod(messageId, SLOTS);
+    }
+}
@@ -0,0 +1,305 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming extractor for JSONPath-like expressions such as {@code $.data.token},
+ * {@code $.items[0].id} or {@code $['odd key']}.
+ * The body is walked once with a byte-level tokenizer; members and elements that are not on
+ * the path are skipped without decoding, and the scan stops as soon as the target is reached.
+ * String targets are unescaped; any other target is returned as its raw JSON text.
+ */
+public final class JsonPathExtractor implements StructuredExtractor {
+    // Each segment is either a byte[] member name (UTF-8) or an Integer array index
+    private final Object[] segments;
+
+    private JsonPathExtractor(Object[] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Compiles a JSONPath-like expression.
+     *
+     * @param path The expression, starting with "$".
+     * @return The compiled extractor.
+     * @throws IllegalArgumentException If the expression is invalid.
+     */
+    public static JsonPathExtractor compile(String path) {
+        if (path == null || !path.startsWith("$"))
+            throw new IllegalArgumentException("JSONPath must start with $");
+
+        List<Object> segments = new ArrayList<>();
+        int i = 1;
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                // Dot notation member name, up to the next '.' or '['
+                int end = i + 1;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') end++;
+                if (end == i + 1)
+                    throw new IllegalArgumentException("Empty member name at index " + i);
+                segments.add(path.substring(i + 1, end).getBytes(StandardCharsets.UTF_8));
+                i = end;
+            } else if (c == '[') {
+                int close = path.indexOf(']', i);
+                if (close < 0)
+                    throw new IllegalArgumentException("Unclosed [ at index " + i);
+                String inner = path.substring(i + 1, close).trim();
+                if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')
+                        && inner.charAt(inner.length() - 1) == inner.charAt(0)) {
+                    // Bracket notation member name
+                    segments.add(inner.substring(1, inner.length() - 1).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    // Array index
+                    try {
+                        int index = Integer.parseInt(inner);
+                        if (index < 0) throw new NumberFormatException();
+                        segments.add(index);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid array index: " + inner);
+                    }
+                }
+                i = close + 1;
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' at index " + i);
+            }
+        }
+        return new JsonPathExtractor(segments.toArray());
+    }
+
+    @Override
+    public String extract(ByteArray body) {
+        Cursor cursor = new Cursor(body);
+        for (Object segment : segments) {
+            boolean found = segment instanceof Integer index
+                    ? cursor.enterElement(index)
+                    : cursor.enterMember((byte[]) segment);
+            if (!found) return null;
+        }
+        return cursor.readValue();
+    }
+
+    /**
+     * Byte-level JSON tokenizer positioned on a value.
+     * Malformed input makes the navigation methods return false rather than throw.
+     */
+    private static final class Cursor {
+        private final ByteArray bytes;
+        private final int length;
+        private int pos;
+
+        Cursor(ByteArray bytes) {
+            this.bytes = bytes;
+            this.length = bytes.length();
+        }
+
+        /**
+         * Moves from an object to the value of the named member.
+         *
+         * @param name The member name in UTF-8.
+         * @return True if the member exists, false otherwise.
+         */
+        boolean enterMember(byte[] name) {
+            skipWhitespace();
+            if (peek() != '{') return false;
+            pos++;
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') return false;
+                int keyStart = pos + 1;
+                int keyEnd = stringEnd(pos);
+                if (keyEnd < 0) return false;
+                boolean matches = keyEquals(keyStart, keyEnd, name);
+                pos = keyEnd + 1;
+                skipWhitespace();
+                if (peek() != ':') return false;
+                pos++;
+                skipWhitespace();
+                if (matches) return true;
+                if (!skipValue()) return false;
+                skipWhitespace();
+                if (peek() != ',') return false;
+                pos++;
+            }
+        }
+
+        /**
+         * Moves from an array to the element at the given index.
+         *
+         * @param index The zero-based element index.
+         * @return True if the element exists, false otherwise.
+         */
+        boolean enterElement(int index) {
+            skipWhitespace();
+            if (peek() != '[') return false;
+            pos++;
+            for (int i = 0; ; i++) {
+                skipWhitespace();
+                if (peek() == ']') return false;
+                if (i == index) return true;
+                if (!skipValue()) return false;
+                skipWhitespace();
+                if (peek() != ',') return false;
+                pos++;
+            }
+        }
+
+        /**
+         * Reads the value at the cursor.
+         *
+         * @return The unescaped string, the raw text of any other value, or null if malformed.
+         */
+        String readValue() {
+            skipWhitespace();
+            if (peek() == '"') {
+                int end = stringEnd(pos);
+                return end < 0 ? null : decodeString(pos + 1, end);
+            }
+            int start = pos;
+            if (!skipValue() || pos == start) return null;
+            return new String(bytes.subArray(start, pos).getBytes(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Skips the value at the cursor, leaving the cursor just after it.
+         *
+         * @return True if a complete value was skipped, false if the input ended.
+         */
+        private boolean skipValue() {
+            int c = peek();
+            if (c == '"') {
+                int end = stringEnd(pos);
+                if (end < 0) return false;
+                pos = end + 1;
+                return true;
+            }
+            if (c == '{' || c == '[') {
+                // Skip nested containers by depth without tracking their structure
+                int depth = 0;
+                while (pos < length) {
+                    byte b = bytes.getByte(pos);
+                    if (b == '"') {
+                        int end = stringEnd(pos);
+                        if (end < 0) return false;
+                        pos = end;
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                    } else if (b == '}' || b == ']') {
+                        if (--depth == 0) {
+                            pos++;
+                            return true;
+                        }
+                    }
+                    pos++;
+                }
+                return false;
+            }
+            // Number, true, false or null: runs until a structural character or whitespace
+            while (pos < length) {
+                byte b = bytes.getByte(pos);
+                if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\r' || b == '\n') break;
+                pos++;
+            }
+            return true;
+        }
+
+        /**
+         * Finds the closing quote of the string starting at the given opening quote.
+         *
+         * @param quote The index of the opening quote.
+         * @return The index of the closing quote, or -1 if the string is unterminated.
+         */
+        private int stringEnd(int quote) {
+            for (int i = quote + 1; i < length; i++) {
+                byte b = bytes.getByte(i);
+                if (b == '\\') i++;
+                else if (b == '"') return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Compares a raw key against a member name, decoding the key only if it contains escapes.
+         */
+        private boolean keyEquals(int start, int end, byte[] name) {
+            boolean escaped = false;
+            if (end - start == name.length) {
+                for (int i = 0; i < name.length; i++) {
+                    byte b = bytes.getByte(start + i);
+                    if (b == '\\') {
+                        escaped = true;
+                        break;
+                    }
+                    if (b != name[i]) return false;
+                }
+                if (!escaped) return true;
+            } else {
+                // A key of a different raw length can only match if it contains escapes
+                for (int i = start; i < end && !escaped; i++) escaped = bytes.getByte(i) == '\\';
+                if (!escaped) return false;
+            }
+            return Arrays.equals(decodeString(start, end).getBytes(StandardCharsets.UTF_8), name);
+        }
+
+        /**
+         * Decodes the contents of a JSON string, resolving escape sequences.
+         *
+         * @param start The index after the opening quote.
+         * @param end   The index of the closing quote.
+         * @return The decoded string.
+         */
+        private String decodeString(int start, int end) {
+            StringBuilder sb = new StringBuilder(end - start);
+            int runStart = start;
+            for (int i = start; i < end; i++) {
+                if (bytes.getByte(i) != '\\') continue;
+                appendUtf8(sb, runStart, i);
+                if (++i >= end) break;
+                byte escape = bytes.getByte(i);
+                switch (escape) {
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (i + 4 < end) {
+                            String hex = new String(bytes.subArray(i + 1, i + 5).getBytes(), StandardCharsets.US_ASCII);
+                            try {
+                                sb.append((char) Integer.parseInt(hex, 16));
+                            } catch (NumberFormatException e) {
+                                sb.append("\\u").append(hex);
+                            }
+                            i += 4;
+                        }
+                    }
+                    default -> sb.append((char) escape);
+                }
+                runStart = i + 1;
+            }
+            appendUtf8(sb, runStart, end);
+            return sb.toString();
+        }
+
+        private void appendUtf8(StringBuilder sb, int start, int end) {
+            if (end > start) sb.append(new String(bytes.subArray(start, end).getBytes(), StandardCharsets.UTF_8));
+        }
+
+        private void skipWhitespace() {
+            while (pos < length) {
+                byte b = bytes.getByte(pos);
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n') return;
+                pos++;
+            }
+        }
+
+        private int peek() {
+            return pos < length ? bytes.getByte(pos) : -1;
+        }
+    }
+}
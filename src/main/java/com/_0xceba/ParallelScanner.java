@@ -0,0 +1,171 @@
+package com._0xceba;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first regex match in very large messages by scanning chunks in parallel.
+ * The message is split into chunks that are searched on a fork-join pool. Each chunk's region
+ * extends past its end by the maximum match length, so a match that starts in the chunk is found
+ * in full even if it crosses into the next one; only matches starting in the chunk count, so
+ * matches in the overlap are not reported twice. The earliest chunk with a match wins, which gives
+ * the same result as a sequential search for any match no longer than the overlap. Chunks after
+ * the earliest known match or failure are skipped, and chunks already running are cancelled.
+ * A failure such as a budget overrun only ends the search if no earlier chunk matched, just as a
+ * sequential search would have returned that match before reaching the failing text.
+ * The pool is shut down when the extension is unloaded; searches still running then scan their
+ * chunks one after another on the calling thread.
+ */
+final class ParallelScanner {
+    // Inputs shorter than this are searched sequentially, where the fork-join overhead is not worth it
+    static final int PARALLEL_THRESHOLD = 4 << 20;
+    private static final int MIN_CHUNK_CHARS = 1 << 20;
+    // Created on first use, since most projects never see a response this large
+    private static volatile ForkJoinPool pool;
+    // Set once the extension is unloaded, so that no new pool is created afterwards
+    private static boolean shutDown;
+
+    private ParallelScanner() {
+    }
+
+    /**
+     * Finds the first match of a pattern and reads the result from it.
+     *
+     * @param pattern       The compiled pattern.
+     * @param input         The text to search.
+     * @param overlap       The maximum match length; each chunk's region extends this far past its end.
+     * @param guard         Wraps the input for each chunk, for example to enforce a deadline; called once per
+     *                      chunk with a condition that becomes true once the chunk's result cannot win.
+     *                      The wrapper should then throw {@link CancelledException}.
+     * @param result        Reads the result from the matcher positioned at the first match; runs on a pool thread.
+     * @return The result of the first match, or null if there is no match.
+     * @throws RuntimeException The exception thrown while searching the earliest failing chunk, such as a
+     *                          budget overrun, if no earlier chunk matched.
+     */
+    static <T> T find(Pattern pattern, CharSequence input, int overlap, BiFunction<CharSequence, BooleanSupplier, CharSequence> guard,
+                      Function<Matcher, T> result) {
+        int length = input.length();
+        ForkJoinPool pool = pool();
+        int parallelism = pool != null ? pool.getParallelism() : Runtime.getRuntime().availableProcessors();
+        int chunkChars = Math.max(MIN_CHUNK_CHARS, (int) Math.min(Integer.MAX_VALUE, ((long) length + parallelism * 4L - 1) / (parallelism * 4L)));
+        int chunks = (int) (((long) length + chunkChars - 1) / chunkChars);
+
+        AtomicInteger firstMatchChunk = new AtomicInteger(Integer.MAX_VALUE);
+        AtomicReferenceArray<T> results = new AtomicReferenceArray<>(chunks);
+        AtomicInteger firstFailureChunk = new AtomicInteger(Integer.MAX_VALUE);
+        AtomicReferenceArray<RuntimeException> failures = new AtomicReferenceArray<>(chunks);
+        IntConsumer scanner = chunk -> {
+            // A match or failure in an earlier chunk decides the search, so this chunk's result cannot win
+            BooleanSupplier superseded = () -> firstMatchChunk.get() < chunk || firstFailureChunk.get() < chunk;
+            if (superseded.getAsBoolean())
+                return;
+            int start = (int) ((long) chunk * chunkChars);
+            int end = (int) Math.min(length, (long) start + chunkChars);
+            int regionEnd = (int) Math.min(length, (long) end + overlap);
+            try {
+                // Transparent bounds let lookarounds see past the region, as they would in a sequential search
+                Matcher matcher = pattern.matcher(guard.apply(input, superseded));
+                matcher.useTransparentBounds(true);
+                matcher.useAnchoringBounds(false);
+                matcher.region(start, regionEnd);
+                if (matcher.find() && matcher.start() < end) {
+                    results.set(chunk, result.apply(matcher));
+                    firstMatchChunk.accumulateAndGet(chunk, Math::min);
+                }
+            } catch (CancelledException e) {
+                // An earlier chunk already decided the search
+            } catch (RuntimeException e) {
+                failures.set(chunk, e);
+                firstFailureChunk.accumulateAndGet(chunk, Math::min);
+            }
+        };
+        if (pool != null) {
+            pool.invoke(new ChunkTask(0, chunks, scanner));
+        } else {
+            for (int chunk = 0; chunk < chunks; chunk++) scanner.accept(chunk);
+        }
+
+        // The earliest chunk that matched or failed decides, as it would for a sequential search
+        int matchChunk = firstMatchChunk.get();
+        int failureChunk = firstFailureChunk.get();
+        if (matchChunk < failureChunk)
+            return results.get(matchChunk);
+        if (failureChunk != Integer.MAX_VALUE)
+            throw failures.get(failureChunk);
+        return null;
+    }
+
+    /**
+     * Thrown from within a chunk's match once an earlier chunk has decided the search.
+     * Stack traces are not filled in because the exception is only used for control flow.
+     */
+    static final class CancelledException extends RuntimeException {
+        CancelledException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Shuts down the pool and stops new searches from creating another one.
+     * Called when the extension is unloaded.
+     */
+    static synchronized void shutdown() {
+        shutDown = true;
+        ForkJoinPool current = pool;
+        pool = null;
+        if (current != null) current.shutdown();
+    }
+
+    /**
+     * @return The pool, created on first use, or null once the scanner has been shut down.
+     */
+    private static ForkJoinPool pool() {
+        ForkJoinPool current = pool;
+        if (current == null) {
+            synchronized (ParallelScanner.class) {
+                current = pool;
+                if (current == null && !shutDown)
+                    pool = current = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Splits a range of chunks in halves until single chunks remain, and scans those.
+     * The first half is scanned by the current thread, so earlier chunks tend to finish first.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer scanner;
+
+        ChunkTask(int from, int to, IntConsumer scanner) {
+            this.from = from;
+            this.to = to;
+            this.scanner = scanner;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                scanner.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask second = new ChunkTask(middle, to, scanner);
+            second.fork();
+            new ChunkTask(from, middle, scanner).compute();
+            second.join();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com._0xceba;
+
+/**
+ * Strategies for choosing a value from a variable's value pool.
+ */
+public enum PoolStrategy {
+    ROUND_ROBIN("Round-robin"),
+    RANDOM("Random"),
+    LEAST_RECENTLY_USED("Least recently used"),
+    STICKY_HOST("Sticky per host");
+
+    private final String label;
+
+    PoolStrategy(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Looks up a pool strategy by its persisted name.
+     *
+     * @param name The enum constant name, or null.
+     * @return The matching strategy, or ROUND_ROBIN if the name is null or unknown.
+     */
+    public static PoolStrategy fromName(String name) {
+        if (name != null) {
+            for (PoolStrategy strategy : values()) {
+                if (strategy.name().equals(name) || strategy.label.equals(name))
+                    return strategy;
+            }
+        }
+        return ROUND_ROBIN;
+    }
+
+    /**
+     * Returns the label shown in the UI.
+     *
+     * @return The display label.
+     */
+    @Override
+    public String toString() {
+        return label;
+    }
+}
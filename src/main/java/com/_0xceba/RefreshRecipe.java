@@ -0,0 +1,65 @@
+package com._0xceba;
+
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+/**
+ * Instructions for refreshing a variable that holds an expiring token.
+ * The stored login request is sent shortly before the token expires, or as soon as a response to
+ * a request using the token matches the failure signature, and the extractor reads the new value
+ * from its response.
+ *
+ * @param request        The login or refresh request to send; it may reference other variables.
+ * @param extractorType  The kind of extractor used on the response.
+ * @param expression     The extractor expression; regexes must have a capture group.
+ * @param ttlSeconds     The token lifetime after each refresh, 0 to read the expiry from the JWT "exp" claim,
+ *                       or a negative value to refresh only when the failure signature is seen.
+ * @param leadSeconds    How many seconds before expiry the refresh is sent.
+ * @param failureStatus  The response status code that signals an expired token, or 0 for any status.
+ * @param failurePattern A regex that signals an expired token when found in the response body, or an empty string.
+ * @param waitMillis     How long requests using the variable wait for a refresh triggered by a failure.
+ */
+public record RefreshRecipe(HttpRequest request, ExtractorType extractorType, String expression, long ttlSeconds, long leadSeconds,
+                            int failureStatus, String failurePattern, long waitMillis) {
+    public static final long DEFAULT_LEAD_SECONDS = 30;
+    public static final long DEFAULT_WAIT_MILLIS = 5000;
+
+    /**
+     * Constructs a recipe that only refreshes proactively.
+     *
+     * @param request       The login or refresh request to send.
+     * @param extractorType The kind of extractor used on the response.
+     * @param expression    The extractor expression.
+     * @param ttlSeconds    The token lifetime, or 0 to read the expiry from the JWT "exp" claim.
+     * @param leadSeconds   How many seconds before expiry the refresh is sent.
+     */
+    public RefreshRecipe(HttpRequest request, ExtractorType extractorType, String expression, long ttlSeconds, long leadSeconds) {
+        this(request, extractorType, expression, ttlSeconds, leadSeconds, 0, "", DEFAULT_WAIT_MILLIS);
+    }
+
+    /**
+     * Checks whether the expiry is read from the token itself rather than a fixed lifetime.
+     *
+     * @return True if the JWT "exp" claim is used, false otherwise.
+     */
+    public boolean usesJwtExpiry() {
+        return ttlSeconds == 0;
+    }
+
+    /**
+     * Checks whether the variable is only refreshed when the failure signature is seen.
+     *
+     * @return True if no proactive refresh is scheduled, false otherwise.
+     */
+    public boolean isReactiveOnly() {
+        return ttlSeconds < 0;
+    }
+
+    /**
+     * Checks whether a failure signature is configured.
+     *
+     * @return True if a status code or body pattern signals an expired token, false otherwise.
+     */
+    public boolean hasFailureSignature() {
+        return failureStatus > 0 || (failurePattern != null && !failurePattern.isEmpty());
+    }
+}
@@ -0,0 +1,139 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The regions of a request selected by a substitution scope, as text to scan.
+ * Only the selected regions are decoded. When the request is rebuilt, substituted regions are
+ * re-encoded and everything else, typically the bulk of a large body, is copied from the original
+ * bytes with System.arraycopy.
+ */
+final class RequestRegions {
+    private final ByteArray bytes;
+    private final int bodyOffset;
+    // Start and end byte offsets of the selected regions, in request order
+    private final int[] starts;
+    private final int[] ends;
+    private final List<String> texts;
+
+    private RequestRegions(ByteArray bytes, int bodyOffset, int[] starts, int[] ends, List<String> texts) {
+        this.bytes = bytes;
+        this.bodyOffset = bodyOffset;
+        this.starts = starts;
+        this.ends = ends;
+        this.texts = texts;
+    }
+
+    /**
+     * Selects the regions of a request. The request line and headers form one region when both
+     * are selected; the body is always a separate region so its length change can be tracked.
+     *
+     * @param request   The request.
+     * @param scope     The parts of the request to select.
+     * @return The selected regions.
+     */
+    static RequestRegions select(HttpRequest request, SubstitutionScope scope) {
+        ByteArray bytes = request.toByteArray();
+        int length = bytes.length();
+        int bodyOffset = Math.min(request.bodyOffset(), length);
+        int lineEnd = bytes.indexOf("\r\n", true, 0, bodyOffset);
+        if (lineEnd < 0) lineEnd = bodyOffset;
+
+        List<int[]> regions = new ArrayList<>(2);
+        if (scope.requestLine() && scope.headers())
+            regions.add(new int[]{0, bodyOffset});
+        else if (scope.requestLine())
+            regions.add(new int[]{0, lineEnd});
+        else if (scope.headers())
+            regions.add(new int[]{lineEnd, bodyOffset});
+        if (scope.body() && bodyOffset < length) {
+            int bodyEnd = scope.bodyLimit() > 0 ? (int) Math.min(length, (long) bodyOffset + scope.bodyLimit()) : length;
+            regions.add(new int[]{bodyOffset, bodyEnd});
+        }
+
+        int[] starts = new int[regions.size()];
+        int[] ends = new int[regions.size()];
+        List<String> texts = new ArrayList<>(regions.size());
+        for (int i = 0; i < regions.size(); i++) {
+            starts[i] = regions.get(i)[0];
+            ends[i] = regions.get(i)[1];
+            texts.add(starts[i] < ends[i] ? bytes.subArray(starts[i], ends[i]).toString() : "");
+        }
+        return new RequestRegions(bytes, bodyOffset, starts, ends, texts);
+    }
+
+    /**
+     * @return The text of each selected region, in request order.
+     */
+    List<String> texts() {
+        return texts;
+    }
+
+    /**
+     * @return The selected regions joined by line breaks, which variable references cannot span.
+     */
+    String joinedText() {
+        return String.join("\n", texts);
+    }
+
+    /**
+     * Rebuilds the request bytes with substituted region texts.
+     *
+     * @param substituted The text of each region after substitution, in the order of {@link #texts()}.
+     * @return The rebuilt request and its new body length.
+     */
+    Rebuilt rebuild(List<String> substituted) {
+        byte[][] encoded = new byte[texts.size()][];
+        int bodyLength = bytes.length() - bodyOffset;
+        for (int i = 0; i < encoded.length; i++) {
+            String text = substituted.get(i);
+            if (text == texts.get(i)) continue;
+            encoded[i] = ByteArray.byteArray(text).getBytes();
+            if (starts[i] >= bodyOffset) bodyLength += encoded[i].length - (ends[i] - starts[i]);
+        }
+        return new Rebuilt(ByteArray.byteArray(splice(bytes.getBytes(), starts, ends, encoded)), bodyLength);
+    }
+
+    /**
+     * Replaces byte ranges of a request, copying the unselected ranges and unchanged regions from
+     * the original bytes in bulk.
+     *
+     * @param original      The original request bytes.
+     * @param starts        The start offset of each region, in request order.
+     * @param ends          The end offset of each region.
+     * @param replacements  The new bytes of each region, or null to keep the original bytes.
+     * @return The spliced request bytes.
+     */
+    static byte[] splice(byte[] original, int[] starts, int[] ends, byte[][] replacements) {
+        int length = original.length;
+        for (int i = 0; i < replacements.length; i++) {
+            if (replacements[i] != null) length += replacements[i].length - (ends[i] - starts[i]);
+        }
+        byte[] out = new byte[length];
+        int from = 0;
+        int to = 0;
+        for (int i = 0; i < replacements.length; i++) {
+            if (replacements[i] == null) continue;
+            System.arraycopy(original, from, out, to, starts[i] - from);
+            to += starts[i] - from;
+            System.arraycopy(replacements[i], 0, out, to, replacements[i].length);
+            to += replacements[i].length;
+            from = ends[i];
+        }
+        System.arraycopy(original, from, out, to, original.length - from);
+        return out;
+    }
+
+    /**
+     * A rebuilt request.
+     *
+     * @param request       The request bytes.
+     * @param bodyLength    The length of the body in bytes.
+     */
+    record Rebuilt(ByteArray request, int bodyLength) {
+    }
+}
@@ -0,0 +1,39 @@
+package com._0xceba;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Flattened values of variables that reference other variables, computed once per snapshot.
+ *
+ * @param values        Fully expanded values keyed by variable name; only variables whose value
+ *                      contains a resolvable nested reference are present.
+ * @param problems      Descriptions of cycles and dangling references keyed by the affected variable name.
+ * @param dependencies  The variables each flattened value was built from, directly or through other
+ *                      nested references, keyed by variable name; only flattened variables are present.
+ */
+public record ResolvedVariables(Map<String, String> values, Map<String, String> problems, Map<String, Set<String>> dependencies) {
+    public static final ResolvedVariables EMPTY = new ResolvedVariables(Map.of(), Map.of(), Map.of());
+
+    /**
+     * Returns the value to substitute for a static variable, with nested references expanded.
+     *
+     * @param variableName  The variable name.
+     * @param data          The variable's data.
+     * @return The flattened value, or the variable's own value if it has no nested references.
+     */
+    public String value(String variableName, VariableData data) {
+        String value = values.get(variableName);
+        return value != null ? value : data.value();
+    }
+
+    /**
+     * Returns the variables a flattened value was built from.
+     *
+     * @param variableName The variable name.
+     * @return The names of the variables the value depends on, or an empty set if it has no nested references.
+     */
+    public Set<String> dependenciesOf(String variableName) {
+        return dependencies.getOrDefault(variableName, Set.of());
+    }
+}
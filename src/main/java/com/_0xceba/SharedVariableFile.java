@@ -0,0 +1,421 @@
+package com._0xceba;
+
+import burp.api.montoya.logging.Logging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shares the active variables with other Burp instances on the same machine through a memory-mapped file.
+ * The file starts with a versioned header whose sequence word works as a seqlock: a writer makes it
+ * odd, writes the payload and makes it even again, and readers retry whenever the word changed or was
+ * odd while they copied the payload. Writers from different processes are serialized with a file lock;
+ * readers never lock.
+ * One daemon thread per connection pushes local changes and polls the sequence word every few
+ * milliseconds, which is a single volatile read of mapped memory. Local changes are merged into the
+ * file per variable under the lock, so instances updating different variables do not overwrite each other.
+ */
+public class SharedVariableFile {
+    // "BVAR" and the payload layout version; files with another magic or layout are rejected
+    private static final int MAGIC = 0x42564152;
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+    private static final int HEADER_SIZE = 64;
+    // Maximum size of the serialized variables
+    public static final int CAPACITY = 16 * 1024 * 1024;
+    private static final long POLL_NANOS = 2_000_000;
+    private static final int MAX_READ_ATTEMPTS = 1000;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    // File locks are held per process, so connections within one process also serialize on this monitor
+    private static final Object PROCESS_LOCK = new Object();
+
+    private final Logging burpLogging;
+    private final VariableStore variableStore;
+    // Names of local variables changed since the last push; their current values are read when pushing
+    private final Set<String> pendingNames = ConcurrentHashMap.newKeySet();
+    private volatile Connection connection;
+    // Called on the connection thread after variables from the file were applied to the store
+    private volatile Runnable remoteUpdateListener = () -> { };
+
+    /**
+     * Constructs a disconnected shared file and subscribes to the store's snapshots.
+     *
+     * @param burpLogging   The logging interface from the Montoya API.
+     * @param variableStore Store holding variable names and VariableData.
+     */
+    public SharedVariableFile(Logging burpLogging, VariableStore variableStore) {
+        this.burpLogging = burpLogging;
+        this.variableStore = variableStore;
+        variableStore.addPublishListener(this::published);
+    }
+
+    public void setRemoteUpdateListener(Runnable remoteUpdateListener) {
+        this.remoteUpdateListener = remoteUpdateListener;
+    }
+
+    /**
+     * @return The path of the connected file, or null if not connected.
+     */
+    public Path path() {
+        Connection current = connection;
+        return current != null ? current.path : null;
+    }
+
+    /**
+     * Maps the file and starts sharing. A new or empty file is initialized with the local variables;
+     * otherwise the file's variables replace local ones of the same name and local-only variables
+     * are added to the file.
+     *
+     * @param path The shared file, created if it does not exist.
+     * @throws IOException If the file cannot be mapped or is not a shared variables file.
+     */
+    public synchronized void connect(Path path) throws IOException {
+        disconnect();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + CAPACITY);
+            synchronized (PROCESS_LOCK) {
+                try (FileLock ignored = channel.lock()) {
+                    initializeHeader(buffer, path);
+                }
+            }
+            Connection next = new Connection(path, channel, buffer);
+            // Push the local variables that the file does not have yet, then take the file's values
+            Map<String, VariableData> remote = next.read();
+            for (String name : variableStore.snapshot().variables().keySet()) {
+                if (remote == null || !remote.containsKey(name)) pendingNames.add(name);
+            }
+            connection = next;
+            next.worker.start();
+            burpLogging.logToOutput("Sharing variables through " + path + ".");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Initializes the header of a new file and checks the header of an existing one.
+     */
+    private static void initializeHeader(MappedByteBuffer buffer, Path path) throws IOException {
+        int magic = buffer.getInt(MAGIC_OFFSET);
+        if (magic == 0) {
+            buffer.putInt(FORMAT_OFFSET, FORMAT_VERSION);
+            buffer.putInt(LENGTH_OFFSET, 0);
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+        } else if (magic != MAGIC) {
+            throw new IOException("Not a shared variables file: " + path);
+        } else if (buffer.getInt(FORMAT_OFFSET) != FORMAT_VERSION) {
+            throw new IOException("Unsupported shared variables file version " + buffer.getInt(FORMAT_OFFSET) + ": " + path);
+        }
+    }
+
+    /**
+     * Stops sharing and unmaps the file. Local variables are kept.
+     */
+    public synchronized void disconnect() {
+        Connection current = connection;
+        if (current == null) return;
+        connection = null;
+        current.close();
+        pendingNames.clear();
+        burpLogging.logToOutput("Stopped sharing variables through " + current.path + ".");
+    }
+
+    /**
+     * Records the names of the variables changed by a local write so the connection thread pushes them.
+     * Writes made by the connection thread while applying the file's variables are not pushed back.
+     */
+    private void published(VariableStore.Snapshot previous, VariableStore.Snapshot next) {
+        Connection current = connection;
+        if (current == null || Thread.currentThread() == current.worker) return;
+        boolean changed = false;
+        for (Map.Entry<String, VariableData> entry : next.variables().entrySet()) {
+            if (previous.variables().get(entry.getKey()) != entry.getValue()) {
+                pendingNames.add(entry.getKey());
+                changed = true;
+            }
+        }
+        for (String name : previous.variables().keySet()) {
+            if (!next.variables().containsKey(name)) {
+                pendingNames.add(name);
+                changed = true;
+            }
+        }
+        if (changed) LockSupport.unpark(current.worker);
+    }
+
+    /**
+     * A mapped shared file and the thread that keeps it in sync with the store.
+     */
+    private final class Connection {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final Thread worker;
+        private volatile boolean running = true;
+        // Sequence word of the last version pushed or applied by this instance
+        private long lastSequence = -1;
+
+        Connection(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.worker = new Thread(this::run, "Burp Variables shared store");
+            this.worker.setDaemon(true);
+        }
+
+        private void run() {
+            while (running) {
+                try {
+                    if (!pendingNames.isEmpty()) push();
+                    long sequence = (long) LONG_VIEW.getVolatile(buffer, SEQUENCE_OFFSET);
+                    if (sequence != lastSequence && (sequence & 1) == 0) apply();
+                } catch (IOException | RuntimeException e) {
+                    burpLogging.logToError("Shared variables file " + path + ": " + e.getMessage());
+                    LockSupport.parkNanos(1_000_000_000L);
+                }
+                LockSupport.parkNanos(POLL_NANOS);
+            }
+        }
+
+        void close() {
+            running = false;
+            LockSupport.unpark(worker);
+            try {
+                worker.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                burpLogging.logToError("Unable to close shared variables file " + path + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Merges the pending local changes into the file under the file lock.
+         */
+        private void push() throws IOException {
+            List<String> names = new ArrayList<>(pendingNames);
+            pendingNames.removeAll(names);
+            synchronized (PROCESS_LOCK) {
+                try (FileLock ignored = channel.lock()) {
+                    write(names);
+                }
+            }
+        }
+
+        /**
+         * Writes the merged variables with the seqlock protocol. Callers hold the file lock.
+         */
+        private void write(List<String> names) throws IOException {
+            Map<String, VariableData> shared = read();
+            if (shared == null) shared = new HashMap<>();
+            Map<String, VariableData> local = variableStore.snapshot().variables();
+            for (String name : names) {
+                VariableData data = local.get(name);
+                if (data != null) shared.put(name, data);
+                else shared.remove(name);
+            }
+            byte[] payload = serialize(shared);
+            if (payload.length > CAPACITY) {
+                burpLogging.logToError("Unable to share variables because they exceed " + CAPACITY + " bytes.");
+                return;
+            }
+
+            // Seqlock write: an odd sequence tells readers the payload is being replaced
+            long sequence = (long) LONG_VIEW.getVolatile(buffer, SEQUENCE_OFFSET);
+            boolean upToDate = sequence == lastSequence;
+            // A writer that died mid-write left the sequence odd; round it up so this write goes even, odd, even again
+            if ((sequence & 1) != 0) sequence++;
+            LONG_VIEW.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 1);
+            // Keep the payload stores from being reordered before the odd sequence becomes visible
+            VarHandle.storeStoreFence();
+            buffer.put(HEADER_SIZE, payload);
+            buffer.putInt(LENGTH_OFFSET, payload.length);
+            LONG_VIEW.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 2);
+
+            // Versions written by other instances since the last apply still have to be applied here
+            if (upToDate) lastSequence = sequence + 2;
+        }
+
+        /**
+         * Applies the file's variables to the store in one update. Variables with pending local
+         * changes are left alone, and pools whose contents did not change keep their usage state.
+         */
+        private void apply() throws IOException {
+            // Variables changed locally after this snapshot was taken are not overwritten, even before
+            // the publish listener has marked them as pending
+            Map<String, VariableData> local = variableStore.snapshot().variables();
+            long sequence = (long) LONG_VIEW.getVolatile(buffer, SEQUENCE_OFFSET);
+            Map<String, VariableData> remote = read();
+            if (remote == null) return;
+            lastSequence = sequence;
+            if (!differs(local, remote)) return;
+            variableStore.update(variables -> {
+                for (Map.Entry<String, VariableData> entry : remote.entrySet()) {
+                    String name = entry.getKey();
+                    VariableData current = variables.get(name);
+                    if (pendingNames.contains(name) || current != local.get(name)) continue;
+                    if (current == null || !sameContent(current, entry.getValue()))
+                        variables.put(name, current != null && samePool(current.pool(), entry.getValue().pool())
+                                ? entry.getValue().withPool(current.pool()) : entry.getValue());
+                }
+                variables.entrySet().removeIf(entry -> !remote.containsKey(entry.getKey())
+                        && !pendingNames.contains(entry.getKey()) && entry.getValue() == local.get(entry.getKey()));
+            });
+            remoteUpdateListener.run();
+        }
+
+        /**
+         * Reads a consistent copy of the file's variables with the seqlock protocol.
+         *
+         * @return The variables, or null if no consistent copy could be read.
+         */
+        Map<String, VariableData> read() throws IOException {
+            for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+                long before = (long) LONG_VIEW.getVolatile(buffer, SEQUENCE_OFFSET);
+                if ((before & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                int length = buffer.getInt(LENGTH_OFFSET);
+                if (length < 0 || length > CAPACITY) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(HEADER_SIZE, payload);
+                VarHandle.loadLoadFence();
+                if ((long) LONG_VIEW.getVolatile(buffer, SEQUENCE_OFFSET) == before)
+                    return length == 0 ? new HashMap<>() : deserialize(payload);
+            }
+            return null;
+        }
+    }
+
+    private static boolean differs(Map<String, VariableData> local, Map<String, VariableData> remote) {
+        if (local.size() != remote.size()) return true;
+        for (Map.Entry<String, VariableData> entry : remote.entrySet()) {
+            VariableData current = local.get(entry.getKey());
+            if (current == null || !sameContent(current, entry.getValue())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compares the shared fields of two variables; pool selection state is local and ignored.
+     */
+    private static boolean sameContent(VariableData a, VariableData b) {
+        return a.value().equals(b.value()) && a.regex().equals(b.regex()) && a.extractorType() == b.extractorType()
+                && a.ttlMillis() == b.ttlMillis() && a.expiresAtMillis() == b.expiresAtMillis() && samePool(a.pool(), b.pool());
+    }
+
+    private static boolean samePool(ValuePool a, ValuePool b) {
+        if (a == null || b == null) return a == b;
+        return a.strategy() == b.strategy() && Objects.equals(a.values(), b.values());
+    }
+
+    /**
+     * Serializes variables as a count followed by, per variable, the name, value, regex, extractor
+     * type, TTL, expiry and optional pool. Strings are length-prefixed UTF-8.
+     */
+    static byte[] serialize(Map<String, VariableData> variables) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(variables.size());
+            for (Map.Entry<String, VariableData> entry : variables.entrySet()) {
+                VariableData data = entry.getValue();
+                writeString(out, entry.getKey());
+                writeString(out, data.value());
+                writeString(out, data.regex());
+                writeString(out, data.extractorType().name());
+                out.writeLong(data.ttlMillis());
+                out.writeLong(data.expiresAtMillis());
+                ValuePool pool = data.pool();
+                out.writeBoolean(pool != null);
+                if (pool != null) {
+                    writeString(out, pool.strategy().name());
+                    out.writeInt(pool.values().size());
+                    for (String value : pool.values()) writeString(out, value);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static HashMap<String, VariableData> deserialize(byte[] payload) throws IOException {
+        HashMap<String, VariableData> variables = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int count = readCount(in);
+            for (int i = 0; i < count; i++) {
+                String name = readString(in);
+                String value = readString(in);
+                String regex = readString(in);
+                ExtractorType extractorType = ExtractorType.fromName(readString(in));
+                long ttlMillis = in.readLong();
+                long expiresAtMillis = in.readLong();
+                ValuePool pool = null;
+                if (in.readBoolean()) {
+                    PoolStrategy strategy = PoolStrategy.fromName(readString(in));
+                    int size = readCount(in);
+                    if (size == 0)
+                        throw new IOException("Corrupt payload: empty value pool for variable " + name + ".");
+                    List<String> values = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) values.add(readString(in));
+                    pool = new ValuePool(values, strategy);
+                }
+                variables.put(name, new VariableData(value, regex, extractorType, pool, ttlMillis, expiresAtMillis));
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * Reads a length or element count, rejecting values that cannot fit in the rest of the payload,
+     * so a corrupt file fails to parse instead of allocating huge or negative arrays.
+     */
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available())
+            throw new IOException("Corrupt payload: length " + count + " exceeds the remaining " + in.available() + " bytes.");
+        return count;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
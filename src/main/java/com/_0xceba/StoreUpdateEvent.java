@@ -0,0 +1,46 @@
+package com._0xceba;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event emitted when a variable is written to or removed from the variable store.
+ * Only the value length is recorded so that secrets never end up in recordings.
+ */
+@Name("com._0xceba.StoreUpdate")
+@Label("Variable Store Update")
+@Category("Burp Variables")
+@Description("Write or removal of a variable")
+@StackTrace(false)
+public class StoreUpdateEvent extends jdk.jfr.Event {
+    @Label("Variable")
+    String variable;
+
+    @Label("Source")
+    @Description("What caused the update, such as auto-update, edit, import or clear")
+    String source;
+
+    @Label("Value Length")
+    @Description("Number of characters in the new value, or -1 if the variable was removed")
+    long valueLength;
+
+    /**
+     * Commits an instantaneous store update event if a recording is capturing it.
+     *
+     * @param variable      The variable name.
+     * @param source        What caused the update.
+     * @param value         The new value, or null if the variable was removed.
+     */
+    static void emit(String variable, String source, String value) {
+        StoreUpdateEvent event = new StoreUpdateEvent();
+        if (event.shouldCommit()) {
+            event.variable = variable;
+            event.source = source;
+            event.valueLength = value != null ? value.length() : -1;
+            event.commit();
+        }
+    }
+}
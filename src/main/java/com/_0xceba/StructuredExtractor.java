@@ -0,0 +1,50 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+
+/**
+ * An auto-update extractor that reads a value from a structured response body.
+ * Implementations scan the raw body bytes as a stream and stop as soon as the
+ * target is found, without building a document tree or decoding the body to a String.
+ */
+public interface StructuredExtractor {
+    /**
+     * Extracts the target value from a body.
+     *
+     * @param body The raw body bytes.
+     * @return The extracted value, or null if the body does not contain the target.
+     */
+    String extract(ByteArray body);
+
+    /**
+     * Compiles an extractor expression of the given type.
+     *
+     * @param type          The extractor type; must not be REGEX.
+     * @param expression    The extractor expression.
+     * @return The compiled extractor.
+     * @throws IllegalArgumentException If the expression is invalid.
+     */
+    static StructuredExtractor compile(ExtractorType type, String expression) {
+        return switch (type) {
+            case JSON_PATH -> JsonPathExtractor.compile(expression);
+            case XPATH -> XPathExtractor.compile(expression);
+            case REGEX -> throw new IllegalArgumentException("Regex extractors are not structured extractors");
+        };
+    }
+
+    /**
+     * Checks whether an extractor expression of the given type compiles.
+     *
+     * @param type          The extractor type; must not be REGEX.
+     * @param expression    The extractor expression.
+     * @return True if the expression is valid, false otherwise.
+     */
+    static boolean isValid(ExtractorType type, String expression) {
+        try {
+            compile(type, expression);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
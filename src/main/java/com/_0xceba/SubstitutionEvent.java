@@ -0,0 +1,33 @@
+package com._0xceba;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event emitted when variable references are replaced in an outgoing request.
+ * The event duration covers the whole substitution, from scanning the request to building the modified request.
+ */
+@Name("com._0xceba.Substitution")
+@Label("Variable Substitution")
+@Category("Burp Variables")
+@Description("Replacement of variable references in an outgoing request")
+@StackTrace(false)
+public class SubstitutionEvent extends jdk.jfr.Event {
+    @Label("Tool")
+    String tool;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Variables Replaced")
+    int variablesReplaced;
+}
@@ -0,0 +1,70 @@
+package com._0xceba;
+
+/**
+ * The parts of a request that are scanned for variable references.
+ * Excluded parts are copied to the modified request without being decoded or scanned, so large
+ * bodies such as file uploads cost no more than the parts that are scanned.
+ *
+ * @param requestLine   Whether the request line is scanned.
+ * @param headers       Whether the headers are scanned.
+ * @param body          Whether the body is scanned.
+ * @param bodyLimit     The number of leading body bytes that are scanned, or 0 for the whole body.
+ */
+public record SubstitutionScope(boolean requestLine, boolean headers, boolean body, int bodyLimit) {
+    public static final SubstitutionScope FULL = new SubstitutionScope(true, true, true, 0);
+
+    public SubstitutionScope {
+        bodyLimit = Math.max(0, bodyLimit);
+    }
+
+    /**
+     * @return True if the whole request is scanned, false otherwise.
+     */
+    public boolean isFull() {
+        return requestLine && headers && body && bodyLimit == 0;
+    }
+
+    /**
+     * Formats the scope as a comma-separated list of regions, such as "line,headers,body:4096".
+     *
+     * @return The persisted form of the scope.
+     */
+    public String toSetting() {
+        StringBuilder sb = new StringBuilder();
+        if (requestLine) sb.append("line,");
+        if (headers) sb.append("headers,");
+        if (body) sb.append("body").append(bodyLimit > 0 ? ":" + bodyLimit : "").append(',');
+        return sb.isEmpty() ? "" : sb.substring(0, sb.length() - 1);
+    }
+
+    /**
+     * Parses a scope written by {@link #toSetting()}. Unknown regions are ignored.
+     *
+     * @param setting The persisted form of the scope, or null.
+     * @return The scope, or {@link #FULL} if the setting is null.
+     */
+    public static SubstitutionScope fromSetting(String setting) {
+        if (setting == null)
+            return FULL;
+        boolean requestLine = false, headers = false, body = false;
+        int bodyLimit = 0;
+        for (String region : setting.split(",")) {
+            region = region.trim();
+            if (region.equals("line")) {
+                requestLine = true;
+            } else if (region.equals("headers")) {
+                headers = true;
+            } else if (region.equals("body")) {
+                body = true;
+            } else if (region.startsWith("body:")) {
+                body = true;
+                try {
+                    bodyLimit = Integer.parseInt(region.substring(5));
+                } catch (NumberFormatException e) {
+                    // Scan the whole body
+                }
+            }
+        }
+        return new SubstitutionScope(requestLine, headers, body, bodyLimit);
+    }
+}
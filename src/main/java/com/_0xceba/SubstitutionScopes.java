@@ -0,0 +1,64 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ToolType;
+import burp.api.montoya.persistence.PersistedObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The substitution scope of each tool. Tools without a configured scope scan the whole request.
+ */
+public class SubstitutionScopes {
+    // Keyed by tool name, matching the tool toggles
+    private final ConcurrentHashMap<String, SubstitutionScope> scopes = new ConcurrentHashMap<>();
+
+    /**
+     * @param toolType The tool that sent a request.
+     * @return The tool's scope, or {@link SubstitutionScope#FULL} if none is configured.
+     */
+    public SubstitutionScope scopeFor(ToolType toolType) {
+        return scopeFor(toolType.toolName());
+    }
+
+    /**
+     * @param toolName The tool name.
+     * @return The tool's scope, or {@link SubstitutionScope#FULL} if none is configured.
+     */
+    public SubstitutionScope scopeFor(String toolName) {
+        return scopes.getOrDefault(toolName, SubstitutionScope.FULL);
+    }
+
+    /**
+     * Sets the scope of a tool. Setting the full scope removes the tool's entry.
+     *
+     * @param toolName  The tool name.
+     * @param scope     The parts of the tool's requests to scan.
+     */
+    public void setScope(String toolName, SubstitutionScope scope) {
+        if (scope.isFull())
+            scopes.remove(toolName);
+        else
+            scopes.put(toolName, scope);
+    }
+
+    /**
+     * Restores the scopes from a persisted object holding one setting string per tool name.
+     *
+     * @param persistedObject The persisted object, or null if none was saved.
+     */
+    public void load(PersistedObject persistedObject) {
+        if (persistedObject == null)
+            return;
+        for (String toolName : persistedObject.stringKeys())
+            setScope(toolName, SubstitutionScope.fromSetting(persistedObject.getString(toolName)));
+    }
+
+    /**
+     * @return A persisted object holding one setting string per tool with a restricted scope.
+     */
+    public PersistedObject save() {
+        PersistedObject persistedObject = PersistedObject.persistedObject();
+        scopes.forEach((toolName, scope) -> persistedObject.setString(toolName, scope.toSetting()));
+        return persistedObject;
+    }
+}
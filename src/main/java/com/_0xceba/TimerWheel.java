@@ -0,0 +1,138 @@
+package com._0xceba;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel that runs a callback for each task once its deadline has passed.
+ * A single daemon thread advances the wheel one bucket per tick; tasks are hashed into the bucket
+ * of their deadline tick and carry the number of full rotations left, so scheduling is O(1) and
+ * each tick only visits one bucket no matter how many tasks are pending. Deadlines are rounded up
+ * to the next tick. Tasks cannot be cancelled; callbacks are expected to check whether a task is
+ * still current when it fires.
+ *
+ * @param <T> The task type passed to the callback.
+ */
+public class TimerWheel<T> {
+    private final long tickMillis;
+    private final int mask;
+    // Buckets are only touched by the worker thread
+    private final List<List<Timeout<T>>> buckets;
+    // Tasks scheduled since the last tick, moved into their buckets by the worker thread
+    private final ConcurrentLinkedQueue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Consumer<T> callback;
+    private final Thread worker;
+    private final long startMillis;
+    private volatile boolean stopped;
+
+    /**
+     * A scheduled task.
+     */
+    private static final class Timeout<T> {
+        final T task;
+        final long deadlineMillis;
+        long remainingRounds;
+
+        Timeout(T task, long deadlineMillis) {
+            this.task = task;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+    /**
+     * Constructs and starts a timer wheel.
+     *
+     * @param name          The worker thread name.
+     * @param tickMillis    The duration of one tick, which is also the timer resolution.
+     * @param bucketCount   The number of buckets, rounded up to a power of two.
+     * @param callback      Called on the worker thread with each task whose deadline has passed.
+     */
+    public TimerWheel(String name, long tickMillis, int bucketCount, Consumer<T> callback) {
+        this.tickMillis = tickMillis;
+        int size = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) buckets.add(new ArrayList<>());
+        this.callback = callback;
+        this.startMillis = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task. Tasks whose deadline has already passed run on the next tick.
+     *
+     * @param task              The task passed to the callback.
+     * @param deadlineMillis    The epoch millis after which the task runs.
+     */
+    public void schedule(T task, long deadlineMillis) {
+        if (!stopped) pending.add(new Timeout<>(task, deadlineMillis));
+    }
+
+    /**
+     * Stops the worker thread. Pending tasks are discarded.
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            // Sleep until the end of the current tick
+            long sleepMillis = startMillis + (tick + 1) * tickMillis - System.currentTimeMillis();
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferPending(tick);
+            expire(buckets.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    /**
+     * Moves newly scheduled tasks into the bucket of their deadline tick.
+     *
+     * @param currentTick The tick being processed.
+     */
+    private void transferPending(long currentTick) {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            // Round up to the tick that ends at or after the deadline, but never before the current tick
+            long deadlineTick = Math.max(currentTick, (timeout.deadlineMillis - startMillis + tickMillis - 1) / tickMillis - 1);
+            timeout.remainingRounds = (deadlineTick - currentTick) / buckets.size();
+            buckets.get((int) (deadlineTick & mask)).add(timeout);
+        }
+    }
+
+    /**
+     * Runs the tasks of a bucket that are due in this rotation.
+     *
+     * @param bucket The bucket of the current tick.
+     */
+    private void expire(List<Timeout<T>> bucket) {
+        Iterator<Timeout<T>> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout<T> timeout = iterator.next();
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                continue;
+            }
+            iterator.remove();
+            try {
+                callback.accept(timeout.task);
+            } catch (RuntimeException e) {
+                // A failing callback must not stop the wheel
+            }
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package com._0xceba;
+
+import burp.api.montoya.http.Http;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import burp.api.montoya.logging.Logging;
+import burp.api.montoya.persistence.PersistedObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Refreshes variables holding expiring tokens before they expire.
+ * Each variable with a {@link RefreshRecipe} has one pending task on a single daemon scheduler
+ * thread. The task sends the recipe's login request through Burp, extracts the new token from
+ * the response and swaps it into the variable store in one atomic update, then schedules the next
+ * refresh from the new token's expiry. Refresh requests carry the {@value #HEADER_NAME} header,
+ * which the HTTP handler removes and uses to skip auto-updates on the response, so a refresh never
+ * feeds back into the handler's own extraction.
+ * A recipe can also carry a failure signature. The first response that matches it triggers a single
+ * refresh behind a barrier; requests using the variable wait on the barrier for a bounded time and
+ * are then sent with the new value.
+ */
+public class TokenRefresher {
+    // Request header that marks a refresh request; it is removed before the request is sent
+    public static final String HEADER_NAME = "X-Burp-Variables-Refresh";
+    // Delay before retrying a refresh that failed or produced a token without a readable expiry
+    private static final long RETRY_SECONDS = 60;
+    private static final Pattern EXP_PATTERN = Pattern.compile("\"exp\"\\s*:\\s*(\\d+)");
+
+    private final Http http;
+    private final Logging burpLogging;
+    private final VariableStore variableStore;
+    private final ExtractorGuard extractorGuard;
+    private final ConcurrentHashMap<String, RefreshRecipe> recipes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ScheduledRefresh> scheduled = new ConcurrentHashMap<>();
+    // Epoch millis of the last successful refresh per variable, used for fixed lifetimes
+    private final ConcurrentHashMap<String, Long> lastRefreshMillis = new ConcurrentHashMap<>();
+    // Epoch millis of the last refresh attempt per variable, successful or not
+    private final ConcurrentHashMap<String, Long> lastAttemptMillis = new ConcurrentHashMap<>();
+    // Barriers of refreshes triggered by a failure signature; completed when the refresh ends
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> barriers = new ConcurrentHashMap<>();
+    // Compiled failure body patterns keyed by regex; invalid regexes map to INVALID_PATTERN
+    private final ConcurrentHashMap<String, Pattern> failurePatterns = new ConcurrentHashMap<>();
+    private static final Pattern INVALID_PATTERN = Pattern.compile("");
+    private final ScheduledExecutorService scheduler;
+    // Called with the variable name and new value after each refresh so the UI can update
+    private volatile BiConsumer<String, String> updateListener = (name, value) -> { };
+
+    /**
+     * A pending refresh task and the time it is due.
+     *
+     * @param future    The scheduled task.
+     * @param dueMillis The epoch millis at which the task runs.
+     */
+    private record ScheduledRefresh(ScheduledFuture<?> future, long dueMillis, boolean forced) {
+    }
+
+    /**
+     * Constructs a new token refresher with its own scheduler thread.
+     *
+     * @param http            The HTTP interface from the Montoya API used to send refresh requests.
+     * @param burpLogging     The logging interface from the Montoya API.
+     * @param variableStore   Store holding variable names and VariableData.
+     * @param extractorGuard  The guard that runs regex extractors within a time budget.
+     */
+    public TokenRefresher(Http http, Logging burpLogging, VariableStore variableStore, ExtractorGuard extractorGuard) {
+        this.http = http;
+        this.burpLogging = burpLogging;
+        this.variableStore = variableStore;
+        this.extractorGuard = extractorGuard;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Burp Variables token refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void setUpdateListener(BiConsumer<String, String> updateListener) {
+        this.updateListener = updateListener;
+    }
+
+    /**
+     * Returns the recipes sorted by variable name.
+     *
+     * @return A copy of the recipes.
+     */
+    public Map<String, RefreshRecipe> recipes() {
+        return new TreeMap<>(recipes);
+    }
+
+    /**
+     * Returns when the next refresh of a variable is due.
+     *
+     * @param variableName The variable name.
+     * @return The epoch millis of the next refresh, or 0 if none is scheduled.
+     */
+    public long nextRefreshMillis(String variableName) {
+        ScheduledRefresh refresh = scheduled.get(variableName);
+        return refresh != null ? refresh.dueMillis() : 0;
+    }
+
+    /**
+     * Sets or replaces the recipe of a variable and schedules its next refresh.
+     *
+     * @param variableName  The variable name.
+     * @param recipe        The refresh recipe.
+     */
+    public void setRecipe(String variableName, RefreshRecipe recipe) {
+        recipes.put(variableName, recipe);
+        schedule(variableName);
+    }
+
+    /**
+     * Removes the recipe of a variable and cancels its pending refresh.
+     *
+     * @param variableName The variable name.
+     */
+    public void removeRecipe(String variableName) {
+        recipes.remove(variableName);
+        lastRefreshMillis.remove(variableName);
+        lastAttemptMillis.remove(variableName);
+        cancel(variableName);
+        releaseBarrier(variableName);
+    }
+
+    /**
+     * Moves the recipe of a renamed variable to its new name.
+     *
+     * @param oldName The previous variable name.
+     * @param newName The new variable name.
+     */
+    public void rename(String oldName, String newName) {
+        if (oldName.equals(newName)) return;
+        RefreshRecipe recipe = recipes.remove(oldName);
+        cancel(oldName);
+        releaseBarrier(oldName);
+        Long last = lastRefreshMillis.remove(oldName);
+        if (last != null) lastRefreshMillis.put(newName, last);
+        if (recipe != null) setRecipe(newName, recipe);
+    }
+
+    /**
+     * Runs the refresh of a variable on the scheduler thread as soon as possible.
+     *
+     * @param variableName The variable name.
+     */
+    public void refreshNow(String variableName) {
+        if (recipes.containsKey(variableName)) scheduleIn(variableName, 0, true);
+    }
+
+    /**
+     * Recomputes the next refresh of every recipe, for example after the variables were replaced
+     * by an environment switch or an import.
+     */
+    public void rescheduleAll() {
+        for (String variableName : recipes.keySet()) schedule(variableName);
+    }
+
+    /**
+     * Stops the scheduler thread. Pending refreshes are discarded and waiting requests are released.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (String variableName : barriers.keySet()) {
+            CompletableFuture<Void> barrier = barriers.remove(variableName);
+            if (barrier != null) barrier.complete(null);
+        }
+    }
+
+    /**
+     * Schedules the next refresh of a variable from its current token's expiry or its fixed lifetime.
+     * A variable whose expiry cannot be determined is refreshed right away, and a variable that is
+     * only refreshed on failure has nothing scheduled.
+     *
+     * @param variableName The variable name.
+     */
+    private void schedule(String variableName) {
+        RefreshRecipe recipe = recipes.get(variableName);
+        if (recipe == null) return;
+        if (recipe.isReactiveOnly()) {
+            // A pending refresh triggered by a failure still has to run and release its barrier
+            scheduled.computeIfPresent(variableName, (name, previous) -> {
+                if (previous.forced() && !previous.future().isDone()) return previous;
+                previous.future().cancel(false);
+                return null;
+            });
+            return;
+        }
+        long expiryMillis = expiryMillis(variableName, recipe);
+        long delayMillis = expiryMillis > 0 ? expiryMillis - recipe.leadSeconds() * 1000 - System.currentTimeMillis() : 0;
+        scheduleIn(variableName, Math.max(0, delayMillis), false);
+    }
+
+    private void scheduleIn(String variableName, long delayMillis, boolean force) {
+        if (scheduler.isShutdown()) return;
+        scheduled.compute(variableName, (name, previous) -> {
+            // A routine refresh never replaces a pending forced one, whose run releases the failure barrier
+            if (!force && previous != null && previous.forced() && !previous.future().isDone())
+                return previous;
+            if (previous != null) previous.future().cancel(false);
+            ScheduledFuture<?> future = scheduler.schedule(() -> refresh(variableName, force), delayMillis, TimeUnit.MILLISECONDS);
+            return new ScheduledRefresh(future, System.currentTimeMillis() + delayMillis, force);
+        });
+    }
+
+    /**
+     * Removes the refresh barrier of a variable and releases the requests waiting on it.
+     *
+     * @param variableName The variable name.
+     */
+    private void releaseBarrier(String variableName) {
+        CompletableFuture<Void> barrier = barriers.remove(variableName);
+        if (barrier != null) barrier.complete(null);
+    }
+
+    private void cancel(String variableName) {
+        ScheduledRefresh previous = scheduled.remove(variableName);
+        if (previous != null) previous.future().cancel(false);
+    }
+
+    /**
+     * Returns when the current value of a variable expires.
+     *
+     * @param variableName  The variable name.
+     * @param recipe        The variable's recipe.
+     * @return The expiry in epoch millis, or 0 if it is unknown.
+     */
+    private long expiryMillis(String variableName, RefreshRecipe recipe) {
+        if (recipe.isReactiveOnly()) return 0;
+        if (!recipe.usesJwtExpiry()) {
+            Long last = lastRefreshMillis.get(variableName);
+            return last != null ? last + recipe.ttlSeconds() * 1000 : 0;
+        }
+        VariableData data = variableStore.get(variableName);
+        return data != null ? jwtExpiryMillis(data.value()) : 0;
+    }
+
+    /**
+     * Sends the refresh request of a variable and stores the extracted token.
+     * If the token was already renewed by other means, for example by an auto-update, and is not
+     * yet due, only the next refresh is rescheduled unless the refresh is forced.
+     * The refresh barrier present when the run starts is released by forced runs whether or not
+     * they succeed, and by routine runs only once they swapped in a new token; otherwise the
+     * forced run scheduled with the barrier releases it. A barrier installed during the run
+     * belongs to a later failure and is left to its own forced run.
+     *
+     * @param variableName  The variable name.
+     * @param force         True to send the refresh request even if the token is not yet due.
+     */
+    private void refresh(String variableName, boolean force) {
+        CompletableFuture<Void> barrier = barriers.get(variableName);
+        boolean swapped = false;
+        if (force) {
+            // This run is the pending forced refresh, so routine refreshes may be scheduled again
+            scheduled.computeIfPresent(variableName, (name, previous) -> previous.forced() ? null : previous);
+        }
+        try {
+            RefreshRecipe recipe = recipes.get(variableName);
+            if (recipe == null) return;
+
+            // Leave variables that were deleted or are not part of the active environment alone
+            if (!variableStore.containsKey(variableName)) {
+                scheduled.remove(variableName);
+                return;
+            }
+            long expiryMillis = expiryMillis(variableName, recipe);
+            if (!force && expiryMillis - recipe.leadSeconds() * 1000 > System.currentTimeMillis()) {
+                schedule(variableName);
+                return;
+            }
+
+            String token = null;
+            try {
+                // Send the stored request with the marker header so the handler substitutes it but skips its own extraction
+                HttpRequestResponse requestResponse = http.sendRequest(recipe.request().withAddedHeader(HEADER_NAME, "1"));
+                if (requestResponse != null && requestResponse.hasResponse())
+                    token = extract(variableName, recipe, requestResponse);
+            } catch (RuntimeException e) {
+                burpLogging.logToError("Token refresh for variable '" + variableName + "' failed: " + e.getMessage());
+            } finally {
+                // Failures of requests sent before this attempt refer to the old token and are ignored
+                lastAttemptMillis.put(variableName, System.currentTimeMillis());
+            }
+
+            if (token == null) {
+                if (recipe.isReactiveOnly()) {
+                    burpLogging.logToError("Token refresh for variable '" + variableName + "' did not produce a value.");
+                } else {
+                    burpLogging.logToError("Token refresh for variable '" + variableName + "' did not produce a value; retrying in " + RETRY_SECONDS + " seconds.");
+                    scheduleIn(variableName, RETRY_SECONDS * 1000, false);
+                }
+                return;
+            }
+
+            // Swap the new token in, keeping the variable's extractor and pool
+            String newToken = token;
+            variableStore.update(variables -> {
+                VariableData data = variables.get(variableName);
+                if (data != null) variables.put(variableName, data.withValue(newToken));
+            });
+            swapped = true;
+            lastRefreshMillis.put(variableName, System.currentTimeMillis());
+            StoreUpdateEvent.emit(variableName, "refresh", newToken);
+            updateListener.accept(variableName, newToken);
+            burpLogging.logToOutput("Refreshed variable '" + variableName + "' to: " + newToken);
+
+            if (recipe.usesJwtExpiry() && jwtExpiryMillis(newToken) == 0) {
+                burpLogging.logToError("Refreshed value of variable '" + variableName + "' has no JWT expiry; retrying in " + RETRY_SECONDS + " seconds.");
+                scheduleIn(variableName, RETRY_SECONDS * 1000, false);
+            } else {
+                schedule(variableName);
+            }
+        } finally {
+            if (barrier != null && (force || swapped) && barriers.remove(variableName, barrier))
+                barrier.complete(null);
+        }
+    }
+
+    /**
+     * Triggers a single refresh of a variable if a response to a request that used it matches the
+     * variable's failure signature. While the refresh runs, the variable has a barrier on which new
+     * requests using it wait; further failures only join the refresh that is already running.
+     * Failures of requests sent before the last refresh attempt are ignored, since they were sent
+     * with the previous token.
+     *
+     * @param variableName  The variable the request used.
+     * @param response      The response to check.
+     * @param sentMillis    The epoch millis at which the request was sent.
+     */
+    public void reportResponse(String variableName, HttpResponse response, long sentMillis) {
+        RefreshRecipe recipe = recipes.get(variableName);
+        if (recipe == null || !recipe.hasFailureSignature()) return;
+        if (sentMillis < lastAttemptMillis.getOrDefault(variableName, 0L)) return;
+        if (!matchesFailure(variableName, recipe, response)) return;
+
+        // Only the first failure installs the barrier and schedules the refresh
+        if (barriers.putIfAbsent(variableName, new CompletableFuture<>()) != null) return;
+        burpLogging.logToOutput("Response matched the failure signature of variable '" + variableName + "'; refreshing.");
+        scheduleIn(variableName, 0, true);
+        if (scheduler.isShutdown()) {
+            CompletableFuture<Void> barrier = barriers.remove(variableName);
+            if (barrier != null) barrier.complete(null);
+        }
+    }
+
+    /**
+     * Checks whether a variable's refresh is triggered by failure signatures.
+     *
+     * @param variableName The variable name.
+     * @return True if the variable has a recipe with a failure signature, false otherwise.
+     */
+    public boolean hasFailureSignature(String variableName) {
+        RefreshRecipe recipe = recipes.get(variableName);
+        return recipe != null && recipe.hasFailureSignature();
+    }
+
+    /**
+     * Checks whether any refresh triggered by a failure is running. This is a cheap check meant
+     * to keep the request path free of further work in the common case.
+     *
+     * @return True if at least one refresh barrier is up, false otherwise.
+     */
+    public boolean hasBarriers() {
+        return !barriers.isEmpty();
+    }
+
+    /**
+     * Waits for the running refreshes of the variables referenced by a request, each for at most
+     * its recipe's wait time. The request is sent with whatever value is current afterwards.
+     *
+     * @param referencedNames The variable names referenced by the request, with encoding modifiers split off.
+     */
+    public void awaitBarriers(Set<String> referencedNames) {
+        for (Map.Entry<String, CompletableFuture<Void>> entry : barriers.entrySet()) {
+            String variableName = entry.getKey();
+            if (!referencedNames.contains(variableName))
+                continue;
+            RefreshRecipe recipe = recipes.get(variableName);
+            long waitMillis = recipe != null ? recipe.waitMillis() : RefreshRecipe.DEFAULT_WAIT_MILLIS;
+            try {
+                entry.getValue().get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                burpLogging.logToError("Gave up waiting " + waitMillis + " ms for the refresh of variable '" + variableName + "'.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // The barrier is only ever completed normally
+            }
+        }
+    }
+
+    /**
+     * Checks a response against a recipe's failure signature. When both a status code and a body
+     * pattern are configured, both must match. The body pattern runs within the extractor guard's time budget.
+     */
+    private boolean matchesFailure(String variableName, RefreshRecipe recipe, HttpResponse response) {
+        if (recipe.failureStatus() > 0 && response.statusCode() != recipe.failureStatus()) return false;
+        if (recipe.failurePattern() == null || recipe.failurePattern().isEmpty()) return true;
+        Pattern pattern = failurePatterns.computeIfAbsent(recipe.failurePattern(), regex -> {
+            try {
+                return Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                return INVALID_PATTERN;
+            }
+        });
+        return pattern != INVALID_PATTERN && extractorGuard.find(variableName, pattern, response.bodyToString());
+    }
+
+    private String extract(String variableName, RefreshRecipe recipe, HttpRequestResponse requestResponse) {
+        if (recipe.extractorType() == ExtractorType.REGEX) {
+            Pattern pattern = extractorGuard.compile(recipe.expression());
+            return pattern != null ? extractorGuard.extract(variableName, pattern, requestResponse.response().toString()) : null;
+        }
+        StructuredExtractor extractor = extractorGuard.compileStructured(recipe.extractorType(), recipe.expression());
+        return extractor != null ? extractor.extract(requestResponse.response().body()) : null;
+    }
+
+    /**
+     * Reads the "exp" claim of a JWT. The value may carry a scheme prefix such as "Bearer ".
+     *
+     * @param value The variable value.
+     * @return The expiry in epoch millis, or 0 if the value is not a JWT with a numeric "exp" claim.
+     */
+    static long jwtExpiryMillis(String value) {
+        if (value == null) return 0;
+        String token = value.trim();
+        int space = token.lastIndexOf(' ');
+        if (space >= 0) token = token.substring(space + 1);
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (secondDot < 0) return 0;
+        try {
+            String payload = new String(Base64.getUrlDecoder().decode(token.substring(firstDot + 1, secondDot)), StandardCharsets.UTF_8);
+            Matcher matcher = EXP_PATTERN.matcher(payload);
+            return matcher.find() ? Long.parseLong(matcher.group(1)) * 1000 : 0;
+        } catch (IllegalArgumentException e) {
+            // Not base64url, or an expiry too large to parse
+            return 0;
+        }
+    }
+
+    /**
+     * Loads persisted recipes and schedules their refreshes. Each recipe is a child object keyed by
+     * variable name holding the request, extractor, lifetime, lead time, failure signature, wait time
+     * and last refresh time.
+     *
+     * @param persistedRecipes The child persistence object, or null if none was saved.
+     */
+    public void load(PersistedObject persistedRecipes) {
+        if (persistedRecipes == null) return;
+        for (String variableName : persistedRecipes.childObjectKeys()) {
+            PersistedObject persistedRecipe = persistedRecipes.getChildObject(variableName);
+            if (persistedRecipe == null || persistedRecipe.getHttpRequest("request") == null) continue;
+            Long ttlSeconds = persistedRecipe.getLong("ttlSeconds");
+            Long leadSeconds = persistedRecipe.getLong("leadSeconds");
+            Integer failureStatus = persistedRecipe.getInteger("failureStatus");
+            String failurePattern = persistedRecipe.getString("failurePattern");
+            Long waitMillis = persistedRecipe.getLong("waitMillis");
+            Long last = persistedRecipe.getLong("lastRefreshMillis");
+            if (last != null) lastRefreshMillis.put(variableName, last);
+            setRecipe(variableName, new RefreshRecipe(persistedRecipe.getHttpRequest("request"),
+                    ExtractorType.fromName(persistedRecipe.getString("extractorType")),
+                    persistedRecipe.getString("expression"),
+                    ttlSeconds != null ? ttlSeconds : 0,
+                    leadSeconds != null ? leadSeconds : RefreshRecipe.DEFAULT_LEAD_SECONDS,
+                    failureStatus != null ? failureStatus : 0,
+                    failurePattern != null ? failurePattern : "",
+                    waitMillis != null ? waitMillis : RefreshRecipe.DEFAULT_WAIT_MILLIS));
+        }
+    }
+
+    /**
+     * Saves the recipes to a new persistence object.
+     *
+     * @return The persistence object to store as a child object.
+     */
+    public PersistedObject save() {
+        PersistedObject persistedRecipes = PersistedObject.persistedObject();
+        for (Map.Entry<String, RefreshRecipe> entry : recipes.entrySet()) {
+            RefreshRecipe recipe = entry.getValue();
+            PersistedObject persistedRecipe = PersistedObject.persistedObject();
+            persistedRecipe.setHttpRequest("request", recipe.request());
+            persistedRecipe.setString("extractorType", recipe.extractorType().name());
+            persistedRecipe.setString("expression", recipe.expression());
+            persistedRecipe.setLong("ttlSeconds", recipe.ttlSeconds());
+            persistedRecipe.setLong("leadSeconds", recipe.leadSeconds());
+            persistedRecipe.setInteger("failureStatus", recipe.failureStatus());
+            persistedRecipe.setString("failurePattern", recipe.failurePattern());
+            persistedRecipe.setLong("waitMillis", recipe.waitMillis());
+            Long last = lastRefreshMillis.get(entry.getKey());
+            if (last != null) persistedRecipe.setLong("lastRefreshMillis", last);
+            persistedRecipes.setChildObject(entry.getKey(), persistedRecipe);
+        }
+        return persistedRecipes;
+    }
+}
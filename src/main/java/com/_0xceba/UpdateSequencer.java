@@ -0,0 +1,92 @@
+package com._0xceba;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orders concurrent auto-updates so the newest value wins.
+ * Requests are stamped with a monotonic sequence when they are sent, and responses write their
+ * extracted values under the sequence of their request. Each variable keeps the sequence of the
+ * last write it accepted; a write claims the variable with a compare-and-set loop on that sequence
+ * and is rejected if a newer request already wrote it, so a slow response to an older request
+ * cannot replace the token issued by a newer one. Writers to different variables never contend.
+ * Writes that do not come from a response, such as token refreshes, table edits and file reloads,
+ * claim the variable with a fresh sequence before they publish, so responses to requests sent
+ * before such a write are stale as well.
+ */
+public class UpdateSequencer {
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Sequence of the last accepted write, keyed by store key or by context and variable name
+    private final ConcurrentHashMap<String, AtomicLong> appliedSequences = new ConcurrentHashMap<>();
+
+    /**
+     * @return A sequence greater than every sequence returned before.
+     */
+    public long nextSequence() {
+        return nextSequence.incrementAndGet();
+    }
+
+    /**
+     * Claims a variable for a write stamped with a sequence.
+     *
+     * @param key       The key of the variable.
+     * @param sequence  The sequence of the write.
+     * @return True if no write with the same or a newer sequence was accepted before, false if the write is stale.
+     */
+    public boolean claim(String key, long sequence) {
+        AtomicLong applied = appliedSequences.get(key);
+        if (applied == null)
+            applied = appliedSequences.computeIfAbsent(key, k -> new AtomicLong());
+        while (true) {
+            long current = applied.get();
+            if (sequence <= current)
+                return false;
+            if (applied.compareAndSet(current, sequence))
+                return true;
+        }
+    }
+
+    /**
+     * Checks whether a claimed write is still the newest one for its variable. Publishing a claimed
+     * value only while this holds ensures a newer write that claimed the variable in the meantime
+     * is never overwritten; that writer publishes its own value instead.
+     *
+     * @param key       The key of the variable.
+     * @param sequence  The sequence of the claimed write.
+     * @return True if no newer write has claimed the variable, false otherwise.
+     */
+    public boolean isLatest(String key, long sequence) {
+        AtomicLong applied = appliedSequences.get(key);
+        return applied == null || applied.get() == sequence;
+    }
+
+    /**
+     * Forgets the sequence of a deleted variable.
+     *
+     * @param key The key of the variable.
+     */
+    public void forget(String key) {
+        appliedSequences.remove(key);
+    }
+
+    /**
+     * Forgets the sequences of every variable of a removed context.
+     *
+     * @param contextName The context name.
+     */
+    public void forgetContext(String contextName) {
+        String prefix = contextName + '\u0000';
+        appliedSequences.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Builds the key of a variable within a context.
+     *
+     * @param context       The context.
+     * @param variableName  The variable name.
+     * @return The key.
+     */
+    public static String contextKey(VariableContext context, String variableName) {
+        return context.name() + '\u0000' + variableName;
+    }
+}
@@ -0,0 +1,154 @@
+package com._0xceba;
+
+import burp.api.montoya.persistence.PersistedList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A list of values that a variable rotates through, one value per substitution.
+ * Selection never locks: round-robin and sticky-host assignment advance a single atomic cursor,
+ * random selection uses the calling thread's RNG, and least-recently-used selection claims the
+ * oldest entry with a compare-and-set on its use stamp.
+ * A pool is shared by every snapshot that holds the variable, so its cursor and usage counts
+ * survive edits to the variable's value or extractor.
+ */
+public final class ValuePool {
+    private final List<String> values;
+    private final PoolStrategy strategy;
+    // Round-robin position, also used as the logical clock for least-recently-used stamps
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLongArray uses;
+    private final AtomicLongArray lastUsedStamps;
+    private final ConcurrentHashMap<String, Integer> hostAssignments = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a pool.
+     *
+     * @param values    The values to rotate through; must not be empty.
+     * @param strategy  The selection strategy.
+     * @throws IllegalArgumentException If there are no values.
+     */
+    public ValuePool(List<String> values, PoolStrategy strategy) {
+        if (values.isEmpty())
+            throw new IllegalArgumentException("A value pool needs at least one value");
+        this.values = List.copyOf(values);
+        this.strategy = strategy != null ? strategy : PoolStrategy.ROUND_ROBIN;
+        this.uses = new AtomicLongArray(this.values.size());
+        this.lastUsedStamps = new AtomicLongArray(this.values.size());
+    }
+
+    public List<String> values() {
+        return values;
+    }
+
+    public PoolStrategy strategy() {
+        return strategy;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Chooses the value to substitute for one reference.
+     *
+     * @param host The target host of the request, used by the sticky strategy; may be null.
+     * @return The chosen value.
+     */
+    public String select(String host) {
+        int index = switch (strategy) {
+            case ROUND_ROBIN -> nextIndex();
+            case RANDOM -> ThreadLocalRandom.current().nextInt(values.size());
+            case LEAST_RECENTLY_USED -> leastRecentlyUsedIndex();
+            case STICKY_HOST -> stickyIndex(host);
+        };
+        uses.incrementAndGet(index);
+        return values.get(index);
+    }
+
+    /**
+     * Returns how often the entry at the given index has been chosen.
+     *
+     * @param index The entry index.
+     * @return The number of times the entry was substituted.
+     */
+    public long uses(int index) {
+        return uses.get(index);
+    }
+
+    /**
+     * Formats the per-entry usage counts for display, in pool order.
+     *
+     * @return The counts separated by " / ".
+     */
+    public String usageSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) sb.append(" / ");
+            sb.append(uses.get(i));
+        }
+        return sb.toString();
+    }
+
+    private int nextIndex() {
+        return (int) Math.floorMod(cursor.getAndIncrement(), (long) values.size());
+    }
+
+    /**
+     * Claims the entry with the oldest use stamp. If another thread claims the same entry first,
+     * the scan is repeated, so concurrent callers receive different entries whenever possible.
+     */
+    private int leastRecentlyUsedIndex() {
+        while (true) {
+            int oldest = 0;
+            long oldestStamp = lastUsedStamps.get(0);
+            for (int i = 1; i < values.size(); i++) {
+                long stamp = lastUsedStamps.get(i);
+                if (stamp < oldestStamp) {
+                    oldest = i;
+                    oldestStamp = stamp;
+                }
+            }
+            if (lastUsedStamps.compareAndSet(oldest, oldestStamp, cursor.incrementAndGet()))
+                return oldest;
+        }
+    }
+
+    /**
+     * Returns the entry assigned to a host, assigning hosts to entries in round-robin order on first use.
+     */
+    private int stickyIndex(String host) {
+        if (host == null) return nextIndex();
+        Integer index = hostAssignments.get(host);
+        return index != null ? index : hostAssignments.computeIfAbsent(host, h -> nextIndex());
+    }
+
+    /**
+     * Creates a pool from a persisted string list holding [strategy, value, value, ...].
+     *
+     * @param list The persisted list.
+     * @return The pool, or null if the list holds no values.
+     */
+    public static ValuePool fromPersistedList(PersistedList<String> list) {
+        if (list == null || list.size() < 2) return null;
+        return new ValuePool(new ArrayList<>(list.subList(1, list.size())), PoolStrategy.fromName(list.get(0)));
+    }
+
+    /**
+     * Converts the pool to a persisted string list holding [strategy, value, value, ...].
+     * Usage counts are not persisted.
+     *
+     * @return The persisted list.
+     */
+    public PersistedList<String> toPersistedList() {
+        PersistedList<String> list = PersistedList.persistedStringList();
+        list.add(strategy.name());
+        list.addAll(values);
+        return list;
+    }
+}
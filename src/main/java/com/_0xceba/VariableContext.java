@@ -0,0 +1,150 @@
+package com._0xceba;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A named set of variable values layered over the global variables.
+ * A request is bound to a context by the {@value #HEADER_NAME} header, which can be set per
+ * Repeater tab or in the base request of an Intruder attack. Requests bound to a context resolve variables from the context first and fall back to
+ * the global value, and auto-updates from their responses are written to the context only.
+ * This lets concurrent Repeater tabs or Intruder attacks running as different users keep
+ * their extracted tokens apart.
+ * <p>
+ * Nested references are flattened when the context's values are written, against the view the
+ * writing response was resolved with, so requests read the flattened values without resolving
+ * them again. They are only re-resolved on read when the request's view differs, such as after
+ * the global variables changed or for another host.
+ */
+public class VariableContext {
+    // Request header that binds a request to a context; it is removed before the request is sent
+    public static final String HEADER_NAME = "X-Burp-Variables-Context";
+    private final String name;
+    // The context's values published together with their flattened values
+    private final AtomicReference<State> state = new AtomicReference<>(new State(Map.of(), null, null));
+    // When the context was last bound to a request, used to evict the least recently used context
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    /**
+     * The context's values and their flattened values.
+     *
+     * @param overlay   Unmodifiable map of the context's own values.
+     * @param view      The view the values were flattened against, or null if they were not.
+     * @param resolved  The flattened values of the view's variables with the context's values applied, or null.
+     */
+    private record State(Map<String, VariableData> overlay, VariableView view, ResolvedVariables resolved) {
+        static State of(Map<String, VariableData> overlay, VariableView view) {
+            return new State(overlay, view, overlay.isEmpty() || view == null ? null : resolve(view, overlay));
+        }
+    }
+
+    /**
+     * Constructs an empty context.
+     *
+     * @param name The context name.
+     */
+    public VariableContext(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the context's own value for a variable without falling back to the global value.
+     *
+     * @param variableName The variable name.
+     * @return The VariableData held by this context, or null.
+     */
+    public VariableData get(String variableName) {
+        return state.get().overlay().get(variableName);
+    }
+
+    /**
+     * Sets the context's value for a variable while a condition holds, checking the condition
+     * again before each compare-and-set attempt. The values are flattened before they are published.
+     *
+     * @param variableName  The variable name.
+     * @param data          The VariableData to store.
+     * @param view          The view of the global variables to flatten against; may be null.
+     * @param condition     Checked before each attempt; nothing is stored once it returns false.
+     * @return True if the value was stored, false if the condition did not hold.
+     */
+    public boolean put(String variableName, VariableData data, VariableView view, BooleanSupplier condition) {
+        while (true) {
+            State previous = state.get();
+            if (!condition.getAsBoolean()) return false;
+            HashMap<String, VariableData> next = new HashMap<>(previous.overlay());
+            next.put(variableName, data);
+            if (state.compareAndSet(previous, State.of(Collections.unmodifiableMap(next), view))) return true;
+        }
+    }
+
+    /**
+     * Atomically applies a mutation to a copy of the context's values, so several values change
+     * together. The mutation may run more than once under contention, so it must only modify the
+     * map it is given. The values are flattened before they are published.
+     *
+     * @param mutation  The mutation to apply to the copied map.
+     * @param view      The view of the global variables to flatten against; may be null.
+     */
+    public void update(Consumer<Map<String, VariableData>> mutation, VariableView view) {
+        while (true) {
+            State previous = state.get();
+            HashMap<String, VariableData> next = new HashMap<>(previous.overlay());
+            mutation.accept(next);
+            if (state.compareAndSet(previous, State.of(Collections.unmodifiableMap(next), view))) return;
+        }
+    }
+
+    /**
+     * Returns the flattened values for requests in this context, where nested references resolve
+     * to the context's values first. Values flattened when they were written are reused when the
+     * request's view is the one they were flattened against.
+     *
+     * @param view The view of the global variables the request is resolved against.
+     * @return The flattened values.
+     */
+    public ResolvedVariables resolved(VariableView view) {
+        State current = state.get();
+        if (current.overlay().isEmpty()) return view.resolved();
+        if (current.view() == view) return current.resolved();
+
+        // The global variables changed since the last write, or the request goes to another host
+        ResolvedVariables resolved = resolve(view, current.overlay());
+        state.compareAndSet(current, new State(current.overlay(), view, resolved));
+        return resolved;
+    }
+
+    private static ResolvedVariables resolve(VariableView view, Map<String, VariableData> overlay) {
+        HashMap<String, VariableData> merged = new HashMap<>(view.variables());
+        merged.putAll(overlay);
+        return VariableGraph.resolve(merged);
+    }
+
+    /**
+     * @return An immutable view of the values held by this context.
+     */
+    public Map<String, VariableData> values() {
+        return state.get().overlay();
+    }
+
+    /**
+     * Records that a request was bound to this context.
+     */
+    void touch() {
+        lastUsedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return When the context was last bound to a request, in System.nanoTime() units.
+     */
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+}
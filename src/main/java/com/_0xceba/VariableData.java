@@ -1,12 +1,57 @@
 package com._0xceba;
 
 /**
- * Immutable record holding variable value and optional auto-update regex.
+ * Immutable record holding variable value and optional auto-update extractor.
  *
- * @param value The variable's value.
- * @param regex The regex pattern to auto-update the variable value (can be empty).
+ * @param value             The variable's value.
+ * @param regex             The extractor expression to auto-update the variable value (can be empty).
+ *                          Interpreted as a regex, JSONPath or XPath depending on the extractor type.
+ * @param extractorType     The kind of extractor expression held in regex.
+ * @param pool              Optional pool of values substituted in place of value (can be null).
+ * @param ttlMillis         How long each new value stays valid, or 0 if the value never expires.
+ * @param expiresAtMillis   The epoch millis at which the current value expires, or 0 if it never expires.
  */
-public record VariableData(String value, String regex) {
+public record VariableData(String value, String regex, ExtractorType extractorType, ValuePool pool, long ttlMillis, long expiresAtMillis) {
+    /**
+     * Normalizes a missing extractor type to REGEX.
+     */
+    public VariableData {
+        if (extractorType == null) extractorType = ExtractorType.REGEX;
+    }
+
+    /**
+     * Constructs a VariableData without a value pool.
+     *
+     * @param value         The variable's value.
+     * @param regex         The extractor expression to auto-update the variable value (can be empty).
+     * @param extractorType The kind of extractor expression held in regex.
+     */
+    public VariableData(String value, String regex, ExtractorType extractorType) {
+        this(value, regex, extractorType, null);
+    }
+
+    /**
+     * Constructs a VariableData whose value never expires.
+     *
+     * @param value         The variable's value.
+     * @param regex         The extractor expression to auto-update the variable value (can be empty).
+     * @param extractorType The kind of extractor expression held in regex.
+     * @param pool          Optional pool of values substituted in place of value (can be null).
+     */
+    public VariableData(String value, String regex, ExtractorType extractorType, ValuePool pool) {
+        this(value, regex, extractorType, pool, 0, 0);
+    }
+
+    /**
+     * Constructs a VariableData with a regex extractor.
+     *
+     * @param value The variable's value.
+     * @param regex The regex pattern to auto-update the variable value (can be empty).
+     */
+    public VariableData(String value, String regex) {
+        this(value, regex, ExtractorType.REGEX);
+    }
+
     /**
      * Constructs a VariableData with an empty regex.
      *
@@ -15,4 +60,49 @@ public record VariableData(String value, String regex) {
     public VariableData(String value) {
         this(value, "");
     }
+
+    /**
+     * Returns a copy of this VariableData with a new value and the same extractor, pool and TTL.
+     * The new value's lifetime starts now.
+     *
+     * @param newValue The new value.
+     * @return The updated VariableData.
+     */
+    public VariableData withValue(String newValue) {
+        return new VariableData(newValue, regex, extractorType, pool, ttlMillis, expiryFromNow(ttlMillis));
+    }
+
+    /**
+     * Returns a copy of this VariableData with a new value pool.
+     *
+     * @param newPool The new pool, or null to substitute the single value again.
+     * @return The updated VariableData.
+     */
+    public VariableData withPool(ValuePool newPool) {
+        return new VariableData(value, regex, extractorType, newPool, ttlMillis, expiresAtMillis);
+    }
+
+    /**
+     * Returns a copy of this VariableData with a new TTL. The current value's lifetime restarts now.
+     *
+     * @param newTtlMillis The new TTL, or 0 for a value that never expires.
+     * @return The updated VariableData.
+     */
+    public VariableData withTtl(long newTtlMillis) {
+        return new VariableData(value, regex, extractorType, pool, Math.max(0, newTtlMillis), expiryFromNow(newTtlMillis));
+    }
+
+    /**
+     * Checks whether the current value has expired.
+     *
+     * @param nowMillis The current epoch millis.
+     * @return True if the variable has a TTL and its value is past its lifetime, false otherwise.
+     */
+    public boolean isExpired(long nowMillis) {
+        return ttlMillis > 0 && nowMillis >= expiresAtMillis;
+    }
+
+    private static long expiryFromNow(long ttlMillis) {
+        return ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+    }
 }
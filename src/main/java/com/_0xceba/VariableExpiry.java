@@ -0,0 +1,213 @@
+package com._0xceba;
+
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.logging.Logging;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the lifetimes of variables that have a TTL.
+ * Whether a value has expired is decided from its own expiry time when it is substituted, so the
+ * request path needs no lookups beyond the snapshot. A single hashed timer wheel fires once per
+ * value when it expires to log the expiry and update the table, instead of one timer per variable.
+ * When holding is enabled, requests that reference an expired variable wait for a bounded time for
+ * the next value, which is signalled when a snapshot with a new expiry is published. A request also
+ * waits when it references a variable whose nested references lead to the expired one, and a
+ * host-scoped value is waited for when it is the value the request's service sees.
+ */
+public class VariableExpiry {
+    public static final int DEFAULT_HOLD_MILLIS = 2000;
+    // Timer resolution and number of wheel buckets; one rotation covers 51.2 seconds
+    private static final long TICK_MILLIS = 100;
+    private static final int BUCKET_COUNT = 512;
+
+    private final Logging burpLogging;
+    private final VariableStore variableStore;
+    private final TimerWheel<Expiration> wheel;
+    // Waiters for a fresh value keyed by variable name; completed when the variable is given a new expiry
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> freshValueWaiters = new ConcurrentHashMap<>();
+    // Names of the variables with a TTL in the current snapshot
+    private volatile Set<String> expiringVariables = Set.of();
+    // For each variable with a TTL, the references that use its value: its own or base name, and the variables built from it
+    private volatile Map<String, Set<String>> dependentReferences = Map.of();
+    private volatile int holdMillis = DEFAULT_HOLD_MILLIS;
+    // Called on the wheel thread with the name of each variable whose value expired
+    private volatile Consumer<String> expiryListener = name -> { };
+
+    /**
+     * A value's expiry as scheduled on the wheel.
+     *
+     * @param variableName      The variable name.
+     * @param expiresAtMillis   The expiry of the value that was current when it was scheduled.
+     */
+    private record Expiration(String variableName, long expiresAtMillis) {
+    }
+
+    /**
+     * Constructs the expiry tracker, starts its timer wheel and subscribes to the store's snapshots.
+     *
+     * @param burpLogging   The logging interface from the Montoya API.
+     * @param variableStore Store holding variable names and VariableData.
+     */
+    public VariableExpiry(Logging burpLogging, VariableStore variableStore) {
+        this.burpLogging = burpLogging;
+        this.variableStore = variableStore;
+        this.wheel = new TimerWheel<>("Burp Variables expiry", TICK_MILLIS, BUCKET_COUNT, this::expire);
+        published(null, variableStore.snapshot());
+        variableStore.addPublishListener(this::published);
+    }
+
+    public int holdMillis() {
+        return holdMillis;
+    }
+
+    public void setHoldMillis(int holdMillis) {
+        this.holdMillis = Math.max(0, holdMillis);
+    }
+
+    public void setExpiryListener(Consumer<String> expiryListener) {
+        this.expiryListener = expiryListener;
+    }
+
+    /**
+     * Checks whether any variable has a TTL. This is a cheap check meant to keep the request
+     * path free of further work in the common case.
+     *
+     * @return True if the current snapshot has at least one variable with a TTL, false otherwise.
+     */
+    public boolean hasExpiringVariables() {
+        return !expiringVariables.isEmpty();
+    }
+
+    /**
+     * Waits until the expired variables used by a request have fresh values, or until the hold
+     * time has passed. The hold time is shared by all variables of the request.
+     *
+     * @param requestAsString   The request before substitution.
+     * @param service           The request's service, which selects the host-scoped values it uses; may be null.
+     */
+    public void awaitFreshValues(String requestAsString, HttpService service) {
+        long deadlineNanos = System.nanoTime() + holdMillis * 1_000_000L;
+        Map<String, Set<String>> references = dependentReferences;
+        VariableView view = null;
+        for (String variableName : expiringVariables) {
+            if (!isReferenced(requestAsString, references.getOrDefault(variableName, Set.of())))
+                continue;
+            if (!isExpired(variableName)) continue;
+
+            // A host-scoped value is only used by requests to services it applies to
+            String baseName = HostIndex.baseName(variableName);
+            if (!baseName.equals(variableName)) {
+                if (view == null) view = variableStore.snapshot().view(service);
+                if (!view.storeKey(baseName).equals(variableName)) continue;
+            }
+            CompletableFuture<Void> waiter = freshValueWaiters.computeIfAbsent(variableName, k -> new CompletableFuture<>());
+
+            // Check again now that the waiter is registered, in case the value was replaced in between
+            if (!isExpired(variableName)) continue;
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) return;
+            try {
+                waiter.get(remainingNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // Send the request with the reference unresolved
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // Waiters are only ever completed normally
+            }
+        }
+    }
+
+    /**
+     * Stops the timer wheel and releases any waiting requests.
+     */
+    public void stop() {
+        wheel.stop();
+        for (String variableName : freshValueWaiters.keySet()) release(variableName);
+    }
+
+    private static boolean isReferenced(String requestAsString, Set<String> names) {
+        for (String name : names) {
+            if (requestAsString.contains("((" + name + "))") || requestAsString.contains("((" + name + "|"))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isExpired(String variableName) {
+        VariableData data = variableStore.get(variableName);
+        return data != null && data.isExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Schedules the expiry of every value whose expiry changed between two snapshots and
+     * releases the requests waiting for them.
+     *
+     * @param previous  The replaced snapshot, or null for the first snapshot.
+     * @param next      The published snapshot.
+     */
+    private void published(VariableStore.Snapshot previous, VariableStore.Snapshot next) {
+        Set<String> expiring = null;
+        long nowMillis = System.currentTimeMillis();
+        for (Map.Entry<String, VariableData> entry : next.variables().entrySet()) {
+            VariableData data = entry.getValue();
+            if (data.ttlMillis() <= 0) continue;
+            if (expiring == null) expiring = new HashSet<>();
+            expiring.add(entry.getKey());
+            VariableData before = previous != null ? previous.variables().get(entry.getKey()) : null;
+            if (before == null || before.expiresAtMillis() != data.expiresAtMillis()) {
+                wheel.schedule(new Expiration(entry.getKey(), data.expiresAtMillis()), data.expiresAtMillis());
+                if (!data.isExpired(nowMillis)) release(entry.getKey());
+            }
+        }
+        expiringVariables = expiring != null ? Set.copyOf(expiring) : Set.of();
+
+        // Collect the references that use each expiring value, following nested references back to it
+        Map<String, Set<String>> references = new HashMap<>();
+        for (String variableName : expiringVariables) {
+            String baseName = HostIndex.baseName(variableName);
+            Set<String> names = new HashSet<>();
+            names.add(baseName);
+            next.resolved().dependencies().forEach((dependent, dependencies) -> {
+                if (dependencies.contains(baseName)) names.add(dependent);
+            });
+            references.put(variableName, Set.copyOf(names));
+        }
+        dependentReferences = Map.copyOf(references);
+
+        // Release waiters of variables that were deleted or lost their TTL
+        for (String variableName : freshValueWaiters.keySet()) {
+            if (!expiringVariables.contains(variableName)) release(variableName);
+        }
+    }
+
+    private void release(String variableName) {
+        CompletableFuture<Void> waiter = freshValueWaiters.remove(variableName);
+        if (waiter != null) waiter.complete(null);
+    }
+
+    /**
+     * Handles a value reaching its expiry on the wheel thread. Expirations of values that have
+     * since been replaced are ignored.
+     *
+     * @param expiration The scheduled expiry.
+     */
+    private void expire(Expiration expiration) {
+        VariableData data = variableStore.get(expiration.variableName());
+        if (data == null || data.ttlMillis() <= 0 || data.expiresAtMillis() != expiration.expiresAtMillis()) return;
+        burpLogging.logToOutput("Variable '" + expiration.variableName() + "' expired.");
+        expiryListener.accept(expiration.variableName());
+    }
+}
@@ -0,0 +1,20 @@
+package com._0xceba;
+
+import java.util.function.Function;
+
+/**
+ * Computes the value of a dynamic variable reference such as ((uuid)) or ((counter:orderId))
+ * each time a request is sent. Generators are called concurrently from Burp's HTTP threads,
+ * so implementations must be thread-safe and should avoid locks and shared RNGs.
+ */
+@FunctionalInterface
+public interface VariableGenerator {
+    /**
+     * Generates a value for one reference.
+     *
+     * @param argument  The text after the first ':' in the reference, or null if there is none.
+     * @param variables Resolves a variable name to the value it would substitute, or null if it is not defined.
+     * @return The generated value, or null to leave the reference untouched.
+     */
+    String generate(String argument, Function<String, String> variables);
+}
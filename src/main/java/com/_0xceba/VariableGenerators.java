@@ -0,0 +1,145 @@
+package com._0xceba;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Registry of the generators that back dynamic variable references.
+ * A reference ((name)) or ((name:argument)) that does not match a defined variable is looked up
+ * here by the text before the first ':'. Defined variables always take precedence, so an existing
+ * variable named "uuid" keeps working.
+ * The built-in generators use ThreadLocalRandom and per-thread Mac instances, so they are safe
+ * and contention-free under concurrent Intruder threads. Random values are not cryptographically secure.
+ */
+public class VariableGenerators {
+    // Longest string a ((rand:n)) reference may produce
+    private static final int MAX_RANDOM_LENGTH = 4096;
+    private static final char[] ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<Mac> HMAC_SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final ConcurrentHashMap<String, VariableGenerator> generators = new ConcurrentHashMap<>();
+    private final CounterGenerator counterGenerator = new CounterGenerator();
+
+    /**
+     * Constructs a registry holding the built-in generators:
+     * ((uuid)), ((ts)), ((ts_ms)), ((counter:name)), ((rand:length)) and ((hmac:key:message)).
+     */
+    public VariableGenerators() {
+        register("uuid", (argument, variables) -> randomUuid());
+        register("ts", (argument, variables) -> Long.toString(System.currentTimeMillis() / 1000));
+        register("ts_ms", (argument, variables) -> Long.toString(System.currentTimeMillis()));
+        register("counter", counterGenerator);
+        register("rand", (argument, variables) -> randomAlphanumeric(argument));
+        register("hmac", VariableGenerators::hmacSha256);
+    }
+
+    /**
+     * Registers a generator, replacing any generator registered under the same name.
+     *
+     * @param name      The name used before the first ':' in references; must not contain ':'.
+     * @param generator The generator.
+     */
+    public void register(String name, VariableGenerator generator) {
+        if (name.isEmpty() || name.indexOf(':') >= 0)
+            throw new IllegalArgumentException("Invalid generator name: " + name);
+        generators.put(name, generator);
+    }
+
+    /**
+     * @return An unmodifiable view of the registered generators keyed by name.
+     */
+    public Map<String, VariableGenerator> generators() {
+        return Collections.unmodifiableMap(generators);
+    }
+
+    /**
+     * @return The built-in counter generator, exposed so its counters can be persisted and reset.
+     */
+    public CounterGenerator counters() {
+        return counterGenerator;
+    }
+
+    /**
+     * Generates the value of a reference if it names a registered generator.
+     *
+     * @param reference The text between the (( and )) delimiters.
+     * @param variables Resolves a variable name to the value it would substitute.
+     * @return The generated value, or null if no generator matches or the generator declined.
+     */
+    public String generate(String reference, Function<String, String> variables) {
+        int colon = reference.indexOf(':');
+        VariableGenerator generator = generators.get(colon < 0 ? reference : reference.substring(0, colon));
+        if (generator == null) return null;
+        return generator.generate(colon < 0 ? null : reference.substring(colon + 1), variables);
+    }
+
+    /**
+     * Builds a version 4 UUID from the calling thread's RNG, avoiding the shared SecureRandom behind UUID.randomUUID().
+     */
+    private static String randomUuid() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+        long leastSigBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    /**
+     * Returns a random alphanumeric string whose length is given by the argument.
+     */
+    private static String randomAlphanumeric(String argument) {
+        int length;
+        try {
+            length = Integer.parseInt(argument);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (length < 1 || length > MAX_RANDOM_LENGTH) return null;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+        return new String(chars);
+    }
+
+    /**
+     * Computes the lowercase hex HMAC-SHA256 of a message for a "key:message" argument.
+     * The key is the value of the variable with that name if one is defined, otherwise the literal key text.
+     */
+    private static String hmacSha256(String argument, Function<String, String> variables) {
+        if (argument == null) return null;
+        int colon = argument.indexOf(':');
+        if (colon <= 0) return null;
+        String keyName = argument.substring(0, colon);
+        String key = variables.apply(keyName);
+        if (key == null) key = keyName;
+        Mac mac = HMAC_SHA256.get();
+        try {
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            // Invalid or empty keys leave the reference untouched
+            return null;
+        }
+        byte[] digest = mac.doFinal(argument.substring(colon + 1).getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
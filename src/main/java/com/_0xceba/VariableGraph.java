@@ -0,0 +1,145 @@
+package com._0xceba;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the dependency graph between variables whose values contain ((name)) references and
+ * flattens it, so that substitution never has to expand references recursively.
+ * Only variables with a single static value can be nested; pooled variables and generators are
+ * resolved per request and are reported as dangling when referenced from another value.
+ * Variables on a cycle, and variables that depend on an unresolvable variable, keep their raw value.
+ * The variables each flattened value was built from are recorded, so a value that depends on an
+ * expired variable can be treated as expired too.
+ */
+public final class VariableGraph {
+    private final Map<String, VariableData> variables;
+    private final Map<String, String> values = new HashMap<>();
+    private final Map<String, String> problems = new HashMap<>();
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+    // Variables whose expansion failed, so dependents can report them without re-walking the graph
+    private final Set<String> unresolvable = new HashSet<>();
+    // Current depth-first path, used to detect and report cycles
+    private final List<String> path = new ArrayList<>();
+
+    private VariableGraph(Map<String, VariableData> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * Flattens every variable that contains nested references.
+     *
+     * @param variables The variables of one snapshot.
+     * @return The flattened values and any problems found.
+     */
+    public static ResolvedVariables resolve(Map<String, VariableData> variables) {
+        VariableGraph graph = null;
+        for (Map.Entry<String, VariableData> entry : variables.entrySet()) {
+            if (!hasReference(entry.getValue())) continue;
+            if (graph == null) graph = new VariableGraph(variables);
+            graph.expand(entry.getKey());
+        }
+        if (graph == null) return ResolvedVariables.EMPTY;
+        return new ResolvedVariables(Collections.unmodifiableMap(graph.values), Collections.unmodifiableMap(graph.problems),
+                Collections.unmodifiableMap(graph.dependencies));
+    }
+
+    /**
+     * Checks whether a variable's value is flattened by the graph.
+     *
+     * @param data The variable's data.
+     * @return True if the variable has a single static value that contains a ((name)) reference.
+     */
+    static boolean hasReference(VariableData data) {
+        return data.pool() == null && data.value().contains("((");
+    }
+
+    /**
+     * Returns the flattened value of a variable, expanding its dependencies first.
+     *
+     * @param name The variable name.
+     * @return The flattened value, or null if the variable is on a cycle or depends on one.
+     */
+    private String expand(String name) {
+        String done = values.get(name);
+        if (done != null) return done;
+        if (unresolvable.contains(name)) return null;
+        VariableData data = variables.get(name);
+        if (!hasReference(data)) return data.value();
+
+        int onPath = path.indexOf(name);
+        if (onPath >= 0) {
+            // Every variable from the first occurrence onwards is part of the cycle
+            List<String> cycle = new ArrayList<>(path.subList(onPath, path.size()));
+            cycle.add(name);
+            String description = "Reference cycle: " + String.join(" -> ", cycle);
+            for (String member : cycle) {
+                problems.put(member, description);
+                unresolvable.add(member);
+            }
+            return null;
+        }
+
+        path.add(name);
+        Set<String> dependsOn = new HashSet<>();
+        String value = data.value();
+        StringBuilder sb = new StringBuilder(value.length());
+        int copiedUpTo = 0;
+        boolean failed = false;
+        int start = value.indexOf("((");
+        while (start >= 0) {
+            int end = value.indexOf("))", start + 2);
+            if (end < 0) break;
+            String reference = value.substring(start + 2, end);
+
+            // Split off encoding modifiers the same way the HTTP handler does
+            String referencedName = reference;
+            EncodingModifier[] modifiers = null;
+            int pipe = variables.containsKey(reference) ? -1 : reference.indexOf('|');
+            if (pipe > 0) {
+                modifiers = EncodingModifier.parseChain(reference.substring(pipe + 1));
+                if (modifiers != null) referencedName = reference.substring(0, pipe);
+            }
+
+            VariableData referenced = variables.get(referencedName);
+            String expanded = null;
+            if (referenced == null) {
+                problems.putIfAbsent(name, "Undefined variable ((" + referencedName + "))");
+            } else if (referenced.pool() != null) {
+                problems.putIfAbsent(name, "Pooled variable ((" + referencedName + ")) cannot be nested");
+            } else {
+                expanded = expand(referencedName);
+                if (expanded == null) {
+                    failed = true;
+                    problems.putIfAbsent(name, "Depends on ((" + referencedName + ")), which is on a reference cycle");
+                }
+            }
+            if (expanded != null) {
+                dependsOn.add(referencedName);
+                dependsOn.addAll(dependencies.getOrDefault(referencedName, Set.of()));
+                sb.append(value, copiedUpTo, start).append(modifiers != null ? EncodingModifier.applyAll(modifiers, expanded) : expanded);
+                copiedUpTo = end + 2;
+                start = value.indexOf("((", copiedUpTo);
+            } else {
+                start = value.indexOf("((", start + 1);
+            }
+        }
+        path.remove(path.size() - 1);
+
+        // A cycle found further down may have marked this variable while it was on the path
+        if (failed || unresolvable.contains(name)) {
+            unresolvable.add(name);
+            return null;
+        }
+        sb.append(value, copiedUpTo, value.length());
+        String flattened = sb.toString();
+        values.put(name, flattened);
+        if (!dependsOn.isEmpty()) dependencies.put(name, Set.copyOf(dependsOn));
+        return flattened;
+    }
+}
@@ -0,0 +1,159 @@
+package com._0xceba;
+
+import burp.api.montoya.intruder.AttackConfiguration;
+import burp.api.montoya.intruder.GeneratedPayload;
+import burp.api.montoya.intruder.IntruderInsertionPoint;
+import burp.api.montoya.intruder.PayloadGenerator;
+import burp.api.montoya.intruder.PayloadGeneratorProvider;
+import burp.api.montoya.logging.Logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Intruder payload generator that iterates over variables.
+ * The base value of the insertion point is a template such as {@code ((users)):((passwords))}.
+ * Each referenced variable is a dimension: pooled variables contribute each value of their pool
+ * and other variables their single value. Payloads are the template rendered for every combination
+ * of values, in odometer order with the last dimension changing fastest. Only the current index of
+ * each dimension is kept, so attacks over millions of combinations use constant memory.
+ */
+public class VariablePayloadGeneratorProvider implements PayloadGeneratorProvider {
+    private final Logging burpLogging;
+    private final VariableStore variableStore;
+
+    /**
+     * Constructs a new instance of VariablePayloadGeneratorProvider.
+     *
+     * @param burpLogging   The logging interface from the Montoya API.
+     * @param variableStore Store holding variable names and VariableData.
+     */
+    public VariablePayloadGeneratorProvider(Logging burpLogging, VariableStore variableStore) {
+        this.burpLogging = burpLogging;
+        this.variableStore = variableStore;
+    }
+
+    @Override
+    public String displayName() {
+        return "Burp Variables";
+    }
+
+    @Override
+    public PayloadGenerator providePayloadGenerator(AttackConfiguration attackConfiguration) {
+        return new VariablePayloadGenerator();
+    }
+
+    /**
+     * A piece of a payload template: literal text, or a reference to a dimension with optional encoding modifiers.
+     *
+     * @param literal       The literal text, or null for a reference.
+     * @param dimension     The index of the referenced dimension.
+     * @param modifiers     The encoding modifiers applied to the value, or null.
+     */
+    private record Segment(String literal, int dimension, EncodingModifier[] modifiers) {
+    }
+
+    /**
+     * Generates the payloads of one attack. The template is compiled and the variables are read
+     * from the current snapshot when the first payload is requested.
+     */
+    private final class VariablePayloadGenerator implements PayloadGenerator {
+        private List<Segment> segments;
+        // The values of each dimension, shared with the snapshot they were read from
+        private List<List<String>> dimensions;
+        private int[] indexes;
+        private boolean exhausted;
+
+        @Override
+        public synchronized GeneratedPayload generatePayloadFor(IntruderInsertionPoint insertionPoint) {
+            if (segments == null)
+                compile(insertionPoint.baseValue().toString());
+            if (exhausted)
+                return GeneratedPayload.end();
+
+            // Render the current combination
+            StringBuilder sb = new StringBuilder();
+            for (Segment segment : segments) {
+                if (segment.literal() != null) {
+                    sb.append(segment.literal());
+                    continue;
+                }
+                String value = dimensions.get(segment.dimension()).get(indexes[segment.dimension()]);
+                sb.append(segment.modifiers() != null ? EncodingModifier.applyAll(segment.modifiers(), value) : value);
+            }
+
+            // Advance the odometer; the attack ends once the first dimension wraps around
+            int dimension = indexes.length - 1;
+            while (dimension >= 0 && ++indexes[dimension] == dimensions.get(dimension).size()) {
+                indexes[dimension] = 0;
+                dimension--;
+            }
+            if (dimension < 0)
+                exhausted = true;
+            return GeneratedPayload.payload(sb.toString());
+        }
+
+        /**
+         * Splits the template into literal text and references to defined variables. References
+         * to undefined variables are kept as literal text for the HTTP handler to resolve. A
+         * template without variable references produces no payloads.
+         *
+         * @param template The insertion point's base value.
+         */
+        private void compile(String template) {
+            VariableView view = variableStore.snapshot().view(null);
+            List<String> names = new ArrayList<>();
+            segments = new ArrayList<>();
+            dimensions = new ArrayList<>();
+            int copiedUpTo = 0;
+            int start = template.indexOf("((");
+            while (start >= 0) {
+                int end = template.indexOf("))", start + 2);
+                if (end < 0) break;
+                String reference = template.substring(start + 2, end);
+                String variableName = reference;
+                EncodingModifier[] modifiers = null;
+                VariableData data = view.variables().get(reference);
+                int pipe = data == null ? reference.indexOf('|') : -1;
+                if (pipe > 0) {
+                    modifiers = EncodingModifier.parseChain(reference.substring(pipe + 1));
+                    if (modifiers != null) {
+                        variableName = reference.substring(0, pipe);
+                        data = view.variables().get(variableName);
+                    }
+                }
+                if (data == null) {
+                    start = template.indexOf("((", start + 1);
+                    continue;
+                }
+
+                // Each variable is one dimension, however often it is referenced
+                int dimension = names.indexOf(variableName);
+                if (dimension < 0) {
+                    dimension = names.size();
+                    names.add(variableName);
+                    dimensions.add(data.pool() != null ? data.pool().values() : List.of(view.resolved().value(variableName, data)));
+                }
+                if (start > copiedUpTo)
+                    segments.add(new Segment(template.substring(copiedUpTo, start), -1, null));
+                segments.add(new Segment(null, dimension, modifiers));
+                copiedUpTo = end + 2;
+                start = template.indexOf("((", copiedUpTo);
+            }
+            if (copiedUpTo < template.length())
+                segments.add(new Segment(template.substring(copiedUpTo), -1, null));
+            indexes = new int[dimensions.size()];
+
+            // Pools are never empty, so every dimension has at least one value
+            long combinations = 1;
+            for (List<String> values : dimensions)
+                combinations = combinations > Long.MAX_VALUE / values.size() ? Long.MAX_VALUE : combinations * values.size();
+            exhausted = dimensions.isEmpty();
+            if (dimensions.isEmpty())
+                burpLogging.raiseInfoEvent("The Intruder insertion point does not reference any variables, so no payloads were generated.");
+            else
+                burpLogging.logToOutput("Generating " + (combinations == Long.MAX_VALUE ? "more than " + Long.MAX_VALUE : combinations)
+                        + " payload(s) from variables " + String.join(", ", names) + ".");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com._0xceba;
+
+import burp.api.montoya.persistence.PersistedList;
+import burp.api.montoya.persistence.PersistedObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes sets of variables in Burp's project persistence.
+ * Each variable is a string list of [value, regex, extractor type, TTL millis, expiry millis] keyed by the variable name,
+ * and value pools are stored as [strategy, value, value, ...] in the "valuePools" child object.
+ * The same layout is used for the active variables at the top level and for each saved environment.
+ */
+public final class VariablePersistence {
+    // Version of the variable naming scheme, stored as a top-level integer; 1 is the first one with host-scoped keys
+    public static final String KEY_FORMAT = "variableKeyFormat";
+    public static final int CURRENT_KEY_FORMAT = 1;
+
+    private VariablePersistence() {
+    }
+
+    /**
+     * Loads the variables stored in a persistence object.
+     *
+     * @param persistedObject The persistence object holding the string lists.
+     * @return The loaded variables keyed by name.
+     */
+    public static HashMap<String, VariableData> load(PersistedObject persistedObject) {
+        HashMap<String, VariableData> variablesMap = new HashMap<>();
+
+        for (String key : persistedObject.stringListKeys()) {
+            // Retrieve each key's persisted string list of [value, regex, extractor type, TTL millis, expiry millis]
+            PersistedList<String> variableDataList = persistedObject.getStringList(key);
+            if (variableDataList != null && !variableDataList.isEmpty()) {
+                String value = variableDataList.get(0);
+                // Check if the list has at least 2 elements, get regex value from
+                // index 1 or use empty string as fallback
+                String regex = variableDataList.size() > 1 ? variableDataList.get(1) : "";
+                // Check if the list has at least 3 elements, get the extractor type from
+                // index 2 or fall back to a regex extractor
+                ExtractorType extractorType = ExtractorType.fromName(variableDataList.size() > 2 ? variableDataList.get(2) : null);
+                // Check if the list has at least 5 elements, get the TTL and the expiry of the current value
+                // from indexes 3 and 4 or fall back to a value that never expires
+                long ttlMillis = 0;
+                long expiresAtMillis = 0;
+                if (variableDataList.size() > 4) {
+                    try {
+                        ttlMillis = Long.parseLong(variableDataList.get(3));
+                        expiresAtMillis = Long.parseLong(variableDataList.get(4));
+                    } catch (NumberFormatException e) {
+                        ttlMillis = 0;
+                        expiresAtMillis = 0;
+                    }
+                }
+                // Store the runtime variable data
+                variablesMap.put(key, new VariableData(value, regex, extractorType, null, ttlMillis, expiresAtMillis));
+            }
+        }
+
+        // Attach the persisted value pools, each stored as [strategy, value, value, ...] under the variable name
+        PersistedObject persistedPools = persistedObject.getChildObject("valuePools");
+        if (persistedPools != null) {
+            for (String key : persistedPools.stringListKeys()) {
+                VariableData data = variablesMap.get(key);
+                ValuePool pool = ValuePool.fromPersistedList(persistedPools.getStringList(key));
+                if (data != null && pool != null)
+                    variablesMap.put(key, data.withPool(pool));
+            }
+        }
+        return variablesMap;
+    }
+
+    /**
+     * Renames variables saved before host-scoped keys existed whose names have the name@pattern form,
+     * since those names would otherwise silently become host-scoped overrides and their extractors
+     * would stop running. Each '@' is replaced with "_at_", and references to a renamed variable in
+     * the other values are updated as well.
+     *
+     * @param variables The loaded variables, renamed in place.
+     * @return The new names keyed by the old names, in no particular order.
+     */
+    public static Map<String, String> migrateScopedLookingNames(Map<String, VariableData> variables) {
+        List<String> scopedLooking = new ArrayList<>();
+        for (String key : variables.keySet()) {
+            if (HostIndex.isScopedKey(key)) scopedLooking.add(key);
+        }
+        if (scopedLooking.isEmpty()) return Map.of();
+
+        Map<String, String> renamed = new LinkedHashMap<>();
+        for (String oldName : scopedLooking) {
+            String base = oldName.replace("@", "_at_");
+            String newName = base;
+            for (int suffix = 2; variables.containsKey(newName); suffix++)
+                newName = base + "_" + suffix;
+            variables.put(newName, variables.remove(oldName));
+            renamed.put(oldName, newName);
+        }
+
+        // Point nested references, including those with encoding modifiers, at the new names
+        for (Map.Entry<String, VariableData> entry : variables.entrySet()) {
+            VariableData data = entry.getValue();
+            String value = data.value();
+            if (!value.contains("((")) continue;
+            for (Map.Entry<String, String> rename : renamed.entrySet()) {
+                value = value.replace("((" + rename.getKey() + "))", "((" + rename.getValue() + "))")
+                        .replace("((" + rename.getKey() + "|", "((" + rename.getValue() + "|");
+            }
+            if (!value.equals(data.value()))
+                entry.setValue(new VariableData(value, data.regex(), data.extractorType(), data.pool(), data.ttlMillis(), data.expiresAtMillis()));
+        }
+        return renamed;
+    }
+
+    /**
+     * Replaces the variables stored in a persistence object.
+     *
+     * @param persistedObject   The persistence object to write to; its existing string lists are deleted.
+     * @param variables         The variables to save.
+     */
+    public static void save(PersistedObject persistedObject, Map<String, VariableData> variables) {
+        // Clear the persisted string lists
+        for (String key : persistedObject.stringListKeys()) {
+            persistedObject.deleteStringList(key);
+        }
+
+        // Save the variable data using the variable name as the key
+        PersistedObject savedPools = PersistedObject.persistedObject();
+        for (Map.Entry<String, VariableData> entry : variables.entrySet()) {
+            VariableData data = entry.getValue();
+            PersistedList<String> list = PersistedList.persistedStringList();
+            list.add(data.value());
+            list.add(data.regex());
+            list.add(data.extractorType().name());
+            list.add(Long.toString(data.ttlMillis()));
+            list.add(Long.toString(data.expiresAtMillis()));
+            persistedObject.setStringList(entry.getKey(), list);
+            if (data.pool() != null)
+                savedPools.setStringList(entry.getKey(), data.pool().toPersistedList());
+        }
+        persistedObject.setChildObject("valuePools", savedPools);
+    }
+}
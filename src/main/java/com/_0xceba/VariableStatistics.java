@@ -0,0 +1,169 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ToolType;
+import burp.api.montoya.persistence.PersistedList;
+import burp.api.montoya.persistence.PersistedObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-variable usage statistics updated from the HTTP handler.
+ * Counters are striped LongAdders so that concurrent Intruder or Scanner threads
+ * substituting the same hot variable do not contend with each other.
+ */
+public class VariableStatistics {
+    private final ConcurrentHashMap<String, Counters> countersMap = new ConcurrentHashMap<>();
+
+    /**
+     * Usage counters for a single variable.
+     * Timestamps and the last tool are plain volatile writes; the most recent writer wins.
+     */
+    public static final class Counters {
+        private final LongAdder substitutions = new LongAdder();
+        private final LongAdder autoUpdates = new LongAdder();
+        private final long createdMillis;
+        private volatile long lastUsedMillis;
+        private volatile String lastTool = "";
+
+        private Counters(long createdMillis) {
+            this.createdMillis = createdMillis;
+        }
+
+        public long substitutions() {
+            return substitutions.sum();
+        }
+
+        public long autoUpdates() {
+            return autoUpdates.sum();
+        }
+
+        /**
+         * @return The epoch millis of the last substitution, or 0 if never used.
+         */
+        public long lastUsedMillis() {
+            return lastUsedMillis;
+        }
+
+        /**
+         * @return The name of the tool that last substituted the variable, or an empty string.
+         */
+        public String lastTool() {
+            return lastTool;
+        }
+
+        /**
+         * @return The most recent of the last substitution time and the time the statistics were created.
+         */
+        public long lastActivityMillis() {
+            return Math.max(lastUsedMillis, createdMillis);
+        }
+    }
+
+    /**
+     * Returns the counters for a variable, creating them if needed.
+     *
+     * @param variableName The variable name.
+     * @return The counters for the variable.
+     */
+    public Counters get(String variableName) {
+        Counters counters = countersMap.get(variableName);
+        return counters != null ? counters : countersMap.computeIfAbsent(variableName, k -> new Counters(System.currentTimeMillis()));
+    }
+
+    /**
+     * Records that a variable reference was substituted in a request.
+     *
+     * @param variableName  The variable name.
+     * @param toolType      The tool that sent the request.
+     */
+    public void recordSubstitution(String variableName, ToolType toolType) {
+        Counters counters = get(variableName);
+        counters.substitutions.increment();
+        counters.lastUsedMillis = System.currentTimeMillis();
+        counters.lastTool = toolType.toolName();
+    }
+
+    /**
+     * Records that a variable's value was updated from a response.
+     *
+     * @param variableName The variable name.
+     */
+    public void recordAutoUpdate(String variableName) {
+        get(variableName).autoUpdates.increment();
+    }
+
+    /**
+     * Moves the statistics of a renamed variable to its new name.
+     *
+     * @param oldName The previous variable name.
+     * @param newName The new variable name.
+     */
+    public void rename(String oldName, String newName) {
+        if (oldName.equals(newName)) return;
+        Counters counters = countersMap.remove(oldName);
+        if (counters != null) countersMap.put(newName, counters);
+    }
+
+    /**
+     * Removes the statistics of a deleted variable.
+     *
+     * @param variableName The variable name.
+     */
+    public void remove(String variableName) {
+        countersMap.remove(variableName);
+    }
+
+    /**
+     * Removes all statistics.
+     */
+    public void clear() {
+        countersMap.clear();
+    }
+
+    /**
+     * Loads persisted statistics. Each string list is keyed by variable name and holds
+     * [substitutions, lastUsedMillis, lastTool, autoUpdates, createdMillis].
+     *
+     * @param persistedStatistics The child persistence object, or null if none was saved.
+     */
+    public void load(PersistedObject persistedStatistics) {
+        if (persistedStatistics == null) return;
+        for (String key : persistedStatistics.stringListKeys()) {
+            PersistedList<String> list = persistedStatistics.getStringList(key);
+            if (list == null || list.size() < 5) continue;
+            try {
+                Counters counters = new Counters(Long.parseLong(list.get(4)));
+                counters.substitutions.add(Long.parseLong(list.get(0)));
+                counters.lastUsedMillis = Long.parseLong(list.get(1));
+                counters.lastTool = list.get(2);
+                counters.autoUpdates.add(Long.parseLong(list.get(3)));
+                countersMap.put(key, counters);
+            } catch (NumberFormatException e) {
+                // Ignore corrupt entries; the variable starts with fresh statistics
+            }
+        }
+    }
+
+    /**
+     * Saves the statistics of the given variables to a new persistence object.
+     *
+     * @param variableNames The variables whose statistics should be saved.
+     * @return The persistence object to store as a child object.
+     */
+    public PersistedObject save(Iterable<String> variableNames) {
+        PersistedObject persistedStatistics = PersistedObject.persistedObject();
+        for (String variableName : variableNames) {
+            Counters counters = countersMap.get(variableName);
+            if (counters == null) continue;
+            PersistedList<String> list = PersistedList.persistedStringList();
+            list.add(Long.toString(counters.substitutions()));
+            list.add(Long.toString(counters.lastUsedMillis));
+            list.add(counters.lastTool);
+            list.add(Long.toString(counters.autoUpdates()));
+            list.add(Long.toString(counters.createdMillis));
+            persistedStatistics.setStringList(variableName, list);
+        }
+        return persistedStatistics;
+    }
+}
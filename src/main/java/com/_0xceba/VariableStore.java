@@ -0,0 +1,428 @@
+package com._0xceba;
+
+import burp.api.montoya.http.HttpService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe store for the global variables and the named variable contexts layered over them.
+ * The global variables are published as immutable, versioned snapshots: readers on HTTP threads
+ * take a snapshot with a single volatile read and never lock, while writers copy the map and
+ * install the new snapshot with a compare-and-set. Nested references between variables are
+ * flattened when a snapshot is built, so readers never expand them.
+ * The store also keeps named environments side by side. Only the active environment is published;
+ * switching installs another environment's variables as the next snapshot with a single
+ * compare-and-set, so every request sees either the old set or the new one.
+ * <p>
+ * Every write copies the map, which costs O(n) in the number of variables, and compares the copy
+ * with the previous snapshot by reference to find the changed variables. Writes that only change
+ * the values of variables that are not host-scoped, hold no nested reference and are not
+ * referenced by another variable, such as most auto-updates and token refreshes, reuse the
+ * previous flattened values and parsed host scopes. Any other write re-resolves the reference
+ * graph and re-parses every key for host scopes, which costs O(n) plus the length of all values
+ * with references, and empties the per-service view cache.
+ * <p>
+ * Responses write their extracted values with {@link #putClaimed} and {@link #updateClaimed}
+ * under the sequence of their request. Every other write claims the variables it changes with a
+ * fresh sequence from the {@link UpdateSequencer} before it publishes, so a slow response to a
+ * request sent before a refresh, edit or reload cannot bring back the older value.
+ */
+public class VariableStore {
+    private final AtomicReference<Snapshot> current;
+    private final ConcurrentHashMap<String, VariableContext> contexts = new ConcurrentHashMap<>();
+    // Upper bound on contexts, since any header value creates one; the least recently used one is dropped beyond it
+    static final int MAX_CONTEXTS = 256;
+    public static final String DEFAULT_ENVIRONMENT = "default";
+    // Variables of the environments that are not active, keyed by environment name
+    private final ConcurrentHashMap<String, Map<String, VariableData>> inactiveEnvironments = new ConcurrentHashMap<>();
+    private volatile String activeEnvironment = DEFAULT_ENVIRONMENT;
+    // Called on the writing thread with the replaced and the published snapshot after every write
+    private final CopyOnWriteArrayList<BiConsumer<Snapshot, Snapshot>> publishListeners = new CopyOnWriteArrayList<>();
+    private final UpdateSequencer sequencer = new UpdateSequencer();
+
+    /**
+     * Immutable view of the global variables at one point in time.
+     *
+     * @param version   Monotonically increasing version, incremented on every write.
+     * @param variables Unmodifiable map of variable names to VariableData.
+     * @param resolved  Flattened values of variables with nested references, and any reference problems.
+     * @param hosts     Index of the host-scoped variables, used to build per-service views.
+     */
+    public record Snapshot(long version, Map<String, VariableData> variables, ResolvedVariables resolved, HostIndex hosts) {
+        Snapshot(long version, Map<String, VariableData> variables) {
+            this(version, variables, VariableGraph.resolve(variables));
+        }
+
+        /**
+         * Builds the snapshot that follows another one, reusing its flattened values and host index
+         * when the changes cannot affect them.
+         *
+         * @param previous  The replaced snapshot.
+         * @param variables The new unmodifiable variables.
+         * @param changed   The names of the variables that were added, changed or removed.
+         * @return The next snapshot.
+         */
+        static Snapshot next(Snapshot previous, Map<String, VariableData> variables, List<String> changed) {
+            long version = previous.version() + 1;
+            if (!onlyPlainValuesChanged(previous, variables, changed))
+                return new Snapshot(version, variables);
+            return new Snapshot(version, variables, previous.resolved(), new HostIndex(previous.hosts(), variables, previous.resolved()));
+        }
+
+        /**
+         * Checks whether the changes between a snapshot and new variables are limited to values of
+         * variables that are not host-scoped, hold no nested reference and are not referenced by
+         * another variable, so the flattened values and host scopes stay the same.
+         */
+        private static boolean onlyPlainValuesChanged(Snapshot previous, Map<String, VariableData> variables, List<String> changed) {
+            Map<String, VariableData> old = previous.variables();
+            // Every variable with a reference is either flattened or has a problem recorded
+            ResolvedVariables resolved = previous.resolved();
+            List<String> referencing = new ArrayList<>(resolved.values().keySet());
+            for (String name : resolved.problems().keySet())
+                if (!resolved.values().containsKey(name)) referencing.add(name);
+
+            for (String name : changed) {
+                if (HostIndex.isScopedKey(name)) return false;
+                VariableData before = old.get(name);
+                VariableData after = variables.get(name);
+                if ((before != null && VariableGraph.hasReference(before)) || (after != null && VariableGraph.hasReference(after)))
+                    return false;
+                for (String referencingName : referencing) {
+                    VariableData data = variables.get(referencingName);
+                    if (data == null || data.value().contains("((" + name)) return false;
+                }
+            }
+            return true;
+        }
+
+        private Snapshot(long version, Map<String, VariableData> variables, ResolvedVariables resolved) {
+            this(version, variables, resolved, new HostIndex(variables, resolved));
+        }
+
+        /**
+         * Returns the variables as seen by requests to a service, with host-scoped values applied.
+         *
+         * @param service The request's service; may be null.
+         * @return The view for the service.
+         */
+        public VariableView view(HttpService service) {
+            return hosts.view(service);
+        }
+    }
+
+    /**
+     * Constructs a store holding the given initial variables.
+     *
+     * @param initialVariables The variables to start with.
+     */
+    public VariableStore(Map<String, VariableData> initialVariables) {
+        this.current = new AtomicReference<>(new Snapshot(0, Collections.unmodifiableMap(new HashMap<>(initialVariables))));
+    }
+
+    /**
+     * Registers a listener that is called on the writing thread after every published snapshot.
+     * Listeners of concurrent writers may run concurrently and out of order, so they should read
+     * the store again when the order matters.
+     *
+     * @param publishListener Called with the replaced and the published snapshot.
+     */
+    public void addPublishListener(BiConsumer<Snapshot, Snapshot> publishListener) {
+        publishListeners.add(publishListener);
+    }
+
+    /**
+     * Compares new variables with the previous ones by reference.
+     *
+     * @param old       The previous variables.
+     * @param variables The new variables.
+     * @return The names of the variables that were added, changed or removed.
+     */
+    private static List<String> changedKeys(Map<String, VariableData> old, Map<String, VariableData> variables) {
+        List<String> changed = new ArrayList<>();
+        int added = 0;
+        for (Map.Entry<String, VariableData> entry : variables.entrySet()) {
+            VariableData before = old.get(entry.getKey());
+            if (before != entry.getValue()) changed.add(entry.getKey());
+            if (before == null) added++;
+        }
+        // Only look for removed variables when the sizes show there are some
+        if (old.size() + added != variables.size()) {
+            for (String name : old.keySet())
+                if (!variables.containsKey(name)) changed.add(name);
+        }
+        return changed;
+    }
+
+    /**
+     * Claims the changed variables of a write that does not come from a response with a fresh
+     * sequence, so responses to requests sent before the write cannot overwrite it.
+     */
+    private void claimChanged(List<String> changed) {
+        if (changed.isEmpty()) return;
+        long sequence = sequencer.nextSequence();
+        for (String name : changed) sequencer.claim(name, sequence);
+    }
+
+    /**
+     * Forgets the sequences of the variables a published write removed.
+     */
+    private void forgetRemoved(Map<String, VariableData> variables, List<String> changed) {
+        for (String name : changed)
+            if (!variables.containsKey(name)) sequencer.forget(name);
+    }
+
+    private void published(Snapshot previous, Snapshot next) {
+        for (BiConsumer<Snapshot, Snapshot> publishListener : publishListeners)
+            publishListener.accept(previous, next);
+    }
+
+    /**
+     * @return The sequencer that orders response-driven writes against all other writes.
+     */
+    public UpdateSequencer sequencer() {
+        return sequencer;
+    }
+
+    /**
+     * @return The current snapshot of the global variables.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public VariableData get(String name) {
+        return current.get().variables().get(name);
+    }
+
+    public boolean containsKey(String name) {
+        return current.get().variables().containsKey(name);
+    }
+
+    public boolean isEmpty() {
+        return current.get().variables().isEmpty();
+    }
+
+    public void put(String name, VariableData data) {
+        update(variables -> variables.put(name, data));
+    }
+
+    /**
+     * Sets the value of an existing variable for a response whose sequence already claimed it,
+     * while a condition holds. The condition is checked again before each compare-and-set attempt,
+     * so the value is never published after the condition stopped holding. The value is applied to
+     * the variable as it is in the version being built, keeping concurrent edits to its extractor,
+     * pool or lifetime, and a variable that was deleted in the meantime is not brought back.
+     * Unlike the other writes, this does not advance the variable's sequence.
+     *
+     * @param name      The variable name.
+     * @param value     The new value.
+     * @param condition Checked before each attempt; nothing is published once it returns false.
+     * @return True if the value was published, false if the condition did not hold or the variable no longer exists.
+     */
+    public boolean putClaimed(String name, String value, BooleanSupplier condition) {
+        while (true) {
+            Snapshot previous = current.get();
+            VariableData data = previous.variables().get(name);
+            if (data == null || !condition.getAsBoolean())
+                return false;
+            HashMap<String, VariableData> variables = new HashMap<>(previous.variables());
+            variables.put(name, data.withValue(value));
+            Snapshot next = Snapshot.next(previous, Collections.unmodifiableMap(variables), List.of(name));
+            if (current.compareAndSet(previous, next)) {
+                published(previous, next);
+                return true;
+            }
+        }
+    }
+
+    public void remove(String name) {
+        update(variables -> variables.remove(name));
+    }
+
+    public void clear() {
+        update(Map::clear);
+    }
+
+    /**
+     * Atomically applies a mutation to a copy of the global variables and publishes the result
+     * as a new snapshot. The mutation may run more than once under contention, so it must only
+     * modify the map it is given. The changed variables are claimed with a fresh sequence first,
+     * so a response to a request sent before this write cannot overwrite it.
+     *
+     * @param mutation The mutation to apply to the copied map.
+     * @return The published snapshot.
+     */
+    public Snapshot update(Consumer<Map<String, VariableData>> mutation) {
+        return update(mutation, true);
+    }
+
+    /**
+     * Atomically applies a mutation for a response whose sequence already claimed the variables it
+     * changes. The mutation should only publish values that are still the newest for their variable.
+     *
+     * @param mutation The mutation to apply to the copied map.
+     * @return The published snapshot.
+     */
+    public Snapshot updateClaimed(Consumer<Map<String, VariableData>> mutation) {
+        return update(mutation, false);
+    }
+
+    private Snapshot update(Consumer<Map<String, VariableData>> mutation, boolean claim) {
+        while (true) {
+            Snapshot previous = current.get();
+            HashMap<String, VariableData> variables = new HashMap<>(previous.variables());
+            mutation.accept(variables);
+            List<String> changed = changedKeys(previous.variables(), variables);
+            if (claim) claimChanged(changed);
+            Snapshot next = Snapshot.next(previous, Collections.unmodifiableMap(variables), changed);
+            if (current.compareAndSet(previous, next)) {
+                forgetRemoved(variables, changed);
+                published(previous, next);
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return The name of the environment whose variables are published.
+     */
+    public String activeEnvironment() {
+        return activeEnvironment;
+    }
+
+    /**
+     * @return The names of all environments, including the active one, sorted alphabetically.
+     */
+    public List<String> environments() {
+        List<String> names = new ArrayList<>(inactiveEnvironments.keySet());
+        names.add(activeEnvironment);
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * @return An unmodifiable view of the variables of the inactive environments keyed by environment name.
+     */
+    public Map<String, Map<String, VariableData>> inactiveEnvironments() {
+        return Collections.unmodifiableMap(inactiveEnvironments);
+    }
+
+    /**
+     * Restores persisted environments. The active variables are the ones the store was constructed with.
+     *
+     * @param active        The name of the active environment, or null for the default name.
+     * @param environments  The variables of the inactive environments keyed by environment name.
+     */
+    public synchronized void restoreEnvironments(String active, Map<String, Map<String, VariableData>> environments) {
+        activeEnvironment = active != null && !active.isEmpty() ? active : DEFAULT_ENVIRONMENT;
+        for (Map.Entry<String, Map<String, VariableData>> entry : environments.entrySet()) {
+            if (!entry.getKey().equals(activeEnvironment))
+                inactiveEnvironments.put(entry.getKey(), Collections.unmodifiableMap(new HashMap<>(entry.getValue())));
+        }
+    }
+
+    /**
+     * Creates an inactive environment.
+     *
+     * @param name          The environment name.
+     * @param copyActive    True to start with a copy of the active variables, false to start empty.
+     * @return True if the environment was created, false if the name is empty or already used.
+     */
+    public synchronized boolean createEnvironment(String name, boolean copyActive) {
+        if (name.isEmpty() || name.equals(activeEnvironment) || inactiveEnvironments.containsKey(name)) return false;
+        inactiveEnvironments.put(name, copyActive ? current.get().variables() : Map.of());
+        return true;
+    }
+
+    /**
+     * Deletes an inactive environment.
+     *
+     * @param name The environment name.
+     * @return True if the environment was deleted, false if it is active or does not exist.
+     */
+    public synchronized boolean removeEnvironment(String name) {
+        return inactiveEnvironments.remove(name) != null;
+    }
+
+    /**
+     * Makes another environment active. Its variables are published as the next snapshot in a
+     * single compare-and-set, and the variables of the previously active environment are kept
+     * exactly as they were in the snapshot that was replaced. Switches are serialized with each
+     * other; readers and variable writers are never blocked.
+     *
+     * @param name The environment to activate.
+     * @return The published snapshot, or null if the environment does not exist or is already active.
+     */
+    public synchronized Snapshot switchEnvironment(String name) {
+        Map<String, VariableData> target = inactiveEnvironments.get(name);
+        if (target == null) return null;
+        while (true) {
+            Snapshot previous = current.get();
+            List<String> changed = changedKeys(previous.variables(), target);
+            claimChanged(changed);
+            Snapshot next = new Snapshot(previous.version() + 1, target);
+            if (current.compareAndSet(previous, next)) {
+                forgetRemoved(target, changed);
+                inactiveEnvironments.remove(name);
+                inactiveEnvironments.put(activeEnvironment, previous.variables());
+                activeEnvironment = name;
+                published(previous, next);
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Returns the named context for a request, creating an empty one on first use. Creating a
+     * context beyond {@link #MAX_CONTEXTS} drops the least recently used one with its values.
+     *
+     * @param name The context name.
+     * @return The context.
+     */
+    public VariableContext context(String name) {
+        VariableContext context = contexts.get(name);
+        if (context == null) {
+            if (contexts.size() >= MAX_CONTEXTS) evictLeastRecentlyUsedContext();
+            context = contexts.computeIfAbsent(name, VariableContext::new);
+        }
+        context.touch();
+        return context;
+    }
+
+    private void evictLeastRecentlyUsedContext() {
+        VariableContext oldest = null;
+        for (VariableContext context : contexts.values()) {
+            if (oldest == null || context.lastUsedNanos() - oldest.lastUsedNanos() < 0) oldest = context;
+        }
+        if (oldest != null && contexts.remove(oldest.name(), oldest))
+            sequencer.forgetContext(oldest.name());
+    }
+
+    /**
+     * @return An unmodifiable view of the contexts keyed by name.
+     */
+    public Map<String, VariableContext> contexts() {
+        return Collections.unmodifiableMap(contexts);
+    }
+
+    /**
+     * Removes all contexts and their values.
+     */
+    public void clearContexts() {
+        for (String name : contexts.keySet()) {
+            contexts.remove(name);
+            sequencer.forgetContext(name);
+        }
+    }
+}
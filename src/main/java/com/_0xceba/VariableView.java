@@ -0,0 +1,23 @@
+package com._0xceba;
+
+import java.util.Map;
+
+/**
+ * The variables a request resolves against: the global variables of a snapshot, with any
+ * host-scoped values that apply to the request's service substituted under their base names.
+ *
+ * @param variables     Unmodifiable map of variable names to VariableData.
+ * @param resolved      Flattened values of variables with nested references in this view.
+ * @param scopedKeys    Store keys of the host-scoped entries in effect, keyed by base variable name.
+ */
+public record VariableView(Map<String, VariableData> variables, ResolvedVariables resolved, Map<String, String> scopedKeys) {
+    /**
+     * Returns the store key that holds a variable's value in this view.
+     *
+     * @param variableName The base variable name.
+     * @return The host-scoped key, or the name itself if no scoped value applies.
+     */
+    public String storeKey(String variableName) {
+        return scopedKeys.getOrDefault(variableName, variableName);
+    }
+}
@@ -0,0 +1,445 @@
+package com._0xceba;
+
+import burp.api.montoya.logging.Logging;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps variables in sync with a CSV or JSON file written by other tools, such as CI jobs or login scripts.
+ * The file's directory is watched with a WatchService. When the file changes it is parsed as a stream
+ * and compared with the entries applied from the previous version, and only the added, changed and
+ * removed entries are applied to the store in one update. Variables that never came from the file are
+ * not touched.
+ * A file is only read once its size and modification time have stayed the same for the settle
+ * window, and its contents are discarded if either changed while it was parsed. This keeps a
+ * file that is truncated and rewritten in place from being applied half-written, unless the
+ * writer pauses mid-write for longer than the settle window. Writers that replace the file with
+ * an atomic rename are never read half-written.
+ * CSV files use the import layout of name, value and optional regex and extractor type columns without
+ * a header row. JSON files hold a single object whose members are variable names; string members are
+ * unescaped and other scalars are used as their JSON text.
+ */
+public class WatchedVariableFile {
+    // Writers often truncate and then write the file; events within this window are handled together,
+    // and the file must stay unchanged for this long before it is read
+    private static final long SETTLE_MILLIS = 50;
+
+    private final Logging burpLogging;
+    private final VariableStore variableStore;
+    private volatile Watch watch;
+    // Called on the watcher thread with the names of the variables added, changed or removed by a file change
+    private volatile Consumer<Set<String>> changeListener = names -> { };
+
+    /**
+     * A variable as defined by one line or member of the watched file.
+     *
+     * @param value         The variable value.
+     * @param regex         The auto-update regex, or null to keep the variable's current one.
+     * @param extractorType The extractor type, or null to keep the variable's current one.
+     */
+    record FileEntry(String value, String regex, ExtractorType extractorType) {
+    }
+
+    /**
+     * The size and modification time of the watched file, used to tell whether a writer is still busy.
+     *
+     * @param size              The file size in bytes.
+     * @param modifiedMillis    The last modification time in epoch millis.
+     */
+    private record FileState(long size, long modifiedMillis) {
+        /**
+         * @return The file's current state, or null if it does not exist.
+         */
+        static FileState of(Path file) {
+            try {
+                return new FileState(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Constructs a watcher that is not watching any file yet.
+     *
+     * @param burpLogging   The logging interface from the Montoya API.
+     * @param variableStore Store holding variable names and VariableData.
+     */
+    public WatchedVariableFile(Logging burpLogging, VariableStore variableStore) {
+        this.burpLogging = burpLogging;
+        this.variableStore = variableStore;
+    }
+
+    public void setChangeListener(Consumer<Set<String>> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * @return The watched file, or null if no file is watched.
+     */
+    public Path path() {
+        Watch current = watch;
+        return current != null ? current.file : null;
+    }
+
+    /**
+     * Starts watching a file and applies its current contents. Variables in the file replace the
+     * values of existing variables of the same name.
+     *
+     * @param file The CSV or JSON file; it does not have to exist yet.
+     * @throws IOException If the file's directory cannot be watched.
+     */
+    public synchronized void start(Path file) throws IOException {
+        stop();
+        Path absolute = file.toAbsolutePath().normalize();
+        Path directory = absolute.getParent();
+        if (directory == null || !Files.isDirectory(directory))
+            throw new IOException("Directory does not exist: " + directory);
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+        Watch next = new Watch(absolute, watchService);
+        watch = next;
+        next.worker.start();
+        burpLogging.logToOutput("Watching " + absolute + " for variables.");
+    }
+
+    /**
+     * Stops watching the file. Variables applied from it are kept.
+     */
+    public synchronized void stop() {
+        Watch current = watch;
+        if (current == null) return;
+        watch = null;
+        current.close();
+        burpLogging.logToOutput("Stopped watching " + current.file + ".");
+    }
+
+    /**
+     * A watched file and the thread waiting for its changes.
+     */
+    private final class Watch {
+        private final Path file;
+        private final WatchService watchService;
+        private final Thread worker;
+        // The entries applied from the previous version of the file; only touched by the worker thread
+        private Map<String, FileEntry> applied = Map.of();
+
+        Watch(Path file, WatchService watchService) {
+            this.file = file;
+            this.watchService = watchService;
+            this.worker = new Thread(this::run, "Burp Variables file watcher");
+            this.worker.setDaemon(true);
+        }
+
+        private void run() {
+            try {
+                reloadWhenStable();
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = pollFileEvents(key);
+
+                    // Let the writer finish, and merge the events it causes into one reload
+                    while (true) {
+                        WatchKey more = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                        if (more == null) break;
+                        changed |= pollFileEvents(more);
+                    }
+                    if (changed) reloadWhenStable();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Stopped
+            }
+        }
+
+        /**
+         * Drains the events of a watch key and re-arms it.
+         *
+         * @return True if any event concerns the watched file or events were lost, false otherwise.
+         */
+        private boolean pollFileEvents(WatchKey key) {
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context()))
+                    changed = true;
+            }
+            key.reset();
+            return changed;
+        }
+
+        void close() {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                burpLogging.logToError("Unable to stop watching " + file + ": " + e.getMessage());
+            }
+            worker.interrupt();
+        }
+
+        /**
+         * Waits until the file's size and modification time stay the same for the settle window, then reloads it.
+         */
+        private void reloadWhenStable() throws InterruptedException {
+            FileState state = FileState.of(file);
+            while (true) {
+                Thread.sleep(SETTLE_MILLIS);
+                FileState settled = FileState.of(file);
+                if (Objects.equals(state, settled)) break;
+                state = settled;
+            }
+            if (state != null) reload(state);
+        }
+
+        /**
+         * Parses the file and applies the difference to the entries of the previous version.
+         * A file that is missing, cannot be parsed or changed while it was read is ignored; its
+         * next change triggers another reload.
+         *
+         * @param expected The state of the file when it was last seen settled.
+         */
+        private void reload(FileState expected) {
+            Map<String, FileEntry> entries;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                entries = isJson(file) ? parseJson(reader) : parseCsv(reader);
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException | CsvValidationException | IllegalArgumentException e) {
+                burpLogging.logToError("Unable to read variables from " + file + ": " + e.getMessage());
+                return;
+            }
+
+            // A write that started while the file was parsed may have cut it short
+            if (!expected.equals(FileState.of(file)))
+                return;
+
+            // Diff against the previous version of the file
+            Map<String, FileEntry> upserts = new HashMap<>();
+            for (Map.Entry<String, FileEntry> entry : entries.entrySet()) {
+                if (!entry.getValue().equals(applied.get(entry.getKey())))
+                    upserts.put(entry.getKey(), entry.getValue());
+            }
+            Set<String> removals = new HashSet<>(applied.keySet());
+            removals.removeAll(entries.keySet());
+            applied = entries;
+            if (upserts.isEmpty() && removals.isEmpty()) return;
+
+            // Apply all changes as one new snapshot
+            variableStore.update(variables -> {
+                for (Map.Entry<String, FileEntry> entry : upserts.entrySet())
+                    variables.put(entry.getKey(), merge(variables.get(entry.getKey()), entry.getValue()));
+                variables.keySet().removeAll(removals);
+            });
+            for (Map.Entry<String, FileEntry> entry : upserts.entrySet())
+                StoreUpdateEvent.emit(entry.getKey(), "watch", entry.getValue().value());
+            for (String name : removals)
+                StoreUpdateEvent.emit(name, "watch", null);
+
+            Set<String> changedNames = new HashSet<>(upserts.keySet());
+            changedNames.addAll(removals);
+            burpLogging.logToOutput("Applied " + upserts.size() + " added or changed and " + removals.size()
+                    + " removed variable(s) from " + file + ".");
+            changeListener.accept(changedNames);
+        }
+    }
+
+    /**
+     * Applies a file entry to a variable. A changed value starts a new lifetime; the pool, TTL and,
+     * unless the file sets them, the regex and extractor type of an existing variable are kept.
+     */
+    private static VariableData merge(VariableData current, FileEntry entry) {
+        if (current == null)
+            return new VariableData(entry.value(), entry.regex() != null ? entry.regex() : "",
+                    entry.extractorType() != null ? entry.extractorType() : ExtractorType.REGEX);
+        VariableData data = current.value().equals(entry.value()) ? current : current.withValue(entry.value());
+        if (entry.regex() == null && entry.extractorType() == null)
+            return data;
+        return new VariableData(data.value(), entry.regex() != null ? entry.regex() : data.regex(),
+                entry.extractorType() != null ? entry.extractorType() : data.extractorType(),
+                data.pool(), data.ttlMillis(), data.expiresAtMillis());
+    }
+
+    private static boolean isJson(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".json");
+    }
+
+    /**
+     * Reads name, value and optional regex and extractor type columns. Lines without a value are skipped.
+     */
+    static Map<String, FileEntry> parseCsv(Reader in) throws IOException, CsvValidationException {
+        Map<String, FileEntry> entries = new HashMap<>();
+        try (CSVReader reader = new CSVReader(in)) {
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                if (line.length < 2 || line[0].isEmpty()) continue;
+                String regex = line.length > 2 ? line[2] : null;
+                ExtractorType extractorType = line.length > 3 ? ExtractorType.fromName(line[3]) : null;
+                entries.put(line[0], new FileEntry(line[1], regex, extractorType));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the members of a top-level JSON object as variables, one character at a time.
+     * Nested objects and arrays are skipped.
+     *
+     * @throws IllegalArgumentException If the text is not a JSON object.
+     */
+    static Map<String, FileEntry> parseJson(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        Map<String, FileEntry> entries = new HashMap<>();
+        reader.expect('{');
+        if (reader.peek() == '}') return entries;
+        while (true) {
+            reader.expect('"');
+            String name = reader.readString();
+            reader.expect(':');
+            int c = reader.peek();
+            if (c == '"') {
+                reader.next();
+                entries.put(name, new FileEntry(reader.readString(), null, null));
+            } else if (c == '{' || c == '[') {
+                reader.skipContainer();
+            } else {
+                entries.put(name, new FileEntry(reader.readScalar(), null, null));
+            }
+            int separator = reader.nextNonSpace();
+            if (separator == '}') return entries;
+            if (separator != ',') throw new IllegalArgumentException("Expected , or } in JSON object");
+        }
+    }
+
+    /**
+     * Minimal pull reader for the JSON subset needed by {@link #parseJson(Reader)}.
+     */
+    private static final class JsonReader {
+        private final Reader in;
+        private int pushedBack = -2;
+
+        JsonReader(Reader in) {
+            this.in = in;
+        }
+
+        int next() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        int nextNonSpace() throws IOException {
+            int c;
+            do {
+                c = next();
+            } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+            return c;
+        }
+
+        int peek() throws IOException {
+            int c = nextNonSpace();
+            pushedBack = c;
+            return c;
+        }
+
+        void expect(char expected) throws IOException {
+            if (nextNonSpace() != expected)
+                throw new IllegalArgumentException("Expected " + expected + " in JSON object");
+        }
+
+        /**
+         * Reads the rest of a string whose opening quote was consumed, resolving escapes.
+         */
+        String readString() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                int c = next();
+                if (c < 0) throw new IllegalArgumentException("Unterminated JSON string");
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append((char) c);
+                    continue;
+                }
+                int escaped = next();
+                switch (escaped) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            int h = next();
+                            if (h < 0) throw new IllegalArgumentException("Unterminated JSON string");
+                            hex[i] = (char) h;
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid \\u escape in JSON string");
+                        }
+                    }
+                    case -1 -> throw new IllegalArgumentException("Unterminated JSON string");
+                    default -> sb.append((char) escaped);
+                }
+            }
+        }
+
+        /**
+         * Reads a number, boolean or null as its raw text.
+         */
+        String readScalar() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c = nextNonSpace();
+            while (c >= 0 && c != ',' && c != '}' && c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                sb.append((char) c);
+                c = next();
+            }
+            pushedBack = c;
+            if (sb.isEmpty()) throw new IllegalArgumentException("Missing JSON value");
+            return sb.toString();
+        }
+
+        /**
+         * Skips a nested object or array, including any strings inside it.
+         */
+        void skipContainer() throws IOException {
+            int depth = 0;
+            do {
+                int c = next();
+                if (c < 0) throw new IllegalArgumentException("Unterminated JSON value");
+                if (c == '"') readString();
+                else if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+            } while (depth > 0);
+        }
+    }
+}
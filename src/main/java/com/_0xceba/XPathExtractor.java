@@ -0,0 +1,371 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming extractor for a simple XPath subset.
+ * Supported expressions are absolute element paths such as {@code /response/session/token},
+ * positional steps such as {@code /items/item[2]/id}, a leading descendant step such as
+ * {@code //token}, the {@code *} wildcard, and a trailing attribute step such as {@code /a/b/@id}.
+ * The body is scanned tag by tag without building a document, and the scan stops as soon as
+ * the target element's text or attribute has been read.
+ */
+public final class XPathExtractor implements StructuredExtractor {
+    private final String[] names;
+    // One-based positional predicate per step, or 0 for the first match
+    private final int[] indexes;
+    private final boolean descendant;
+    private final String attribute;
+
+    private XPathExtractor(String[] names, int[] indexes, boolean descendant, String attribute) {
+        this.names = names;
+        this.indexes = indexes;
+        this.descendant = descendant;
+        this.attribute = attribute;
+    }
+
+    /**
+     * Compiles a simple XPath expression.
+     *
+     * @param path The expression, starting with "/" or "//".
+     * @return The compiled extractor.
+     * @throws IllegalArgumentException If the expression is invalid or unsupported.
+     */
+    public static XPathExtractor compile(String path) {
+        if (path == null || !path.startsWith("/"))
+            throw new IllegalArgumentException("XPath must start with /");
+
+        boolean descendant = path.startsWith("//");
+        String[] steps = path.substring(descendant ? 2 : 1).split("/", -1);
+        String attribute = null;
+        int stepCount = steps.length;
+        if (steps[stepCount - 1].startsWith("@")) {
+            attribute = steps[stepCount - 1].substring(1);
+            if (attribute.isEmpty())
+                throw new IllegalArgumentException("Empty attribute name");
+            stepCount--;
+        }
+        if (stepCount == 0)
+            throw new IllegalArgumentException("XPath must select at least one element");
+
+        List<String> names = new ArrayList<>();
+        int[] indexes = new int[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            String step = steps[i];
+            int bracket = step.indexOf('[');
+            if (bracket >= 0) {
+                if (!step.endsWith("]"))
+                    throw new IllegalArgumentException("Unclosed predicate in step: " + step);
+                try {
+                    indexes[i] = Integer.parseInt(step.substring(bracket + 1, step.length() - 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Only positional predicates are supported: " + step);
+                }
+                if (indexes[i] < 1)
+                    throw new IllegalArgumentException("Positions start at 1: " + step);
+                step = step.substring(0, bracket);
+            }
+            if (step.isEmpty() || step.contains("@") || step.endsWith(":"))
+                throw new IllegalArgumentException("Invalid step: " + steps[i]);
+            names.add(step);
+        }
+        return new XPathExtractor(names.toArray(new String[0]), indexes, descendant, attribute);
+    }
+
+    @Override
+    public String extract(ByteArray body) {
+        return new Scanner(body).run();
+    }
+
+    /**
+     * Single-use tag scanner holding the match state for one body.
+     */
+    private final class Scanner {
+        private final ByteArray bytes;
+        private final int length;
+        private int pos;
+        // Current element depth, and the depth at which each matched step's element was opened
+        private int depth;
+        private int matched;
+        private final int[] matchDepths = new int[names.length];
+        private final int[] counts = new int[names.length];
+
+        Scanner(ByteArray bytes) {
+            this.bytes = bytes;
+            this.length = bytes.length();
+        }
+
+        String run() {
+            while ((pos = indexOf('<', pos)) >= 0) {
+                if (startsWith("<!--")) {
+                    pos = skipPast("-->");
+                } else if (startsWith("<![CDATA[")) {
+                    pos = skipPast("]]>");
+                } else if (startsWith("<?")) {
+                    pos = skipPast("?>");
+                } else if (startsWith("<!")) {
+                    pos = skipDeclaration();
+                } else if (startsWith("</")) {
+                    pos = skipPast(">");
+                    depth--;
+                    // The innermost matched element has closed
+                    if (matched > 0 && depth < matchDepths[matched - 1]) matched--;
+                } else {
+                    String result = startTag();
+                    if (result != null) return result;
+                }
+                if (pos < 0) return null;
+            }
+            return null;
+        }
+
+        /**
+         * Handles a start tag at the cursor.
+         *
+         * @return The extracted value if this tag is the target, otherwise null.
+         */
+        private String startTag() {
+            int nameStart = pos + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < length && !isNameTerminator(bytes.getByte(nameEnd))) nameEnd++;
+            String name = new String(bytes.subArray(nameStart, nameEnd).getBytes(), StandardCharsets.UTF_8);
+            int tagEnd = tagEnd(nameEnd);
+            if (tagEnd < 0) {
+                pos = -1;
+                return null;
+            }
+            boolean selfClosing = bytes.getByte(tagEnd - 1) == '/';
+            int elementDepth = depth + 1;
+
+            // The element can only advance the match if its parent completed the previous step
+            boolean candidate = matched == 0
+                    ? descendant || elementDepth == 1
+                    : elementDepth == matchDepths[matched - 1] + 1;
+            if (candidate && nameMatches(names[matched], name)) {
+                int step = matched;
+                counts[step]++;
+                if (indexes[step] == 0 || counts[step] == indexes[step]) {
+                    if (step == names.length - 1) {
+                        // Target element found; without the attribute, scanning continues after the tag
+                        if (attribute != null) {
+                            String value = attributeValue(nameEnd, tagEnd);
+                            if (value != null) return value;
+                        } else {
+                            if (selfClosing) return "";
+                            pos = tagEnd + 1;
+                            return textContent();
+                        }
+                    } else if (!selfClosing) {
+                        matchDepths[step] = elementDepth;
+                        counts[step + 1] = 0;
+                        matched++;
+                    }
+                }
+            }
+            if (!selfClosing) depth++;
+            pos = tagEnd + 1;
+            return null;
+        }
+
+        /**
+         * Concatenates the text and CDATA content of the element whose start tag was just read.
+         *
+         * @return The decoded text content.
+         */
+        private String textContent() {
+            StringBuilder sb = new StringBuilder();
+            int innerDepth = 0;
+            while (pos < length) {
+                int lt = indexOf('<', pos);
+                if (lt < 0) return null;
+                appendText(sb, pos, lt);
+                pos = lt;
+                if (startsWith("<![CDATA[")) {
+                    int end = indexOf("]]>", pos + 9);
+                    if (end < 0) return null;
+                    appendRaw(sb, pos + 9, end);
+                    pos = end + 3;
+                } else if (startsWith("<!--")) {
+                    pos = skipPast("-->");
+                } else if (startsWith("<?")) {
+                    pos = skipPast("?>");
+                } else if (startsWith("</")) {
+                    if (innerDepth-- == 0) return sb.toString();
+                    pos = skipPast(">");
+                } else {
+                    int end = tagEnd(pos + 1);
+                    if (end < 0) return null;
+                    if (bytes.getByte(end - 1) != '/') innerDepth++;
+                    pos = end + 1;
+                }
+                if (pos < 0) return null;
+            }
+            return null;
+        }
+
+        /**
+         * Reads the requested attribute from the start tag between the given indexes.
+         */
+        private String attributeValue(int from, int tagEnd) {
+            int i = from;
+            while (i < tagEnd) {
+                while (i < tagEnd && isWhitespace(bytes.getByte(i))) i++;
+                int nameStart = i;
+                while (i < tagEnd && bytes.getByte(i) != '=' && !isWhitespace(bytes.getByte(i)) && bytes.getByte(i) != '/') i++;
+                String attributeName = new String(bytes.subArray(nameStart, i).getBytes(), StandardCharsets.UTF_8);
+                while (i < tagEnd && isWhitespace(bytes.getByte(i))) i++;
+                if (i >= tagEnd || bytes.getByte(i) != '=') {
+                    i++;
+                    continue;
+                }
+                i++;
+                while (i < tagEnd && isWhitespace(bytes.getByte(i))) i++;
+                if (i >= tagEnd) break;
+                byte quote = bytes.getByte(i);
+                if (quote != '"' && quote != '\'') break;
+                int valueEnd = indexOf(quote, i + 1);
+                if (valueEnd < 0 || valueEnd > tagEnd) break;
+                if (nameMatches(attribute, attributeName)) {
+                    StringBuilder sb = new StringBuilder();
+                    appendText(sb, i + 1, valueEnd);
+                    return sb.toString();
+                }
+                i = valueEnd + 1;
+            }
+            return null;
+        }
+
+        /**
+         * Appends text between two indexes, resolving the predefined and numeric character references.
+         */
+        private void appendText(StringBuilder sb, int start, int end) {
+            if (end <= start) return;
+            String text = new String(bytes.subArray(start, end).getBytes(), StandardCharsets.UTF_8);
+            int amp = text.indexOf('&');
+            if (amp < 0) {
+                sb.append(text);
+                return;
+            }
+            int copied = 0;
+            while (amp >= 0) {
+                int semicolon = text.indexOf(';', amp);
+                if (semicolon < 0) break;
+                String entity = text.substring(amp + 1, semicolon);
+                String replacement = switch (entity) {
+                    case "lt" -> "<";
+                    case "gt" -> ">";
+                    case "amp" -> "&";
+                    case "quot" -> "\"";
+                    case "apos" -> "'";
+                    default -> numericReference(entity);
+                };
+                if (replacement != null) {
+                    sb.append(text, copied, amp).append(replacement);
+                    copied = semicolon + 1;
+                }
+                amp = text.indexOf('&', amp + 1);
+            }
+            sb.append(text, copied, text.length());
+        }
+
+        private String numericReference(String entity) {
+            try {
+                if (entity.startsWith("#x") || entity.startsWith("#X"))
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+                if (entity.startsWith("#"))
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+            } catch (IllegalArgumentException e) {
+                // Leave malformed references as they are
+            }
+            return null;
+        }
+
+        private void appendRaw(StringBuilder sb, int start, int end) {
+            if (end > start) sb.append(new String(bytes.subArray(start, end).getBytes(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Finds the closing '>' of a tag, ignoring any inside quoted attribute values.
+         */
+        private int tagEnd(int from) {
+            byte quote = 0;
+            for (int i = from; i < length; i++) {
+                byte b = bytes.getByte(i);
+                if (quote != 0) {
+                    if (b == quote) quote = 0;
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '>') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Skips a DOCTYPE or other declaration, including an internal subset in brackets.
+         */
+        private int skipDeclaration() {
+            int bracketDepth = 0;
+            for (int i = pos + 2; i < length; i++) {
+                byte b = bytes.getByte(i);
+                if (b == '[') bracketDepth++;
+                else if (b == ']') bracketDepth--;
+                else if (b == '>' && bracketDepth <= 0) return i + 1;
+            }
+            return -1;
+        }
+
+        private int skipPast(String terminator) {
+            int index = indexOf(terminator, pos);
+            return index < 0 ? -1 : index + terminator.length();
+        }
+
+        private boolean startsWith(String prefix) {
+            if (pos + prefix.length() > length) return false;
+            for (int i = 0; i < prefix.length(); i++) {
+                if (bytes.getByte(pos + i) != prefix.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        private int indexOf(int b, int from) {
+            for (int i = from; i < length; i++) {
+                if (bytes.getByte(i) == b) return i;
+            }
+            return -1;
+        }
+
+        private int indexOf(String s, int from) {
+            byte first = (byte) s.charAt(0);
+            for (int i = from; i <= length - s.length(); i++) {
+                if (bytes.getByte(i) != first) continue;
+                int j = 1;
+                while (j < s.length() && bytes.getByte(i + j) == s.charAt(j)) j++;
+                if (j == s.length()) return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Matches a step name against a qualified name; unprefixed steps match on the local name.
+     */
+    private static boolean nameMatches(String step, String qualifiedName) {
+        if (step.equals("*") || step.equals(qualifiedName)) return true;
+        int colon = qualifiedName.indexOf(':');
+        return step.indexOf(':') < 0 && colon >= 0 && step.equals(qualifiedName.substring(colon + 1));
+    }
+
+    private static boolean isNameTerminator(byte b) {
+        return isWhitespace(b) || b == '>' || b == '/';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
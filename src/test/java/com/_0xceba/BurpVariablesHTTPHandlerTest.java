@@ -0,0 +1,29 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BurpVariablesHTTPHandlerTest {
+    @Test
+    void collectsReferencedNamesWithoutModifiers() {
+        assertEquals(Set.of("token", "session|b64", "session"),
+                BurpVariablesHTTPHandler.referencedNames("GET /?a=((token)) HTTP/1.1\r\nCookie: ((session|b64))\r\n\r\n"));
+    }
+
+    @Test
+    void ignoresNamesThatOnlyContainAReferencedName() {
+        // A barrier for "token" must not hold requests that only use "token2" or "mytoken"
+        Set<String> names = BurpVariablesHTTPHandler.referencedNames("((token2)) ((mytoken)) ((token|rot13))");
+        assertEquals(Set.of("token2", "mytoken", "token|rot13"), names);
+    }
+
+    @Test
+    void findsReferencesAfterStrayDelimiters() {
+        assertTrue(BurpVariablesHTTPHandler.referencedNames("((((token))").contains("token"));
+        assertTrue(BurpVariablesHTTPHandler.referencedNames("((unclosed").isEmpty());
+    }
+}
@@ -0,0 +1,143 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EncodedBodyTest {
+    // Replaces ((token)) and returns the same instance when there is nothing to replace
+    private static final UnaryOperator<String> SUBSTITUTION = text -> text.contains("((token))") ? text.replace("((token))", "secret") : text;
+
+    @Test
+    void substitutesGzipBodies() throws IOException {
+        byte[] body = gzip("{\"auth\": \"((token))\"}");
+        byte[] substituted = EncodedBody.substitute(body, EncodedBody.Encoding.GZIP, SUBSTITUTION);
+        assertEquals("{\"auth\": \"secret\"}", gunzip(substituted));
+    }
+
+    @Test
+    void substitutesZlibAndRawDeflateBodies() throws IOException {
+        for (boolean raw : new boolean[]{false, true}) {
+            byte[] body = deflate("a=((token))&b=1", raw);
+            byte[] substituted = EncodedBody.substitute(body, EncodedBody.Encoding.DEFLATE, SUBSTITUTION);
+            assertEquals("a=secret&b=1", inflate(substituted, raw));
+        }
+    }
+
+    @Test
+    void substitutesBase64BodiesKeepingPadding() throws IOException {
+        byte[] padded = Base64.getEncoder().encode("x=((token))".getBytes(StandardCharsets.ISO_8859_1));
+        byte[] substituted = EncodedBody.substitute(padded, EncodedBody.Encoding.BASE64, SUBSTITUTION);
+        assertEquals(Base64.getEncoder().encodeToString("x=secret".getBytes(StandardCharsets.ISO_8859_1)), new String(substituted, StandardCharsets.ISO_8859_1));
+
+        byte[] unpadded = Base64.getUrlEncoder().withoutPadding().encode("((token))?".getBytes(StandardCharsets.ISO_8859_1));
+        substituted = EncodedBody.substitute(unpadded, EncodedBody.Encoding.BASE64_URL, SUBSTITUTION);
+        assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString("secret?".getBytes(StandardCharsets.ISO_8859_1)), new String(substituted, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void keepsPaddingOfStandardBase64WithoutTrailingEquals() throws IOException {
+        // Nine decoded bytes encode to twelve characters without '=', but the body is still padded base64
+        byte[] body = Base64.getEncoder().encode("((token))".getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(12, body.length);
+        byte[] substituted = EncodedBody.substitute(body, EncodedBody.Encoding.BASE64, SUBSTITUTION);
+        assertEquals(Base64.getEncoder().encodeToString("secret".getBytes(StandardCharsets.ISO_8859_1)), new String(substituted, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void detectsBase64Alphabets() {
+        assertEquals(EncodedBody.Encoding.BASE64, EncodedBody.base64Alphabet("YWJj+/==".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(EncodedBody.Encoding.BASE64_URL, EncodedBody.base64Alphabet("YWJj-_".getBytes(StandardCharsets.ISO_8859_1)));
+        assertNull(EncodedBody.base64Alphabet("YWJj+_".getBytes(StandardCharsets.ISO_8859_1)));
+        assertNull(EncodedBody.base64Alphabet("a=b&c=d".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    void returnsNullWhenNothingIsReplaced() throws IOException {
+        assertNull(EncodedBody.substitute(gzip("no references"), EncodedBody.Encoding.GZIP, SUBSTITUTION));
+    }
+
+    @Test
+    void rejectsBodiesThatCannotBeDecoded() {
+        byte[] notGzip = "plain".getBytes(StandardCharsets.ISO_8859_1);
+        assertThrows(IOException.class, () -> EncodedBody.substitute(notGzip, EncodedBody.Encoding.GZIP, SUBSTITUTION));
+        byte[] notBase64 = "a*b=".getBytes(StandardCharsets.ISO_8859_1);
+        assertThrows(IOException.class, () -> EncodedBody.substitute(notBase64, EncodedBody.Encoding.BASE64, SUBSTITUTION));
+    }
+
+    @Test
+    void substitutesReferencesSpanningChunks() throws IOException {
+        // Place a reference across every position around the 8192-character chunk boundary
+        for (int offset = 8180; offset <= 8195; offset++) {
+            String text = "x".repeat(offset) + "((token))" + "y".repeat(100);
+            StringWriter writer = new StringWriter();
+            assertTrue(EncodedBody.transfer(new StringReader(text), writer, SUBSTITUTION));
+            assertEquals("x".repeat(offset) + "secret" + "y".repeat(100), writer.toString());
+        }
+    }
+
+    @Test
+    void substitutesReferencesAfterLongUnclosedText() throws IOException {
+        // An unclosed "((" is followed by more than the held-back limit, then a reference across the chunk boundary
+        String prefix = "((" + "a".repeat(8180);
+        String text = prefix + "((token))" + "b".repeat(100);
+        StringWriter writer = new StringWriter();
+        assertTrue(EncodedBody.transfer(new StringReader(text), writer, SUBSTITUTION));
+        assertEquals(prefix + "secret" + "b".repeat(100), writer.toString());
+    }
+
+    @Test
+    void passesTextWithoutReferencesThroughUnchanged() throws IOException {
+        String text = "((not closed " + "z".repeat(20000) + " (";
+        StringWriter writer = new StringWriter();
+        assertFalse(EncodedBody.transfer(new StringReader(text), writer, SUBSTITUTION));
+        assertEquals(text, writer.toString());
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static byte[] deflate(String text, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflater.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return out.toByteArray();
+    }
+
+    private static String inflate(byte[] bytes, boolean raw) throws IOException {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes), new Inflater(raw))) {
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+}
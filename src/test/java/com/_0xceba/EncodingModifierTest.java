@@ -0,0 +1,39 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EncodingModifierTest {
+    @Test
+    void parsesChainsInApplicationOrder() {
+        EncodingModifier[] modifiers = EncodingModifier.parseChain("json | b64");
+        assertEquals(2, modifiers.length);
+        assertSame(EncodingModifier.JSON, modifiers[0]);
+        assertSame(EncodingModifier.B64, modifiers[1]);
+        assertEquals("ImEi", EncodingModifier.applyAll(EncodingModifier.parseChain("b64"), "\"a\""));
+        assertEquals("XCJhXCI=", EncodingModifier.applyAll(modifiers, "\"a\""));
+    }
+
+    @Test
+    void cachesValidChains() {
+        assertSame(EncodingModifier.parseChain("urlencode|html"), EncodingModifier.parseChain("urlencode|html"));
+    }
+
+    @Test
+    void rejectsUnknownModifiers() {
+        assertNull(EncodingModifier.parseChain("b64|rot13"));
+        assertNull(EncodingModifier.parseChain(""));
+        assertNull(EncodingModifier.parseChain("b64|"));
+    }
+
+    @Test
+    void encodesValues() {
+        assertEquals("a%20b%2Fc~", EncodingModifier.URLENCODE.apply("a b/c~"));
+        assertEquals("a\\nb\\u0001", EncodingModifier.JSON.apply("a\nb\u0001"));
+        assertEquals("&lt;a href=&quot;x&quot;&gt;", EncodingModifier.HTML.apply("<a href=\"x\">"));
+        assertEquals("Pz4_", EncodingModifier.B64URL.apply("?>?"));
+    }
+}
@@ -0,0 +1,54 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExtractionRuleTest {
+    @Test
+    void parsesPairsInOrder() {
+        Map<String, String> bindings = ExtractionRule.parseBindings("access=accessToken, refresh = refreshToken,expires=ttl");
+        assertEquals(List.of("access", "refresh", "expires"), List.copyOf(bindings.keySet()));
+        assertEquals("refreshToken", bindings.get("refresh"));
+    }
+
+    @Test
+    void bindsBareGroupsToVariablesOfTheSameName() {
+        assertEquals(Map.of("token", "token", "id", "userId"), ExtractionRule.parseBindings("token, id=userId"));
+    }
+
+    @Test
+    void ignoresBlankPairs() {
+        assertEquals(Map.of("a", "b"), ExtractionRule.parseBindings(" , a=b,, "));
+    }
+
+    @Test
+    void rejectsMalformedPairs() {
+        assertNull(ExtractionRule.parseBindings("=variable"));
+        assertNull(ExtractionRule.parseBindings("group="));
+        assertNull(ExtractionRule.parseBindings("a=b, =c"));
+    }
+
+    @Test
+    void roundTripsBindingsText() {
+        ExtractionRule rule = new ExtractionRule("(?<a>x)(?<b>y)", ExtractionRule.parseBindings("a=first, b"));
+        assertEquals("a=first, b=b", rule.bindingsText());
+        assertEquals(rule.bindings(), ExtractionRule.parseBindings(rule.bindingsText()));
+    }
+
+    @Test
+    void listsNamedGroupsInDeclarationOrder() {
+        assertEquals(List.of("access", "refresh"), ExtractionRule.namedGroups("\"access\":\"(?<access>[^\"]+)\".*?(?<refresh>\\w+)"));
+    }
+
+    @Test
+    void skipsEscapedParenthesesAndOtherGroupTypes() {
+        assertEquals(List.of(), ExtractionRule.namedGroups("\\(?<literal>x\\)"));
+        assertEquals(List.of("real"), ExtractionRule.namedGroups("\\\\(?<real>x)"));
+        assertEquals(List.of(), ExtractionRule.namedGroups("(?<=a)(?<!b)(?:c)(d)"));
+    }
+}
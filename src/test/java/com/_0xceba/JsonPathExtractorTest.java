@@ -0,0 +1,62 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonPathExtractorTest {
+    private static String extract(String path, String json) {
+        return JsonPathExtractor.compile(path).extract(TestBytes.of(json));
+    }
+
+    @Test
+    void extractsNestedMember() {
+        assertEquals("abc", extract("$.data.token", "{\"data\": {\"token\": \"abc\", \"other\": 1}}"));
+    }
+
+    @Test
+    void skipsMembersBeforeTheTarget() {
+        String json = "{\"a\": [1, {\"x\": \"}\"}, \"]\"], \"b\": {\"c\": null}, \"token\": \"t\"}";
+        assertEquals("t", extract("$.token", json));
+    }
+
+    @Test
+    void extractsArrayElement() {
+        assertEquals("2", extract("$.items[1].id", "{\"items\": [{\"id\": 1}, {\"id\": 2}]}"));
+    }
+
+    @Test
+    void extractsBracketNotationMember() {
+        assertEquals("v", extract("$['odd key']", "{\"odd key\": \"v\"}"));
+    }
+
+    @Test
+    void unescapesStringTargets() {
+        assertEquals("a\"b\\c\u00e9", extract("$.s", "{\"s\": \"a\\\"b\\\\c\\u00e9\"}"));
+    }
+
+    @Test
+    void returnsOtherTargetsAsRawJson() {
+        assertEquals("{\"b\": [1, 2]}", extract("$.a", "{\"a\": {\"b\": [1, 2]}}"));
+        assertEquals("true", extract("$.flag", "{\"flag\": true}"));
+    }
+
+    @Test
+    void returnsNullForMissingOrMalformedTargets() {
+        assertNull(extract("$.missing", "{\"a\": 1}"));
+        assertNull(extract("$.items[5]", "{\"items\": [1]}"));
+        assertNull(extract("$.a.b", "{\"a\": 1}"));
+        assertNull(extract("$.a", "{\"a\": "));
+        assertNull(extract("$.a", "not json"));
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> JsonPathExtractor.compile("data.token"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPathExtractor.compile("$..token"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPathExtractor.compile("$.items[-1]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPathExtractor.compile("$.items[0"));
+    }
+}
@@ -0,0 +1,100 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelScannerTest {
+    private static final Pattern TOKEN = Pattern.compile("token=([a-z0-9]+);");
+    // Four chunks of the minimum chunk size
+    private static final int LENGTH = 4 << 20;
+
+    private static String find(Pattern pattern, CharSequence input) {
+        return ParallelScanner.find(pattern, input, 1024, (text, cancelled) -> text, matcher -> matcher.group(1));
+    }
+
+    private static String sequential(Pattern pattern, CharSequence input) {
+        Matcher matcher = pattern.matcher(input);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    @Test
+    void matchesSequentialSearchAcrossChunkBoundaries() {
+        char[] chars = new char[LENGTH];
+        Random random = new Random(1);
+        for (int round = 0; round < 6; round++) {
+            Arrays.fill(chars, 'x');
+            // Place matches straddling multiples of the minimum chunk size, and at random positions
+            for (int j = 0; j < 3; j++) {
+                int position = round % 2 == 0
+                        ? random.nextInt(LENGTH - 64)
+                        : (1 + random.nextInt(LENGTH / (1 << 20) - 1)) * (1 << 20) - random.nextInt(16);
+                String match = "token=r" + round + "m" + j + ";";
+                match.getChars(0, match.length(), chars, position);
+            }
+            String input = new String(chars);
+            assertEquals(sequential(TOKEN, input), find(TOKEN, input), "round " + round);
+        }
+    }
+
+    @Test
+    void returnsNullWithoutMatch() {
+        assertNull(find(TOKEN, "x".repeat(LENGTH)));
+    }
+
+    @Test
+    void reportsTheEarliestFailureWhenNothingMatchesBeforeIt() {
+        RuntimeException failure = new IllegalStateException("budget");
+        String input = "x".repeat(LENGTH);
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> ParallelScanner.find(TOKEN, input, 1024,
+                (text, cancelled) -> failingAfter(text, LENGTH / 2, failure), matcher -> matcher.group(1)));
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    void prefersAnEarlierMatchOverALaterFailure() {
+        char[] chars = new char[LENGTH];
+        Arrays.fill(chars, 'x');
+        "token=early;".getChars(0, 12, chars, 100);
+        String input = new String(chars);
+        String result = ParallelScanner.find(TOKEN, input, 1024,
+                (text, cancelled) -> failingAfter(text, LENGTH / 2, new IllegalStateException("budget")), matcher -> matcher.group(1));
+        assertEquals("early", result);
+    }
+
+    /**
+     * Wraps text so that reading at or past an index throws, like a search that exceeds its budget there.
+     */
+    private static CharSequence failingAfter(CharSequence text, int index, RuntimeException failure) {
+        return new CharSequence() {
+            @Override
+            public int length() {
+                return text.length();
+            }
+
+            @Override
+            public char charAt(int i) {
+                if (i >= index) throw failure;
+                return text.charAt(i);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return text.subSequence(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return text.toString();
+            }
+        };
+    }
+}
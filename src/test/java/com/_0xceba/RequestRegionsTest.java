@@ -0,0 +1,70 @@
+package com._0xceba;
+
+import burp.api.montoya.http.message.requests.HttpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestRegionsTest {
+    private static final String HEAD = "POST /((path)) HTTP/1.1\r\nAuthorization: ((token))\r\n\r\n";
+    private static final String BODY = "a=((a))&upload=0123456789";
+
+    private static HttpRequest request(String head, String body) {
+        byte[] bytes = (head + body).getBytes(StandardCharsets.ISO_8859_1);
+        return (HttpRequest) Proxy.newProxyInstance(HttpRequest.class.getClassLoader(), new Class<?>[]{HttpRequest.class}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "toByteArray" -> TestBytes.of(bytes);
+                    case "bodyOffset" -> head.length();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Test
+    void selectsTheHeadAndBodyAsSeparateRegions() {
+        RequestRegions regions = RequestRegions.select(request(HEAD, BODY), SubstitutionScope.FULL);
+        assertEquals(List.of(HEAD, BODY), regions.texts());
+        assertEquals(HEAD + "\n" + BODY, regions.joinedText());
+    }
+
+    @Test
+    void selectsTheRequestLineOrHeadersOnly() {
+        RequestRegions line = RequestRegions.select(request(HEAD, BODY), new SubstitutionScope(true, false, false, 0));
+        assertEquals(List.of("POST /((path)) HTTP/1.1"), line.texts());
+        RequestRegions headers = RequestRegions.select(request(HEAD, BODY), new SubstitutionScope(false, true, false, 0));
+        assertEquals(List.of("\r\nAuthorization: ((token))\r\n\r\n"), headers.texts());
+    }
+
+    @Test
+    void limitsTheScannedBodyPrefix() {
+        RequestRegions regions = RequestRegions.select(request(HEAD, BODY), new SubstitutionScope(false, false, true, 7));
+        assertEquals(List.of("a=((a))"), regions.texts());
+        RequestRegions beyondBody = RequestRegions.select(request(HEAD, BODY), new SubstitutionScope(false, false, true, 1000));
+        assertEquals(List.of(BODY), beyondBody.texts());
+        RequestRegions noBody = RequestRegions.select(request(HEAD, ""), new SubstitutionScope(false, false, true, 0));
+        assertEquals(List.of(), noBody.texts());
+    }
+
+    @Test
+    void splicesReplacedRegionsIntoTheOriginalBytes() {
+        byte[] original = "line|head|body-tail".getBytes(StandardCharsets.ISO_8859_1);
+        byte[][] replacements = {"LINE!".getBytes(StandardCharsets.ISO_8859_1), null, "B".getBytes(StandardCharsets.ISO_8859_1)};
+        byte[] spliced = RequestRegions.splice(original, new int[]{0, 5, 10}, new int[]{4, 9, 14}, replacements);
+        assertEquals("LINE!|head|B-tail", new String(spliced, StandardCharsets.ISO_8859_1));
+        assertEquals("line|head|body-tail", new String(RequestRegions.splice(original, new int[]{0}, new int[]{4}, new byte[1][]), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void roundTripsScopeSettings() {
+        SubstitutionScope scope = new SubstitutionScope(false, true, true, 4096);
+        assertEquals("headers,body:4096", scope.toSetting());
+        assertEquals(scope, SubstitutionScope.fromSetting(scope.toSetting()));
+        assertEquals(SubstitutionScope.FULL, SubstitutionScope.fromSetting(null));
+        assertEquals(new SubstitutionScope(true, false, true, 0), SubstitutionScope.fromSetting("line, body:oops, unknown"));
+    }
+}
@@ -0,0 +1,86 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedVariableFileTest {
+    @Test
+    void roundTripsVariables() throws IOException {
+        Map<String, VariableData> variables = new HashMap<>();
+        variables.put("token", new VariableData("abc", "\"token\":\"([^\"]+)\"", ExtractorType.REGEX, null, 60_000, 1_700_000_000_000L));
+        variables.put("user", new VariableData("alice", "$.user", ExtractorType.JSON_PATH));
+        variables.put("unicode \u00e9", new VariableData("\u65e5\u672c", ""));
+        variables.put("pooled", new VariableData("a", "", ExtractorType.REGEX, new ValuePool(List.of("a", "b", "c"), PoolStrategy.ROUND_ROBIN)));
+
+        HashMap<String, VariableData> restored = SharedVariableFile.deserialize(SharedVariableFile.serialize(variables));
+
+        assertEquals(variables.keySet(), restored.keySet());
+        for (String name : variables.keySet()) {
+            VariableData expected = variables.get(name);
+            VariableData actual = restored.get(name);
+            assertEquals(expected.value(), actual.value());
+            assertEquals(expected.regex(), actual.regex());
+            assertEquals(expected.extractorType(), actual.extractorType());
+            assertEquals(expected.ttlMillis(), actual.ttlMillis());
+            assertEquals(expected.expiresAtMillis(), actual.expiresAtMillis());
+            if (expected.pool() == null) {
+                assertNull(actual.pool());
+            } else {
+                assertEquals(expected.pool().values(), actual.pool().values());
+                assertEquals(expected.pool().strategy(), actual.pool().strategy());
+            }
+        }
+    }
+
+    @Test
+    void roundTripsAnEmptyMap() throws IOException {
+        assertTrue(SharedVariableFile.deserialize(SharedVariableFile.serialize(Map.of())).isEmpty());
+    }
+
+    @Test
+    void rejectsTruncatedPayloads() throws IOException {
+        byte[] payload = SharedVariableFile.serialize(Map.of("token", new VariableData("abc", "")));
+        for (int length = 0; length < payload.length; length++) {
+            byte[] truncated = java.util.Arrays.copyOf(payload, length);
+            assertThrows(IOException.class, () -> SharedVariableFile.deserialize(truncated));
+        }
+    }
+
+    @Test
+    void rejectsLengthsBeyondThePayload() {
+        // A count of 0x7fffffff variables in a four-byte payload
+        byte[] corrupt = {0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        assertThrows(IOException.class, () -> SharedVariableFile.deserialize(corrupt));
+        byte[] negative = {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        assertThrows(IOException.class, () -> SharedVariableFile.deserialize(negative));
+    }
+
+    @Test
+    void rejectsEmptyValuePools() throws IOException {
+        // One variable whose pool has no values, which the ValuePool constructor refuses
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try (java.io.DataOutputStream out = new java.io.DataOutputStream(bytes)) {
+            out.writeInt(1);
+            for (String s : new String[]{"token", "abc", "", "REGEX"}) {
+                out.writeInt(s.length());
+                out.writeBytes(s);
+            }
+            out.writeLong(0);
+            out.writeLong(0);
+            out.writeBoolean(true);
+            out.writeInt("ROUND_ROBIN".length());
+            out.writeBytes("ROUND_ROBIN");
+            out.writeInt(0);
+        }
+        assertThrows(IOException.class, () -> SharedVariableFile.deserialize(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,58 @@
+package com._0xceba;
+
+import burp.api.montoya.core.ByteArray;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds ByteArray instances for tests. The Montoya factory methods need a running Burp, so the
+ * arrays are backed by a proxy that implements the methods the extractors read with.
+ */
+final class TestBytes {
+    private TestBytes() {
+    }
+
+    /**
+     * @param text The text, encoded as UTF-8.
+     * @return A ByteArray holding the text.
+     */
+    static ByteArray of(String text) {
+        return of(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param bytes The bytes; not copied.
+     * @return A ByteArray backed by the bytes.
+     */
+    static ByteArray of(byte[] bytes) {
+        return (ByteArray) Proxy.newProxyInstance(ByteArray.class.getClassLoader(), new Class<?>[]{ByteArray.class}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "getByte" -> bytes[(Integer) args[0]];
+                    case "length" -> bytes.length;
+                    case "getBytes" -> bytes.clone();
+                    case "subArray" -> args.length == 1
+                            ? of(Arrays.copyOfRange(bytes, (Integer) args[0], bytes.length))
+                            : of(Arrays.copyOfRange(bytes, (Integer) args[0], (Integer) args[1]));
+                    case "toString" -> new String(bytes, StandardCharsets.ISO_8859_1);
+                    case "indexOf" -> args.length == 4
+                            ? indexOf(bytes, (String) args[0], (Integer) args[2], (Integer) args[3])
+                            : indexOf(bytes, (String) args[0], 0, bytes.length);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Case-sensitive search for ASCII text between two offsets, as ByteArray.indexOf(String, true, from, to) does.
+     */
+    private static int indexOf(byte[] bytes, String text, int from, int to) {
+        byte[] needle = text.getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = from; i <= to - needle.length; i++) {
+            if (Arrays.equals(bytes, i, i + needle.length, needle, 0, needle.length)) return i;
+        }
+        return -1;
+    }
+}
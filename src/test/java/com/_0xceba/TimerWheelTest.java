@@ -0,0 +1,73 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+    @Test
+    void runsTasksAfterTheirDeadline() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long[] firedAt = new long[1];
+        TimerWheel<String> wheel = new TimerWheel<>("test-wheel", 10, 8, task -> {
+            firedAt[0] = System.currentTimeMillis();
+            fired.countDown();
+        });
+        try {
+            long deadline = System.currentTimeMillis() + 50;
+            wheel.schedule("task", deadline);
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertTrue(firedAt[0] >= deadline);
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void runsTasksBeyondOneRotation() throws InterruptedException {
+        // 4 buckets of 10 ms cover 40 ms, so the later deadlines need several rotations
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch fired = new CountDownLatch(3);
+        TimerWheel<Integer> wheel = new TimerWheel<>("test-wheel", 10, 4, task -> {
+            order.add(task);
+            fired.countDown();
+        });
+        try {
+            long now = System.currentTimeMillis();
+            wheel.schedule(3, now + 250);
+            wheel.schedule(1, now + 20);
+            wheel.schedule(2, now + 120);
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(1, 2, 3), order);
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void runsOverdueTasksOnTheNextTick() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        TimerWheel<String> wheel = new TimerWheel<>("test-wheel", 10, 8, task -> fired.countDown());
+        try {
+            wheel.schedule("overdue", System.currentTimeMillis() - 1000);
+            assertTrue(fired.await(1, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void discardsTasksScheduledAfterStop() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        TimerWheel<String> wheel = new TimerWheel<>("test-wheel", 10, 8, task -> fired.countDown());
+        wheel.stop();
+        wheel.schedule("late", System.currentTimeMillis());
+        assertTrue(!fired.await(100, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,122 @@
+package com._0xceba;
+
+import burp.api.montoya.http.Http;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import burp.api.montoya.logging.Logging;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenRefresherTest {
+    private final AtomicInteger sent = new AtomicInteger();
+    private final CountDownLatch sending = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final VariableStore store = new VariableStore(new HashMap<>(Map.of("token", new VariableData("old"))));
+    private final TokenRefresher refresher;
+
+    TokenRefresherTest() {
+        Logging logging = stub(Logging.class, Map.of());
+        HttpRequest marked = stub(HttpRequest.class, Map.of());
+        HttpRequest request = stub(HttpRequest.class, Map.of("withAddedHeader", args -> marked));
+        HttpResponse loginResponse = stub(HttpResponse.class, Map.of("toString", args -> "HTTP/1.1 200 OK\r\n\r\ntoken=new"));
+        HttpRequestResponse exchange = stub(HttpRequestResponse.class, Map.of(
+                "hasResponse", args -> true,
+                "response", args -> loginResponse));
+        Http http = stub(Http.class, Map.of("sendRequest", args -> {
+            sent.incrementAndGet();
+            sending.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return exchange;
+        }));
+        refresher = new TokenRefresher(http, logging, store, new ExtractorGuard(logging));
+        // Only refreshed on failure, when a response has status 401
+        refresher.setRecipe("token", new RefreshRecipe(request, ExtractorType.REGEX, "token=(\\w+)", -1, 0, 401, "", 5000));
+    }
+
+    @Test
+    void refreshesOnceAndHoldsRequestsUntilTheNewTokenIsStored() throws InterruptedException {
+        try {
+            HttpResponse unauthorized = stub(HttpResponse.class, Map.of("statusCode", args -> (short) 401));
+            long sentMillis = System.currentTimeMillis();
+            refresher.reportResponse("token", unauthorized, sentMillis);
+            refresher.reportResponse("token", unauthorized, sentMillis);
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            assertTrue(refresher.hasBarriers());
+
+            // A request using another variable is not held
+            refresher.awaitBarriers(Set.of("other"));
+            assertEquals("old", store.get("token").value());
+
+            Thread waiter = new Thread(() -> refresher.awaitBarriers(Set.of("token")));
+            waiter.start();
+            waiter.join(100);
+            assertTrue(waiter.isAlive());
+
+            release.countDown();
+            waiter.join(5000);
+            assertFalse(waiter.isAlive());
+            assertEquals("new", store.get("token").value());
+            assertFalse(refresher.hasBarriers());
+            assertEquals(1, sent.get());
+
+            // A failure of a request sent before the refresh refers to the old token
+            refresher.reportResponse("token", unauthorized, sentMillis);
+            assertFalse(refresher.hasBarriers());
+        } finally {
+            release.countDown();
+            refresher.shutdown();
+        }
+    }
+
+    @Test
+    void ignoresResponsesThatDoNotMatchTheFailureSignature() {
+        try {
+            refresher.reportResponse("token", stub(HttpResponse.class, Map.of("statusCode", args -> (short) 200)), System.currentTimeMillis());
+            assertFalse(refresher.hasBarriers());
+            assertEquals(0, sent.get());
+        } finally {
+            refresher.shutdown();
+        }
+    }
+
+    /**
+     * Implements a Montoya interface with the given methods; other methods return null, zero or false.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], Object> implementation = methods.get(method.getName());
+            if (implementation != null) return implementation.apply(args);
+            return switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> type.getSimpleName();
+                default -> {
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == boolean.class) yield false;
+                    if (returnType == short.class) yield (short) 0;
+                    if (returnType == int.class) yield 0;
+                    if (returnType == long.class) yield 0L;
+                    yield null;
+                }
+            };
+        });
+    }
+}
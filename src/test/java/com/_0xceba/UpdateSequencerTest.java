@@ -0,0 +1,87 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpdateSequencerTest {
+    @Test
+    void acceptsOnlyNewerSequences() {
+        UpdateSequencer sequencer = new UpdateSequencer();
+        long older = sequencer.nextSequence();
+        long newer = sequencer.nextSequence();
+        assertTrue(sequencer.claim("token", newer));
+        assertFalse(sequencer.claim("token", older));
+        assertFalse(sequencer.claim("token", newer));
+        assertTrue(sequencer.isLatest("token", newer));
+        assertFalse(sequencer.isLatest("token", older));
+    }
+
+    @Test
+    void keepsVariablesApart() {
+        UpdateSequencer sequencer = new UpdateSequencer();
+        long older = sequencer.nextSequence();
+        long newer = sequencer.nextSequence();
+        assertTrue(sequencer.claim("a", newer));
+        assertTrue(sequencer.claim("b", older));
+    }
+
+    @Test
+    void forgetsContexts() {
+        UpdateSequencer sequencer = new UpdateSequencer();
+        VariableContext user = new VariableContext("user");
+        long older = sequencer.nextSequence();
+        long newer = sequencer.nextSequence();
+        assertTrue(sequencer.claim(UpdateSequencer.contextKey(user, "token"), newer));
+        sequencer.forgetContext("user");
+        assertTrue(sequencer.claim(UpdateSequencer.contextKey(user, "token"), older));
+    }
+
+    @Test
+    void staleResponseCannotOverwriteARefresh() {
+        VariableStore store = new VariableStore(Map.of("token", new VariableData("old", "")));
+        UpdateSequencer sequencer = store.sequencer();
+
+        // A request is sent, then the token is refreshed before its response arrives
+        long requestSequence = sequencer.nextSequence();
+        store.update(variables -> variables.put("token", variables.get("token").withValue("refreshed")));
+
+        // The slow response loses its claim, so its older token is never published
+        assertFalse(sequencer.claim("token", requestSequence));
+        assertEquals("refreshed", store.get("token").value());
+
+        // A response to a request sent after the refresh still updates the token
+        long laterSequence = sequencer.nextSequence();
+        assertTrue(sequencer.claim("token", laterSequence));
+        assertTrue(store.putClaimed("token", "newest", () -> sequencer.isLatest("token", laterSequence)));
+        assertEquals("newest", store.get("token").value());
+    }
+
+    @Test
+    void claimedWriteIsDiscardedOnceANewerWriteClaims() {
+        VariableStore store = new VariableStore(Map.of("token", new VariableData("old", "")));
+        UpdateSequencer sequencer = store.sequencer();
+        long requestSequence = sequencer.nextSequence();
+        assertTrue(sequencer.claim("token", requestSequence));
+
+        // A table edit lands between the response's claim and its publish
+        store.put("token", new VariableData("edited", ""));
+        assertFalse(store.putClaimed("token", "stale", () -> sequencer.isLatest("token", requestSequence)));
+        assertEquals("edited", store.get("token").value());
+    }
+
+    @Test
+    void claimedWriteDoesNotRecreateADeletedVariable() {
+        VariableStore store = new VariableStore(Map.of("token", new VariableData("old", "")));
+        UpdateSequencer sequencer = store.sequencer();
+        long requestSequence = sequencer.nextSequence();
+        store.remove("token");
+        assertTrue(sequencer.claim("token", requestSequence));
+        assertFalse(store.putClaimed("token", "stale", () -> sequencer.isLatest("token", requestSequence)));
+        assertFalse(store.containsKey("token"));
+    }
+}
@@ -0,0 +1,88 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValuePoolTest {
+    private static final List<String> VALUES = List.of("a", "b", "c");
+
+    @Test
+    void rotatesInRoundRobinOrder() {
+        ValuePool pool = new ValuePool(VALUES, PoolStrategy.ROUND_ROBIN);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 7; i++) sb.append(pool.select(null));
+        assertEquals("abcabca", sb.toString());
+        assertEquals("3 / 2 / 2", pool.usageSummary());
+    }
+
+    @Test
+    void picksRandomValuesFromThePool() {
+        ValuePool pool = new ValuePool(VALUES, PoolStrategy.RANDOM);
+        for (int i = 0; i < 100; i++) assertTrue(VALUES.contains(pool.select("host")));
+        assertEquals(100, pool.uses(0) + pool.uses(1) + pool.uses(2));
+    }
+
+    @Test
+    void picksTheLeastRecentlyUsedValue() {
+        ValuePool pool = new ValuePool(VALUES, PoolStrategy.LEAST_RECENTLY_USED);
+        Set<String> firstRound = new HashSet<>();
+        for (int i = 0; i < 3; i++) firstRound.add(pool.select(null));
+        assertEquals(Set.copyOf(VALUES), firstRound);
+        // After every value was used once, the one used first is the oldest again
+        assertEquals("a", pool.select(null));
+    }
+
+    @Test
+    void handsConcurrentCallersDifferentLeastRecentlyUsedValues() throws InterruptedException {
+        List<String> values = List.of("a", "b", "c", "d");
+        ValuePool pool = new ValuePool(values, PoolStrategy.LEAST_RECENTLY_USED);
+        Set<String> chosen = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[values.size()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                chosen.add(pool.select(null));
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+        assertEquals(Set.copyOf(values), chosen);
+    }
+
+    @Test
+    void keepsEachHostOnOneValue() {
+        ValuePool pool = new ValuePool(VALUES, PoolStrategy.STICKY_HOST);
+        String first = pool.select("one.example.com");
+        String second = pool.select("two.example.com");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, pool.select("one.example.com"));
+            assertEquals(second, pool.select("two.example.com"));
+        }
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void rejectsEmptyPoolsAndDefaultsTheStrategy() {
+        assertThrows(IllegalArgumentException.class, () -> new ValuePool(List.of(), PoolStrategy.RANDOM));
+        assertSame(PoolStrategy.ROUND_ROBIN, new ValuePool(VALUES, null).strategy());
+        assertSame(PoolStrategy.ROUND_ROBIN, PoolStrategy.fromName("unknown"));
+        assertSame(PoolStrategy.STICKY_HOST, PoolStrategy.fromName("STICKY_HOST"));
+    }
+}
@@ -0,0 +1,68 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VariableContextTest {
+    private static VariableView view(Map<String, VariableData> variables) {
+        return new VariableView(variables, VariableGraph.resolve(variables), Map.of());
+    }
+
+    @Test
+    void resolvesNestedReferencesToTheContextValueFirst() {
+        VariableView view = view(Map.of("token", new VariableData("global"), "auth", new VariableData("Bearer ((token))")));
+        VariableContext context = new VariableContext("alice");
+        assertSame(view.resolved(), context.resolved(view));
+
+        assertTrue(context.put("token", new VariableData("alice-token"), view, () -> true));
+        assertEquals("Bearer alice-token", context.resolved(view).values().get("auth"));
+        assertEquals("Bearer global", view.resolved().values().get("auth"));
+    }
+
+    @Test
+    void reusesTheValuesFlattenedOnWrite() {
+        VariableView view = view(Map.of("token", new VariableData("global"), "auth", new VariableData("Bearer ((token))")));
+        VariableContext context = new VariableContext("alice");
+        context.update(values -> values.put("token", new VariableData("alice-token")), view);
+        ResolvedVariables first = context.resolved(view);
+        assertSame(first, context.resolved(view));
+
+        // Another view is resolved on read and then reused as well
+        VariableView other = view(Map.of("token", new VariableData("global"), "auth", new VariableData("Token ((token))")));
+        ResolvedVariables forOther = context.resolved(other);
+        assertNotSame(first, forOther);
+        assertEquals("Token alice-token", forOther.values().get("auth"));
+        assertSame(forOther, context.resolved(other));
+    }
+
+    @Test
+    void skipsWritesWhoseConditionFails() {
+        VariableContext context = new VariableContext("alice");
+        assertFalse(context.put("token", new VariableData("stale"), null, () -> false));
+        assertNull(context.get("token"));
+        assertTrue(context.values().isEmpty());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedContext() {
+        VariableStore store = new VariableStore(new HashMap<>());
+        VariableContext first = store.context("context-0");
+        for (int i = 1; i < VariableStore.MAX_CONTEXTS; i++) store.context("context-" + i);
+        // Using the first context again makes the second one the least recently used
+        assertSame(first, store.context("context-0"));
+
+        store.context("one-too-many");
+        assertEquals(VariableStore.MAX_CONTEXTS, store.contexts().size());
+        assertTrue(store.contexts().containsKey("context-0"));
+        assertFalse(store.contexts().containsKey("context-1"));
+    }
+}
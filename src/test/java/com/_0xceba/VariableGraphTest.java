@@ -0,0 +1,71 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VariableGraphTest {
+    @Test
+    void flattensNestedReferences() {
+        ResolvedVariables resolved = VariableGraph.resolve(Map.of(
+                "token", new VariableData("abc"),
+                "auth", new VariableData("Bearer ((token))"),
+                "header", new VariableData("Authorization: ((auth|b64))")));
+        assertEquals("Bearer abc", resolved.values().get("auth"));
+        assertEquals("Authorization: QmVhcmVyIGFiYw==", resolved.values().get("header"));
+        assertTrue(resolved.problems().isEmpty());
+    }
+
+    @Test
+    void recordsTransitiveDependencies() {
+        ResolvedVariables resolved = VariableGraph.resolve(Map.of(
+                "token", new VariableData("abc"),
+                "auth", new VariableData("Bearer ((token))"),
+                "header", new VariableData("Authorization: ((auth))")));
+        assertEquals(Set.of("token"), resolved.dependenciesOf("auth"));
+        assertEquals(Set.of("auth", "token"), resolved.dependenciesOf("header"));
+        assertTrue(resolved.dependenciesOf("token").isEmpty());
+    }
+
+    @Test
+    void reportsCyclesAndKeepsRawValues() {
+        VariableData a = new VariableData("a-((b))");
+        ResolvedVariables resolved = VariableGraph.resolve(Map.of(
+                "a", a,
+                "b", new VariableData("b-((a))"),
+                "c", new VariableData("c-((a))")));
+        assertNull(resolved.values().get("a"));
+        assertNull(resolved.values().get("b"));
+        assertNull(resolved.values().get("c"));
+        assertTrue(resolved.problems().get("a").startsWith("Reference cycle"));
+        assertTrue(resolved.problems().get("b").startsWith("Reference cycle"));
+        assertTrue(resolved.problems().get("c").startsWith("Depends on ((a))"));
+        assertEquals("a-((b))", resolved.value("a", a));
+        assertFalse(resolved.dependencies().containsKey("c"));
+    }
+
+    @Test
+    void reportsSelfReferenceAsCycle() {
+        ResolvedVariables resolved = VariableGraph.resolve(Map.of("loop", new VariableData("((loop))")));
+        assertEquals("Reference cycle: loop -> loop", resolved.problems().get("loop"));
+    }
+
+    @Test
+    void reportsUndefinedReferences() {
+        ResolvedVariables resolved = VariableGraph.resolve(Map.of("auth", new VariableData("Bearer ((missing))")));
+        assertEquals("Bearer ((missing))", resolved.values().get("auth"));
+        assertEquals("Undefined variable ((missing))", resolved.problems().get("auth"));
+    }
+
+    @Test
+    void returnsEmptyWithoutReferences() {
+        assertSame(ResolvedVariables.EMPTY, VariableGraph.resolve(Map.of("token", new VariableData("abc"))));
+    }
+}
@@ -0,0 +1,53 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VariablePersistenceTest {
+    @Test
+    void renamesNamesThatLookHostScoped() {
+        Map<String, VariableData> variables = new HashMap<>();
+        variables.put("admin@corp", new VariableData("secret", "token=(\\w+)"));
+        variables.put("plain", new VariableData("value"));
+
+        Map<String, String> renamed = VariablePersistence.migrateScopedLookingNames(variables);
+
+        assertEquals(Map.of("admin@corp", "admin_at_corp"), renamed);
+        assertFalse(variables.containsKey("admin@corp"));
+        assertEquals("secret", variables.get("admin_at_corp").value());
+        assertEquals("token=(\\w+)", variables.get("admin_at_corp").regex());
+        assertFalse(HostIndex.isScopedKey("admin_at_corp"));
+    }
+
+    @Test
+    void keepsNamesThatAreNotHostPatterns() {
+        Map<String, VariableData> variables = new HashMap<>();
+        variables.put("user@", new VariableData("a"));
+        variables.put("@corp", new VariableData("b"));
+        variables.put("mail@bad host", new VariableData("c"));
+
+        assertTrue(VariablePersistence.migrateScopedLookingNames(variables).isEmpty());
+        assertEquals(3, variables.size());
+    }
+
+    @Test
+    void avoidsExistingNamesAndRewritesReferences() {
+        Map<String, VariableData> variables = new HashMap<>();
+        variables.put("admin@corp", new VariableData("secret"));
+        variables.put("admin_at_corp", new VariableData("taken"));
+        variables.put("auth", new VariableData("Basic ((admin@corp|b64)) ((admin@corp))"));
+
+        Map<String, String> renamed = VariablePersistence.migrateScopedLookingNames(variables);
+
+        assertEquals("admin_at_corp_2", renamed.get("admin@corp"));
+        assertEquals("taken", variables.get("admin_at_corp").value());
+        assertEquals("secret", variables.get("admin_at_corp_2").value());
+        assertEquals("Basic ((admin_at_corp_2|b64)) ((admin_at_corp_2))", variables.get("auth").value());
+    }
+}
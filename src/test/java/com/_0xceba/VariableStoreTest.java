@@ -0,0 +1,124 @@
+package com._0xceba;
+
+import burp.api.montoya.http.HttpService;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VariableStoreTest {
+    private static VariableStore store() {
+        HashMap<String, VariableData> variables = new HashMap<>();
+        variables.put("token", new VariableData("one"));
+        variables.put("auth", new VariableData("Bearer ((token))"));
+        variables.put("plain", new VariableData("x"));
+        return new VariableStore(variables);
+    }
+
+    @Test
+    void flattensReferencesWhenTheSnapshotIsPublished() {
+        VariableStore store = store();
+        assertEquals("Bearer one", store.snapshot().resolved().values().get("auth"));
+        store.put("token", new VariableData("two"));
+        assertEquals("Bearer two", store.snapshot().resolved().values().get("auth"));
+    }
+
+    @Test
+    void reusesTheFlattenedValuesForPlainValueWrites() {
+        VariableStore store = store();
+        VariableStore.Snapshot before = store.snapshot();
+        store.put("plain", new VariableData("y"));
+        VariableStore.Snapshot after = store.snapshot();
+        assertEquals(before.version() + 1, after.version());
+        assertSame(before.resolved(), after.resolved());
+        assertEquals("y", after.variables().get("plain").value());
+    }
+
+    @Test
+    void rebuildsWhenAReferencedOrReferencingVariableChanges() {
+        VariableStore store = store();
+        VariableStore.Snapshot before = store.snapshot();
+        store.put("token", new VariableData("two"));
+        assertNotSame(before.resolved(), store.snapshot().resolved());
+
+        before = store.snapshot();
+        store.put("auth", new VariableData("Token ((token))"));
+        assertNotSame(before.resolved(), store.snapshot().resolved());
+        assertEquals("Token two", store.snapshot().resolved().values().get("auth"));
+    }
+
+    @Test
+    void rebuildsWhenAHostScopedValueChanges() {
+        VariableStore store = store();
+        store.put("token@api.example.com", new VariableData("scoped"));
+        VariableStore.Snapshot before = store.snapshot();
+        store.put("token@api.example.com", new VariableData("scoped2"));
+        VariableStore.Snapshot after = store.snapshot();
+        assertNotSame(before.hosts(), after.hosts());
+        VariableView view = after.view(service("api.example.com"));
+        assertEquals("token@api.example.com", view.storeKey("token"));
+        assertEquals("Bearer scoped2", view.resolved().values().get("auth"));
+        assertEquals("Bearer one", after.view(service("other.example.com")).resolved().values().get("auth"));
+    }
+
+    @Test
+    void switchesEnvironmentsAndKeepsThePreviousVariables() {
+        VariableStore store = store();
+        assertTrue(store.createEnvironment("staging", false));
+        assertFalse(store.createEnvironment("staging", true));
+        assertFalse(store.createEnvironment(VariableStore.DEFAULT_ENVIRONMENT, true));
+        assertEquals(List.of(VariableStore.DEFAULT_ENVIRONMENT, "staging"), store.environments());
+
+        Map<String, VariableData> before = store.snapshot().variables();
+        VariableStore.Snapshot switched = store.switchEnvironment("staging");
+        assertSame(switched, store.snapshot());
+        assertEquals("staging", store.activeEnvironment());
+        assertTrue(store.snapshot().variables().isEmpty());
+        assertSame(before, store.inactiveEnvironments().get(VariableStore.DEFAULT_ENVIRONMENT));
+
+        store.put("token", new VariableData("staging-token"));
+        store.switchEnvironment(VariableStore.DEFAULT_ENVIRONMENT);
+        assertEquals("one", store.get("token").value());
+        assertEquals("staging-token", store.inactiveEnvironments().get("staging").get("token").value());
+    }
+
+    @Test
+    void copiesTheActiveVariablesIntoANewEnvironment() {
+        VariableStore store = store();
+        store.createEnvironment("copy", true);
+        store.put("token", new VariableData("changed"));
+        assertEquals("one", store.inactiveEnvironments().get("copy").get("token").value());
+        assertEquals("Bearer one", store.switchEnvironment("copy").resolved().values().get("auth"));
+    }
+
+    @Test
+    void refusesToSwitchToUnknownOrActiveEnvironments() {
+        VariableStore store = store();
+        long version = store.snapshot().version();
+        assertNull(store.switchEnvironment("missing"));
+        assertNull(store.switchEnvironment(VariableStore.DEFAULT_ENVIRONMENT));
+        assertFalse(store.removeEnvironment(VariableStore.DEFAULT_ENVIRONMENT));
+        assertEquals(version, store.snapshot().version());
+    }
+
+    private static HttpService service(String host) {
+        return (HttpService) Proxy.newProxyInstance(HttpService.class.getClassLoader(), new Class<?>[]{HttpService.class}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "host" -> host;
+                    case "port" -> 443;
+                    case "secure" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
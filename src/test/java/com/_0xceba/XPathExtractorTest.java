@@ -0,0 +1,63 @@
+package com._0xceba;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class XPathExtractorTest {
+    private static String extract(String path, String xml) {
+        return XPathExtractor.compile(path).extract(TestBytes.of(xml));
+    }
+
+    @Test
+    void extractsElementText() {
+        assertEquals("abc", extract("/response/session/token", "<?xml version=\"1.0\"?><response><session><token>abc</token></session></response>"));
+    }
+
+    @Test
+    void extractsPositionalStep() {
+        assertEquals("2", extract("/items/item[2]/id", "<items><item><id>1</id></item><item><id>2</id></item></items>"));
+    }
+
+    @Test
+    void extractsDescendant() {
+        assertEquals("t", extract("//token", "<a><b><c><token>t</token></c></b></a>"));
+    }
+
+    @Test
+    void extractsWildcardStep() {
+        assertEquals("t", extract("/a/*/token", "<a><b><token>t</token></b></a>"));
+    }
+
+    @Test
+    void extractsAttribute() {
+        assertEquals("42", extract("/a/b/@id", "<a><b class='x' id=\"42\">text</b></a>"));
+    }
+
+    @Test
+    void skipsCommentsAndCdata() {
+        assertEquals("real", extract("/a/token", "<a><!-- <token>fake</token> --><![CDATA[<token>fake</token>]]><token>real</token></a>"));
+    }
+
+    @Test
+    void doesNotMatchOutsideThePath() {
+        assertNull(extract("/a/token", "<a><b><token>nested</token></b></a>"));
+        assertNull(extract("/a/b/@missing", "<a><b id=\"1\"/></a>"));
+        assertNull(extract("/items/item[3]", "<items><item>1</item></items>"));
+    }
+
+    @Test
+    void continuesPastTargetsWithoutTheAttribute() {
+        assertEquals("2", extract("/a/b/@id", "<a><b/><b id=\"2\"/></a>"));
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> XPathExtractor.compile("a/b"));
+        assertThrows(IllegalArgumentException.class, () -> XPathExtractor.compile("/a[0]"));
+        assertThrows(IllegalArgumentException.class, () -> XPathExtractor.compile("/a[@id='1']"));
+        assertThrows(IllegalArgumentException.class, () -> XPathExtractor.compile("/a/@"));
+    }
+}